@@ -0,0 +1,13 @@
+package com.mydotey.ai.studio.common.exception;
+
+/**
+ * 执行预算（截止时间或 token 预算）已用尽，对应 HTTP 504
+ * <p>
+ * Agent 执行器捕获后以已有的结果作为部分回答返回，只有无法给出部分回答时才传到调用方
+ */
+public class ExecutionBudgetExceededException extends BusinessException {
+
+    public ExecutionBudgetExceededException(String message) {
+        super(504, message);
+    }
+}
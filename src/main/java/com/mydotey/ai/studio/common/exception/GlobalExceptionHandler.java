@@ -5,6 +5,7 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -58,6 +59,21 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(status, e.getMessage()));
     }
 
+    @ExceptionHandler(LlmOverloadedException.class)
+    public ResponseEntity<ApiResponse<Void>> handleLlmOverloadedException(LlmOverloadedException e,
+                                                                          HttpServletRequest request) {
+        int status = HttpStatus.TOO_MANY_REQUESTS.value();
+
+        recordErrorMetric("LlmOverloadedException", status);
+
+        log.warn("LLM capacity exhausted: traceId={}, path={}, retryAfter={}s",
+                getTraceId(request), request.getRequestURI(), e.getRetryAfterSeconds());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ApiResponse.error(status, e.getMessage()));
+    }
+
     @ExceptionHandler(BusinessException.class)
     public ResponseEntity<ApiResponse<Void>> handleBusinessException(BusinessException e, HttpServletRequest request) {
         String traceId = getTraceId(request);
@@ -0,0 +1,20 @@
+package com.mydotey.ai.studio.common.exception;
+
+import lombok.Getter;
+
+/**
+ * LLM 调用因容量不足被拒绝（排队已满或排队超时），对应 HTTP 429
+ */
+@Getter
+public class LlmOverloadedException extends BusinessException {
+
+    /**
+     * 建议客户端重试前等待的秒数
+     */
+    private final int retryAfterSeconds;
+
+    public LlmOverloadedException(String message, int retryAfterSeconds) {
+        super(429, message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
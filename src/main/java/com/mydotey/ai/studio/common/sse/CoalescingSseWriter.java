@@ -0,0 +1,205 @@
+package com.mydotey.ai.studio.common.sse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并增量的 SSE 写入器
+ * <p>
+ * {@link #append} 写入的增量先进入缓冲区，首个增量进入后经过时间窗口、或缓冲区达到字节阈值时，
+ * 合并为一个 data 事件写出；其余事件（结束标记、错误等）写出前会先写出缓冲区，保证顺序。
+ * 共享的定时线程只负责到期触发，flush 在该连接自己的虚拟线程上执行，一个连接的锁被占用时不影响其他连接。
+ * 写出时持有的是 ReentrantLock 而不是对象锁，避免在虚拟线程上阻塞写出时钉住载体线程
+ */
+public class CoalescingSseWriter extends SseStreamWriter {
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+    private final int maxBytes;
+    private final Counter deltaCounter;
+    private final Counter flushCounter;
+    private final DistributionSummary frameBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedBytes;
+    private String bufferedId;
+    private ScheduledFuture<?> pendingFlush;
+
+    public CoalescingSseWriter(SseEmitter emitter, ScheduledExecutorService scheduler, long windowMillis,
+                               int maxBytes, Counter deltaCounter, Counter flushCounter,
+                               DistributionSummary frameBytes) {
+        super(emitter);
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.deltaCounter = deltaCounter;
+        this.flushCounter = flushCounter;
+        this.frameBytes = frameBytes;
+        onClose(this::discard);
+    }
+
+    /**
+     * 写入一个增量，可能延迟到时间窗口结束时与后续增量合并写出
+     *
+     * @return 连接已关闭或写入失败时返回 false
+     */
+    public boolean append(String data) {
+        return append(data, null);
+    }
+
+    /**
+     * 写入一个带事件 ID 的增量，合并写出的事件使用其中最后一个增量的 ID
+     *
+     * @return 连接已关闭或写入失败时返回 false
+     */
+    public boolean append(String data, String id) {
+        deltaCounter.increment();
+        if (windowMillis <= 0) {
+            return send(null, id, data);
+        }
+        lock.lock();
+        try {
+            if (isClosed()) {
+                return false;
+            }
+            buffer.append(data);
+            bufferedBytes += utf8Length(data);
+            if (id != null) {
+                bufferedId = id;
+            }
+            if (bufferedBytes >= maxBytes) {
+                return flushBuffer();
+            }
+            if (pendingFlush == null) {
+                try {
+                    pendingFlush = scheduler.schedule(this::scheduledFlush, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 调度器已关闭（应用停止中），直接写出
+                    return flushBuffer();
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即写出缓冲区
+     *
+     * @return 连接已关闭或写入失败时返回 false
+     */
+    public boolean flush() {
+        lock.lock();
+        try {
+            return flushBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 时间窗口到期，在虚拟线程上 flush，不占用共享的定时线程
+     */
+    private void scheduledFlush() {
+        Thread.ofVirtual().name("sse-flush").start(this::flush);
+    }
+
+    @Override
+    public boolean send(String eventName, String id, String data) {
+        lock.lock();
+        try {
+            flushBuffer();
+            return write(eventName, id, data, utf8Length(data));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void complete() {
+        lock.lock();
+        try {
+            flushBuffer();
+            super.complete();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean flushBuffer() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (buffer.isEmpty()) {
+            return !isClosed();
+        }
+        String data = buffer.toString();
+        int bytes = bufferedBytes;
+        String id = bufferedId;
+        buffer.setLength(0);
+        bufferedBytes = 0;
+        bufferedId = null;
+        return write(null, id, data, bytes);
+    }
+
+    private boolean write(String eventName, String id, String data, int bytes) {
+        boolean sent = super.send(eventName, id, data);
+        if (sent) {
+            flushCounter.increment();
+            frameBytes.record(bytes);
+        }
+        return sent;
+    }
+
+    /**
+     * 连接关闭后丢弃缓冲区并取消定时 flush
+     */
+    private void discard() {
+        lock.lock();
+        try {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            bufferedId = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 计算 UTF-8 编码后的字节数，不分配临时数组
+     */
+    static int utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,52 @@
+package com.mydotey.ai.studio.common.sse;
+
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式接口的过载拒绝
+ * <p>
+ * 准入控制在处理方法返回前就拒绝了调用（排队已满）时，记录拒绝并改为返回 429 和 Retry-After；
+ * SSE 流开始后才发生的拒绝（排队超时）无法再改变状态码，照常作为错误事件写出
+ */
+public class SseLoadShedding {
+
+    private static final int PENDING = 0;
+    private static final int STREAMING = 1;
+    private static final int SHED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final AtomicReference<LlmOverloadedException> rejection = new AtomicReference<>();
+
+    /**
+     * 在流回调的 onError 中调用
+     *
+     * @return 错误已被接管、改由处理方法返回 429 时返回 true，此时不应再写出错误事件
+     */
+    public boolean intercept(Exception e) {
+        if (!(e instanceof LlmOverloadedException overloaded)) {
+            return false;
+        }
+        rejection.set(overloaded);
+        return state.compareAndSet(PENDING, SHED);
+    }
+
+    /**
+     * 在处理方法返回前调用
+     *
+     * @return 已被拒绝时返回 429 响应；否则返回 null，之后的拒绝都作为错误事件写出
+     */
+    public <T> ResponseEntity<T> rejectedResponse() {
+        if (state.compareAndSet(PENDING, STREAMING)) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejection.get().getRetryAfterSeconds()))
+                .build();
+    }
+}
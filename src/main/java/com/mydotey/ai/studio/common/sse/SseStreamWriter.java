@@ -0,0 +1,186 @@
+package com.mydotey.ai.studio.common.sse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SseEmitter 的写入封装
+ * <p>
+ * 记录连接是否已关闭，关闭后的写入直接丢弃；并在客户端断开（包括写入失败）、超时或出错时通知注册的监听器。
+ * 写入只把事件放入该连接自己的队列，由该连接的虚拟线程按顺序写出：慢客户端只阻塞自己的写出线程，
+ * 不占用调用方（如 HTTP 客户端共享的回调线程），也不拖慢其他连接。
+ * 积压的事件超过 {@value #MAX_QUEUED_EVENTS} 个时视为客户端无法跟上，按断开处理
+ */
+@Slf4j
+public class SseStreamWriter {
+
+    static final int MAX_QUEUED_EVENTS = 1024;
+
+    /**
+     * 队列中表示正常结束响应的标记
+     */
+    private static final Object COMPLETE = new Object();
+
+    private final SseEmitter emitter;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public SseStreamWriter(SseEmitter emitter) {
+        this.emitter = emitter;
+        emitter.onCompletion(this::markClosed);
+        emitter.onTimeout(this::markClosed);
+        emitter.onError(e -> markClosed());
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * 发送 data 事件
+     *
+     * @return 连接已关闭时返回 false
+     */
+    public boolean send(String data) {
+        return send(null, data);
+    }
+
+    /**
+     * 发送带事件名的 data 事件
+     *
+     * @return 连接已关闭时返回 false
+     */
+    public boolean send(String eventName, String data) {
+        return send(eventName, null, data);
+    }
+
+    /**
+     * 发送带事件名和事件 ID 的 data 事件，事件 ID 供客户端重连时通过 Last-Event-ID 续传。
+     * 事件异步写出，写出失败时通过关闭监听器通知
+     *
+     * @return 连接已关闭或积压过多时返回 false
+     */
+    public boolean send(String eventName, String id, String data) {
+        if (closed.get()) {
+            return false;
+        }
+        // SseEmitter 在 "data:" 后不加空格，而 SSE 规范会去掉冒号后的第一个空格，
+        // 这里补一个空格以保留内容开头的空白
+        SseEmitter.SseEventBuilder event = SseEmitter.event().data(" " + data);
+        if (eventName != null) {
+            event.name(eventName);
+        }
+        if (id != null) {
+            event.id(id);
+        }
+        if (queued.incrementAndGet() > MAX_QUEUED_EVENTS) {
+            log.warn("SSE client is not keeping up, {} events queued, closing stream", MAX_QUEUED_EVENTS);
+            // 写入方可能持有锁，监听器（如取消上游）异步执行以免与其他锁交叉导致死锁
+            if (closed.compareAndSet(false, true)) {
+                queue.clear();
+                CompletableFuture.runAsync(this::notifyCloseListeners);
+            }
+            return false;
+        }
+        queue.add(event);
+        drain();
+        return true;
+    }
+
+    /**
+     * 正常结束响应，在已放入队列的事件写出之后执行
+     */
+    public void complete() {
+        if (!closed.get()) {
+            queue.add(COMPLETE);
+            drain();
+        }
+    }
+
+    /**
+     * 没有写出线程时启动一个，同一时刻每个连接最多一个写出线程，保证事件按放入顺序写出
+     */
+    private void drain() {
+        if (draining.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("sse-writer").start(this::drainQueue);
+        }
+    }
+
+    private void drainQueue() {
+        do {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                write(item);
+            }
+            draining.set(false);
+            // 释放标记后放入的事件由这里或放入方启动的线程写出
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void write(Object item) {
+        if (item != COMPLETE) {
+            queued.decrementAndGet();
+        }
+        if (closed.get()) {
+            return;
+        }
+        try {
+            if (item == COMPLETE) {
+                emitter.complete();
+            } else {
+                emitter.send((SseEmitter.SseEventBuilder) item);
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE client disconnected: {}", e.getMessage());
+            if (closed.compareAndSet(false, true)) {
+                queue.clear();
+                notifyCloseListeners();
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * 注册连接关闭监听器，连接已关闭时立即执行
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+        if (closed.get() && closeListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    private void markClosed() {
+        if (closed.compareAndSet(false, true)) {
+            notifyCloseListeners();
+        }
+    }
+
+    private void notifyCloseListeners() {
+        // 先移除再执行，与 onClose 竞争时保证每个监听器只执行一次
+        for (Runnable listener : closeListeners) {
+            if (closeListeners.remove(listener)) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("SSE close listener failed", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mydotey.ai.studio.common.sse;
+
+import com.mydotey.ai.studio.config.SseConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按端点配置创建合并写入器，并共享定时 flush 的触发线程和指标
+ * <p>
+ * 指标：sse.deltas（写入的增量数）、sse.flushes（实际写出的事件数，取速率即每秒 flush 次数）、
+ * sse.frame.bytes（每个事件的字节数），均带 endpoint 标签
+ */
+@Component
+public class SseWriterFactory {
+
+    private final SseConfig sseConfig;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService scheduler;
+
+    public SseWriterFactory(SseConfig sseConfig, MeterRegistry meterRegistry) {
+        this.sseConfig = sseConfig;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                Math.max(1, sseConfig.getFlushThreads()), r -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setName("sse-flush-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 写出前被取消的定时任务立即移出队列，避免高并发下堆积
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * 创建写入器
+     *
+     * @param emitter SSE 连接
+     * @param endpoint 端点名，用于选择合并参数和指标标签
+     */
+    public CoalescingSseWriter create(SseEmitter emitter, String endpoint) {
+        SseConfig.Coalescing coalescing = sseConfig.forEndpoint(endpoint);
+        return new CoalescingSseWriter(emitter, scheduler,
+                coalescing.getWindowMillis(), Math.max(1, coalescing.getMaxBytes()),
+                Counter.builder("sse.deltas")
+                        .description("Stream deltas written to SSE writers")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry),
+                Counter.builder("sse.flushes")
+                        .description("SSE events flushed to clients")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry),
+                DistributionSummary.builder("sse.frame.bytes")
+                        .description("Bytes per flushed SSE event")
+                        .baseUnit("bytes")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
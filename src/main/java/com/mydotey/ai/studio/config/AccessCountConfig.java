@@ -0,0 +1,30 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 聊天机器人访问计数配置
+ * 访问计数先累加在内存或 Redis 中，定期以增量 UPDATE 写入数据库，多个节点的增量相加不会互相覆盖
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chatbot.access-count")
+public class AccessCountConfig {
+
+    /**
+     * 写入数据库的间隔（毫秒），未启用 Redis 时进程异常退出最多丢失这段时间内的计数
+     */
+    private long flushInterval = 5000;
+
+    /**
+     * 是否把增量累加在 Redis 中，进程异常退出时不丢失尚未写入数据库的计数
+     */
+    private boolean redisEnabled = false;
+
+    /**
+     * 写入数据库时持有的 Redis 锁的超时时间（毫秒），同一时刻只有一个节点写入 Redis 中的增量
+     */
+    private long flushLockTimeout = 30000;
+}
@@ -0,0 +1,137 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Agent 执行配置
+ * ReAct 每一步中模型发起的多个工具调用并发执行，每个调用有独立的截止时间
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "agent")
+public class AgentConfig {
+
+    /**
+     * 单个工具调用的截止时间（毫秒），超时后以错误结果反馈给模型
+     */
+    private long toolCallTimeout = 30000;
+
+    /**
+     * 同一步中同时执行的最大工具调用数
+     */
+    private int maxParallelToolCalls = 8;
+
+    /**
+     * 反馈给模型的单个工具结果的最大字符数，超出部分截断
+     */
+    private int maxObservationChars = 8000;
+
+    /**
+     * 运行时快照缓存配置
+     */
+    private RuntimeCache runtimeCache = new RuntimeCache();
+
+    /**
+     * 单次执行的预算配置
+     */
+    private Budget budget = new Budget();
+
+    /**
+     * 知识库检索配置
+     */
+    private Retrieval retrieval = new Retrieval();
+
+    /**
+     * Agent 知识库的预检索
+     * 执行开始时即以用户问题检索 Agent 关联的知识库，与构建提示词并行；
+     * 在等待时间内返回的结果直接放入提示词，否则以检索工具提供给模型，模型调用时复用进行中的检索
+     */
+    @Data
+    public static class Retrieval {
+
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 返回的分块数
+         */
+        private int topK = 5;
+
+        /**
+         * 相似度阈值
+         */
+        private double scoreThreshold = 0.7;
+
+        /**
+         * 第一次调用模型前等待检索结果的时间（毫秒），超时后改为提供检索工具
+         */
+        private long injectWait = 300;
+    }
+
+    /**
+     * Agent 单次执行的预算
+     * 截止时间和 token 预算贯穿整个执行，每一步的超时和 maxTokens 按剩余预算收紧；
+     * 剩余预算低于预留值时不再调用工具，直接要求模型作答，用尽时以已有结果作为部分回答返回
+     */
+    @Data
+    public static class Budget {
+
+        /**
+         * 单次执行的总时长（毫秒），不大于 0 表示不限
+         */
+        private long timeout = 120000;
+
+        /**
+         * 单次执行的 token 总数（各次 LLM 调用的 total_tokens 之和），不大于 0 表示不限
+         */
+        private long maxTokens = 0;
+
+        /**
+         * 为最终回答预留的时间（毫秒）
+         */
+        private long answerReserveMillis = 15000;
+
+        /**
+         * 为最终回答预留的 token 数
+         */
+        private long answerReserveTokens = 1000;
+    }
+
+    /**
+     * Agent 运行时快照缓存配置
+     * 快照包含 Agent、知识库、工具定义、模型配置和系统提示词，Agent、模型配置或 MCP 服务器变更后失效；
+     * 多节点部署时通过 Redis 发布订阅通知其他节点
+     */
+    @Data
+    public static class RuntimeCache {
+
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最大缓存的 Agent 数
+         */
+        private long maxEntries = 1000;
+
+        /**
+         * 过期时间（秒），失效通知丢失时的兜底
+         */
+        private int ttl = 600;
+
+        /**
+         * 是否通过 Redis 发布订阅在节点间传播失效通知
+         */
+        private boolean redisEnabled = false;
+
+        /**
+         * 失效通知的 Redis 频道
+         */
+        private String channel = "agent:runtime:invalidate";
+    }
+}
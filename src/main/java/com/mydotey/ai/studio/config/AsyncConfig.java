@@ -1,18 +1,42 @@
 package com.mydotey.ai.studio.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * 异步任务配置
+ * <p>
+ * 开启 spring.threads.virtual.enabled 后，异步任务改由虚拟线程承载；
+ * 具名执行器仍保留池大小和队列作为并发上限，只替换底层线程；
+ * 向量化执行器例外，始终使用虚拟线程，由限流器控制并发
  */
 @Configuration
 @EnableAsync
-public class AsyncConfig {
+public class AsyncConfig implements AsyncConfigurer {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 未指定执行器的 @Async 方法使用的执行器，平台线程模式下沿用 Spring 默认行为
+     */
+    @Override
+    public Executor getAsyncExecutor() {
+        if (!virtualThreads) {
+            return null;
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("async-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
 
     @Bean(name = "documentProcessingExecutor")
     public Executor documentProcessingExecutor() {
@@ -21,7 +45,43 @@ public class AsyncConfig {
         executor.setMaxPoolSize(10);
         executor.setQueueCapacity(100);
         executor.setThreadNamePrefix("doc-process-");
+        applyThreadMode(executor);
         executor.initialize();
         return executor;
     }
+
+    /**
+     * 向量化批量请求执行器，每批一个虚拟线程，不设池大小上限
+     * <p>
+     * 并发度完全由各模型的 AIMD 限流器控制：固定大小的线程池会把并发卡在核心线程数，
+     * 使限流器的增长失效，退避等待也会占住池线程
+     */
+    @Bean(name = "embeddingExecutor")
+    public Executor embeddingExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("embedding-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    /**
+     * 对话摘要压缩执行器，队列满时丢弃，下一轮对话会重新触发
+     */
+    @Bean(name = "memoryCompactionExecutor")
+    public Executor memoryCompactionExecutor(ConversationMemoryConfig memoryConfig) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(memoryConfig.getCompactionThreads());
+        executor.setMaxPoolSize(memoryConfig.getCompactionThreads());
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("memory-compaction-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        applyThreadMode(executor);
+        executor.initialize();
+        return executor;
+    }
+
+    private void applyThreadMode(ThreadPoolTaskExecutor executor) {
+        if (virtualThreads) {
+            executor.setThreadFactory(Thread.ofVirtual().name(executor.getThreadNamePrefix(), 0).factory());
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话记忆配置
+ * 每轮只加载滚动摘要和最近的若干条消息，超过阈值时异步把较早的消息压缩进摘要
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "conversation.memory")
+public class ConversationMemoryConfig {
+
+    /**
+     * 每轮最多加载的最近消息数
+     */
+    private int windowSize = 20;
+
+    /**
+     * 最近消息的 token 上限，超过时触发压缩，加载时也会丢弃最早的消息以满足上限
+     */
+    private int maxWindowTokens = 4000;
+
+    /**
+     * 压缩后保留原文的最近消息数
+     */
+    private int keepRecent = 6;
+
+    /**
+     * 单次压缩最多处理的消息数
+     */
+    private int compactionBatchSize = 100;
+
+    /**
+     * 摘要的最大生成长度
+     */
+    private int summaryMaxTokens = 800;
+
+    /**
+     * 压缩执行器线程数
+     */
+    private int compactionThreads = 2;
+}
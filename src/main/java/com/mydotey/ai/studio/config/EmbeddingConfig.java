@@ -37,8 +37,43 @@ public class EmbeddingConfig {
      */
     private int batchSize = 100;
 
+    /**
+     * 单次批量请求的最大估算 token 数
+     */
+    private int maxBatchTokens = 8000;
+
+    /**
+     * 每分钟最大请求数，0 表示不限流
+     */
+    private int requestsPerMinute = 0;
+
     /**
      * 请求超时时间（毫秒）
      */
     private int timeout = 30000;
+
+    /**
+     * 限流或服务端错误时的最大重试次数
+     */
+    private int maxRetries = 5;
+
+    /**
+     * 重试退避基础时长（毫秒）
+     */
+    private long retryBaseDelay = 500;
+
+    /**
+     * 重试退避及限流等待的最大时长（毫秒）
+     */
+    private long retryMaxDelay = 30000;
+
+    /**
+     * 每个模型的初始并发请求数，运行中按 AIMD 自适应调整
+     */
+    private int initialConcurrency = 4;
+
+    /**
+     * 每个模型的最大并发请求数
+     */
+    private int maxConcurrency = 16;
 }
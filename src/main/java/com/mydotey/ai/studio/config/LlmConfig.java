@@ -4,6 +4,11 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * LLM API 配置
  */
@@ -17,6 +22,11 @@ public class LlmConfig {
      */
     private String endpoint = "https://api.openai.com/v1";
 
+    /**
+     * 附加端点，与主端点组成端点池，由路由按延迟和负载选择
+     */
+    private List<String> endpoints = new ArrayList<>();
+
     /**
      * API 密钥
      */
@@ -46,4 +56,182 @@ public class LlmConfig {
      * 是否启用流式响应
      */
     private Boolean enableStreaming = true;
+
+    /**
+     * 流式响应的 SSE 连接超时时间（毫秒）
+     */
+    private Long streamTimeout = 300000L;
+
+    /**
+     * 流式 HTTP 客户端的回调线程数（平台线程模式），所有进行中的流共享，不随连接数增长。
+     * 回调只把事件交给各连接自己的写出线程，不在这些线程上写客户端
+     */
+    private Integer streamThreads = 4;
+
+    /**
+     * 是否合并并发的相同请求：非流式请求共享同一个结果，流式请求共享同一个上游流
+     */
+    private boolean coalesceRequests = true;
+
+    /**
+     * 响应缓存配置
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * 多端点路由配置
+     */
+    private Routing routing = new Routing();
+
+    /**
+     * 准入控制配置
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * 精确匹配响应缓存配置
+     * 模型配置和聊天机器人可分别开启或关闭，未配置时使用这里的全局开关
+     */
+    @Data
+    public static class ResponseCache {
+
+        /**
+         * 全局默认是否启用，仅在模型配置和聊天机器人都未指定时生效
+         */
+        private boolean enabled = false;
+
+        /**
+         * 允许缓存的最大温度，高于该值的请求结果不确定，不走缓存
+         */
+        private double maxTemperature = 0.0;
+
+        /**
+         * 默认过期时间（秒）
+         */
+        private int ttl = 3600;
+
+        /**
+         * 本地缓存最大条目数
+         */
+        private long maxEntries = 10000;
+
+        /**
+         * 是否使用 Redis 作为二级缓存，在多个节点间共享
+         */
+        private boolean redisEnabled = false;
+
+        /**
+         * 命中后流式回放时每个分片的字符数
+         */
+        private int replayChunkSize = 16;
+    }
+
+    /**
+     * 多端点路由配置
+     * 按延迟 EWMA 和进行中的请求数选择端点，连续失败的端点熔断一段时间；
+     * 流式请求首 token 超过历史分位数时可向另一个端点发送对冲请求
+     */
+    @Data
+    public static class Routing {
+
+        /**
+         * 延迟 EWMA 的平滑系数，越大越偏向最近的样本
+         */
+        private double ewmaAlpha = 0.3;
+
+        /**
+         * 连续失败多少次后熔断
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 熔断持续时间（毫秒），到期后放行一个试探请求
+         */
+        private long openDuration = 30000;
+
+        /**
+         * 单个请求最多尝试的端点数（含对冲和失败切换）
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 是否启用对冲请求，对冲会增加上游调用量，默认关闭
+         */
+        private boolean hedgeEnabled = false;
+
+        /**
+         * 触发对冲的首 token 时间分位数
+         */
+        private double hedgePercentile = 0.95;
+
+        /**
+         * 对冲延迟下限（毫秒）
+         */
+        private long hedgeMinDelay = 200;
+
+        /**
+         * 对冲延迟上限（毫秒）
+         */
+        private long hedgeMaxDelay = 10000;
+
+        /**
+         * 计算分位数所需的最少样本数，样本不足时不对冲
+         */
+        private int hedgeMinSamples = 20;
+
+        /**
+         * 每个端点保留的首 token 时间样本数
+         */
+        private int sampleWindow = 128;
+    }
+
+    /**
+     * 准入控制配置
+     * 每个模型配置（未指定模型配置的调用共用全局池）限制同时进行的上游调用数，超出的调用排队；
+     * 排队按优先级（交互式优先于批处理）、组织间加权公平、组织内用户轮转的顺序放行，
+     * 队列已满或排队超时的调用被拒绝，HTTP 接口返回 429 和 Retry-After
+     */
+    @Data
+    public static class Admission {
+
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每个模型配置默认的最大并发调用数，模型配置的 maxConcurrency 优先
+         */
+        private int maxConcurrent = 32;
+
+        /**
+         * 批处理调用最多占用的并发比例，为交互式调用保留余量
+         */
+        private double batchMaxShare = 0.5;
+
+        /**
+         * 每个模型配置的最大排队数，超出后直接拒绝
+         */
+        private int maxQueueSize = 256;
+
+        /**
+         * 交互式调用的最长排队时间（毫秒）
+         */
+        private long interactiveQueueTimeout = 10000;
+
+        /**
+         * 批处理调用的最长排队时间（毫秒）
+         */
+        private long batchQueueTimeout = 120000;
+
+        /**
+         * 组织权重，按组织 ID 配置，未配置的组织权重为 1
+         */
+        private Map<Long, Integer> orgWeights = new HashMap<>();
+
+        /**
+         * 拒绝时建议的最大重试等待时间（秒）
+         */
+        private int maxRetryAfter = 60;
+    }
 }
@@ -0,0 +1,137 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * MCP 客户端配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "mcp")
+public class McpConfig {
+
+    /**
+     * stdio 进程池配置
+     */
+    private Stdio stdio = new Stdio();
+
+    /**
+     * streamable HTTP 传输配置
+     */
+    private Http http = new Http();
+
+    /**
+     * 工具结果缓存配置
+     */
+    private ResultCache resultCache = new ResultCache();
+
+    /**
+     * stdio 进程池配置
+     * 每个 MCP 服务器保持常驻进程，完成 initialize 握手后复用；
+     * 同一进程上的并发请求按 JSON-RPC 请求 ID 多路复用，由读线程把响应分发给对应的请求
+     */
+    @Data
+    public static class Stdio {
+
+        /**
+         * 每个服务器的进程数，请求分配给进行中请求最少的进程
+         */
+        private int processesPerServer = 1;
+
+        /**
+         * 单个请求的超时时间（毫秒）
+         */
+        private long requestTimeout = 30000;
+
+        /**
+         * initialize 握手的超时时间（毫秒）
+         */
+        private long initializeTimeout = 10000;
+
+        /**
+         * 健康检查间隔（毫秒），对空闲进程发送 ping，失败的进程被重启
+         */
+        private long healthCheckInterval = 30000;
+
+        /**
+         * 进程启动失败后的首次重试等待（毫秒），连续失败时加倍
+         */
+        private long restartBackoff = 1000;
+
+        /**
+         * 重启等待的上限（毫秒）
+         */
+        private long maxRestartBackoff = 60000;
+
+        /**
+         * 进程空闲多久后关闭（毫秒），下次请求时重新启动
+         */
+        private long idleTimeout = 1800000;
+
+        /**
+         * 应用启动后是否预先启动所有启用的 stdio 服务器
+         */
+        private boolean warmUp = true;
+    }
+
+    /**
+     * streamable HTTP 传输配置
+     * 所有 HTTP 服务器共用一个带连接池的 HttpClient（HTTP/2 时同一连接上多路复用），
+     * 每个服务器在 initialize 握手后复用 Mcp-Session-Id 会话；响应可以是 JSON 或 SSE 流，
+     * 长时间运行的工具通过 SSE 流回传进度通知
+     */
+    @Data
+    public static class Http {
+
+        /**
+         * 建立连接的超时时间（毫秒）
+         */
+        private long connectTimeout = 10000;
+
+        /**
+         * 单个请求的超时时间（毫秒），包括 SSE 流式响应的全部时间
+         */
+        private long requestTimeout = 60000;
+
+        /**
+         * initialize 握手的超时时间（毫秒）
+         */
+        private long initializeTimeout = 10000;
+
+        /**
+         * 每个服务器同时进行的最大请求数，超出的请求等待
+         */
+        private int maxConcurrentRequests = 16;
+
+        /**
+         * 是否优先使用 HTTP/2，服务器不支持时回退到 HTTP/1.1
+         */
+        private boolean http2 = true;
+    }
+
+    /**
+     * 工具结果缓存配置
+     * 只缓存标记为可缓存的工具，键为服务器、工具名称和规范化后的参数；
+     * 相同参数的并发调用只执行一次，其他调用等待同一结果；工具返回错误（isError）时不缓存
+     */
+    @Data
+    public static class ResultCache {
+
+        /**
+         * 是否启用，关闭后所有工具都不缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最大缓存条目数，超出后按访问频率淘汰
+         */
+        private long maxEntries = 10000;
+
+        /**
+         * 默认过期时间（秒），工具未单独配置时使用
+         */
+        private int defaultTtl = 300;
+    }
+}
@@ -0,0 +1,67 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 聊天消息写后持久化配置
+ * 消息先进入有界内存队列，由后台写入线程按批以多行 INSERT 写入，对话更新时间合并为一次更新；
+ * 同一对话的消息按追加顺序写入，读取对话前等待其尚未写入的消息
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.message-journal")
+public class MessageJournalConfig {
+
+    /**
+     * 是否启用，未启用时在请求线程上同步写入
+     */
+    private boolean enabled = true;
+
+    /**
+     * 队列容量
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 每批写入的最大消息数
+     */
+    private int maxBatchSize = 200;
+
+    /**
+     * 队列为空时合并对话更新时间的间隔（毫秒）
+     */
+    private long flushInterval = 100;
+
+    /**
+     * 队列已满时等待空位的时间（毫秒），超时后等同一对话排在前面的消息写入，再在请求线程上同步写入；
+     * 前面的消息在 syncTimeout 内没有写入时拒绝本条消息
+     */
+    private long offerTimeout = 1000;
+
+    /**
+     * 读取对话前等待其消息写入的最长时间（毫秒）
+     */
+    private long syncTimeout = 5000;
+
+    /**
+     * 关闭时写完队列中剩余消息的最长时间（毫秒）
+     */
+    private long shutdownTimeout = 10000;
+
+    /**
+     * 数据库暂时不可用时第一次重试前等待的时间（毫秒），之后每次加倍
+     */
+    private long retryBackoff = 100;
+
+    /**
+     * 重试等待时间的上限（毫秒）
+     */
+    private long maxRetryBackoff = 5000;
+
+    /**
+     * 正在关闭或在请求线程上写入时的最大重试次数；写入线程运行期间一直重试，消息留在队列中
+     */
+    private int maxRetries = 5;
+}
@@ -0,0 +1,54 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SSE 输出配置
+ * 流式增量先写入缓冲区，到达时间窗口或字节阈值时合并为一个事件写出，减少逐字符 flush 的系统调用开销
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "sse")
+public class SseConfig {
+
+    /**
+     * 默认合并参数
+     */
+    private Coalescing coalescing = new Coalescing();
+
+    /**
+     * 按端点覆盖的合并参数，键为端点名（chat、rag）
+     */
+    private Map<String, Coalescing> endpoints = new HashMap<>();
+
+    /**
+     * 定时 flush 的触发线程数，只负责到期触发，flush 本身在各连接的虚拟线程上执行
+     */
+    private int flushThreads = 2;
+
+    /**
+     * 取端点的合并参数，未单独配置时使用默认值
+     */
+    public Coalescing forEndpoint(String endpoint) {
+        return endpoints.getOrDefault(endpoint, coalescing);
+    }
+
+    @Data
+    public static class Coalescing {
+
+        /**
+         * 合并时间窗口（毫秒），首个增量进入缓冲区后最多等待这么久再写出，0 表示不合并
+         */
+        private long windowMillis = 20;
+
+        /**
+         * 缓冲区字节阈值，达到后立即写出
+         */
+        private int maxBytes = 4096;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mydotey.ai.studio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 流式回答续传配置
+ * 每个流式回答的内容保存在有界环形缓冲区中，客户端断线重连时携带 Last-Event-ID 即可补发缺失部分并继续接收
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.stream-resume")
+public class StreamResumeConfig {
+
+    /**
+     * 是否启用续传
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个流保留的最大字符数，超出后最早的内容被覆盖，请求该部分的重连无法续传
+     */
+    private int bufferChars = 65536;
+
+    /**
+     * 同时保留的最大流数量
+     */
+    private int maxStreams = 10000;
+
+    /**
+     * 流结束后保留的时间（秒）
+     */
+    private long retention = 600;
+
+    /**
+     * 所有客户端断开后等待重连的时间（秒），超时仍无客户端时取消上游生成
+     */
+    private long disconnectGrace = 30;
+
+    /**
+     * 是否把流内容同步到 Redis，供其他节点续传
+     */
+    private boolean redisEnabled = false;
+
+    /**
+     * 写入 Redis 的合并间隔（毫秒）
+     */
+    private long redisFlushInterval = 50;
+
+    /**
+     * 从 Redis 续传时轮询新内容的间隔（毫秒）
+     */
+    private long redisPollInterval = 200;
+}
@@ -1,19 +1,25 @@
 package com.mydotey.ai.studio.config;
 
 import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.mydotey.ai.studio.enums.ModelConfigType;
 import com.mydotey.ai.studio.filter.JwtAuthenticationFilter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.core.io.Resource;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -30,6 +36,9 @@ public class WebConfig implements WebMvcConfigurer {
     private static final Logger log = LoggerFactory.getLogger(WebConfig.class);
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Bean
     public FilterRegistrationBean<JwtAuthenticationFilter> jwtFilterRegistration() {
         FilterRegistrationBean<JwtAuthenticationFilter> registration = new FilterRegistrationBean<>();
@@ -51,6 +60,27 @@ public class WebConfig implements WebMvcConfigurer {
         return new RestTemplate(factory);
     }
 
+    /**
+     * 流式 LLM 调用使用的异步 HTTP 客户端
+     * 连接由 JDK 选择器线程统一管理，响应回调在固定大小的线程池中执行，线程数不随打开的流增长；
+     * 虚拟线程模式下回调改由虚拟线程执行，写出阻塞时不占用平台线程
+     */
+    @Bean
+    public HttpClient llmHttpClient(LlmConfig llmConfig) {
+        ExecutorService executor;
+        if (virtualThreads) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-stream-", 0).factory());
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("llm-stream-");
+            threadFactory.setDaemon(true);
+            executor = Executors.newFixedThreadPool(llmConfig.getStreamThreads(), threadFactory);
+        }
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(llmConfig.getTimeout()))
+                .executor(executor)
+                .build();
+    }
+
     @Bean
     public CorsFilter corsFilter() {
         CorsConfiguration config = new CorsConfiguration();
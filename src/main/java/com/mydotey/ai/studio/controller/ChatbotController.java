@@ -3,24 +3,29 @@ package com.mydotey.ai.studio.controller;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.mydotey.ai.studio.annotation.AuditLog;
 import com.mydotey.ai.studio.common.ApiResponse;
+import com.mydotey.ai.studio.common.sse.CoalescingSseWriter;
+import com.mydotey.ai.studio.common.sse.SseLoadShedding;
+import com.mydotey.ai.studio.common.sse.SseWriterFactory;
+import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.chatbot.*;
 import com.mydotey.ai.studio.service.ChatService;
 import com.mydotey.ai.studio.service.ChatbotService;
 import com.mydotey.ai.studio.service.ConversationService;
 import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.List;
 
 @Slf4j
@@ -34,6 +39,8 @@ public class ChatbotController {
     private final ChatbotService chatbotService;
     private final ConversationService conversationService;
     private final ChatService chatService;
+    private final LlmConfig llmConfig;
+    private final SseWriterFactory sseWriterFactory;
 
     /**
      * 创建聊天机器人
@@ -146,6 +153,43 @@ public class ChatbotController {
         return ApiResponse.success(response);
     }
 
+    /**
+     * 按游标分页获取对话列表
+     */
+    @GetMapping("/{chatbotId}/conversations/cursor")
+    @Operation(summary = "按游标获取对话列表", description = "按更新时间倒序的键集分页，翻页代价与页码无关，默认不查询总数")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "获取成功")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "游标格式错误")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "未授权")
+    public ApiResponse<CursorPageResponse<ConversationResponse>> getConversationsByCursor(
+            @PathVariable Long chatbotId,
+            @RequestAttribute("userId") Long userId,
+            @Parameter(description = "上一页返回的游标，第一页不传") @RequestParam(required = false) String cursor,
+            @Parameter(description = "每页大小，最大100") @RequestParam(defaultValue = "20") int limit,
+            @Parameter(description = "是否返回总数") @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return ApiResponse.success(
+                conversationService.scrollByChatbotAndUser(chatbotId, userId, cursor, limit, includeTotal));
+    }
+
+    /**
+     * 按游标分页获取对话消息
+     */
+    @GetMapping("/conversations/{conversationId}/messages")
+    @Operation(summary = "按游标获取对话消息", description = "从最新的消息开始按创建时间倒序的键集分页，默认不查询总数")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "获取成功")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "游标格式错误")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "未授权")
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "对话不存在")
+    public ApiResponse<CursorPageResponse<MessageResponse>> getMessages(
+            @PathVariable Long conversationId,
+            @RequestAttribute("userId") Long userId,
+            @Parameter(description = "上一页返回的游标，第一页不传") @RequestParam(required = false) String cursor,
+            @Parameter(description = "每页大小，最大100") @RequestParam(defaultValue = "50") int limit,
+            @Parameter(description = "是否返回总数") @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return ApiResponse.success(
+                conversationService.scrollMessages(conversationId, userId, cursor, limit, includeTotal));
+    }
+
     /**
      * 获取对话详情
      */
@@ -212,53 +256,77 @@ public class ChatbotController {
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "发送成功")
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "请求参数错误")
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "未授权")
-    public void chatStream(
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "429", description = "LLM 容量不足，按 Retry-After 重试")
+    public ResponseEntity<SseEmitter> chatStream(
             @Valid @RequestBody ChatRequest request,
             @RequestAttribute(value = "userId", required = false) Long userId,
-            HttpServletResponse response) throws IOException {
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
 
         log.info("Received stream chat request, chatbot: {}", request.getChatbotId());
 
-        // 设置 SSE 响应头
-        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
-        response.setCharacterEncoding("UTF-8");
-        response.setHeader("Cache-Control", "no-cache");
-        response.setHeader("Connection", "keep-alive");
-        // 禁用缓冲以确保流式响应
-        response.setHeader("X-Accel-Buffering", "no");
+        // 响应通过异步 Servlet 写出，请求线程在返回 emitter 后即被释放
+        SseEmitter emitter = new SseEmitter(llmConfig.getStreamTimeout());
+        CoalescingSseWriter writer = sseWriterFactory.create(emitter, "chat");
+        // 连接断开（完成、超时、写出失败）时取消，由服务层决定何时中止上游生成
+        CancellationToken clientToken = new CancellationToken();
+        writer.onClose(clientToken::cancel);
+        SseLoadShedding loadShedding = new SseLoadShedding();
 
-        PrintWriter writer = response.getWriter();
+        StreamingChatCallback callback = new StreamingChatCallback() {
+            @Override
+            public void onContent(String content) {
+                writer.append(escapeSseData(content));
+            }
 
-        try {
-            // 调用流式聊天服务
-            chatService.chatStream(request, userId, new StreamingChatCallback() {
-                @Override
-                public void onContent(String content) {
-                    writer.write("data: " + escapeSseData(content) + "\n\n");
-                    writer.flush();
-                }
+            @Override
+            public void onContent(String content, String eventId) {
+                writer.append(escapeSseData(content), eventId);
+            }
 
-                @Override
-                public void onComplete() {
-                    writer.write("data: [DONE]\n\n");
-                    writer.flush();
-                }
+            @Override
+            public void onComplete() {
+                writer.send("[DONE]");
+                writer.complete();
+            }
 
-                @Override
-                public void onError(Exception e) {
-                    log.error("Error in stream chat callback", e);
-                    writer.write("data: " + escapeSseData("Error: " + e.getMessage()) + "\n\n");
-                    writer.write("data: [ERROR]\n\n");
-                    writer.flush();
+            @Override
+            public void onError(Exception e) {
+                if (loadShedding.intercept(e)) {
+                    return;
                 }
-            });
+                log.error("Error in stream chat callback", e);
+                writer.send(escapeSseData("Error: " + e.getMessage()));
+                writer.send("[ERROR]");
+                writer.complete();
+            }
+        };
+
+        try {
+            // 携带 Last-Event-ID 的重连优先续传，无法续传时重新生成
+            if (lastEventId == null || !chatService.resumeStream(lastEventId, userId, clientToken, callback)) {
+                // 调用流式聊天服务
+                chatService.chatStream(request, userId, clientToken, callback);
+            }
         } catch (Exception e) {
             log.error("Error in stream chat", e);
             // 通过 SSE 发送错误信息
-            writer.write("data: " + escapeSseData("Error: " + e.getMessage()) + "\n\n");
-            writer.write("data: [ERROR]\n\n");
-            writer.flush();
+            writer.send(escapeSseData("Error: " + e.getMessage()));
+            writer.send("[ERROR]");
+            writer.complete();
         }
+
+        // 开始输出前就因容量不足被拒绝时返回 429
+        ResponseEntity<SseEmitter> rejected = loadShedding.rejectedResponse();
+        if (rejected != null) {
+            writer.complete();
+            return rejected;
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                // 禁用代理缓冲以确保流式响应
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
     }
 
     /**
@@ -4,8 +4,11 @@ import com.mydotey.ai.studio.annotation.AuditLog;
 import com.mydotey.ai.studio.common.ApiResponse;
 import com.mydotey.ai.studio.dto.CreateMcpServerRequest;
 import com.mydotey.ai.studio.dto.McpServerResponse;
+import com.mydotey.ai.studio.dto.McpToolResponse;
 import com.mydotey.ai.studio.dto.UpdateMcpServerRequest;
+import com.mydotey.ai.studio.dto.UpdateMcpToolCacheRequest;
 import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
 import com.mydotey.ai.studio.service.McpServerService;
 import com.mydotey.ai.studio.service.McpToolSyncService;
 import jakarta.validation.Valid;
@@ -79,6 +82,39 @@ public class McpController {
         return ApiResponse.success(null);
     }
 
+    @GetMapping("/servers/{id}/tools")
+    public ApiResponse<List<McpToolResponse>> listTools(@PathVariable Long id) {
+        List<McpToolResponse> responses = mcpToolSyncService.listTools(id).stream()
+                .map(this::toToolResponse)
+                .collect(Collectors.toList());
+        return ApiResponse.success(responses);
+    }
+
+    @PutMapping("/tools/{id}/cache")
+    @AuditLog(action = "UPDATE_MCP_TOOL_CACHE", resourceType = "McpTool", resourceIdParam = "id")
+    public ApiResponse<McpToolResponse> updateToolCache(
+            @PathVariable Long id,
+            @Valid @RequestBody UpdateMcpToolCacheRequest request,
+            @RequestAttribute("userId") Long userId) {
+        McpTool tool = mcpToolSyncService.updateToolCacheSettings(id, request, userId);
+        return ApiResponse.success(toToolResponse(tool));
+    }
+
+    private McpToolResponse toToolResponse(McpTool tool) {
+        return McpToolResponse.builder()
+                .id(tool.getId())
+                .serverId(tool.getServerId())
+                .toolName(tool.getToolName())
+                .description(tool.getDescription())
+                .inputSchema(tool.getInputSchema())
+                .outputSchema(tool.getOutputSchema())
+                .resultCacheEnabled(tool.getResultCacheEnabled())
+                .resultCacheTtl(tool.getResultCacheTtl())
+                .createdAt(tool.getCreatedAt())
+                .updatedAt(tool.getUpdatedAt())
+                .build();
+    }
+
     private McpServerResponse toResponse(McpServer server) {
         return McpServerResponse.builder()
                 .id(server.getId())
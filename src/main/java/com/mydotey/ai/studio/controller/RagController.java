@@ -3,20 +3,26 @@ package com.mydotey.ai.studio.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.annotation.AuditLog;
 import com.mydotey.ai.studio.common.ApiResponse;
+import com.mydotey.ai.studio.common.sse.CoalescingSseWriter;
+import com.mydotey.ai.studio.common.sse.SseLoadShedding;
+import com.mydotey.ai.studio.common.sse.SseWriterFactory;
+import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.*;
 import com.mydotey.ai.studio.service.*;
+import com.mydotey.ai.studio.util.CancellationToken;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.List;
 
 /**
@@ -36,6 +42,8 @@ public class RagController {
     private final PromptTemplateService promptTemplateService;
     private final StreamingLlmService streamingLlmService;
     private final ObjectMapper objectMapper;
+    private final LlmConfig llmConfig;
+    private final SseWriterFactory sseWriterFactory;
 
     /**
      * 执行 RAG 查询（非流式）
@@ -64,19 +72,17 @@ public class RagController {
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "查询成功，返回 SSE 流")
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "请求参数错误")
     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "401", description = "未授权")
-    public void queryStream(
-            @Valid @RequestBody RagQueryRequest request,
-            HttpServletResponse response) throws IOException {
+    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "429", description = "LLM 容量不足，按 Retry-After 重试")
+    public ResponseEntity<SseEmitter> queryStream(@Valid @RequestBody RagQueryRequest request) {
 
         log.info("Received RAG stream query request: {}", request.getQuestion());
 
-        // 设置 SSE 响应头
-        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
-        response.setCharacterEncoding("UTF-8");
-        response.setHeader("Cache-Control", "no-cache");
-        response.setHeader("Connection", "keep-alive");
-
-        PrintWriter writer = response.getWriter();
+        SseEmitter emitter = new SseEmitter(llmConfig.getStreamTimeout());
+        CoalescingSseWriter writer = sseWriterFactory.create(emitter, "rag");
+        // 连接断开时中止上游生成
+        CancellationToken clientToken = new CancellationToken();
+        writer.onClose(clientToken::cancel);
+        SseLoadShedding loadShedding = new SseLoadShedding();
 
         // 1. 向量搜索
         List<SourceDocument> sources = vectorSearchService.search(
@@ -96,7 +102,7 @@ public class RagController {
         // 3. 构建 Prompt
         String systemPrompt = promptTemplateService.buildSystemPrompt(context);
 
-        // 4. 流式生成
+        // 4. 流式生成，回调在流式客户端线程中写出，请求线程直接返回
         StringBuilder answerBuilder = new StringBuilder();
 
         streamingLlmService.streamGenerate(
@@ -104,14 +110,15 @@ public class RagController {
                 request.getQuestion(),
                 request.getTemperature(),
                 request.getMaxTokens(),
+                null,
+                clientToken,
                 new StreamingLlmService.StreamCallback() {
                     @Override
                     public void onContent(String content) {
                         answerBuilder.append(content);
 
                         // 发送 SSE 事件
-                        writer.write("data: " + escapeSseData(content) + "\n\n");
-                        writer.flush();
+                        writer.append(escapeSseData(content));
                     }
 
                     @Override
@@ -125,22 +132,35 @@ public class RagController {
 
                         try {
                             // 序列化并发送完整响应
-                            writer.write("data: " + objectMapper.writeValueAsString(finalResponse) + "\n\n");
-                            writer.flush();
+                            writer.send(objectMapper.writeValueAsString(finalResponse));
                         } catch (IOException e) {
                             log.error("Failed to send completion event", e);
                         }
+                        writer.complete();
                     }
 
                     @Override
                     public void onError(Exception e) {
+                        if (loadShedding.intercept(e)) {
+                            return;
+                        }
                         log.error("Stream generation error", e);
-                        writer.write("event: error\n");
-                        writer.write("data: " + e.getMessage() + "\n\n");
-                        writer.flush();
+                        writer.send("error", escapeSseData(String.valueOf(e.getMessage())));
+                        writer.complete();
                     }
                 }
         );
+
+        // 开始输出前就因容量不足被拒绝时返回 429
+        ResponseEntity<SseEmitter> rejected = loadShedding.rejectedResponse();
+        if (rejected != null) {
+            writer.complete();
+            return rejected;
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(emitter);
     }
 
     /**
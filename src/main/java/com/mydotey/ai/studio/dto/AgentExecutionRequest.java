@@ -3,6 +3,7 @@ package com.mydotey.ai.studio.dto;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -12,5 +13,20 @@ public class AgentExecutionRequest {
 
     private Map<String, Object> context;
 
+    /**
+     * 对话的滚动摘要
+     */
+    private String conversationSummary;
+
+    /**
+     * 最近的对话历史，不含本次问题，按时间正序
+     */
+    private List<Message> history;
+
     private Boolean stream = false;
+
+    /**
+     * 是否使用 LLM 响应缓存，null 表示沿用模型配置
+     */
+    private Boolean responseCache;
 }
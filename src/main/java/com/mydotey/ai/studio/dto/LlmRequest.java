@@ -1,5 +1,6 @@
 package com.mydotey.ai.studio.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -36,4 +37,10 @@ public class LlmRequest {
      * 是否流式输出
      */
     private Boolean stream;
+
+    /**
+     * 可供模型调用的工具，为空时不发送
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<LlmTool> tools;
 }
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -34,4 +36,9 @@ public class LlmResponse {
      * 总消耗 tokens
      */
     private Integer totalTokens;
+
+    /**
+     * 模型发起的工具调用，finish_reason 为 tool_calls 时非空
+     */
+    private List<LlmToolCall> toolCalls;
 }
@@ -0,0 +1,48 @@
+package com.mydotey.ai.studio.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 提供给模型的工具定义（OpenAI function calling 格式）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmTool {
+    /**
+     * 工具类型，固定为 function
+     */
+    @Builder.Default
+    private String type = "function";
+
+    /**
+     * 函数定义
+     */
+    private Function function;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Function {
+        /**
+         * 函数名称，只能包含字母、数字、下划线和连字符
+         */
+        private String name;
+
+        /**
+         * 函数说明
+         */
+        private String description;
+
+        /**
+         * 参数的 JSON Schema
+         */
+        private JsonNode parameters;
+    }
+}
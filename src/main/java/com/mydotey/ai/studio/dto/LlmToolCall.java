@@ -0,0 +1,47 @@
+package com.mydotey.ai.studio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 模型发起的工具调用（OpenAI function calling 格式）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmToolCall {
+    /**
+     * 调用 ID，工具结果消息通过它与调用对应
+     */
+    private String id;
+
+    /**
+     * 调用类型，固定为 function
+     */
+    @Builder.Default
+    private String type = "function";
+
+    /**
+     * 调用的函数
+     */
+    private Function function;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Function {
+        /**
+         * 函数名称
+         */
+        private String name;
+
+        /**
+         * JSON 格式的参数
+         */
+        private String arguments;
+    }
+}
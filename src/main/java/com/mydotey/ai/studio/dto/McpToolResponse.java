@@ -14,6 +14,8 @@ public class McpToolResponse {
     private String description;
     private String inputSchema;
     private String outputSchema;
+    private Boolean resultCacheEnabled;
+    private Integer resultCacheTtl;
     private Instant createdAt;
     private Instant updatedAt;
 }
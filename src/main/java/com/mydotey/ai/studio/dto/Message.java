@@ -1,17 +1,21 @@
 package com.mydotey.ai.studio.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Message {
     /**
-     * 消息角色：user, assistant, system
+     * 消息角色：user, assistant, system, tool
      */
     private MessageRole role;
 
@@ -19,4 +23,18 @@ public class Message {
      * 消息内容
      */
     private String content;
+
+    /**
+     * assistant 消息中模型发起的工具调用
+     */
+    @JsonProperty("tool_calls")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<LlmToolCall> toolCalls;
+
+    /**
+     * tool 消息对应的工具调用 ID
+     */
+    @JsonProperty("tool_call_id")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String toolCallId;
 }
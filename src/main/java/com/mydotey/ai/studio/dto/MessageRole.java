@@ -9,7 +9,8 @@ import com.fasterxml.jackson.annotation.JsonValue;
 public enum MessageRole {
     USER("user"),
     ASSISTANT("assistant"),
-    SYSTEM("system");
+    SYSTEM("system"),
+    TOOL("tool");
 
     private final String value;
 
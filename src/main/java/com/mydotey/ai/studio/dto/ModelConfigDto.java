@@ -12,6 +12,7 @@ public class ModelConfigDto {
     private ModelConfigType type;
     private String name;
     private String endpoint;
+    private String endpoints; // 附加端点的 JSON 数组
     private String apiKey; // 部分隐藏
     private String model;
     private Integer dimension;
@@ -19,6 +20,12 @@ public class ModelConfigDto {
     private Integer maxTokens;
     private Integer timeout;
     private Boolean enableStreaming;
+    private Integer maxBatchSize;
+    private Integer maxBatchTokens;
+    private Integer requestsPerMinute;
+    private Integer maxConcurrency;
+    private Boolean responseCacheEnabled;
+    private Integer responseCacheTtl;
     private Boolean isDefault;
     private String status;
     private String description;
@@ -17,6 +17,8 @@ public class ModelConfigRequest {
     @NotBlank(message = "端点不能为空")
     private String endpoint;
 
+    private String endpoints; // LLM模型专用，附加端点的 JSON 数组
+
     @NotBlank(message = "API Key不能为空")
     private String apiKey;
 
@@ -33,6 +35,18 @@ public class ModelConfigRequest {
 
     private Boolean enableStreaming = true;
 
+    private Integer maxBatchSize; // 向量模型可选
+
+    private Integer maxBatchTokens; // 向量模型可选
+
+    private Integer requestsPerMinute;
+
+    private Integer maxConcurrency; // LLM模型可选，最大并发调用数
+
+    private Boolean responseCacheEnabled; // LLM模型可选
+
+    private Integer responseCacheTtl; // LLM模型可选，单位秒
+
     private Boolean isDefault = false;
 
     private String description;
@@ -12,6 +12,7 @@ public class ModelConfigResponse {
     private ModelConfigType type;
     private String name;
     private String endpoint;
+    private String endpoints;
     private String maskedApiKey; // 部分隐藏的API Key
     private String model;
     private Integer dimension;
@@ -19,6 +20,12 @@ public class ModelConfigResponse {
     private Integer maxTokens;
     private Integer timeout;
     private Boolean enableStreaming;
+    private Integer maxBatchSize;
+    private Integer maxBatchTokens;
+    private Integer requestsPerMinute;
+    private Integer maxConcurrency;
+    private Boolean responseCacheEnabled;
+    private Integer responseCacheTtl;
     private Boolean isDefault;
     private String status;
     private String description;
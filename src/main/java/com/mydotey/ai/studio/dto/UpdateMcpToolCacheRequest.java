@@ -0,0 +1,14 @@
+package com.mydotey.ai.studio.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class UpdateMcpToolCacheRequest {
+    @NotNull(message = "Result cache enabled flag is required")
+    private Boolean resultCacheEnabled;
+
+    @Min(value = 1, message = "Result cache TTL must be at least 1 second")
+    private Integer resultCacheTtl;
+}
@@ -0,0 +1,25 @@
+package com.mydotey.ai.studio.dto.chatbot;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    private List<T> records;
+    /**
+     * 下一页的游标，没有更多数据时为 null
+     */
+    private String nextCursor;
+    private boolean hasMore;
+    /**
+     * 总数，只在请求时查询，否则为 null
+     */
+    private Long total;
+}
@@ -19,6 +19,10 @@ public class Conversation {
 
     private String title;
 
+    private String summary; // 滚动摘要
+
+    private Long summarizedUntilId; // 已压缩进摘要的最后一条消息 ID
+
     private Instant createdAt;
 
     private Instant updatedAt;
@@ -28,6 +28,10 @@ public class McpTool {
     @TableField(typeHandler = JsonbTypeHandler.class)
     private String metadata;
 
+    private Boolean resultCacheEnabled; // 只应对幂等的查询类工具开启
+
+    private Integer resultCacheTtl; // 单位秒，为空时使用全局默认值
+
     private Instant createdAt;
     private Instant updatedAt;
 }
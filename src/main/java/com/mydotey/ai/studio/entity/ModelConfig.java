@@ -1,9 +1,11 @@
 package com.mydotey.ai.studio.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.mydotey.ai.studio.enums.ModelConfigType;
+import com.mydotey.ai.studio.handler.JsonbTypeHandler;
 import lombok.Data;
 
 import java.time.Instant;
@@ -22,6 +24,9 @@ public class ModelConfig {
 
     private String endpoint;
 
+    @TableField(typeHandler = JsonbTypeHandler.class)
+    private String endpoints; // LLM模型专用，附加端点的 JSON 数组
+
     private String apiKey;
 
     private String model;
@@ -36,6 +41,18 @@ public class ModelConfig {
 
     private Boolean enableStreaming; // LLM模型专用
 
+    private Integer maxBatchSize; // 向量模型专用
+
+    private Integer maxBatchTokens; // 向量模型专用
+
+    private Integer requestsPerMinute;
+
+    private Integer maxConcurrency; // LLM模型专用，最大并发调用数
+
+    private Boolean responseCacheEnabled; // LLM模型专用
+
+    private Integer responseCacheTtl; // LLM模型专用，单位秒
+
     private Boolean isDefault;
 
     private String status; // active, inactive
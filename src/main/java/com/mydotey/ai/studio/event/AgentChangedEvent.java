@@ -0,0 +1,20 @@
+package com.mydotey.ai.studio.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Agent 变更事件
+ * 在 Agent 更新或删除后发布，用于失效 Agent 运行时快照
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class AgentChangedEvent {
+
+    /**
+     * 发生变更的 Agent ID
+     */
+    private final Long agentId;
+}
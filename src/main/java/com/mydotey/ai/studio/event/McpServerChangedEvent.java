@@ -0,0 +1,33 @@
+package com.mydotey.ai.studio.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * MCP 服务器变更事件
+ * 在服务器更新、删除或工具重新同步后发布，用于失效引用该服务器工具的 Agent 运行时快照；
+ * 服务器本身被修改或删除时同时关闭连接池中的进程和会话
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class McpServerChangedEvent {
+
+    /**
+     * 发生变更的服务器 ID
+     */
+    private final Long serverId;
+
+    /**
+     * 服务器本身被修改或删除，已有的进程和会话不再可用
+     */
+    private final boolean connectionChanged;
+
+    /**
+     * 只有工具变化的事件
+     */
+    public McpServerChangedEvent(Long serverId) {
+        this(serverId, false);
+    }
+}
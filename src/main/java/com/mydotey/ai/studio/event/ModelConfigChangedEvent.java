@@ -0,0 +1,26 @@
+package com.mydotey.ai.studio.event;
+
+import com.mydotey.ai.studio.enums.ModelConfigType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 模型配置变更事件
+ * 在模型配置创建、更新、删除或默认配置切换后发布，用于失效依赖该配置的本地缓存
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ModelConfigChangedEvent {
+
+    /**
+     * 发生变更的配置 ID
+     */
+    private final Long configId;
+
+    /**
+     * 配置类型
+     */
+    private final ModelConfigType type;
+}
@@ -3,6 +3,8 @@ package com.mydotey.ai.studio.filter;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mydotey.ai.studio.entity.User;
 import com.mydotey.ai.studio.mapper.UserMapper;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.llm.LlmPriority;
 import com.mydotey.ai.studio.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -26,9 +28,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         String token = extractToken(request);
+        Long userId = null;
+        Long orgId = null;
 
         if (token != null && jwtUtil.validateToken(token)) {
-            Long userId = jwtUtil.getUserIdFromToken(token);
+            userId = jwtUtil.getUserIdFromToken(token);
             String role = jwtUtil.getRoleFromToken(token);
 
             request.setAttribute("userId", userId);
@@ -37,11 +41,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Fetch user to get orgId
             User user = userMapper.selectById(userId);
             if (user != null && user.getOrgId() != null) {
-                request.setAttribute("orgId", user.getOrgId());
+                orgId = user.getOrgId();
+                request.setAttribute("orgId", orgId);
             }
         }
 
-        filterChain.doFilter(request, response);
+        // 请求线程上发起的 LLM 调用按交互式优先级、以当前组织和用户排队
+        LlmCallContext.set(new LlmCallContext.Caller(orgId, userId, LlmPriority.INTERACTIVE));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            LlmCallContext.clear();
+        }
     }
 
     private String extractToken(HttpServletRequest request) {
@@ -3,7 +3,18 @@ package com.mydotey.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mydotey.ai.studio.entity.Chatbot;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 @Mapper
 public interface ChatbotMapper extends BaseMapper<Chatbot> {
+
+    /**
+     * 在一条语句中为多个聊天机器人增加访问计数
+     *
+     * @param deltas 聊天机器人 ID 到增量的映射
+     * @return 更新的行数
+     */
+    int incrementAccessCounts(@Param("deltas") Map<Long, Long> deltas);
 }
@@ -3,7 +3,19 @@ package com.mydotey.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mydotey.ai.studio.entity.Conversation;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.Instant;
+import java.util.Map;
 
 @Mapper
 public interface ConversationMapper extends BaseMapper<Conversation> {
+
+    /**
+     * 批量更新对话的更新时间，只会向后推进
+     *
+     * @param touches 对话 ID 到更新时间的映射
+     * @return 更新的行数
+     */
+    int touchAll(@Param("touches") Map<Long, Instant> touches);
 }
@@ -3,7 +3,26 @@ package com.mydotey.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mydotey.ai.studio.entity.Message;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface MessageMapper extends BaseMapper<Message> {
+
+    /**
+     * 预先分配消息 ID（取自 messages 表的序列）
+     *
+     * @param count 分配的数量
+     * @return 递增的 ID 列表
+     */
+    List<Long> nextIds(@Param("count") int count);
+
+    /**
+     * 多行 INSERT 批量写入已分配 ID 的消息
+     *
+     * @param messages 消息列表，按列表顺序写入
+     * @return 写入的行数
+     */
+    int insertBatch(@Param("messages") List<Message> messages);
 }
@@ -2,11 +2,15 @@ package com.mydotey.ai.studio.service;
 
 import com.mydotey.ai.studio.annotation.PerformanceMonitor;
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.config.AgentConfig;
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
-import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.service.agent.AgentRuntime;
+import com.mydotey.ai.studio.service.agent.AgentRuntimeCache;
 import com.mydotey.ai.studio.service.agent.WorkflowExecutor;
 import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +18,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,8 +26,9 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AgentExecutionService {
 
-    private final AgentService agentService;
+    private final AgentRuntimeCache agentRuntimeCache;
     private final List<WorkflowExecutor> workflowExecutors;
+    private final AgentConfig agentConfig;
     private Map<String, WorkflowExecutor> executorMap;
 
     @PostConstruct
@@ -38,27 +44,16 @@ public class AgentExecutionService {
     }
 
     /**
-     * 执行 Agent
+     * 执行 Agent，截止时间和 token 预算从开始执行时计算
      */
     @PerformanceMonitor(value = "Agent Execution", slowThreshold = 5000)
     public AgentExecutionResponse executeAgent(Long agentId, AgentExecutionRequest request, Long userId) {
         log.info("Executing agent: {}, query: {}, userId: {}", agentId, request.getQuery(), userId);
 
-        // 获取 Agent 配置
-        Agent agent = agentService.getAgent(agentId);
+        // 获取 Agent 运行时快照
+        AgentRuntime runtime = agentRuntimeCache.get(agentId);
 
-        // 根据工作流类型选择执行器
-        String workflowType = agent.getWorkflowType();
-        if (workflowType == null) {
-            workflowType = "REACT";
-        }
-
-        WorkflowExecutor executor = executorMap.get(workflowType);
-        if (executor == null) {
-            throw new BusinessException("Unsupported workflow type: " + workflowType);
-        }
-
-        return executor.execute(agent, request, userId);
+        return getExecutor(runtime).execute(runtime, request, userId, newBudget());
     }
 
     /**
@@ -66,25 +61,25 @@ public class AgentExecutionService {
      */
     public void executeAgentStream(Long agentId, AgentExecutionRequest request, Long userId,
                                    StreamingLlmService.StreamCallback callback) {
+        executeAgentStream(agentId, request, userId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * 流式执行 Agent，取消令牌触发（如客户端断开）时中断上游生成，预算用尽时输出部分回答后结束
+     */
+    public void executeAgentStream(Long agentId, AgentExecutionRequest request, Long userId,
+                                   CancellationToken cancellationToken,
+                                   StreamingLlmService.StreamCallback callback) {
         log.info("Executing agent stream: {}, query: {}, userId: {}", agentId, request.getQuery(), userId);
 
         try {
-            // 获取 Agent 配置
-            Agent agent = agentService.getAgent(agentId);
-
-            // 根据工作流类型选择执行器
-            String workflowType = agent.getWorkflowType();
-            if (workflowType == null) {
-                workflowType = "REACT";
-            }
-
-            WorkflowExecutor executor = executorMap.get(workflowType);
-            if (executor == null) {
-                throw new BusinessException("Unsupported workflow type: " + workflowType);
-            }
+            ExecutionBudget budget = newBudget();
+            // 获取 Agent 运行时快照
+            AgentRuntime runtime = agentRuntimeCache.get(agentId);
+            WorkflowExecutor executor = getExecutor(runtime);
 
             // 转换回调接口
-            executor.executeStream(agent, request, userId, new StreamingChatCallback() {
+            executor.executeStream(runtime, request, userId, cancellationToken, budget, new StreamingChatCallback() {
                 @Override
                 public void onContent(String content) {
                     callback.onContent(content);
@@ -97,7 +92,11 @@ public class AgentExecutionService {
 
                 @Override
                 public void onError(Exception e) {
-                    log.error("Error in agent stream execution", e);
+                    if (e instanceof CancellationException) {
+                        log.info("Agent stream cancelled: {}", agentId);
+                    } else {
+                        log.error("Error in agent stream execution", e);
+                    }
                     callback.onError(e);
                 }
             });
@@ -107,4 +106,25 @@ public class AgentExecutionService {
             callback.onError(e);
         }
     }
+
+    /**
+     * 本次执行的预算
+     */
+    private ExecutionBudget newBudget() {
+        AgentConfig.Budget config = agentConfig.getBudget();
+        return ExecutionBudget.of(config.getTimeout(), config.getMaxTokens(),
+                config.getAnswerReserveMillis(), config.getAnswerReserveTokens());
+    }
+
+    /**
+     * 根据工作流类型选择执行器
+     */
+    private WorkflowExecutor getExecutor(AgentRuntime runtime) {
+        String workflowType = runtime.workflowType();
+        WorkflowExecutor executor = executorMap.get(workflowType);
+        if (executor == null) {
+            throw new BusinessException("Unsupported workflow type: " + workflowType);
+        }
+        return executor;
+    }
 }
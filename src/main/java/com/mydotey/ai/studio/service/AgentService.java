@@ -12,12 +12,14 @@ import com.mydotey.ai.studio.dto.WorkflowType;
 import com.mydotey.ai.studio.entity.Agent;
 import com.mydotey.ai.studio.entity.AgentKnowledgeBase;
 import com.mydotey.ai.studio.entity.AgentTool;
+import com.mydotey.ai.studio.event.AgentChangedEvent;
 import com.mydotey.ai.studio.mapper.AgentKnowledgeBaseMapper;
 import com.mydotey.ai.studio.mapper.AgentMapper;
 import com.mydotey.ai.studio.mapper.AgentToolMapper;
 import com.mydotey.ai.studio.service.ModelConfigService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -33,6 +35,7 @@ public class AgentService {
     private final AgentKnowledgeBaseMapper agentKbMapper;
     private final AgentToolMapper agentToolMapper;
     private final ModelConfigService modelConfigService;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * 创建 Agent
@@ -159,6 +162,8 @@ public class AgentService {
             }
         }
 
+        // 事务提交后失效运行时快照
+        eventPublisher.publishEvent(new AgentChangedEvent(agentId));
         log.info("Agent updated: {}", agentId);
     }
 
@@ -180,6 +185,7 @@ public class AgentService {
     public void deleteAgent(Long agentId, Long userId) {
         log.info("Deleting agent: {}, userId: {}", agentId, userId);
         agentMapper.deleteById(agentId);
+        eventPublisher.publishEvent(new AgentChangedEvent(agentId));
         log.info("Agent deleted: {}", agentId);
     }
 
@@ -1,27 +1,28 @@
 package com.mydotey.ai.studio.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.annotation.PerformanceMonitor;
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
-import com.mydotey.ai.studio.dto.Message;
-import com.mydotey.ai.studio.dto.MessageRole;
 import com.mydotey.ai.studio.dto.SourceDocument;
 import com.mydotey.ai.studio.dto.chatbot.ChatRequest;
 import com.mydotey.ai.studio.dto.chatbot.ChatResponse;
 import com.mydotey.ai.studio.dto.chatbot.ConversationResponse;
 import com.mydotey.ai.studio.entity.Chatbot;
 import com.mydotey.ai.studio.mapper.ChatbotMapper;
-import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.journal.MessageJournal;
+import com.mydotey.ai.studio.service.memory.ConversationMemory;
+import com.mydotey.ai.studio.service.memory.ConversationMemoryService;
+import com.mydotey.ai.studio.service.stream.ResumableStreamService;
+import com.mydotey.ai.studio.util.CancellationToken;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
 
 @Slf4j
 @Service
@@ -30,15 +31,19 @@ public class ChatService {
 
     private final ChatbotMapper chatbotMapper;
     private final ConversationService conversationService;
-    private final MessageMapper messageMapper;
+    private final MessageJournal messageJournal;
     private final AgentExecutionService agentExecutionService;
     private final ChatbotService chatbotService;
     private final ObjectMapper objectMapper;
+    private final ConversationMemoryService conversationMemoryService;
+    private final ResumableStreamService resumableStreamService;
 
     /**
      * 发送消息并获取回复（非流式）
+     * <p>
+     * 整个流程不在一个事务中：创建对话是独立的短事务，消息由写后持久化写入，
+     * 生成回答期间不占用数据库连接。生成失败时删除本次新建的对话，本次的消息不保存
      */
-    @Transactional
     @PerformanceMonitor(value = "Chat", slowThreshold = 1000)
     public ChatResponse chat(ChatRequest request, Long userId) {
         Long chatbotId = request.getChatbotId();
@@ -66,41 +71,46 @@ public class ChatService {
             conversationIdToUse = conversationId;
         }
 
-        // 3. 保存用户消息
+        // 3. 加载对话记忆（摘要和最近消息，不含本次问题）
+        ConversationMemory memory = conversationId == null
+                ? ConversationMemory.empty()
+                : loadMemory(conversationIdToUse);
+
+        // 4. 构建用户消息，同时分配助手回复的 ID；生成成功后才保存
+        List<Long> messageIds = messageJournal.reserveIds(2);
         com.mydotey.ai.studio.entity.Message userMsg = new com.mydotey.ai.studio.entity.Message();
+        userMsg.setId(messageIds.get(0));
         userMsg.setConversationId(conversationIdToUse);
         userMsg.setRole("user");
         userMsg.setContent(userMessage);
         userMsg.setCreatedAt(Instant.now());
-        messageMapper.insert(userMsg);
-
-        // 4. 加载对话历史
-        List<com.mydotey.ai.studio.entity.Message> historyMessages = messageMapper.selectList(
-                new LambdaQueryWrapper<com.mydotey.ai.studio.entity.Message>()
-                        .eq(com.mydotey.ai.studio.entity.Message::getConversationId, conversationIdToUse)
-                        .orderByAsc(com.mydotey.ai.studio.entity.Message::getCreatedAt)
-        );
-
-        List<Message> agentHistory = historyMessages.stream()
-                .map(msg -> Message.builder()
-                        .role(convertToMessageRole(msg.getRole()))
-                        .content(msg.getContent())
-                        .build())
-                .collect(Collectors.toList());
-
-        // 5. 调用 Agent
+
+        // 5. 调用 Agent（不在事务中，不占用数据库连接）
         AgentExecutionRequest agentRequest = new AgentExecutionRequest();
         agentRequest.setQuery(userMessage);
         agentRequest.setContext(null);
+        agentRequest.setConversationSummary(memory.getSummary());
+        agentRequest.setHistory(memory.getMessages());
+        agentRequest.setResponseCache(getResponseCacheSetting(chatbot));
 
-        AgentExecutionResponse agentResponse = agentExecutionService.executeAgent(
-                chatbot.getAgentId(),
-                agentRequest,
-                userId
-        );
+        AgentExecutionResponse agentResponse;
+        try {
+            agentResponse = agentExecutionService.executeAgent(
+                    chatbot.getAgentId(),
+                    agentRequest,
+                    userId
+            );
+        } catch (RuntimeException e) {
+            if (conversationId == null) {
+                discardConversation(conversationIdToUse);
+            }
+            throw e;
+        }
 
-        // 6. 保存助手回复
+        // 6. 保存用户消息和助手回复（写后持久化）
+        messageJournal.append(userMsg);
         com.mydotey.ai.studio.entity.Message assistantMsg = new com.mydotey.ai.studio.entity.Message();
+        assistantMsg.setId(messageIds.get(1));
         assistantMsg.setConversationId(conversationIdToUse);
         assistantMsg.setRole("assistant");
         assistantMsg.setContent(agentResponse.getAnswer());
@@ -108,10 +118,10 @@ public class ChatService {
         assistantMsg.setToolCalls(formatToolCalls(agentResponse.getToolCalls()));
         assistantMsg.setMetadata("{}");
         assistantMsg.setCreatedAt(Instant.now());
-        messageMapper.insert(assistantMsg);
+        messageJournal.append(assistantMsg);
 
-        // 7. 更新对话时间
-        conversationService.touch(conversationIdToUse);
+        // 7. 更新对话时间（合并后写入）
+        messageJournal.touch(conversationIdToUse);
 
         // 8. 构建响应
         return ChatResponse.builder()
@@ -124,18 +134,47 @@ public class ChatService {
     }
 
     /**
-     * 将字符串角色转换为 MessageRole 枚举
+     * 生成失败时删除本次新建的对话，删除失败不影响原异常的抛出
      */
-    private MessageRole convertToMessageRole(String role) {
-        if (role == null) {
-            return MessageRole.USER;
+    private void discardConversation(Long conversationId) {
+        try {
+            conversationService.delete(conversationId);
+            log.info("Discarded conversation {} after generation failed", conversationId);
+        } catch (Exception e) {
+            log.warn("Failed to discard conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 在虚拟线程上删除对话：删除要先等待日志写完该对话的消息，不能占用 LLM 回调线程
+     */
+    private void discardConversationAsync(Long conversationId) {
+        Thread.ofVirtual().name("conversation-discard-" + conversationId)
+                .start(() -> discardConversation(conversationId));
+    }
+
+    /**
+     * 加载对话记忆，先等待上一轮尚未写入的消息
+     */
+    private ConversationMemory loadMemory(Long conversationId) {
+        messageJournal.sync(conversationId);
+        return conversationMemoryService.load(conversationId);
+    }
+
+    /**
+     * 读取聊天机器人设置中的 responseCache 开关，未设置时返回 null
+     */
+    private Boolean getResponseCacheSetting(Chatbot chatbot) {
+        if (chatbot.getSettings() == null || chatbot.getSettings().isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode value = objectMapper.readTree(chatbot.getSettings()).get("responseCache");
+            return value != null && value.isBoolean() ? value.asBoolean() : null;
+        } catch (Exception e) {
+            log.warn("Failed to parse chatbot settings, chatbot: {}", chatbot.getId());
+            return null;
         }
-        return switch (role.toLowerCase()) {
-            case "user" -> MessageRole.USER;
-            case "assistant" -> MessageRole.ASSISTANT;
-            case "system" -> MessageRole.SYSTEM;
-            default -> MessageRole.USER;
-        };
     }
 
     /**
@@ -172,6 +211,16 @@ public class ChatService {
      * 流式聊天
      */
     public void chatStream(ChatRequest request, Long userId, StreamingChatCallback callback) {
+        chatStream(request, userId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * 流式聊天，客户端断开时取消生成
+     *
+     * @param clientToken 客户端连接断开时取消的令牌；启用续传时等待重连超时后才取消上游生成
+     */
+    public void chatStream(ChatRequest request, Long userId, CancellationToken clientToken,
+                           StreamingChatCallback callback) {
         Long chatbotId = request.getChatbotId();
         Long conversationId = request.getConversationId();
         String userMessage = request.getMessage();
@@ -179,6 +228,8 @@ public class ChatService {
         log.info("Received stream chat request, chatbot: {}, conversation: {}, message: {}",
                 chatbotId, conversationId, userMessage);
 
+        StreamingChatCallback output = callback;
+        Long createdConversationId = null;
         try {
             // 1. 获取聊天机器人
             Chatbot chatbot = chatbotMapper.selectById(chatbotId);
@@ -194,26 +245,43 @@ public class ChatService {
             if (conversationId == null) {
                 ConversationResponse convResponse = conversationService.create(chatbotId, userId);
                 conversationIdToUse = convResponse.getId();
+                createdConversationId = conversationIdToUse;
             } else {
                 conversationIdToUse = conversationId;
             }
 
-            // 3. 保存用户消息
+            // 3. 加载对话记忆（摘要和最近消息，不含本次问题）
+            ConversationMemory memory = conversationId == null
+                    ? ConversationMemory.empty()
+                    : loadMemory(conversationIdToUse);
+
+            // 4. 保存用户消息（写后持久化，同时分配助手回复的 ID）
+            List<Long> messageIds = messageJournal.reserveIds(2);
             com.mydotey.ai.studio.entity.Message userMsg = new com.mydotey.ai.studio.entity.Message();
+            userMsg.setId(messageIds.get(0));
             userMsg.setConversationId(conversationIdToUse);
             userMsg.setRole("user");
             userMsg.setContent(userMessage);
             userMsg.setCreatedAt(Instant.now());
-            messageMapper.insert(userMsg);
+            messageJournal.append(userMsg);
 
-            // 4. 使用 Agent 流式执行
+            // 5. 打开可续传的流，生成的内容经环形缓冲区转发给前端
+            ResumableStreamService.OpenedStream opened = resumableStreamService.open(userId, callback, clientToken);
+            output = opened.output();
+            StreamingChatCallback sink = output;
+
+            // 6. 使用 Agent 流式执行
             agentExecutionService.executeAgentStream(
                     chatbot.getAgentId(),
                     new AgentExecutionRequest() {{
                         setQuery(userMessage);
                         setContext(null);
+                        setResponseCache(getResponseCacheSetting(chatbot));
+                        setConversationSummary(memory.getSummary());
+                        setHistory(memory.getMessages());
                     }},
                     userId,
+                    opened.cancellationToken(),
                     new StreamingLlmService.StreamCallback() {
                         private final StringBuilder fullResponse = new StringBuilder();
 
@@ -221,14 +289,15 @@ public class ChatService {
                         public void onContent(String content) {
                             fullResponse.append(content);
                             // 回调前端
-                            callback.onContent(content);
+                            sink.onContent(content);
                         }
 
                         @Override
                         public void onComplete() {
-                            // 5. 保存助手回复
+                            // 7. 保存助手回复
                             try {
                                 com.mydotey.ai.studio.entity.Message assistantMsg = new com.mydotey.ai.studio.entity.Message();
+                                assistantMsg.setId(messageIds.get(1));
                                 assistantMsg.setConversationId(conversationIdToUse);
                                 assistantMsg.setRole("assistant");
                                 assistantMsg.setContent(fullResponse.toString());
@@ -236,30 +305,62 @@ public class ChatService {
                                 assistantMsg.setToolCalls(formatToolCalls(null));
                                 assistantMsg.setMetadata("{}");
                                 assistantMsg.setCreatedAt(Instant.now());
-                                messageMapper.insert(assistantMsg);
+                                messageJournal.append(assistantMsg);
 
-                                // 更新对话时间
-                                conversationService.touch(conversationIdToUse);
+                                // 更新对话时间（合并后写入）
+                                messageJournal.touch(conversationIdToUse);
 
                                 // 通知完成
-                                callback.onComplete();
+                                sink.onComplete();
                             } catch (Exception e) {
                                 log.error("Failed to save streaming response", e);
-                                callback.onError(e);
+                                sink.onError(e);
                             }
                         }
 
                         @Override
                         public void onError(Exception e) {
-                            log.error("Error in agent stream execution", e);
-                            callback.onError(e);
+                            if (e instanceof CancellationException) {
+                                log.info("Agent stream cancelled, conversation: {}", conversationIdToUse);
+                            } else {
+                                log.error("Error in agent stream execution", e);
+                            }
+                            // 与非流式聊天一致，生成失败时删除本次新建的对话
+                            if (conversationId == null) {
+                                discardConversationAsync(conversationIdToUse);
+                            }
+                            sink.onError(e);
                         }
                     }
             );
 
         } catch (Exception e) {
             log.error("Error in stream chat", e);
-            callback.onError(e);
+            if (createdConversationId != null) {
+                discardConversation(createdConversationId);
+            }
+            output.onError(e);
         }
     }
+
+    /**
+     * 按 Last-Event-ID 续传断开的流式回答：补发缺失的内容后继续接收实时内容
+     *
+     * @return 无法续传（流不存在、已过期或不属于当前用户）时返回 false，回调不会收到任何事件
+     */
+    public boolean resumeStream(String lastEventId, Long userId, StreamingChatCallback callback) {
+        return resumeStream(lastEventId, userId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * 按 Last-Event-ID 续传，客户端令牌取消时退出订阅
+     *
+     * @see #resumeStream(String, Long, StreamingChatCallback)
+     */
+    public boolean resumeStream(String lastEventId, Long userId, CancellationToken clientToken,
+                                StreamingChatCallback callback) {
+        boolean resumed = resumableStreamService.resume(lastEventId, userId, clientToken, callback);
+        log.info("Stream resume requested, last event: {}, resumed: {}", lastEventId, resumed);
+        return resumed;
+    }
 }
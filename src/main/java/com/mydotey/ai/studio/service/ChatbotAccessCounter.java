@@ -0,0 +1,202 @@
+package com.mydotey.ai.studio.service;
+
+import com.mydotey.ai.studio.config.AccessCountConfig;
+import com.mydotey.ai.studio.mapper.ChatbotMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天机器人访问计数
+ * <p>
+ * 每次访问只累加增量，不访问数据库；后台线程定期取出增量，
+ * 以一条 {@code access_count = access_count + delta} 的 UPDATE 写入所有有变化的聊天机器人。
+ * 增量更新在数据库中原子执行，多个节点同时写入不会丢失计数。
+ * <p>
+ * 启用 Redis 时增量以 HINCRBY 累加在 Redis 的哈希中，进程异常退出不丢失计数：写入时在 Redis 锁内
+ * 把哈希改名为待写入的哈希，写入数据库成功后删除，失败或进程在写入前退出时下次重新写入；
+ * 数据库已提交而删除前进程退出时这一批会被重复计入。Redis 不可用时退回内存累加。
+ * 未启用 Redis 时增量累加在内存的 {@link LongAdder} 中，写入失败时放回，关闭时写入剩余的增量，
+ * 进程异常退出时最多丢失一个写入间隔内的计数
+ */
+@Slf4j
+@Component
+public class ChatbotAccessCounter {
+
+    private static final String REDIS_KEY_PREFIX = "chatbot:access-count:";
+    private static final String PENDING_KEY = REDIS_KEY_PREFIX + "pending";
+    private static final String FLUSHING_KEY = REDIS_KEY_PREFIX + "flushing";
+    private static final String LOCK_KEY = REDIS_KEY_PREFIX + "flush-lock";
+
+    private final ChatbotMapper chatbotMapper;
+    private final AccessCountConfig config;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final Map<Long, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public ChatbotAccessCounter(ChatbotMapper chatbotMapper, AccessCountConfig config,
+                                ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        this.chatbotMapper = chatbotMapper;
+        this.config = config;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setName("chatbot-access-count");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, config.getFlushInterval(), config.getFlushInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 访问计数加一
+     */
+    public void increment(Long chatbotId) {
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.opsForHash().increment(PENDING_KEY, chatbotId.toString(), 1);
+                return;
+            } catch (Exception e) {
+                log.warn("Failed to count access of chatbot {} in Redis, counting in memory: {}", chatbotId,
+                        e.getMessage());
+            }
+        }
+        counters.computeIfAbsent(chatbotId, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * 尚未写入数据库的访问次数：本节点内存中的增量，启用 Redis 时加上 Redis 中所有节点的增量
+     */
+    public long pending(Long chatbotId) {
+        LongAdder counter = counters.get(chatbotId);
+        long pending = counter != null ? counter.sum() : 0;
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate != null) {
+            try {
+                Object value = redisTemplate.opsForHash().get(PENDING_KEY, chatbotId.toString());
+                pending += value != null ? Long.parseLong(value.toString()) : 0;
+            } catch (Exception e) {
+                log.debug("Failed to read pending access count of chatbot {} from Redis: {}", chatbotId,
+                        e.getMessage());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 把累积的增量写入数据库
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushMemory();
+            StringRedisTemplate redisTemplate = redisTemplate();
+            if (redisTemplate != null) {
+                flushRedis(redisTemplate);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushMemory() {
+        // 按 ID 排序，多个节点同时写入时以相同顺序加行锁
+        Map<Long, Long> deltas = new TreeMap<>();
+        counters.forEach((chatbotId, counter) -> {
+            long delta = counter.sumThenReset();
+            if (delta != 0) {
+                deltas.put(chatbotId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            chatbotMapper.incrementAccessCounts(deltas);
+            log.debug("Flushed access counts of {} chatbots", deltas.size());
+        } catch (Exception e) {
+            log.warn("Failed to flush access counts of {} chatbots, will retry: {}", deltas.size(),
+                    e.getMessage());
+            deltas.forEach((chatbotId, delta) ->
+                    counters.computeIfAbsent(chatbotId, id -> new LongAdder()).add(delta));
+        }
+    }
+
+    /**
+     * 在 Redis 锁内写入 Redis 中的增量；上次未写入成功的待写入哈希先写入，否则把累加中的哈希改名为待写入的哈希，
+     * 改名之后的 HINCRBY 累加到新的哈希中
+     */
+    private void flushRedis(StringRedisTemplate redisTemplate) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token,
+                    Duration.ofMillis(config.getFlushLockTimeout()));
+            if (!Boolean.TRUE.equals(locked)) {
+                // 其他节点正在写入
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to lock access counts in Redis, will retry: {}", e.getMessage());
+            return;
+        }
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(FLUSHING_KEY))) {
+                if (!Boolean.TRUE.equals(redisTemplate.hasKey(PENDING_KEY))) {
+                    return;
+                }
+                redisTemplate.rename(PENDING_KEY, FLUSHING_KEY);
+            }
+            Map<Long, Long> deltas = new TreeMap<>();
+            redisTemplate.opsForHash().entries(FLUSHING_KEY).forEach((chatbotId, delta) ->
+                    deltas.put(Long.valueOf(chatbotId.toString()), Long.valueOf(delta.toString())));
+            if (!deltas.isEmpty()) {
+                chatbotMapper.incrementAccessCounts(deltas);
+                log.debug("Flushed access counts of {} chatbots from Redis", deltas.size());
+            }
+            redisTemplate.delete(FLUSHING_KEY);
+        } catch (Exception e) {
+            log.warn("Failed to flush access counts from Redis, will retry: {}", e.getMessage());
+        } finally {
+            unlock(redisTemplate, token);
+        }
+    }
+
+    /**
+     * 只释放自己持有的锁；锁已超时被其他节点取得时不删除
+     */
+    private void unlock(StringRedisTemplate redisTemplate, String token) {
+        try {
+            if (token.equals(redisTemplate.opsForValue().get(LOCK_KEY))) {
+                redisTemplate.delete(LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.debug("Failed to unlock access counts in Redis: {}", e.getMessage());
+        }
+    }
+
+    private StringRedisTemplate redisTemplate() {
+        return config.isRedisEnabled() ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+}
@@ -24,6 +24,7 @@ public class ChatbotService {
 
     private final ChatbotMapper chatbotMapper;
     private final AgentMapper agentMapper;
+    private final ChatbotAccessCounter accessCounter;
 
     /**
      * 创建聊天机器人
@@ -121,6 +122,8 @@ public class ChatbotService {
         chatbot.setSettings(request.getSettings() != null ? request.getSettings() : "{}");
         chatbot.setStyleConfig(request.getStyleConfig() != null ? request.getStyleConfig() : "{}");
         chatbot.setIsPublished(request.getIsPublished());
+        // 访问计数只以增量更新，不用读到的旧值覆盖
+        chatbot.setAccessCount(null);
 
         chatbotMapper.updateById(chatbot);
 
@@ -148,15 +151,18 @@ public class ChatbotService {
     }
 
     /**
-     * 增加访问计数
+     * 增加访问计数，先在内存或 Redis 中累加，定期写入数据库
      */
-    @Transactional
     public void incrementAccessCount(Long chatbotId) {
-        Chatbot chatbot = chatbotMapper.selectById(chatbotId);
-        if (chatbot != null) {
-            chatbot.setAccessCount(chatbot.getAccessCount() + 1);
-            chatbotMapper.updateById(chatbot);
-        }
+        accessCounter.increment(chatbotId);
+    }
+
+    /**
+     * 数据库中的访问计数加上尚未写入的部分
+     */
+    private Long accessCount(Chatbot chatbot) {
+        long stored = chatbot.getAccessCount() != null ? chatbot.getAccessCount() : 0;
+        return stored + accessCounter.pending(chatbot.getId());
     }
 
     /**
@@ -174,7 +180,7 @@ public class ChatbotService {
                 .settings(chatbot.getSettings())
                 .styleConfig(chatbot.getStyleConfig())
                 .isPublished(chatbot.getIsPublished())
-                .accessCount(chatbot.getAccessCount())
+                .accessCount(accessCount(chatbot))
                 .createdAt(chatbot.getCreatedAt())
                 .updatedAt(chatbot.getUpdatedAt())
                 .build();
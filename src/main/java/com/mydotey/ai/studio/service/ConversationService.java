@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.mydotey.ai.studio.common.exception.BusinessException;
 import com.mydotey.ai.studio.dto.chatbot.ConversationResponse;
+import com.mydotey.ai.studio.dto.chatbot.CursorPageResponse;
 import com.mydotey.ai.studio.dto.chatbot.MessageResponse;
 import com.mydotey.ai.studio.entity.Chatbot;
 import com.mydotey.ai.studio.entity.Conversation;
@@ -12,12 +13,15 @@ import com.mydotey.ai.studio.entity.Message;
 import com.mydotey.ai.studio.mapper.ChatbotMapper;
 import com.mydotey.ai.studio.mapper.ConversationMapper;
 import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.journal.MessageJournal;
+import com.mydotey.ai.studio.util.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,9 +29,15 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ConversationService {
 
+    /**
+     * 键集分页每页的最大条数
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ConversationMapper conversationMapper;
     private final ChatbotMapper chatbotMapper;
     private final MessageMapper messageMapper;
+    private final MessageJournal messageJournal;
 
     /**
      * 创建新对话
@@ -61,7 +71,8 @@ public class ConversationService {
             throw new BusinessException("Conversation not found");
         }
 
-        // 加载消息
+        // 加载消息，先等待尚未写入的消息
+        messageJournal.sync(conversationId);
         List<Message> messages = messageMapper.selectList(
                 new LambdaQueryWrapper<Message>()
                         .eq(Message::getConversationId, conversationId)
@@ -99,6 +110,85 @@ public class ConversationService {
         return result.convert(conv -> toResponse(conv, List.of()));
     }
 
+    /**
+     * 按游标分页获取用户在某个聊天机器人下的对话，按更新时间倒序
+     *
+     * @param cursor 上一页返回的游标，第一页为 null
+     * @param limit 每页条数，最大 {@value #MAX_PAGE_SIZE}
+     * @param includeTotal 是否查询总数，总数需要额外的 COUNT 查询
+     */
+    public CursorPageResponse<ConversationResponse> scrollByChatbotAndUser(Long chatbotId, Long userId, String cursor,
+                                                                           int limit, boolean includeTotal) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        LambdaQueryWrapper<Conversation> wrapper = new LambdaQueryWrapper<Conversation>()
+                .eq(Conversation::getChatbotId, chatbotId)
+                .eq(Conversation::getUserId, userId);
+        Long total = includeTotal ? conversationMapper.selectCount(wrapper) : null;
+        if (after != null) {
+            wrapper.apply("(updated_at, id) < ({0}, {1})", after.timestamp(), after.id());
+        }
+        List<Conversation> rows = conversationMapper.selectList(wrapper
+                .orderByDesc(Conversation::getUpdatedAt)
+                .orderByDesc(Conversation::getId)
+                .last("LIMIT " + (size + 1)));
+        return toPage(rows, size, conv -> new KeysetCursor(conv.getUpdatedAt(), conv.getId()),
+                this::toResponse, total);
+    }
+
+    /**
+     * 按游标分页获取对话的消息，从最新的消息开始按创建时间倒序
+     * 只能读取自己的对话，其他用户的对话按不存在处理，不暴露对话 ID 是否存在
+     *
+     * @param userId 当前用户 ID
+     * @param cursor 上一页返回的游标，第一页为 null
+     * @param limit 每页条数，最大 {@value #MAX_PAGE_SIZE}
+     * @param includeTotal 是否查询总数，总数需要额外的 COUNT 查询
+     */
+    public CursorPageResponse<MessageResponse> scrollMessages(Long conversationId, Long userId, String cursor,
+                                                              int limit, boolean includeTotal) {
+        Conversation conversation = conversationMapper.selectById(conversationId);
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            throw new BusinessException("Conversation not found");
+        }
+        KeysetCursor before = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+
+        // 先等待尚未写入的消息
+        messageJournal.sync(conversationId);
+        LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<Message>()
+                .eq(Message::getConversationId, conversationId);
+        Long total = includeTotal ? messageMapper.selectCount(wrapper) : null;
+        if (before != null) {
+            wrapper.apply("(created_at, id) < ({0}, {1})", before.timestamp(), before.id());
+        }
+        List<Message> rows = messageMapper.selectList(wrapper
+                .orderByDesc(Message::getCreatedAt)
+                .orderByDesc(Message::getId)
+                .last("LIMIT " + (size + 1)));
+        return toPage(rows, size, message -> new KeysetCursor(message.getCreatedAt(), message.getId()),
+                this::toMessageResponse, total);
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * 多查询的一行用于判断是否还有下一页，不返回给调用方
+     */
+    private static <E, R> CursorPageResponse<R> toPage(List<E> rows, int size, Function<E, KeysetCursor> key,
+                                                       Function<E, R> mapper, Long total) {
+        boolean hasMore = rows.size() > size;
+        List<E> page = hasMore ? rows.subList(0, size) : rows;
+        return CursorPageResponse.<R>builder()
+                .records(page.stream().map(mapper).collect(Collectors.toList()))
+                .nextCursor(hasMore ? key.apply(page.get(page.size() - 1)).encode() : null)
+                .hasMore(hasMore)
+                .total(total)
+                .build();
+    }
+
     /**
      * 更新对话标题
      */
@@ -120,7 +210,8 @@ public class ConversationService {
      */
     @Transactional
     public void delete(Long conversationId) {
-        // 删除对话的消息
+        // 等待尚未写入的消息，再删除对话的消息
+        messageJournal.sync(conversationId);
         messageMapper.delete(
                 new LambdaQueryWrapper<Message>()
                         .eq(Message::getConversationId, conversationId)
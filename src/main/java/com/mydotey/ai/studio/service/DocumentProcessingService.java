@@ -135,11 +135,12 @@ public class DocumentProcessingService {
      * 处理分块
      */
     private void processChunks(Document document, List<String> chunks) {
+        // 批量生成向量，由向量化服务按 Provider 限制切分请求
+        List<float[]> embeddings = embeddingService.embedBatch(chunks);
+
         for (int i = 0; i < chunks.size(); i++) {
             String chunkText = chunks.get(i);
-
-            // 生成向量
-            float[] embedding = embeddingService.embed(chunkText);
+            float[] embedding = embeddings.get(i);
 
             // 创建分块记录
             DocumentChunk chunk = new DocumentChunk();
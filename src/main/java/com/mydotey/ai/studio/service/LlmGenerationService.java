@@ -2,17 +2,44 @@ package com.mydotey.ai.studio.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
 import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.LlmRequest;
 import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.Message;
 import com.mydotey.ai.studio.dto.ModelConfigDto;
 import com.mydotey.ai.studio.service.PromptTemplateService;
+import com.mydotey.ai.studio.service.llm.LlmAdmissionController;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.llm.LlmEndpointRouter;
+import com.mydotey.ai.studio.service.llm.LlmRequestKey;
+import com.mydotey.ai.studio.service.llm.LlmResponseCache;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import com.mydotey.ai.studio.util.SingleFlight;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * LLM 生成服务
  */
@@ -25,6 +52,21 @@ public class LlmGenerationService {
     private final LlmConfig config;
     private final ObjectMapper objectMapper;
     private final PromptTemplateService promptTemplateService;
+    private final LlmResponseCache responseCache;
+    private final LlmEndpointRouter endpointRouter;
+    private final LlmAdmissionController admissionController;
+
+    /**
+     * 进行中的请求，按请求键合并
+     */
+    private final SingleFlight<String, LlmResponse> inFlight = new SingleFlight<>();
+
+    /**
+     * 有截止时间的请求在虚拟线程上发送，超时后中断该线程，阻塞中的读取随之关闭连接
+     */
+    private final ExecutorService deadlineExecutor =
+            LlmCallContext.propagating(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-deadline-", 0).factory()));
 
     /**
      * 生成回答（非流式）- 使用全局配置
@@ -40,6 +82,25 @@ public class LlmGenerationService {
             String userQuestion,
             Double temperature,
             Integer maxTokens) {
+        return generate(systemPrompt, userQuestion, temperature, maxTokens, null);
+    }
+
+    /**
+     * 生成回答（非流式）- 使用全局配置，可指定是否使用响应缓存
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param temperature 温度参数
+     * @param maxTokens 最大生成长度
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用全局配置
+     * @return LLM 响应
+     */
+    public LlmResponse generate(
+            String systemPrompt,
+            String userQuestion,
+            Double temperature,
+            Integer maxTokens,
+            Boolean cacheOverride) {
 
         try {
             // 构建消息
@@ -54,23 +115,11 @@ public class LlmGenerationService {
                     .stream(false)
                     .build();
 
-            // 构造请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getApiKey());
-
-            // 发送请求
-            HttpEntity<String> httpEntity = new HttpEntity<>(
-                    objectMapper.writeValueAsString(request),
-                    headers
-            );
-
-            String url = config.getEndpoint() + "/chat/completions";
-            ResponseEntity<String> response = restTemplate.postForEntity(url, httpEntity, String.class);
-
-            // 解析响应
-            return parseLlmResponse(response.getBody());
+            List<String> endpoints = endpointRouter.candidates(config.getEndpoint(), config.getEndpoints());
+            return execute(endpoints, config.getApiKey(), request, null, cacheOverride, ExecutionBudget.UNLIMITED);
 
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to generate response from LLM", e);
             throw new RuntimeException("Failed to generate response: " + e.getMessage(), e);
@@ -89,11 +138,61 @@ public class LlmGenerationService {
             String systemPrompt,
             String userQuestion,
             ModelConfigDto modelConfig) {
+        return generate(systemPrompt, userQuestion, modelConfig, null);
+    }
 
-        try {
-            // 构建消息
-            var messages = promptTemplateService.buildMessageList(systemPrompt, userQuestion);
+    /**
+     * 生成回答（非流式）- 使用自定义模型配置，可指定是否使用响应缓存
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param modelConfig 模型配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @return LLM 响应
+     */
+    public LlmResponse generate(
+            String systemPrompt,
+            String userQuestion,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride) {
+
+        var messages = promptTemplateService.buildMessageList(systemPrompt, userQuestion);
+        return chat(messages, null, modelConfig, cacheOverride);
+    }
 
+    /**
+     * 以完整的消息列表生成回答（非流式），可提供工具供模型调用（function calling）
+     *
+     * @param messages 消息列表，可包含 assistant 的工具调用和 tool 的调用结果
+     * @param tools 可供模型调用的工具，null 或为空表示不提供工具
+     * @param modelConfig 模型配置，null 表示使用全局配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @return LLM 响应，模型调用工具时 toolCalls 非空
+     */
+    public LlmResponse chat(
+            List<Message> messages,
+            List<LlmTool> tools,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride) {
+        return chat(messages, tools, modelConfig, cacheOverride, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内生成回答：maxTokens 按剩余 token 收紧，等待响应的时间不超过剩余时间，
+     * 响应的 token 用量从预算中扣除
+     *
+     * @param budget 执行预算
+     * @throws ExecutionBudgetExceededException 预算已用尽或截止时间前未收到响应
+     */
+    public LlmResponse chat(
+            List<Message> messages,
+            List<LlmTool> tools,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride,
+            ExecutionBudget budget) {
+
+        try {
+            budget.check("LLM call");
             // 使用自定义配置或回退到全局配置
             String model = modelConfig != null && modelConfig.getModel() != null
                     ? modelConfig.getModel()
@@ -107,9 +206,9 @@ public class LlmGenerationService {
             Double temperature = modelConfig != null && modelConfig.getTemperature() != null
                     ? modelConfig.getTemperature()
                     : config.getDefaultTemperature();
-            Integer maxTokens = modelConfig != null && modelConfig.getMaxTokens() != null
+            Integer maxTokens = budget.maxTokens(modelConfig != null && modelConfig.getMaxTokens() != null
                     ? modelConfig.getMaxTokens()
-                    : config.getDefaultMaxTokens();
+                    : config.getDefaultMaxTokens());
 
             log.info("LLM request - model: {}, endpoint: {}, using custom config: {}",
                     model, endpoint, modelConfig != null);
@@ -121,31 +220,155 @@ public class LlmGenerationService {
                     .temperature(temperature)
                     .maxTokens(maxTokens)
                     .stream(false)
+                    .tools(tools)
                     .build();
 
-            // 构造请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-
-            // 发送请求
-            HttpEntity<String> httpEntity = new HttpEntity<>(
-                    objectMapper.writeValueAsString(request),
-                    headers
-            );
-
-            String url = endpoint + "/chat/completions";
-            ResponseEntity<String> response = restTemplate.postForEntity(url, httpEntity, String.class);
-
-            // 解析响应
-            return parseLlmResponse(response.getBody());
+            List<String> endpoints = modelConfig != null && modelConfig.getEndpoint() != null
+                    ? endpointRouter.candidates(endpoint, modelConfig.getEndpoints())
+                    : endpointRouter.candidates(endpoint, config.getEndpoints());
+            LlmResponse response = execute(endpoints, apiKey, request, modelConfig, cacheOverride, budget);
+            budget.consume(response.getTotalTokens() != null
+                    ? response.getTotalTokens()
+                    : response.getCompletionTokens());
+            return response;
 
+        } catch (LlmOverloadedException | ExecutionBudgetExceededException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to generate response from LLM with custom config", e);
             throw new RuntimeException("Failed to generate response: " + e.getMessage(), e);
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        deadlineExecutor.shutdownNow();
+    }
+
+    /**
+     * 发送请求，启用响应缓存时先查缓存，正常结束的响应写回缓存；
+     * 开启请求合并时相同的并发请求共享同一次调用的结果；
+     * 实际发往上游的调用需要先通过模型配置的准入控制
+     */
+    private LlmResponse execute(List<String> endpoints, String apiKey, LlmRequest request,
+                                ModelConfigDto modelConfig, Boolean cacheOverride,
+                                ExecutionBudget budget) throws Exception {
+        // 缓存和合并都以主端点标识端点池
+        String endpoint = endpoints.get(0);
+        String cacheKey = null;
+        if (responseCache.isEnabled(modelConfig, cacheOverride, request.getTemperature())) {
+            cacheKey = responseCache.buildKey(endpoint, modelConfig, apiKey, request);
+            LlmResponse cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                log.debug("LLM response cache hit - model: {}", request.getModel());
+                return cached;
+            }
+        }
+
+        // 相同的并发请求只发送一次
+        LlmResponse llmResponse = config.isCoalesceRequests()
+                ? inFlight.execute(cacheKey != null
+                                ? cacheKey
+                                : LlmRequestKey.of(endpoint, modelConfig, apiKey, request),
+                        () -> sendAdmitted(endpoints, apiKey, request, modelConfig, budget))
+                : sendAdmitted(endpoints, apiKey, request, modelConfig, budget);
+        if (cacheKey != null) {
+            responseCache.put(cacheKey, llmResponse, responseCache.getTtlSeconds(modelConfig));
+        }
+        return llmResponse;
+    }
+
+    /**
+     * 获得准入许可后发送请求，排队已满或超时时抛出 {@link LlmOverloadedException}
+     */
+    private LlmResponse sendAdmitted(List<String> endpoints, String apiKey, LlmRequest request,
+                                     ModelConfigDto modelConfig, ExecutionBudget budget) throws Exception {
+        LlmAdmissionController.Permit permit = admissionController.acquireBlocking(modelConfig);
+        try {
+            return sendRouted(endpoints, apiKey, request, budget);
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * 通过多端点路由发送请求，连接失败、5xx 和 429 时切换到尚未尝试过的端点
+     */
+    private LlmResponse sendRouted(List<String> endpoints, String apiKey, LlmRequest request,
+                                   ExecutionBudget budget) throws Exception {
+        Set<String> tried = new HashSet<>();
+        Exception lastError = null;
+        while (tried.size() < endpointRouter.getMaxAttempts()) {
+            // 排队或前一个端点失败可能已耗尽剩余时间
+            budget.check("LLM call");
+            String endpoint = endpointRouter.select(endpoints, tried);
+            if (endpoint == null) {
+                break;
+            }
+            tried.add(endpoint);
+            LlmEndpointRouter.Attempt attempt = endpointRouter.start(endpoint);
+            try {
+                LlmResponse response = send(endpoint, apiKey, request, budget);
+                attempt.success();
+                return response;
+            } catch (ResourceAccessException | HttpServerErrorException | HttpClientErrorException.TooManyRequests e) {
+                attempt.failure();
+                lastError = e;
+                log.warn("LLM request failed on {}: {}", endpoint, e.getMessage());
+            } catch (Exception e) {
+                // 请求本身的错误，换端点也不会成功
+                attempt.release();
+                throw e;
+            }
+        }
+        throw lastError != null ? lastError : new IllegalStateException("No LLM endpoint available");
+    }
+
+    /**
+     * 在剩余时间内发送请求，超过截止时间时放弃等待并中断请求
+     */
+    private LlmResponse send(String endpoint, String apiKey, LlmRequest request,
+                             ExecutionBudget budget) throws Exception {
+        if (!budget.isTimeLimited()) {
+            return send(endpoint, apiKey, request);
+        }
+        Future<LlmResponse> future = deadlineExecutor.submit(() -> send(endpoint, apiKey, request));
+        try {
+            return future.get(budget.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ExecutionBudgetExceededException("Execution deadline exceeded during LLM call");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * 发送请求并解析响应
+     */
+    private LlmResponse send(String endpoint, String apiKey, LlmRequest request) throws Exception {
+        // 构造请求头
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(apiKey);
+
+        // 发送请求
+        HttpEntity<String> httpEntity = new HttpEntity<>(
+                objectMapper.writeValueAsString(request),
+                headers
+        );
+
+        String url = endpoint + "/chat/completions";
+        ResponseEntity<String> response = restTemplate.postForEntity(url, httpEntity, String.class);
+
+        // 解析响应
+        return parseLlmResponse(response.getBody());
+    }
+
     /**
      * 解析 LLM 响应
      */
@@ -159,8 +382,11 @@ public class LlmGenerationService {
 
         JsonNode choice = choices.get(0);
         JsonNode message = choice.get("message");
-        String content = message.get("content").asText();
+        // 只发起工具调用时 content 为 null
+        JsonNode contentNode = message.get("content");
+        String content = contentNode != null && !contentNode.isNull() ? contentNode.asText() : null;
         String finishReason = choice.get("finish_reason").asText();
+        List<LlmToolCall> toolCalls = parseToolCalls(message.get("tool_calls"));
 
         // 解析 token 使用情况
         Integer totalTokens = null;
@@ -180,6 +406,30 @@ public class LlmGenerationService {
                 .promptTokens(promptTokens)
                 .completionTokens(completionTokens)
                 .totalTokens(totalTokens)
+                .toolCalls(toolCalls)
                 .build();
     }
+
+    /**
+     * 解析响应中的工具调用，没有工具调用时返回 null
+     */
+    private List<LlmToolCall> parseToolCalls(JsonNode toolCallsNode) {
+        if (toolCallsNode == null || !toolCallsNode.isArray() || toolCallsNode.isEmpty()) {
+            return null;
+        }
+        List<LlmToolCall> toolCalls = new ArrayList<>();
+        for (JsonNode node : toolCallsNode) {
+            JsonNode function = node.path("function");
+            JsonNode arguments = function.path("arguments");
+            toolCalls.add(LlmToolCall.builder()
+                    .id(node.path("id").asText())
+                    .function(LlmToolCall.Function.builder()
+                            .name(function.path("name").asText())
+                            // 个别服务以 JSON 对象而不是字符串返回参数
+                            .arguments(arguments.isTextual() ? arguments.asText() : arguments.toString())
+                            .build())
+                    .build());
+        }
+        return toolCalls;
+    }
 }
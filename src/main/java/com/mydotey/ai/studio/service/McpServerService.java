@@ -5,9 +5,11 @@ import com.mydotey.ai.studio.common.exception.BusinessException;
 import com.mydotey.ai.studio.dto.CreateMcpServerRequest;
 import com.mydotey.ai.studio.dto.UpdateMcpServerRequest;
 import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
 import com.mydotey.ai.studio.mapper.McpServerMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +22,7 @@ import java.util.List;
 public class McpServerService {
 
     private final McpServerMapper mcpServerMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public McpServer createMcpServer(CreateMcpServerRequest request, Long userId) {
@@ -70,6 +73,7 @@ public class McpServerService {
         server.setUpdatedAt(Instant.now());
 
         mcpServerMapper.updateById(server);
+        eventPublisher.publishEvent(new McpServerChangedEvent(serverId, true));
 
         log.info("MCP server updated: {}", serverId);
     }
@@ -86,6 +90,7 @@ public class McpServerService {
     public void deleteMcpServer(Long serverId, Long userId) {
         log.info("Deleting MCP server: {}, userId: {}", serverId, userId);
         mcpServerMapper.deleteById(serverId);
+        eventPublisher.publishEvent(new McpServerChangedEvent(serverId, true));
         log.info("MCP server deleted: {}", serverId);
     }
 
@@ -2,14 +2,18 @@ package com.mydotey.ai.studio.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.dto.UpdateMcpToolCacheRequest;
 import com.mydotey.ai.studio.entity.McpServer;
 import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
 import com.mydotey.ai.studio.mapper.McpServerMapper;
 import com.mydotey.ai.studio.mapper.McpToolMapper;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient.ToolDefinition;
+import com.mydotey.ai.studio.service.mcp.McpToolResultCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,6 +28,8 @@ public class McpToolSyncService {
     private final McpServerMapper mcpServerMapper;
     private final McpToolMapper mcpToolMapper;
     private final McpRpcClient mcpRpcClient;
+    private final McpToolResultCache mcpToolResultCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * 从 MCP 服务器同步工具列表
@@ -47,10 +53,45 @@ public class McpToolSyncService {
         for (ToolDefinition toolDef : tools) {
             upsertTool(serverId, toolDef);
         }
+        // 工具定义可能已变化，丢弃旧的缓存结果
+        mcpToolResultCache.invalidateServer(serverId);
+        eventPublisher.publishEvent(new McpServerChangedEvent(serverId));
 
         log.info("Tool sync completed for server: {}", serverId);
     }
 
+    /**
+     * 获取服务器已同步的工具
+     */
+    public List<McpTool> listTools(Long serverId) {
+        LambdaQueryWrapper<McpTool> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(McpTool::getServerId, serverId);
+        queryWrapper.orderByAsc(McpTool::getToolName);
+        return mcpToolMapper.selectList(queryWrapper);
+    }
+
+    /**
+     * 更新工具的结果缓存设置，已缓存的结果立即失效
+     */
+    @Transactional
+    public McpTool updateToolCacheSettings(Long toolId, UpdateMcpToolCacheRequest request, Long userId) {
+        log.info("Updating result cache settings for MCP tool: {}, userId: {}", toolId, userId);
+
+        McpTool tool = mcpToolMapper.selectById(toolId);
+        if (tool == null) {
+            throw new BusinessException("MCP tool not found");
+        }
+        tool.setResultCacheEnabled(request.getResultCacheEnabled());
+        tool.setResultCacheTtl(request.getResultCacheTtl());
+        tool.setUpdatedAt(Instant.now());
+        mcpToolMapper.updateById(tool);
+
+        mcpToolResultCache.invalidate(tool.getServerId(), tool.getToolName());
+        // Agent 运行时快照中的工具设置同时失效
+        eventPublisher.publishEvent(new McpServerChangedEvent(tool.getServerId()));
+        return tool;
+    }
+
     private void upsertTool(Long serverId, ToolDefinition toolDef) {
         // 检查工具是否已存在
         LambdaQueryWrapper<McpTool> queryWrapper = new LambdaQueryWrapper<>();
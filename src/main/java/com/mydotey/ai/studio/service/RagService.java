@@ -2,8 +2,11 @@ package com.mydotey.ai.studio.service;
 
 import com.mydotey.ai.studio.annotation.PerformanceMonitor;
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
 import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.*;
+import com.mydotey.ai.studio.service.llm.LlmRequestKey;
+import com.mydotey.ai.studio.util.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -26,6 +29,11 @@ public class RagService {
     private final LlmConfig llmConfig;
     private final KnowledgeBaseService knowledgeBaseService;
 
+    /**
+     * 进行中的查询，按规范化后的请求合并
+     */
+    private final SingleFlight<String, RagQueryResponse> inFlight = new SingleFlight<>();
+
     /**
      * 执行 RAG 查询
      *
@@ -48,48 +56,61 @@ public class RagService {
                 throw new BusinessException("You don't have permission to access one or more knowledge bases");
             }
 
-            // 2. 向量搜索 - 检索相关文档
-            List<SourceDocument> sources = vectorSearchService.search(
-                    request.getQuestion(),
-                    request.getKnowledgeBaseIds(),
-                    request.getTopK() != null ? request.getTopK() : 5,
-                    request.getScoreThreshold() != null ? request.getScoreThreshold() : 0.7
-            );
-
-            log.info("Found {} relevant documents", sources.size());
-
-            // 3. 构建上下文
-            String context = contextBuilderService.buildContext(
-                    request.getQuestion(),
-                    request.getIncludeSources() ? sources : List.of(),
-                    request.getConversationHistory()
-            );
-
-            // 4. 构建 Prompt
-            String systemPrompt = promptTemplateService.buildSystemPrompt(context);
-
-            // 5. LLM 生成回答
-            LlmResponse llmResponse = llmGenerationService.generate(
-                    systemPrompt,
-                    request.getQuestion(),
-                    request.getTemperature(),
-                    request.getMaxTokens()
-            );
-
-            log.info("Generated response, total tokens: {}", llmResponse.getTotalTokens());
-
-            // 6. 构建响应
-            return RagQueryResponse.builder()
-                    .answer(llmResponse.getContent())
-                    .sources(request.getIncludeSources() ? sources : List.of())
-                    .model(llmConfig.getModel())
-                    .totalTokens(llmResponse.getTotalTokens())
-                    .isComplete(true)
-                    .build();
+            // 2. 相同的并发查询只执行一次检索和生成，共享结果
+            if (!llmConfig.isCoalesceRequests()) {
+                return retrieveAndGenerate(request);
+            }
+            return inFlight.execute(LlmRequestKey.hash("rag", request), () -> retrieveAndGenerate(request));
 
+        } catch (LlmOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("RAG query failed", e);
             throw new RuntimeException("RAG query failed: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * 检索相关文档并生成回答
+     */
+    private RagQueryResponse retrieveAndGenerate(RagQueryRequest request) {
+        // 1. 向量搜索 - 检索相关文档
+        List<SourceDocument> sources = vectorSearchService.search(
+                request.getQuestion(),
+                request.getKnowledgeBaseIds(),
+                request.getTopK() != null ? request.getTopK() : 5,
+                request.getScoreThreshold() != null ? request.getScoreThreshold() : 0.7
+        );
+
+        log.info("Found {} relevant documents", sources.size());
+
+        // 2. 构建上下文
+        String context = contextBuilderService.buildContext(
+                request.getQuestion(),
+                request.getIncludeSources() ? sources : List.of(),
+                request.getConversationHistory()
+        );
+
+        // 3. 构建 Prompt
+        String systemPrompt = promptTemplateService.buildSystemPrompt(context);
+
+        // 4. LLM 生成回答
+        LlmResponse llmResponse = llmGenerationService.generate(
+                systemPrompt,
+                request.getQuestion(),
+                request.getTemperature(),
+                request.getMaxTokens()
+        );
+
+        log.info("Generated response, total tokens: {}", llmResponse.getTotalTokens());
+
+        // 5. 构建响应
+        return RagQueryResponse.builder()
+                .answer(llmResponse.getContent())
+                .sources(request.getIncludeSources() ? sources : List.of())
+                .model(llmConfig.getModel())
+                .totalTokens(llmResponse.getTotalTokens())
+                .isComplete(true)
+                .build();
+    }
 }
@@ -9,6 +9,27 @@ public interface StreamingChatCallback {
      */
     void onContent(String content);
 
+    /**
+     * 接收到带事件 ID 的内容片段，事件 ID 可在断线重连时作为 Last-Event-ID 续传
+     */
+    default void onContent(String content, String eventId) {
+        onContent(content);
+    }
+
+    /**
+     * 工具执行期间回传的进度，在最终回答之前到达
+     */
+    default void onToolProgress(String toolName, String message) {
+    }
+
+    /**
+     * 自定义工作流节点的状态变化（running、progress、completed、skipped、failed），在最终回答之前到达
+     *
+     * @param detail 完成时为输出摘要，失败时为错误信息，执行工具时为工具进度
+     */
+    default void onWorkflowNode(String nodeId, String status, String detail) {
+    }
+
     /**
      * 流式传输完成
      */
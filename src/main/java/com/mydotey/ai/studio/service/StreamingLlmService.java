@@ -1,35 +1,69 @@
 package com.mydotey.ai.studio.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.LlmRequest;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.Message;
 import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.service.llm.HedgedStreamCall;
+import com.mydotey.ai.studio.service.llm.LlmAdmissionController;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.llm.LlmEndpointRouter;
+import com.mydotey.ai.studio.service.llm.LlmRequestKey;
+import com.mydotey.ai.studio.service.llm.LlmResponseCache;
+import com.mydotey.ai.studio.service.llm.SseLineSubscriber;
+import com.mydotey.ai.studio.service.llm.StreamMulticast;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import com.mydotey.ai.studio.util.TokenEstimator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 /**
  * 流式 LLM 服务
+ * <p>
+ * 基于 JDK 异步 HttpClient 发送请求，响应按行推送给回调，调用方线程不会被阻塞，
+ * 进行中的流不占用独立线程
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class StreamingLlmService {
 
-    private final RestTemplate restTemplate;
+    private final HttpClient llmHttpClient;
     private final LlmConfig config;
     private final ObjectMapper objectMapper;
     private final PromptTemplateService promptTemplateService;
+    private final LlmResponseCache responseCache;
+    private final LlmEndpointRouter endpointRouter;
+    private final MeterRegistry meterRegistry;
+    private final LlmAdmissionController admissionController;
+
+    /**
+     * 进行中的共享上游流，按请求键索引
+     */
+    private final ConcurrentHashMap<String, StreamMulticast> inFlightStreams = new ConcurrentHashMap<>();
 
     /**
      * 流式生成回答
@@ -39,12 +73,58 @@ public class StreamingLlmService {
      * @param temperature 温度参数
      * @param maxTokens 最大生成长度
      * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamGenerate(
+            String systemPrompt,
+            String userQuestion,
+            Double temperature,
+            Integer maxTokens,
+            StreamCallback streamCallback) {
+        return streamGenerate(systemPrompt, userQuestion, temperature, maxTokens, null, streamCallback);
+    }
+
+    /**
+     * 流式生成回答，可指定是否使用响应缓存
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param temperature 温度参数
+     * @param maxTokens 最大生成长度
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用全局配置
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
      */
-    public void streamGenerate(
+    public CompletableFuture<Void> streamGenerate(
             String systemPrompt,
             String userQuestion,
             Double temperature,
             Integer maxTokens,
+            Boolean cacheOverride,
+            StreamCallback streamCallback) {
+        return streamGenerate(systemPrompt, userQuestion, temperature, maxTokens, cacheOverride,
+                CancellationToken.NONE, streamCallback);
+    }
+
+    /**
+     * 流式生成回答，可指定是否使用响应缓存，并可通过取消令牌中止
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param temperature 温度参数
+     * @param maxTokens 最大生成长度
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用全局配置
+     * @param cancellationToken 取消令牌，取消时中断上游连接，回调收到 CancellationException
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamGenerate(
+            String systemPrompt,
+            String userQuestion,
+            Double temperature,
+            Integer maxTokens,
+            Boolean cacheOverride,
+            CancellationToken cancellationToken,
             StreamCallback streamCallback) {
 
         try {
@@ -60,84 +140,224 @@ public class StreamingLlmService {
                     .stream(true)
                     .build();
 
-            // 构造请求体
-            String requestBody = objectMapper.writeValueAsString(request);
-
-            // 构造请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(config.getApiKey());
-
-            String url = config.getEndpoint() + "/chat/completions";
-
-            // 使用 execute 方法获取流式响应
-            restTemplate.execute(
-                    url,
-                    HttpMethod.POST,
-                    httpRequest -> {
-                        httpRequest.getHeaders().putAll(headers);
-                        httpRequest.getBody().write(requestBody.getBytes());
-                    },
-                    response -> {
-                        parseStreamResponse(response, streamCallback);
-                        return null;
-                    }
-            );
+            List<String> endpoints = endpointRouter.candidates(config.getEndpoint(), config.getEndpoints());
+            return sendStreamRequest(endpoints, config.getApiKey(), request,
+                    null, cacheOverride, cancellationToken, streamCallback);
 
         } catch (Exception e) {
             log.error("Failed to stream generate from LLM", e);
             streamCallback.onError(e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
     /**
-     * 解析流式响应
+     * 异步发送流式请求
+     * 启用响应缓存时先查缓存，命中则直接回放，未命中则在流正常结束后写回缓存；
+     * 开启请求合并时相同的并发请求共享一个上游流；上游请求先通过准入控制，再经过多端点路由；
+     * 取消令牌触发时中断上游连接（共享流在最后一个订阅者取消时中断）；
+     * 返回的 Future 在响应读取完毕后完成
      */
-    private void parseStreamResponse(ClientHttpResponse response, StreamCallback streamCallback) throws IOException {
-        InputStream inputStream = response.getBody();
-        if (inputStream == null) {
-            streamCallback.onError(new RuntimeException("Response body is null"));
-            return;
+    private CompletableFuture<Void> sendStreamRequest(List<String> endpoints, String apiKey, LlmRequest request,
+                                                      ModelConfigDto modelConfig, Boolean cacheOverride,
+                                                      CancellationToken cancellationToken,
+                                                      StreamCallback streamCallback) throws Exception {
+        if (cancellationToken.isCancelled()) {
+            streamCallback.onError(new CancellationException("LLM stream cancelled"));
+            return CompletableFuture.completedFuture(null);
+        }
+        // 缓存和合并都以主端点标识端点池
+        String endpoint = endpoints.get(0);
+        UnaryOperator<StreamCallback> upstreamDecorator = UnaryOperator.identity();
+        if (responseCache.isEnabled(modelConfig, cacheOverride, request.getTemperature())) {
+            String cacheKey = responseCache.buildKey(endpoint, modelConfig, apiKey, request);
+            LlmResponse cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                log.debug("LLM response cache hit - model: {}", request.getModel());
+                return replay(cached, cancellationToken, streamCallback);
+            }
+            int ttlSeconds = responseCache.getTtlSeconds(modelConfig);
+            upstreamDecorator = upstream -> new CachingCallback(upstream, cacheKey, ttlSeconds);
+        }
+
+        if (!config.isCoalesceRequests()) {
+            AdmittedStream upstream = newAdmittedStream(endpoints, apiKey, request, modelConfig,
+                    upstreamDecorator.apply(streamCallback));
+            CompletableFuture<Void> done = upstream.start();
+            Runnable registration = cancellationToken.onCancel(upstream::cancel);
+            done.whenComplete((v, e) -> registration.run());
+            return done;
+        }
+        return subscribeShared(endpoints, apiKey, request, modelConfig, cancellationToken, streamCallback,
+                upstreamDecorator);
+    }
+
+    /**
+     * 加入相同请求的进行中的上游流，没有时发起新的上游流
+     * 返回的 Future 在当前订阅者收到结束或错误时完成
+     */
+    private CompletableFuture<Void> subscribeShared(List<String> endpoints, String apiKey, LlmRequest request,
+                                                    ModelConfigDto modelConfig,
+                                                    CancellationToken cancellationToken,
+                                                    StreamCallback streamCallback,
+                                                    UnaryOperator<StreamCallback> upstreamDecorator) {
+        // 不同模型配置使用各自的 API Key 和准入许可，不共享上游流
+        String key = LlmRequestKey.of(endpoints.get(0), modelConfig, apiKey, request);
+        while (true) {
+            StreamMulticast created = new StreamMulticast(m -> inFlightStreams.remove(key, m));
+            StreamMulticast existing = inFlightStreams.putIfAbsent(key, created);
+            if (existing == null) {
+                CompletableFuture<Void> done = created.subscribe(streamCallback);
+                AdmittedStream upstream = newAdmittedStream(endpoints, apiKey, request, modelConfig,
+                        upstreamDecorator.apply(created));
+                created.setUpstreamCancel(upstream::cancel);
+                upstream.start();
+                watchCancellation(cancellationToken, created, streamCallback, done);
+                return done;
+            }
+            CompletableFuture<Void> done = existing.subscribe(streamCallback);
+            if (done != null) {
+                log.debug("Joined in-flight LLM stream - model: {}", request.getModel());
+                watchCancellation(cancellationToken, existing, streamCallback, done);
+                return done;
+            }
+            // 已结束但尚未移除，移除后重试
+            inFlightStreams.remove(key, existing);
+        }
+    }
+
+    /**
+     * 订阅者的取消令牌触发时退出共享流，最后一个订阅者退出时共享流中断上游
+     */
+    private void watchCancellation(CancellationToken cancellationToken, StreamMulticast multicast,
+                                   StreamCallback streamCallback, CompletableFuture<Void> done) {
+        Runnable registration = cancellationToken.onCancel(() -> multicast.unsubscribe(streamCallback));
+        done.whenComplete((v, e) -> registration.run());
+    }
+
+    /**
+     * 创建需要准入许可的上游流式调用，以当前线程的调用方排队
+     */
+    private AdmittedStream newAdmittedStream(List<String> endpoints, String apiKey, LlmRequest request,
+                                             ModelConfigDto modelConfig, StreamCallback streamCallback) {
+        UpstreamMeter meter = new UpstreamMeter(streamCallback);
+        return new AdmittedStream(admissionController.acquire(modelConfig),
+                newRoutedCall(endpoints, apiKey, request, meter), request, meter);
+    }
+
+    /**
+     * 创建通过多端点路由的上游流式调用，按配置对冲并在收到内容前失败时切换端点
+     */
+    private HedgedStreamCall newRoutedCall(List<String> endpoints, String apiKey, LlmRequest request,
+                                           StreamCallback streamCallback) {
+        return new HedgedStreamCall(endpointRouter, endpoints,
+                (endpoint, callback) -> openStream(endpoint, apiKey, request, callback),
+                streamCallback, LlmCallContext.propagating(callbackExecutor()));
+    }
+
+    /**
+     * 等待准入许可的上游调用：获得许可后发起，结束时归还许可；被拒绝时回调收到
+     * {@link com.mydotey.ai.studio.common.exception.LlmOverloadedException}
+     */
+    private final class AdmittedStream {
+        private final CompletableFuture<LlmAdmissionController.Permit> permit;
+        private final HedgedStreamCall call;
+        private final LlmRequest request;
+        private final UpstreamMeter meter;
+
+        AdmittedStream(CompletableFuture<LlmAdmissionController.Permit> permit, HedgedStreamCall call,
+                       LlmRequest request, UpstreamMeter meter) {
+            this.permit = permit;
+            this.call = call;
+            this.request = request;
+            this.meter = meter;
         }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-
-                if (line.startsWith("data: ")) {
-                    String data = line.substring(6);
-
-                    // 检查结束标记
-                    if ("[DONE]".equals(data)) {
-                        streamCallback.onComplete();
-                        return;
-                    }
-
-                    // 解析 JSON
-                    try {
-                        JsonNode json = objectMapper.readTree(data);
-                        JsonNode choices = json.get("choices");
-
-                        if (choices != null && choices.size() > 0) {
-                            JsonNode delta = choices.get(0).get("delta");
-                            if (delta != null && delta.has("content")) {
-                                String content = delta.get("content").asText();
-                                streamCallback.onContent(content);
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to parse stream data: {}, error: {}", data, e.getMessage());
-                        // 继续处理下一行
-                    }
+        /**
+         * @return 回调收到结束或错误时完成的 Future
+         */
+        CompletableFuture<Void> start() {
+            return permit.handle((granted, error) -> {
+                if (error != null) {
+                    meter.onError(error instanceof Exception e ? e : new CompletionException(error));
+                    return CompletableFuture.<Void>completedFuture(null);
                 }
+                return call.start().whenComplete((v, e) -> granted.release());
+            }).thenCompose(done -> done);
+        }
+
+        /**
+         * 排队中直接放弃等待（回调收到 CancellationException），已发起时中断上游
+         */
+        void cancel() {
+            if (permit.cancel(false) || permit.isCompletedExceptionally()) {
+                return;
             }
-            // 正常结束流
-            streamCallback.onComplete();
-        } catch (Exception e) {
-            log.error("Error reading stream response", e);
-            streamCallback.onError(e);
+            cancelUpstream(call, request, meter);
+        }
+    }
+
+    /**
+     * 中断上游调用并记录取消次数和估算节省的 token 数（最大生成长度减去已生成的部分）
+     */
+    private void cancelUpstream(HedgedStreamCall call, LlmRequest request, UpstreamMeter meter) {
+        if (!call.cancel()) {
+            return;
         }
+        int generated = meter.getTokens();
+        int saved = request.getMaxTokens() != null ? Math.max(0, request.getMaxTokens() - generated) : 0;
+        meterRegistry.counter("llm.stream.cancelled", "model", String.valueOf(request.getModel())).increment();
+        meterRegistry.counter("llm.stream.tokens.saved", "model", String.valueOf(request.getModel()))
+                .increment(saved);
+        log.info("LLM stream cancelled - model: {}, generated tokens: {}, estimated tokens saved: {}",
+                request.getModel(), generated, saved);
+    }
+
+    /**
+     * 向单个端点发起上游流式请求
+     * 返回 HttpClient 的原始 Future，取消它会中断上游连接
+     */
+    private CompletableFuture<HttpResponse<Void>> openStream(String endpoint, String apiKey, LlmRequest request,
+                                                             StreamCallback streamCallback) throws Exception {
+        String requestBody = objectMapper.writeValueAsString(request);
+
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(endpoint + "/chat/completions"))
+                .timeout(Duration.ofMillis(config.getTimeout()))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody, StandardCharsets.UTF_8))
+                .build();
+
+        SseLineSubscriber subscriber = new SseLineSubscriber(objectMapper.getFactory(), streamCallback);
+        HttpResponse.BodyHandler<Void> bodyHandler = responseInfo -> {
+            if (responseInfo.statusCode() / 100 == 2) {
+                return HttpResponse.BodySubscribers.fromSubscriber(subscriber);
+            }
+            // 错误响应体较小，整体读取后作为异常信息
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                    body -> {
+                        subscriber.fail(new RuntimeException("Unexpected response status: "
+                                + responseInfo.statusCode() + ", body: " + body));
+                        return null;
+                    });
+        };
+
+        CompletableFuture<HttpResponse<Void>> future = llmHttpClient.sendAsync(httpRequest, bodyHandler);
+        future.whenComplete((response, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                // 被取消（客户端断开或对冲落败），直接关闭连接，不再读完剩余数据
+                subscriber.cancel();
+            } else if (throwable != null) {
+                subscriber.fail(throwable);
+            }
+        });
+        return future;
+    }
+
+    private Executor callbackExecutor() {
+        return llmHttpClient.executor().orElse(ForkJoinPool.commonPool());
     }
 
     /**
@@ -147,17 +367,112 @@ public class StreamingLlmService {
      * @param userQuestion 用户问题
      * @param modelConfig 模型配置
      * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
      */
-    public void streamGenerateWithConfig(
+    public CompletableFuture<Void> streamGenerateWithConfig(
             String systemPrompt,
             String userQuestion,
             ModelConfigDto modelConfig,
             StreamCallback streamCallback) {
+        return streamGenerateWithConfig(systemPrompt, userQuestion, modelConfig, null, streamCallback);
+    }
+
+    /**
+     * 流式生成回答（使用自定义模型配置），可指定是否使用响应缓存
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param modelConfig 模型配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamGenerateWithConfig(
+            String systemPrompt,
+            String userQuestion,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride,
+            StreamCallback streamCallback) {
+        return streamGenerateWithConfig(systemPrompt, userQuestion, modelConfig, cacheOverride,
+                CancellationToken.NONE, streamCallback);
+    }
+
+    /**
+     * 流式生成回答（使用自定义模型配置），可指定是否使用响应缓存，并可通过取消令牌中止
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param modelConfig 模型配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @param cancellationToken 取消令牌，取消时中断上游连接，回调收到 CancellationException
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamGenerateWithConfig(
+            String systemPrompt,
+            String userQuestion,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride,
+            CancellationToken cancellationToken,
+            StreamCallback streamCallback) {
+        return streamGenerateWithConfig(systemPrompt, userQuestion, modelConfig, cacheOverride,
+                ExecutionBudget.UNLIMITED, cancellationToken, streamCallback);
+    }
+
+    /**
+     * 在执行预算内流式生成回答（使用自定义模型配置）：maxTokens 按剩余 token 收紧
+     *
+     * @param systemPrompt 系统提示词
+     * @param userQuestion 用户问题
+     * @param modelConfig 模型配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @param budget 执行预算
+     * @param cancellationToken 取消令牌，取消时中断上游连接，回调收到 CancellationException
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamGenerateWithConfig(
+            String systemPrompt,
+            String userQuestion,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride,
+            ExecutionBudget budget,
+            CancellationToken cancellationToken,
+            StreamCallback streamCallback) {
 
         try {
             // 构建消息
             var messages = promptTemplateService.buildMessageList(systemPrompt, userQuestion);
+            return streamChat(messages, modelConfig, cacheOverride, budget, cancellationToken, streamCallback);
 
+        } catch (Exception e) {
+            log.error("Failed to stream generate from LLM with custom config", e);
+            streamCallback.onError(e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * 在执行预算内流式生成多轮对话（含工具调用结果）的回答，不提供工具：
+     * 使用自定义模型配置，未配置时回退到全局配置，maxTokens 按剩余 token 收紧
+     *
+     * @param messages 对话消息
+     * @param modelConfig 模型配置，null 表示使用全局配置
+     * @param cacheOverride 是否使用响应缓存，null 表示沿用模型配置
+     * @param budget 执行预算
+     * @param cancellationToken 取消令牌，取消时中断上游连接，回调收到 CancellationException
+     * @param streamCallback 流式响应回调函数
+     * @return 流结束时完成的 Future
+     */
+    public CompletableFuture<Void> streamChat(
+            List<Message> messages,
+            ModelConfigDto modelConfig,
+            Boolean cacheOverride,
+            ExecutionBudget budget,
+            CancellationToken cancellationToken,
+            StreamCallback streamCallback) {
+
+        try {
             // 使用自定义配置或回退到全局配置
             String model = modelConfig != null && modelConfig.getModel() != null
                     ? modelConfig.getModel()
@@ -171,9 +486,9 @@ public class StreamingLlmService {
             Double temperature = modelConfig != null && modelConfig.getTemperature() != null
                     ? modelConfig.getTemperature()
                     : config.getDefaultTemperature();
-            Integer maxTokens = modelConfig != null && modelConfig.getMaxTokens() != null
+            Integer maxTokens = budget.maxTokens(modelConfig != null && modelConfig.getMaxTokens() != null
                     ? modelConfig.getMaxTokens()
-                    : config.getDefaultMaxTokens();
+                    : config.getDefaultMaxTokens());
 
             log.info("LLM stream request - model: {}, endpoint: {}, using custom config: {}",
                     model, endpoint, modelConfig != null);
@@ -187,38 +502,132 @@ public class StreamingLlmService {
                     .stream(true)
                     .build();
 
-            // 构造请求体
-            String requestBody = objectMapper.writeValueAsString(request);
-
-            // 构造请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-
-            String url = endpoint + "/chat/completions";
-
-            // 使用 execute 方法获取流式响应
-            restTemplate.execute(
-                    url,
-                    HttpMethod.POST,
-                    httpRequest -> {
-                        httpRequest.getHeaders().putAll(headers);
-                        httpRequest.getBody().write(requestBody.getBytes());
-                    },
-                    response -> {
-                        parseStreamResponse(response, streamCallback);
-                        return null;
-                    }
-            );
+            List<String> endpoints = modelConfig != null && modelConfig.getEndpoint() != null
+                    ? endpointRouter.candidates(endpoint, modelConfig.getEndpoints())
+                    : endpointRouter.candidates(endpoint, config.getEndpoints());
+            return sendStreamRequest(endpoints, apiKey, request, modelConfig, cacheOverride,
+                    cancellationToken, streamCallback);
 
         } catch (Exception e) {
             log.error("Failed to stream generate from LLM with custom config", e);
             streamCallback.onError(e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * 把缓存的响应按小分片快速回放给回调，保持与真实流一致的回调顺序
+     */
+    private CompletableFuture<Void> replay(LlmResponse cached, CancellationToken cancellationToken,
+                                           StreamCallback streamCallback) {
+        return CompletableFuture.runAsync(() -> {
+            String content = cached.getContent();
+            int chunkSize = responseCache.getReplayChunkSize();
+            int start = 0;
+            while (start < content.length()) {
+                if (cancellationToken.isCancelled()) {
+                    throw new CancellationException("LLM stream cancelled");
+                }
+                int end = Math.min(content.length(), start + chunkSize);
+                // 不拆开代理对
+                if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                    end++;
+                }
+                streamCallback.onContent(content.substring(start, end));
+                start = end;
+            }
+            streamCallback.onFinish(cached.getFinishReason());
+            streamCallback.onComplete();
+        }, LlmCallContext.propagating(callbackExecutor())).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            streamCallback.onError(cause instanceof Exception ex ? ex : new RuntimeException(cause));
+            return null;
+        });
+    }
+
+    /**
+     * 累积流式内容，正常结束后写入响应缓存
+     */
+    private class CachingCallback implements StreamCallback {
+        private final StreamCallback delegate;
+        private final String cacheKey;
+        private final int ttlSeconds;
+        private final StringBuilder content = new StringBuilder();
+        private volatile String finishReason;
+
+        CachingCallback(StreamCallback delegate, String cacheKey, int ttlSeconds) {
+            this.delegate = delegate;
+            this.cacheKey = cacheKey;
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        @Override
+        public void onContent(String chunk) {
+            content.append(chunk);
+            delegate.onContent(chunk);
+        }
+
+        @Override
+        public void onFinish(String reason) {
+            finishReason = reason;
+            delegate.onFinish(reason);
+        }
+
+        @Override
+        public void onComplete() {
+            responseCache.put(cacheKey, LlmResponse.builder()
+                    .content(content.toString())
+                    .finishReason(finishReason)
+                    .build(), ttlSeconds);
+            delegate.onComplete();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            delegate.onError(e);
+        }
+    }
+
+    /**
+     * 统计上游已生成的 token 数（按内容估算），用于计算取消节省的 token
+     */
+    private static class UpstreamMeter implements StreamCallback {
+        private final StreamCallback delegate;
+        private final AtomicInteger tokens = new AtomicInteger();
+
+        UpstreamMeter(StreamCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        int getTokens() {
+            return tokens.get();
+        }
+
+        @Override
+        public void onContent(String content) {
+            tokens.addAndGet(TokenEstimator.estimate(content));
+            delegate.onContent(content);
+        }
+
+        @Override
+        public void onFinish(String finishReason) {
+            delegate.onFinish(finishReason);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            delegate.onError(e);
         }
     }
 
     /**
      * 流式响应回调接口
+     * 回调在流式 HTTP 客户端的线程池中执行，不应长时间阻塞
      */
     public interface StreamCallback {
         /**
@@ -226,6 +635,12 @@ public class StreamingLlmService {
          */
         void onContent(String content);
 
+        /**
+         * 收到结束原因（如 stop、length），在 onComplete 之前回调
+         */
+        default void onFinish(String finishReason) {
+        }
+
         /**
          * 流式传输完成
          */
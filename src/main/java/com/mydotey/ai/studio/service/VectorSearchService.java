@@ -3,6 +3,7 @@ package com.mydotey.ai.studio.service;
 import com.mydotey.ai.studio.dto.SourceDocument;
 import com.mydotey.ai.studio.entity.DocumentChunk;
 import com.mydotey.ai.studio.mapper.DocumentChunkMapper;
+import com.mydotey.ai.studio.util.ExecutionBudget;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -35,7 +36,22 @@ public class VectorSearchService {
             List<Long> knowledgeBaseIds,
             int topK,
             double scoreThreshold) {
+        return search(question, knowledgeBaseIds, topK, scoreThreshold, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内搜索，生成向量和相似度搜索前分别检查剩余预算
+     *
+     * @throws com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException 预算已用尽
+     */
+    public List<SourceDocument> search(
+            String question,
+            List<Long> knowledgeBaseIds,
+            int topK,
+            double scoreThreshold,
+            ExecutionBudget budget) {
 
+        budget.check("vector search");
         log.info("Searching for relevant documents, question: {}, kbIds: {}, topK: {}",
                 question, knowledgeBaseIds, topK);
 
@@ -43,6 +59,7 @@ public class VectorSearchService {
         float[] queryEmbedding = embeddingService.embed(question);
 
         // 2. 向量相似度搜索
+        budget.check("similarity search");
         List<DocumentChunk> chunks = documentChunkMapper.searchByEmbedding(
                 queryEmbedding,
                 knowledgeBaseIds,
@@ -0,0 +1,202 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.SourceDocument;
+import com.mydotey.ai.studio.service.VectorSearchService;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agent 知识库预检索
+ * <p>
+ * 执行开始时立即以用户问题检索 Agent 关联的知识库，不等待检索完成就继续构建提示词。
+ * 结果在等待时间内返回时直接作为上下文放入提示词；否则以 {@link #TOOL_NAME} 工具提供给模型，
+ * 模型以原问题调用时复用进行中的检索，以其他问题调用时重新检索
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgentKnowledgeRetriever {
+
+    /**
+     * 提供给模型的检索工具名称
+     */
+    public static final String TOOL_NAME = "search_knowledge_base";
+
+    private final VectorSearchService vectorSearchService;
+    private final AgentConfig agentConfig;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService executor =
+            LlmCallContext.propagating(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-retrieval-", 0).factory()));
+
+    /**
+     * 开始检索用户问题
+     *
+     * @return 检索句柄，Agent 没有关联知识库或未启用时返回 null
+     */
+    public Retrieval start(AgentRuntime runtime, String query, ExecutionBudget budget) {
+        AgentConfig.Retrieval config = agentConfig.getRetrieval();
+        if (!config.isEnabled() || runtime.knowledgeBaseIds().isEmpty() || query == null || query.isBlank()
+                || runtime.tools().containsKey(TOOL_NAME)) {
+            return null;
+        }
+        return new Retrieval(runtime, query, budget);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<List<SourceDocument>> search(AgentRuntime runtime, String query,
+                                                           ExecutionBudget budget) {
+        AgentConfig.Retrieval config = agentConfig.getRetrieval();
+        return CompletableFuture.supplyAsync(() -> vectorSearchService.search(query, runtime.knowledgeBaseIds(),
+                config.getTopK(), config.getScoreThreshold(), budget), executor);
+    }
+
+    private String format(List<SourceDocument> documents) {
+        if (documents.isEmpty()) {
+            return "No relevant content found in the knowledge base.";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < documents.size(); i++) {
+            SourceDocument document = documents.get(i);
+            if (i > 0) {
+                text.append("\n\n");
+            }
+            text.append("[").append(i + 1).append("] ");
+            if (document.getDocumentName() != null) {
+                text.append("(").append(document.getDocumentName()).append(") ");
+            }
+            text.append(document.getContent());
+        }
+        int max = agentConfig.getMaxObservationChars();
+        return max > 0 && text.length() > max ? text.substring(0, max) + "...(truncated)" : text.toString();
+    }
+
+    /**
+     * 一次执行中的检索
+     */
+    public final class Retrieval {
+
+        private final AgentRuntime runtime;
+        private final String query;
+        private final ExecutionBudget budget;
+        private final CompletableFuture<List<SourceDocument>> speculative;
+        private final long start = System.nanoTime();
+
+        private Retrieval(AgentRuntime runtime, String query, ExecutionBudget budget) {
+            this.runtime = runtime;
+            this.query = query;
+            this.budget = budget;
+            this.speculative = search(runtime, query, budget);
+        }
+
+        /**
+         * 在等待时间内等待预检索的结果
+         *
+         * @return 格式化的检索结果；超时或检索失败时返回 null，此时应提供检索工具
+         */
+        public String awaitContext() {
+            long waitMillis = budget.timeoutMillis(agentConfig.getRetrieval().getInjectWait());
+            try {
+                String context = format(speculative.get(waitMillis, TimeUnit.MILLISECONDS));
+                log.debug("Speculative retrieval ready in {}ms for agent: {}", elapsedMillis(), runtime.agentId());
+                return context;
+            } catch (TimeoutException e) {
+                log.debug("Speculative retrieval still running after {}ms, offering it as a tool", waitMillis);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                log.warn("Speculative retrieval failed for agent {}: {}", runtime.agentId(), e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * 提供给模型的检索工具定义
+         */
+        public LlmTool toolDefinition() {
+            return LlmTool.builder()
+                    .function(LlmTool.Function.builder()
+                            .name(TOOL_NAME)
+                            .description("Search the agent's knowledge bases for passages relevant to a query. "
+                                    + "Results for the user's question are usually already available.")
+                            .parameters(objectMapper.createObjectNode()
+                                    .put("type", "object")
+                                    .set("properties", objectMapper.createObjectNode()
+                                            .set("query", objectMapper.createObjectNode()
+                                                    .put("type", "string")
+                                                    .put("description", "The search query, defaults to "
+                                                            + "the user's question"))))
+                            .build())
+                    .build();
+        }
+
+        /**
+         * 是否为检索工具的调用
+         */
+        public boolean handles(LlmToolCall call) {
+            return call.getFunction() != null && TOOL_NAME.equals(call.getFunction().getName());
+        }
+
+        /**
+         * 执行模型发起的检索，问题与用户问题相同时复用预检索
+         */
+        public CompletableFuture<AgentToolDispatcher.Observation> call(LlmToolCall call) {
+            long callStart = System.nanoTime();
+            String requested = query;
+            try {
+                String raw = call.getFunction().getArguments();
+                JsonNode arguments = raw == null || raw.isBlank() ? null : objectMapper.readTree(raw);
+                if (arguments != null && !arguments.path("query").asText("").isBlank()) {
+                    requested = arguments.path("query").asText().trim();
+                }
+            } catch (Exception e) {
+                log.debug("Invalid knowledge base search arguments, using the user question: {}", e.getMessage());
+            }
+            boolean reuse = requested.equalsIgnoreCase(query.trim()) && !speculative.isCompletedExceptionally();
+            if (reuse) {
+                log.debug("Knowledge base search reuses the speculative retrieval");
+            }
+            return (reuse ? speculative : search(runtime, requested, budget))
+                    .thenApply(documents -> new AgentToolDispatcher.Observation(call, TOOL_NAME, format(documents),
+                            true, millisSince(callStart)))
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null
+                                ? e.getCause() : e;
+                        return new AgentToolDispatcher.Observation(call, TOOL_NAME, "Error: " + cause.getMessage(),
+                                false, millisSince(callStart));
+                    });
+        }
+
+        private long elapsedMillis() {
+            return millisSince(start);
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.entity.Agent;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agent 运行时快照
+ * <p>
+ * 执行 Agent 所需的配置一次性加载：Agent 本身、关联的知识库、解析后的工具及提供给模型的函数定义、
+ * 模型配置和最终使用的系统提示词。快照由 {@link AgentRuntimeCache} 缓存，多次执行共享，调用方不应修改
+ *
+ * @param agent Agent 配置
+ * @param knowledgeBaseIds 关联的知识库 ID
+ * @param tools 可调用的工具，按函数名称索引
+ * @param toolDefinitions 提供给模型的函数定义
+ * @param modelConfig Agent 的模型配置，为 null 时使用全局配置
+ * @param systemPrompt 系统提示词，Agent 未配置时为默认提示词
+ */
+public record AgentRuntime(Agent agent,
+                           List<Long> knowledgeBaseIds,
+                           Map<String, AgentToolDispatcher.ResolvedTool> tools,
+                           List<LlmTool> toolDefinitions,
+                           ModelConfigDto modelConfig,
+                           String systemPrompt) {
+
+    /**
+     * Agent 未配置系统提示词时使用的默认值
+     */
+    public static final String DEFAULT_SYSTEM_PROMPT = "You are a helpful assistant.";
+
+    /**
+     * 未配置最大迭代次数时的默认值
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 10;
+
+    public Long agentId() {
+        return agent.getId();
+    }
+
+    /**
+     * 快照对应的 Agent 版本
+     */
+    public Instant version() {
+        return agent.getUpdatedAt();
+    }
+
+    /**
+     * 工作流类型，未配置时为 REACT
+     */
+    public String workflowType() {
+        return agent.getWorkflowType() != null ? agent.getWorkflowType() : "REACT";
+    }
+
+    public int maxIterations() {
+        return agent.getMaxIterations() != null ? agent.getMaxIterations() : DEFAULT_MAX_ITERATIONS;
+    }
+
+    /**
+     * 是否使用了指定的模型配置
+     */
+    public boolean usesModelConfig(Long configId) {
+        return configId != null && (configId.equals(agent.getLlmModelConfigId())
+                || modelConfig != null && configId.equals(modelConfig.getId()));
+    }
+
+    /**
+     * 是否引用了指定 MCP 服务器上的工具
+     */
+    public boolean usesMcpServer(Long serverId) {
+        return tools.values().stream().anyMatch(tool -> serverId.equals(tool.tool().getServerId()));
+    }
+}
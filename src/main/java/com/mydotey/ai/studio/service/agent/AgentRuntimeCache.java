@@ -0,0 +1,253 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.enums.ModelConfigType;
+import com.mydotey.ai.studio.event.AgentChangedEvent;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.mydotey.ai.studio.event.ModelConfigChangedEvent;
+import com.mydotey.ai.studio.service.AgentService;
+import com.mydotey.ai.studio.service.ModelConfigService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Agent 运行时快照缓存
+ * <p>
+ * 按 Agent ID 缓存 {@link AgentRuntime}，执行 Agent 时不再逐项查询 Agent、知识库、工具和模型配置。
+ * Agent 更新或删除、模型配置变更、MCP 服务器变更或工具重新同步后，在事务提交后失效相关快照；
+ * 启用 Redis 时失效通知同时发布到频道，其他节点收到后失效本地快照。
+ * 加载期间发生的失效会使加载结果不被缓存，避免把变更前读到的配置放回缓存
+ */
+@Slf4j
+@Component
+public class AgentRuntimeCache {
+
+    private static final String TYPE_AGENT = "agent";
+    private static final String TYPE_MODEL_CONFIG = "model";
+    private static final String TYPE_MCP_SERVER = "mcp";
+
+    private final AgentConfig.RuntimeCache config;
+    private final AgentService agentService;
+    private final ModelConfigService modelConfigService;
+    private final AgentToolDispatcher toolDispatcher;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final ObjectProvider<RedisConnectionFactory> connectionFactoryProvider;
+    private final Cache<Long, AgentRuntime> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final String nodeId = UUID.randomUUID().toString();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public AgentRuntimeCache(AgentConfig agentConfig, AgentService agentService,
+                             ModelConfigService modelConfigService, AgentToolDispatcher toolDispatcher,
+                             ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                             ObjectProvider<RedisConnectionFactory> connectionFactoryProvider) {
+        this.config = agentConfig.getRuntimeCache();
+        this.agentService = agentService;
+        this.modelConfigService = modelConfigService;
+        this.toolDispatcher = toolDispatcher;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.connectionFactoryProvider = connectionFactoryProvider;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(Duration.ofSeconds(config.getTtl()))
+                .build();
+    }
+
+    /**
+     * 订阅其他节点的失效通知
+     */
+    @PostConstruct
+    public void subscribe() {
+        if (!config.isRedisEnabled()) {
+            return;
+        }
+        RedisConnectionFactory connectionFactory = connectionFactoryProvider.getIfAvailable();
+        if (connectionFactory == null) {
+            log.warn("Redis is not available, agent runtime invalidation is local only");
+            return;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) ->
+                        onRemoteMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(config.getChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        listenerContainer = container;
+        log.info("Subscribed to agent runtime invalidation channel: {}", config.getChannel());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to stop agent runtime invalidation listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取 Agent 的运行时快照，未缓存时加载
+     *
+     * @throws com.mydotey.ai.studio.common.exception.BusinessException Agent 不存在
+     */
+    public AgentRuntime get(Long agentId) {
+        if (!config.isEnabled()) {
+            return load(agentId);
+        }
+        AgentRuntime runtime = cache.getIfPresent(agentId);
+        if (runtime != null) {
+            return runtime;
+        }
+        long loadedGeneration = generation.get();
+        AgentRuntime loaded = load(agentId);
+        if (loaded.agent().getLlmModelConfigId() != null && loaded.modelConfig() == null) {
+            // 模型配置获取失败，本次使用全局配置，下次重新加载
+            return loaded;
+        }
+        // 加载期间发生过失效时不缓存，返回的快照仅用于本次执行
+        cache.asMap().compute(agentId, (id, existing) ->
+                generation.get() == loadedGeneration ? loaded : existing);
+        return loaded;
+    }
+
+    /**
+     * 失效一个 Agent 的快照
+     */
+    public void invalidateAgent(Long agentId) {
+        invalidate(runtime -> agentId.equals(runtime.agentId()));
+    }
+
+    /**
+     * 失效使用指定模型配置的快照
+     */
+    public void invalidateModelConfig(Long configId) {
+        invalidate(runtime -> runtime.usesModelConfig(configId));
+    }
+
+    /**
+     * 失效引用指定 MCP 服务器工具的快照
+     */
+    public void invalidateMcpServer(Long serverId) {
+        invalidate(runtime -> runtime.usesMcpServer(serverId));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAgentChanged(AgentChangedEvent event) {
+        invalidateAgent(event.getAgentId());
+        broadcast(TYPE_AGENT, event.getAgentId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.getType() == ModelConfigType.LLM && event.getConfigId() != null) {
+            invalidateModelConfig(event.getConfigId());
+            broadcast(TYPE_MODEL_CONFIG, event.getConfigId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMcpServerChanged(McpServerChangedEvent event) {
+        invalidateMcpServer(event.getServerId());
+        broadcast(TYPE_MCP_SERVER, event.getServerId());
+    }
+
+    /**
+     * 处理其他节点发布的失效通知，格式为 "节点ID|类型|ID"
+     */
+    void onRemoteMessage(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Long id;
+        try {
+            id = Long.valueOf(parts[2]);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid agent runtime invalidation message: {}", message);
+            return;
+        }
+        log.debug("Received agent runtime invalidation: {} {}", parts[1], id);
+        switch (parts[1]) {
+            case TYPE_AGENT -> invalidateAgent(id);
+            case TYPE_MODEL_CONFIG -> invalidateModelConfig(id);
+            case TYPE_MCP_SERVER -> invalidateMcpServer(id);
+            default -> log.warn("Ignoring unknown agent runtime invalidation type: {}", parts[1]);
+        }
+    }
+
+    private void invalidate(Predicate<AgentRuntime> predicate) {
+        generation.incrementAndGet();
+        cache.asMap().values().removeIf(predicate);
+    }
+
+    private void broadcast(String type, Long id) {
+        StringRedisTemplate redisTemplate = config.isRedisEnabled() ? redisTemplateProvider.getIfAvailable() : null;
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(config.getChannel(), nodeId + "|" + type + "|" + id);
+        } catch (Exception e) {
+            // 其他节点的快照在过期后刷新
+            log.warn("Failed to publish agent runtime invalidation: {}", e.getMessage());
+        }
+    }
+
+    private AgentRuntime load(Long agentId) {
+        Agent agent = agentService.getAgent(agentId);
+        List<Long> knowledgeBaseIds = agentService.getAgentKnowledgeBaseIds(agentId);
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                toolDispatcher.resolve(agentService.getAgentToolIds(agentId));
+        List<LlmTool> definitions = toolDispatcher.definitions(tools);
+        String systemPrompt = agent.getSystemPrompt() != null && !agent.getSystemPrompt().isBlank()
+                ? agent.getSystemPrompt()
+                : AgentRuntime.DEFAULT_SYSTEM_PROMPT;
+        log.debug("Loaded agent runtime: {}, tools: {}", agentId, tools.keySet());
+        return new AgentRuntime(agent, List.copyOf(knowledgeBaseIds), Collections.unmodifiableMap(new LinkedHashMap<>(tools)), List.copyOf(definitions),
+                getModelConfig(agent), systemPrompt);
+    }
+
+    /**
+     * 获取 Agent 的模型配置，未配置或获取失败时返回 null（使用全局配置）
+     */
+    private ModelConfigDto getModelConfig(Agent agent) {
+        if (agent.getLlmModelConfigId() == null) {
+            return null;
+        }
+        try {
+            ModelConfigDto modelConfig = modelConfigService.getConfigById(agent.getLlmModelConfigId());
+            log.info("Using agent model config: {}, model: {}, endpoint: {}",
+                    modelConfig.getName(), modelConfig.getModel(), modelConfig.getEndpoint());
+            return modelConfig;
+        } catch (Exception e) {
+            log.warn("Failed to get agent model config, using default: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.mapper.McpServerMapper;
+import com.mydotey.ai.studio.mapper.McpToolMapper;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.mcp.McpRpcClient;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Agent 工具调用分发
+ * <p>
+ * 把 Agent 绑定的 MCP 工具转换为模型可调用的函数定义，并执行模型在一步中发起的工具调用：
+ * 同一步的调用在虚拟线程上并发执行，每个调用有独立的截止时间，超时、失败的调用以错误结果返回，
+ * 一步的耗时接近其中最慢的调用而不是所有调用之和
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgentToolDispatcher {
+
+    private static final Pattern INVALID_NAME_CHARS = Pattern.compile("[^a-zA-Z0-9_-]");
+    private static final int MAX_NAME_LENGTH = 64;
+
+    private final McpToolMapper mcpToolMapper;
+    private final McpServerMapper mcpServerMapper;
+    private final McpRpcClient mcpRpcClient;
+    private final AgentConfig agentConfig;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService executor =
+            LlmCallContext.propagating(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-tool-", 0).factory()));
+
+    /**
+     * 可调用的工具
+     *
+     * @param functionName 提供给模型的函数名称
+     */
+    public record ResolvedTool(String functionName, McpTool tool, McpServer server) {
+    }
+
+    /**
+     * 一次工具调用的结果
+     */
+    public record Observation(LlmToolCall call, String toolName, String result, boolean success,
+                              long elapsedMillis) {
+    }
+
+    /**
+     * 长时间运行的工具在返回结果前回传的进度
+     *
+     * @param message 进度描述，服务端没有提供时为 "progress/total"
+     */
+    public record Progress(LlmToolCall call, String toolName, String message) {
+    }
+
+    /**
+     * 加载工具及其所在的 MCP 服务器，按函数名称索引
+     */
+    public Map<String, ResolvedTool> resolve(List<Long> toolIds) {
+        if (toolIds == null || toolIds.isEmpty()) {
+            return Map.of();
+        }
+        List<McpTool> tools = mcpToolMapper.selectBatchIds(toolIds);
+        Set<Long> serverIds = tools.stream().map(McpTool::getServerId).collect(Collectors.toSet());
+        Map<Long, McpServer> servers = serverIds.isEmpty()
+                ? Map.of()
+                : mcpServerMapper.selectBatchIds(serverIds).stream()
+                        .collect(Collectors.toMap(McpServer::getId, Function.identity()));
+
+        Map<String, ResolvedTool> resolved = new LinkedHashMap<>();
+        for (McpTool tool : tools) {
+            McpServer server = servers.get(tool.getServerId());
+            if (server == null) {
+                log.warn("MCP server not found for tool: {}, serverId: {}", tool.getId(), tool.getServerId());
+                continue;
+            }
+            String name = functionName(tool.getToolName(), tool.getId());
+            if (resolved.containsKey(name)) {
+                // 不同服务器上的同名工具
+                name = functionName(tool.getToolName() + "_" + tool.getId(), tool.getId());
+            }
+            resolved.put(name, new ResolvedTool(name, tool, server));
+        }
+        return resolved;
+    }
+
+    /**
+     * 生成提供给模型的函数定义
+     */
+    public List<LlmTool> definitions(Map<String, ResolvedTool> tools) {
+        List<LlmTool> definitions = new ArrayList<>(tools.size());
+        for (ResolvedTool resolved : tools.values()) {
+            definitions.add(LlmTool.builder()
+                    .function(LlmTool.Function.builder()
+                            .name(resolved.functionName())
+                            .description(resolved.tool().getDescription())
+                            .parameters(parseSchema(resolved.tool().getInputSchema()))
+                            .build())
+                    .build());
+        }
+        return definitions;
+    }
+
+    /**
+     * 并发执行一步中的工具调用，等待全部完成或超时
+     *
+     * @param calls 模型发起的工具调用
+     * @param tools 可调用的工具
+     * @param cancellationToken 取消时未完成的调用以取消结果返回
+     * @param onObservation 每个调用完成时立即回调（串行），用于提前反馈部分结果
+     * @return 与 calls 顺序一致的结果
+     */
+    public List<Observation> dispatch(List<LlmToolCall> calls, Map<String, ResolvedTool> tools,
+                                      CancellationToken cancellationToken, Consumer<Observation> onObservation) {
+        return dispatch(calls, tools, cancellationToken, onObservation, progress -> { });
+    }
+
+    /**
+     * 并发执行一步中的工具调用，工具执行期间的进度通过 onProgress 回调（与 onObservation 串行）
+     */
+    public List<Observation> dispatch(List<LlmToolCall> calls, Map<String, ResolvedTool> tools,
+                                      CancellationToken cancellationToken, Consumer<Observation> onObservation,
+                                      Consumer<Progress> onProgress) {
+        return dispatch(calls, tools, cancellationToken, onObservation, onProgress, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内并发执行工具调用，每个调用的截止时间不超过预算的剩余时间
+     */
+    public List<Observation> dispatch(List<LlmToolCall> calls, Map<String, ResolvedTool> tools,
+                                      CancellationToken cancellationToken, Consumer<Observation> onObservation,
+                                      Consumer<Progress> onProgress, ExecutionBudget budget) {
+        long timeoutMillis = budget.timeoutMillis(agentConfig.getToolCallTimeout());
+        Semaphore slots = new Semaphore(Math.max(1, agentConfig.getMaxParallelToolCalls()));
+        ReentrantLock reportLock = new ReentrantLock();
+        List<CompletableFuture<Observation>> sources = new ArrayList<>(calls.size());
+        List<CompletableFuture<Observation>> results = new ArrayList<>(calls.size());
+
+        Consumer<Progress> progressReporter = progress -> {
+            reportLock.lock();
+            try {
+                onProgress.accept(progress);
+            } catch (Exception e) {
+                log.warn("Tool progress listener failed", e);
+            } finally {
+                reportLock.unlock();
+            }
+        };
+
+        for (LlmToolCall call : calls) {
+            long start = System.nanoTime();
+            CompletableFuture<Observation> source = new CompletableFuture<>();
+            Future<?> task = executor.submit(() -> {
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    source.complete(invoke(call, tools, start, progressReporter, budget));
+                } finally {
+                    slots.release();
+                }
+            });
+            sources.add(source);
+            results.add(source.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .exceptionally(e -> failure(call, tools, describe(e, timeoutMillis), start))
+                    .whenComplete((observation, e) -> {
+                        // 超时或取消后中断仍在执行的调用
+                        task.cancel(true);
+                        reportLock.lock();
+                        try {
+                            onObservation.accept(observation);
+                        } catch (Exception ex) {
+                            log.warn("Tool observation listener failed", ex);
+                        } finally {
+                            reportLock.unlock();
+                        }
+                    }));
+        }
+
+        Runnable deregister = cancellationToken.onCancel(() -> sources.forEach(source ->
+                source.completeExceptionally(new CancellationException("Agent execution cancelled"))));
+        try {
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            deregister.run();
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Observation invoke(LlmToolCall call, Map<String, ResolvedTool> tools, long start,
+                               Consumer<Progress> onProgress, ExecutionBudget budget) {
+        String name = call.getFunction() != null ? call.getFunction().getName() : null;
+        ResolvedTool resolved = name != null ? tools.get(name) : null;
+        if (resolved == null) {
+            return failure(call, tools, "Error: unknown tool: " + name, start);
+        }
+
+        JsonNode arguments;
+        try {
+            String raw = call.getFunction().getArguments();
+            arguments = raw == null || raw.isBlank() ? objectMapper.createObjectNode() : objectMapper.readTree(raw);
+        } catch (Exception e) {
+            return failure(call, tools, "Error: invalid arguments: " + e.getMessage(), start);
+        }
+
+        try {
+            String toolName = resolved.tool().getToolName();
+            JsonNode content = mcpRpcClient.callTool(resolved.server(), resolved.tool(), arguments,
+                    notification -> onProgress.accept(new Progress(call, toolName, describeProgress(notification))),
+                    budget);
+            log.debug("Tool call completed - tool: {}, elapsed: {}ms", name, elapsedMillis(start));
+            return new Observation(call, resolved.tool().getToolName(), truncate(render(content)), true,
+                    elapsedMillis(start));
+        } catch (Exception e) {
+            log.warn("Tool call failed - tool: {}, error: {}", name, e.getMessage());
+            return failure(call, tools, "Error: " + e.getMessage(), start);
+        }
+    }
+
+    private Observation failure(LlmToolCall call, Map<String, ResolvedTool> tools, String message, long start) {
+        String name = call.getFunction() != null ? call.getFunction().getName() : null;
+        ResolvedTool resolved = name != null ? tools.get(name) : null;
+        String toolName = resolved != null ? resolved.tool().getToolName() : name;
+        return new Observation(call, toolName, message, false, elapsedMillis(start));
+    }
+
+    private static String describe(Throwable e, long timeoutMillis) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            return "Error: tool call timed out after " + timeoutMillis + "ms";
+        }
+        if (cause instanceof CancellationException) {
+            return "Error: tool call cancelled";
+        }
+        return "Error: " + cause.getMessage();
+    }
+
+    private static String describeProgress(JsonNode notification) {
+        String message = notification.path("message").asText("");
+        if (!message.isBlank()) {
+            return message;
+        }
+        String progress = notification.path("progress").asText();
+        return notification.has("total") ? progress + "/" + notification.get("total").asText() : progress;
+    }
+
+    /**
+     * MCP 工具结果为内容数组，文本内容直接拼接，其他类型保留 JSON
+     */
+    private static String render(JsonNode content) {
+        if (content == null || content.isNull()) {
+            return "";
+        }
+        if (!content.isArray()) {
+            return content.isTextual() ? content.asText() : content.toString();
+        }
+        List<String> parts = new ArrayList<>();
+        for (JsonNode item : content) {
+            if ("text".equals(item.path("type").asText()) && item.has("text")) {
+                parts.add(item.get("text").asText());
+            } else {
+                parts.add(item.toString());
+            }
+        }
+        return String.join("\n", parts);
+    }
+
+    private String truncate(String text) {
+        int max = agentConfig.getMaxObservationChars();
+        return max > 0 && text.length() > max ? text.substring(0, max) + "...(truncated)" : text;
+    }
+
+    private JsonNode parseSchema(String inputSchema) {
+        if (inputSchema != null && !inputSchema.isBlank()) {
+            try {
+                return objectMapper.readTree(inputSchema);
+            } catch (Exception e) {
+                log.warn("Invalid tool input schema, using empty object schema: {}", e.getMessage());
+            }
+        }
+        return objectMapper.createObjectNode()
+                .put("type", "object")
+                .set("properties", objectMapper.createObjectNode());
+    }
+
+    private static String functionName(String toolName, Long toolId) {
+        String name = toolName != null ? INVALID_NAME_CHARS.matcher(toolName).replaceAll("_") : "";
+        if (name.isEmpty()) {
+            name = "tool_" + toolId;
+        }
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
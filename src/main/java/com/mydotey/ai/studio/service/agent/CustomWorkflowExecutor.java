@@ -0,0 +1,521 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
+import com.mydotey.ai.studio.dto.AgentExecutionRequest;
+import com.mydotey.ai.studio.dto.AgentExecutionResponse;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.dto.SourceDocument;
+import com.mydotey.ai.studio.service.LlmGenerationService;
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.service.VectorSearchService;
+import com.mydotey.ai.studio.service.agent.workflow.WorkflowGraph;
+import com.mydotey.ai.studio.service.agent.workflow.WorkflowNode;
+import com.mydotey.ai.studio.service.agent.workflow.WorkflowNodeType;
+import com.mydotey.ai.studio.service.agent.workflow.WorkflowTemplate;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 自定义工作流执行器（WorkflowType.CUSTOM）
+ * <p>
+ * 按 Agent 的 workflowConfig 中定义的有向无环图执行检索、LLM、MCP 工具、转换和分支节点：
+ * 每个节点在上游全部完成后立即在虚拟线程上执行，互不依赖的分支并行进行。
+ * 同一次执行中输入相同的检索、LLM 和工具节点只执行一次，共享输出。
+ * 未选中的分支上的节点被跳过，只依赖被跳过节点的节点也被跳过；节点失败时下游随之失败。
+ * 节点的状态变化通过 {@link StreamingChatCallback#onWorkflowNode} 回传。
+ * 检索、LLM 和工具节点在执行预算内调用，预算用尽后尚未开始的节点失败，以最后完成的节点输出作为部分回答
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CustomWorkflowExecutor implements WorkflowExecutor {
+
+    private static final int PREVIEW_CHARS = 200;
+
+    private final VectorSearchService vectorSearchService;
+    private final LlmGenerationService llmGenerationService;
+    private final AgentToolDispatcher toolDispatcher;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService executor =
+            LlmCallContext.propagating(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-workflow-", 0).factory()));
+
+    /**
+     * 解析后的工作流按运行时快照缓存，快照失效后随之回收
+     */
+    private final Cache<AgentRuntime, WorkflowGraph> graphs = Caffeine.newBuilder().weakKeys().build();
+
+    private enum Status {
+        COMPLETED, SKIPPED, FAILED
+    }
+
+    /**
+     * 节点的执行结果
+     *
+     * @param origin 失败时为最初失败的节点 ID
+     */
+    private record NodeResult(Status status, String output, Exception error, String origin) {
+    }
+
+    /**
+     * 节点状态变化的接收方
+     */
+    @FunctionalInterface
+    private interface NodeListener {
+        void onNode(String nodeId, String status, String detail);
+    }
+
+    @Override
+    public AgentExecutionResponse execute(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                                          ExecutionBudget budget) {
+        if (runtime == null || request == null) {
+            throw new BusinessException("Agent and request are required");
+        }
+        log.info("Executing custom workflow for agent: {}, query: {}", runtime.agentId(), request.getQuery());
+
+        Run run = run(runtime, request, CancellationToken.NONE, budget,
+                (nodeId, status, detail) -> log.debug("Workflow node {} {}: {}", nodeId, status, detail));
+        NodeResult output = run.outputResult();
+        String answer = output.status() == Status.COMPLETED ? output.output() : run.partialAnswer(output);
+
+        List<AgentExecutionResponse.ThoughtStep> thoughtSteps = new ArrayList<>();
+        for (WorkflowNode node : run.graph.nodes()) {
+            NodeResult result = run.results.get(node.id()).join();
+            thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
+                    .step(thoughtSteps.size() + 1)
+                    .thought(node.id())
+                    .action(node.type().name().toLowerCase(Locale.ROOT))
+                    .observation(switch (result.status()) {
+                        case COMPLETED -> result.output();
+                        case SKIPPED -> "Skipped";
+                        case FAILED -> "Error: " + describe(result);
+                    })
+                    .build());
+        }
+        List<AgentExecutionResponse.ToolCallResult> toolCalls = run.graph.nodes().stream()
+                .map(node -> run.toolCalls.get(node.id()))
+                .filter(Objects::nonNull)
+                .toList();
+
+        return AgentExecutionResponse.builder()
+                .answer(answer)
+                .thoughtSteps(thoughtSteps)
+                .toolCalls(toolCalls)
+                .isComplete(output.status() == Status.COMPLETED)
+                .build();
+    }
+
+    @Override
+    public void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                              CancellationToken cancellationToken, ExecutionBudget budget,
+                              StreamingChatCallback callback) {
+        log.info("Executing custom workflow stream for agent: {}, query: {}", runtime.agentId(), request.getQuery());
+
+        try {
+            Run run = run(runtime, request, cancellationToken, budget, callback::onWorkflowNode);
+            NodeResult output = run.outputResult();
+            if (output.status() == Status.FAILED && output.error() instanceof ExecutionBudgetExceededException) {
+                String answer = run.partialAnswer(output);
+                if (!answer.isEmpty()) {
+                    callback.onContent(answer);
+                }
+                callback.onComplete();
+                return;
+            }
+            if (output.status() == Status.FAILED) {
+                callback.onError(new BusinessException("Workflow node " + output.origin() + " failed: "
+                        + describe(output)));
+                return;
+            }
+            if (!output.output().isEmpty()) {
+                callback.onContent(output.output());
+            }
+            callback.onComplete();
+        } catch (Exception e) {
+            log.error("Error in custom workflow stream execution", e);
+            callback.onError(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Run run(AgentRuntime runtime, AgentExecutionRequest request, CancellationToken cancellationToken,
+                    ExecutionBudget budget, NodeListener listener) {
+        if (request.getQuery() == null || request.getQuery().isBlank()) {
+            throw new BusinessException("Query is required");
+        }
+        WorkflowGraph graph = graphs.get(runtime,
+                key -> WorkflowGraph.parse(key.agent().getWorkflowConfig(), objectMapper));
+        Run run = new Run(graph, runtime, request, cancellationToken, budget, listener);
+        run.start();
+        return run;
+    }
+
+    private static String describe(NodeResult result) {
+        Exception error = result.error();
+        return error != null && error.getMessage() != null ? error.getMessage() : "unknown error";
+    }
+
+    private static String preview(String output) {
+        return output.length() > PREVIEW_CHARS ? output.substring(0, PREVIEW_CHARS) + "..." : output;
+    }
+
+    /**
+     * 一次工作流执行的状态
+     */
+    private final class Run {
+
+        private final WorkflowGraph graph;
+        private final AgentRuntime runtime;
+        private final AgentExecutionRequest request;
+        private final CancellationToken cancellationToken;
+        private final ExecutionBudget budget;
+        private final NodeListener listener;
+        private final ReentrantLock listenerLock = new ReentrantLock();
+        private final Map<String, String> variables = new ConcurrentHashMap<>();
+        private final Map<String, CompletableFuture<NodeResult>> results = new ConcurrentHashMap<>();
+        private final Map<String, AgentExecutionResponse.ToolCallResult> toolCalls = new ConcurrentHashMap<>();
+        private final Map<String, CompletableFuture<String>> memo = new ConcurrentHashMap<>();
+        /**
+         * 未选中的分支上的节点
+         */
+        private final Set<String> skipped = ConcurrentHashMap.newKeySet();
+
+        Run(WorkflowGraph graph, AgentRuntime runtime, AgentExecutionRequest request,
+            CancellationToken cancellationToken, ExecutionBudget budget, NodeListener listener) {
+            this.graph = graph;
+            this.runtime = runtime;
+            this.request = request;
+            this.cancellationToken = cancellationToken;
+            this.budget = budget;
+            this.listener = listener;
+            variables.put("query", request.getQuery());
+            variables.put("summary", request.getConversationSummary() != null ? request.getConversationSummary() : "");
+            variables.put("history", history(request.getHistory()));
+        }
+
+        /**
+         * 按拓扑顺序为每个节点安排执行：上游全部完成后提交到虚拟线程
+         */
+        void start() {
+            for (WorkflowNode node : graph.nodes()) {
+                CompletableFuture<?>[] upstream = node.dependsOn().stream()
+                        .map(results::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                results.put(node.id(), CompletableFuture.allOf(upstream)
+                        .thenApplyAsync(ignored -> execute(node), executor)
+                        .exceptionally(e -> new NodeResult(Status.FAILED, "", unwrap(e), node.id())));
+            }
+        }
+
+        /**
+         * 等待输出节点完成，容量不足和取消按原异常抛出
+         */
+        NodeResult outputResult() {
+            NodeResult output = results.get(graph.output().id()).join();
+            if (output.status() == Status.FAILED) {
+                if (output.error() instanceof LlmOverloadedException overloaded) {
+                    throw overloaded;
+                }
+                if (output.error() instanceof CancellationException cancelled) {
+                    throw cancelled;
+                }
+            }
+            return output;
+        }
+
+        /**
+         * 输出节点因预算用尽失败时，以最后完成的非分支节点的输出作为部分回答
+         */
+        String partialAnswer(NodeResult output) {
+            if (!(output.error() instanceof ExecutionBudgetExceededException)) {
+                return "";
+            }
+            String answer = "";
+            for (WorkflowNode node : graph.nodes()) {
+                NodeResult result = results.get(node.id()).join();
+                if (node.type() != WorkflowNodeType.BRANCH && result.status() == Status.COMPLETED
+                        && !result.output().isBlank()) {
+                    answer = result.output();
+                }
+            }
+            log.warn("Workflow of agent {} ran out of budget at node {}, partial answer: {}",
+                    runtime.agentId(), output.origin(), !answer.isEmpty());
+            return answer;
+        }
+
+        private NodeResult execute(WorkflowNode node) {
+            List<NodeResult> upstream = node.dependsOn().stream().map(id -> results.get(id).join()).toList();
+            for (NodeResult result : upstream) {
+                if (result.status() == Status.FAILED) {
+                    notify(node, "failed", "upstream node " + result.origin() + " failed");
+                    return new NodeResult(Status.FAILED, "", result.error(), result.origin());
+                }
+            }
+            if (skipped.contains(node.id())
+                    || !upstream.isEmpty() && upstream.stream().allMatch(result -> result.status() == Status.SKIPPED)) {
+                return skip(node);
+            }
+            if (cancellationToken.isCancelled()) {
+                return new NodeResult(Status.FAILED, "", new CancellationException("Agent execution cancelled"),
+                        node.id());
+            }
+
+            notify(node, "running", null);
+            try {
+                if (node.type() != WorkflowNodeType.TRANSFORM && node.type() != WorkflowNodeType.BRANCH) {
+                    budget.check("workflow node " + node.id());
+                }
+                String output = switch (node.type()) {
+                    case RETRIEVAL -> retrieve(node);
+                    case LLM -> generate(node);
+                    case TOOL -> callTool(node);
+                    case TRANSFORM -> transform(node);
+                    case BRANCH -> branch(node);
+                };
+                variables.put(node.id(), output);
+                notify(node, "completed", preview(output));
+                return new NodeResult(Status.COMPLETED, output, null, node.id());
+            } catch (Exception e) {
+                log.warn("Workflow node {} of agent {} failed: {}", node.id(), runtime.agentId(), e.getMessage());
+                notify(node, "failed", e.getMessage());
+                return new NodeResult(Status.FAILED, "", e, node.id());
+            }
+        }
+
+        private NodeResult skip(WorkflowNode node) {
+            variables.put(node.id(), "");
+            if (node.type() == WorkflowNodeType.BRANCH) {
+                // 分支本身被跳过时两条路径都不执行
+                targets(node, "then").forEach(skipped::add);
+                targets(node, "else").forEach(skipped::add);
+            }
+            notify(node, "skipped", null);
+            return new NodeResult(Status.SKIPPED, "", null, node.id());
+        }
+
+        private String retrieve(WorkflowNode node) throws Exception {
+            String query = render(node.text("query", "{{query}}"));
+            List<Long> knowledgeBaseIds = runtime.knowledgeBaseIds();
+            JsonNode requested = node.config().get("knowledgeBaseIds");
+            if (requested != null && requested.isArray()) {
+                // 只能检索 Agent 关联的知识库
+                Set<Long> subset = new HashSet<>();
+                requested.forEach(id -> subset.add(id.asLong()));
+                knowledgeBaseIds = knowledgeBaseIds.stream().filter(subset::contains).toList();
+            }
+            if (knowledgeBaseIds.isEmpty() || query.isBlank()) {
+                return "";
+            }
+            List<Long> kbIds = knowledgeBaseIds;
+            int topK = node.config().path("topK").asInt(5);
+            double scoreThreshold = node.config().path("scoreThreshold").asDouble(0.7);
+            return memoize(node, kbIds + "\n" + topK + "\n" + scoreThreshold + "\n" + query, () -> {
+                List<SourceDocument> documents = vectorSearchService.search(query, kbIds, topK, scoreThreshold,
+                        budget);
+                StringBuilder output = new StringBuilder();
+                for (int i = 0; i < documents.size(); i++) {
+                    if (i > 0) {
+                        output.append("\n\n");
+                    }
+                    output.append("[").append(i + 1).append("] ").append(documents.get(i).getContent());
+                }
+                return output.toString();
+            });
+        }
+
+        private String generate(WorkflowNode node) throws Exception {
+            String systemPrompt = node.config().hasNonNull("systemPrompt")
+                    ? render(node.text("systemPrompt", ""))
+                    : runtime.systemPrompt();
+            String prompt = render(node.text("prompt", "{{query}}"));
+            return memoize(node, systemPrompt + "\n" + prompt, () -> {
+                LlmResponse response = llmGenerationService.chat(List.of(
+                                Message.builder().role(MessageRole.SYSTEM).content(systemPrompt).build(),
+                                Message.builder().role(MessageRole.USER).content(prompt).build()),
+                        null, runtime.modelConfig(), request.getResponseCache(), budget);
+                return response.getContent() != null ? response.getContent() : "";
+            });
+        }
+
+        private String callTool(WorkflowNode node) throws Exception {
+            String name = node.text("tool", "");
+            AgentToolDispatcher.ResolvedTool resolved = runtime.tools().get(name);
+            if (resolved == null) {
+                resolved = runtime.tools().values().stream()
+                        .filter(tool -> name.equals(tool.tool().getToolName()))
+                        .findFirst()
+                        .orElseThrow(() -> new BusinessException("Tool is not bound to the agent: " + name));
+            }
+            JsonNode template = node.config().get("arguments");
+            JsonNode arguments = template != null
+                    ? WorkflowTemplate.render(template, variables)
+                    : objectMapper.createObjectNode();
+            String argumentsJson = objectMapper.writeValueAsString(arguments);
+            String functionName = resolved.functionName();
+            String toolName = resolved.tool().getToolName();
+
+            boolean success = false;
+            String result = null;
+            try {
+                result = memoize(node, functionName + "\n" + argumentsJson, () -> {
+                    LlmToolCall call = LlmToolCall.builder()
+                            .id(node.id())
+                            .function(LlmToolCall.Function.builder()
+                                    .name(functionName)
+                                    .arguments(argumentsJson)
+                                    .build())
+                            .build();
+                    AgentToolDispatcher.Observation observation = toolDispatcher.dispatch(List.of(call),
+                            runtime.tools(), cancellationToken, ignored -> { },
+                            progress -> notify(node, "progress", progress.message()), budget).get(0);
+                    if (!observation.success()) {
+                        // 调用的截止时间按剩余预算收紧，预算用尽导致的失败按预算用尽处理
+                        throw budget.isExhausted()
+                                ? new ExecutionBudgetExceededException(observation.result())
+                                : new BusinessException(observation.result());
+                    }
+                    return observation.result();
+                });
+                success = true;
+                return result;
+            } catch (Exception e) {
+                result = e.getMessage();
+                throw e;
+            } finally {
+                toolCalls.put(node.id(), AgentExecutionResponse.ToolCallResult.builder()
+                        .toolName(toolName)
+                        .arguments(argumentsJson)
+                        .result(result)
+                        .success(success)
+                        .build());
+            }
+        }
+
+        private String transform(WorkflowNode node) throws Exception {
+            String output = render(node.text("template", ""));
+            String pointer = node.text("jsonPointer", null);
+            if (pointer == null) {
+                return output;
+            }
+            JsonNode value = objectMapper.readTree(output).at(pointer);
+            if (value.isMissingNode() || value.isNull()) {
+                return "";
+            }
+            return value.isValueNode() ? value.asText() : value.toString();
+        }
+
+        private String branch(WorkflowNode node) {
+            JsonNode condition = node.config().path("condition");
+            String input = render(condition.path("input").asText(""));
+            String value = render(condition.path("value").asText(""));
+            boolean matched = switch (condition.path("operator").asText("notEmpty")) {
+                case "empty" -> input.isBlank();
+                case "equals" -> input.trim().equals(value.trim());
+                case "contains" -> input.contains(value);
+                case "matches" -> Pattern.compile(value).matcher(input).find();
+                default -> !input.isBlank();
+            };
+            // 未选中路径上的节点在分支完成前登记，它们依赖分支节点，此时尚未开始
+            targets(node, matched ? "else" : "then").forEach(skipped::add);
+            return String.valueOf(matched);
+        }
+
+        private List<String> targets(WorkflowNode node, String field) {
+            List<String> targets = new ArrayList<>();
+            node.config().path(field).forEach(target -> targets.add(target.asText()));
+            return targets;
+        }
+
+        /**
+         * 同一次执行中输入相同的节点共享一次执行的结果
+         */
+        private String memoize(WorkflowNode node, String input, Callable<String> loader) throws Exception {
+            String key = node.type() + "\n" + input;
+            CompletableFuture<String> created = new CompletableFuture<>();
+            CompletableFuture<String> existing = memo.putIfAbsent(key, created);
+            if (existing != null) {
+                log.debug("Workflow node {} reuses the output of an identical node", node.id());
+                try {
+                    return existing.join();
+                } catch (CompletionException e) {
+                    throw unwrap(e);
+                }
+            }
+            try {
+                String output = loader.call();
+                created.complete(output);
+                return output;
+            } catch (Exception e) {
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        private String render(String template) {
+            return WorkflowTemplate.render(template, variables);
+        }
+
+        private void notify(WorkflowNode node, String status, String detail) {
+            listenerLock.lock();
+            try {
+                listener.onNode(node.id(), status, detail);
+            } catch (Exception e) {
+                log.warn("Workflow node listener failed", e);
+            } finally {
+                listenerLock.unlock();
+            }
+        }
+    }
+
+    private static String history(List<Message> history) {
+        if (history == null || history.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Message message : history) {
+            text.append(message.getRole().getValue()).append(": ").append(message.getContent()).append("\n");
+        }
+        return text.toString();
+    }
+
+    private static Exception unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception exception ? exception : new IllegalStateException(cause);
+    }
+}
@@ -3,17 +3,30 @@ package com.mydotey.ai.studio.service.agent;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
 import com.mydotey.ai.studio.dto.*;
-import com.mydotey.ai.studio.entity.Agent;
 import com.mydotey.ai.studio.service.*;
 import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -23,199 +36,332 @@ public class ReActWorkflowExecutor implements WorkflowExecutor {
     private final RagService ragService;
     private final LlmGenerationService llmGenerationService;
     private final McpRpcClient mcpRpcClient;
-    private final AgentService agentService;
-    private final ModelConfigService modelConfigService;
     private final StreamingLlmService streamingLlmService;
     private final ObjectMapper objectMapper;
+    private final AgentToolDispatcher toolDispatcher;
+    private final AgentKnowledgeRetriever knowledgeRetriever;
 
-    @Override
-    public AgentExecutionResponse execute(Agent agent, AgentExecutionRequest request, Long userId) {
-        log.info("Executing ReAct workflow for agent: {}, query: {}", agent.getId(), request.getQuery());
+    private final ExecutorService executor =
+            LlmCallContext.propagating(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-react-", 0).factory()));
 
+    @Override
+    public AgentExecutionResponse execute(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                                          ExecutionBudget budget) {
         // Input validation
-        if (agent == null || request == null) {
+        if (runtime == null || request == null) {
             throw new BusinessException("Agent and request are required");
         }
+        log.info("Executing ReAct workflow for agent: {}, query: {}", runtime.agentId(), request.getQuery());
         if (request.getQuery() == null || request.getQuery().isBlank()) {
             throw new BusinessException("Query is required");
         }
 
-        List<Long> kbIds = agentService.getAgentKnowledgeBaseIds(agent.getId());
-        List<Long> toolIds = agentService.getAgentToolIds(agent.getId());
-
         List<AgentExecutionResponse.ThoughtStep> thoughtSteps = new ArrayList<>();
         List<AgentExecutionResponse.ToolCallResult> toolCallResults = new ArrayList<>();
+        // 预检索与构建提示词同时开始
+        AgentKnowledgeRetriever.Retrieval retrieval = knowledgeRetriever.start(runtime, request.getQuery(), budget);
+        String knowledge = retrieval != null ? retrieval.awaitContext() : null;
+        LoopResult result = runLoop(runtime, request, retrieval, knowledge, false, CancellationToken.NONE, budget,
+                progress -> log.debug("Tool {} progress: {}", progress.toolName(), progress.message()),
+                thoughtSteps, toolCallResults);
 
-        StringBuilder finalAnswer = new StringBuilder();
-        boolean isComplete = false;
-        int iteration = 0;
+        return AgentExecutionResponse.builder()
+            .answer(result.answer())
+            .thoughtSteps(thoughtSteps)
+            .toolCalls(toolCallResults)
+            .isComplete(result.complete())
+            .build();
+    }
 
-        // Null safety for maxIterations with default value of 10
-        int maxIterations = agent.getMaxIterations() != null ? agent.getMaxIterations() : 10;
+    /**
+     * ReAct 循环的结果
+     *
+     * @param finalStep 由调用方流式生成最后一步时，最后一步的对话消息；否则为 null
+     */
+    private record LoopResult(String answer, boolean complete, List<Message> finalStep) {
 
-        // 获取 Agent 的模型配置
-        ModelConfigDto agentModelConfig = null;
-        log.info("Agent llmModelConfigId: {}", agent.getLlmModelConfigId());
-        if (agent.getLlmModelConfigId() != null) {
-            try {
-                agentModelConfig = modelConfigService.getConfigById(agent.getLlmModelConfigId());
-                log.info("Using agent model config: {}, model: {}, endpoint: {}",
-                        agentModelConfig.getName(), agentModelConfig.getModel(), agentModelConfig.getEndpoint());
-            } catch (Exception e) {
-                log.warn("Failed to get agent model config, using default: {}", e.getMessage());
-            }
+        LoopResult(String answer, boolean complete) {
+            this(answer, complete, null);
+        }
+    }
+
+    /**
+     * ReAct 循环：模型以原生 function calling 发起工具调用，同一步的调用并发执行，
+     * 结果作为 tool 消息追加到对话中进入下一步，直到模型直接作答。
+     * 最后一步不再提供工具，要求模型根据已有的结果作答。工具执行期间的进度通过 onProgress 回传。
+     * 系统提示词、工具和函数定义取自运行时快照，每次执行不再重新生成。
+     * 每一步的 LLM 和工具调用按剩余预算收紧超时和 maxTokens；剩余预算不足预留值时提前进入最后一步，
+     * 预算用尽时以已有结果作为部分回答。LLM 调用失败时，流式执行或第一步就失败时抛出，之后的步骤失败时以空回答结束。
+     * 知识库的预检索结果已就绪时放入提示词，未就绪时以检索工具提供给模型
+     *
+     * @param retrieval 知识库预检索，Agent 没有知识库时为 null
+     * @param knowledge 已就绪的预检索结果，未就绪时为 null
+     * @param streamFinalStep 为 true 时不提供工具的一步不在循环中生成，返回该步的对话消息由调用方流式生成
+     */
+    private LoopResult runLoop(AgentRuntime runtime, AgentExecutionRequest request,
+                               AgentKnowledgeRetriever.Retrieval retrieval, String knowledge,
+                               boolean streamFinalStep,
+                               CancellationToken cancellationToken, ExecutionBudget budget,
+                               Consumer<AgentToolDispatcher.Progress> onProgress,
+                               List<AgentExecutionResponse.ThoughtStep> thoughtSteps,
+                               List<AgentExecutionResponse.ToolCallResult> toolCallResults) {
+        List<Message> messages = new ArrayList<>();
+        messages.add(Message.builder().role(MessageRole.SYSTEM).content(runtime.systemPrompt()).build());
+        messages.add(Message.builder().role(MessageRole.USER)
+                .content(buildReActUserPrompt(request, knowledge))
+                .build());
+        Map<String, AgentToolDispatcher.ResolvedTool> tools = runtime.tools();
+        List<LlmTool> definitions = runtime.toolDefinitions();
+        if (retrieval != null && knowledge == null) {
+            definitions = new ArrayList<>(definitions);
+            definitions.add(retrieval.toolDefinition());
         }
+        ModelConfigDto modelConfig = runtime.modelConfig();
+        int maxIterations = runtime.maxIterations();
 
-        while (!isComplete && iteration < maxIterations) {
-            iteration++;
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            if (cancellationToken.isCancelled()) {
+                throw new CancellationException("Agent execution cancelled");
+            }
             log.info("ReAct iteration: {}", iteration);
 
+            boolean lastStep = iteration == maxIterations || budget.isLow();
+            if (lastStep && iteration < maxIterations) {
+                log.info("ReAct budget is low at iteration {}, asking for the final answer", iteration);
+            }
+            List<LlmTool> offered = !lastStep && !definitions.isEmpty() ? definitions : null;
+            if (offered == null && streamFinalStep) {
+                return new LoopResult("", false, messages);
+            }
+            LlmResponse llmResponse;
             try {
-                // 1. 构建 ReAct 工作流的用户问题（包含查询和上下文）
-                String userQuestion = buildReActUserPrompt(request.getQuery(), toolIds);
-
-                // 2. 获取 Agent 的系统提示词
-                String systemPrompt = getSystemPrompt(agent);
-
-                // 3. LLM 推理 - 使用 Agent 的模型配置或全局配置
-                LlmResponse llmResponse;
-                if (agentModelConfig != null) {
-                    log.info("DEBUG: Using Agent model config method");
-                    // 使用 Agent 的模型配置
-                    llmResponse = llmGenerationService.generate(
-                            systemPrompt,
-                            userQuestion,
-                            agentModelConfig
-                    );
-                } else {
-                    log.info("DEBUG: Using global config method");
-                    // 使用全局配置
-                    llmResponse = llmGenerationService.generate(
-                            systemPrompt,
-                            userQuestion,
-                            null,
-                            1000
-                    );
+                llmResponse = llmGenerationService.chat(messages, offered, modelConfig, request.getResponseCache(),
+                        budget);
+            } catch (LlmOverloadedException e) {
+                // 容量不足时由调用方返回 429，不当作推理失败
+                throw e;
+            } catch (ExecutionBudgetExceededException e) {
+                return partial(iteration, e, messages, thoughtSteps, toolCallResults);
+            } catch (RuntimeException e) {
+                if (streamFinalStep || iteration == 1) {
+                    // 流式执行或还没有任何一步成功时，错误交给调用方（流式回调收到 onError），不当作空回答正常结束
+                    throw e;
                 }
-
-                // 3. 解析 LLM 响应
-                if (llmResponse.getContent() != null && !llmResponse.getContent().isBlank()) {
-                    finalAnswer.append(llmResponse.getContent());
-                    isComplete = llmResponse.getFinishReason() != null;
-
-                    thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
-                        .step(iteration)
-                        .thought("Providing final answer")
-                        .observation(llmResponse.getContent())
-                        .build());
-                } else {
-                    // No content generated, break to avoid infinite loop
-                    break;
-                }
-
-            } catch (Exception e) {
                 log.error("Error in ReAct iteration: {}", iteration, e);
                 thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
                         .step(iteration)
                         .thought("Error occurred")
                         .observation("Error: " + e.getMessage())
                         .build());
-                break;
+                return new LoopResult("", false);
             }
+
+            List<LlmToolCall> toolCalls = llmResponse.getToolCalls();
+            if (offered == null || toolCalls == null || toolCalls.isEmpty()) {
+                String content = llmResponse.getContent();
+                if (content == null || content.isBlank()) {
+                    // No content generated, stop to avoid infinite loop
+                    return new LoopResult("", false);
+                }
+                thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
+                        .step(iteration)
+                        .thought("Providing final answer")
+                        .observation(content)
+                        .build());
+                return new LoopResult(content, llmResponse.getFinishReason() != null);
+            }
+
+            // 执行本步的工具调用，结果按调用顺序作为 tool 消息反馈给模型
+            messages.add(Message.builder()
+                    .role(MessageRole.ASSISTANT)
+                    .content(llmResponse.getContent())
+                    .toolCalls(toolCalls)
+                    .build());
+            int step = iteration;
+            List<AgentToolDispatcher.Observation> observations = observe(toolCalls, tools, retrieval,
+                    cancellationToken, observation -> log.info("ReAct step {} tool {} finished in {}ms, success: {}",
+                            step, observation.toolName(), observation.elapsedMillis(), observation.success()),
+                    onProgress, budget);
+
+            StringBuilder observationText = new StringBuilder();
+            for (AgentToolDispatcher.Observation observation : observations) {
+                messages.add(Message.builder()
+                        .role(MessageRole.TOOL)
+                        .toolCallId(observation.call().getId())
+                        .content(observation.result())
+                        .build());
+                toolCallResults.add(AgentExecutionResponse.ToolCallResult.builder()
+                        .toolName(observation.toolName())
+                        .arguments(observation.call().getFunction().getArguments())
+                        .result(observation.result())
+                        .success(observation.success())
+                        .build());
+                if (!observationText.isEmpty()) {
+                    observationText.append("\n");
+                }
+                observationText.append(observation.toolName()).append(": ").append(observation.result());
+            }
+            thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
+                    .step(iteration)
+                    .thought(llmResponse.getContent() != null && !llmResponse.getContent().isBlank()
+                            ? llmResponse.getContent()
+                            : "Calling tools")
+                    .action(observations.stream()
+                            .map(AgentToolDispatcher.Observation::toolName)
+                            .collect(Collectors.joining(", ")))
+                    .observation(observationText.toString())
+                    .build());
         }
+        return new LoopResult("", false);
+    }
 
-        return AgentExecutionResponse.builder()
-            .answer(finalAnswer.toString())
-            .thoughtSteps(thoughtSteps)
-            .toolCalls(toolCallResults)
-            .isComplete(isComplete)
-            .build();
+    /**
+     * 执行一步中的工具调用：知识库检索在本地执行（与原问题相同时复用预检索），其余分发给 MCP 工具，
+     * 两者同时进行，结果按调用顺序返回
+     */
+    private List<AgentToolDispatcher.Observation> observe(List<LlmToolCall> toolCalls,
+                                                          Map<String, AgentToolDispatcher.ResolvedTool> tools,
+                                                          AgentKnowledgeRetriever.Retrieval retrieval,
+                                                          CancellationToken cancellationToken,
+                                                          Consumer<AgentToolDispatcher.Observation> onObservation,
+                                                          Consumer<AgentToolDispatcher.Progress> onProgress,
+                                                          ExecutionBudget budget) {
+        List<CompletableFuture<AgentToolDispatcher.Observation>> searches = new ArrayList<>();
+        List<LlmToolCall> mcpCalls = new ArrayList<>();
+        for (LlmToolCall call : toolCalls) {
+            if (retrieval != null && retrieval.handles(call)) {
+                searches.add(retrieval.call(call).whenComplete((observation, e) -> {
+                    if (observation != null) {
+                        onObservation.accept(observation);
+                    }
+                }));
+            } else {
+                mcpCalls.add(call);
+            }
+        }
+        List<AgentToolDispatcher.Observation> dispatched = mcpCalls.isEmpty()
+                ? List.of()
+                : toolDispatcher.dispatch(mcpCalls, tools, cancellationToken, onObservation, onProgress, budget);
+
+        Iterator<CompletableFuture<AgentToolDispatcher.Observation>> searched = searches.iterator();
+        Iterator<AgentToolDispatcher.Observation> called = dispatched.iterator();
+        List<AgentToolDispatcher.Observation> observations = new ArrayList<>(toolCalls.size());
+        for (LlmToolCall call : toolCalls) {
+            observations.add(retrieval != null && retrieval.handles(call) ? searched.next().join() : called.next());
+        }
+        return observations;
     }
 
     /**
-     * 获取 Agent 的系统提示词
+     * 预算用尽时以模型最近的输出和已获得的工具结果作为部分回答，没有可用的结果时回答为空
      */
-    private String getSystemPrompt(Agent agent) {
-        String systemPrompt = agent.getSystemPrompt();
-        if (systemPrompt != null && !systemPrompt.isBlank()) {
-            return systemPrompt;
+    private LoopResult partial(int iteration, ExecutionBudgetExceededException e, List<Message> messages,
+                               List<AgentExecutionResponse.ThoughtStep> thoughtSteps,
+                               List<AgentExecutionResponse.ToolCallResult> toolCallResults) {
+        log.warn("ReAct execution budget exhausted at iteration {}: {}", iteration, e.getMessage());
+        thoughtSteps.add(AgentExecutionResponse.ThoughtStep.builder()
+                .step(iteration)
+                .thought("Execution budget exhausted")
+                .observation(e.getMessage())
+                .build());
+
+        String lastThought = null;
+        for (Message message : messages) {
+            if (message.getRole() == MessageRole.ASSISTANT
+                    && message.getContent() != null && !message.getContent().isBlank()) {
+                lastThought = message.getContent();
+            }
+        }
+        List<AgentExecutionResponse.ToolCallResult> succeeded = toolCallResults.stream()
+                .filter(result -> Boolean.TRUE.equals(result.getSuccess()))
+                .toList();
+        if (lastThought == null && succeeded.isEmpty()) {
+            return new LoopResult("", false);
+        }
+
+        StringBuilder answer = new StringBuilder(
+                "The answer is incomplete because the execution budget ran out. Information gathered so far:\n");
+        if (lastThought != null) {
+            answer.append(lastThought).append("\n");
         }
-        return "You are a helpful assistant.";
+        for (AgentExecutionResponse.ToolCallResult result : succeeded) {
+            answer.append("- ").append(result.getToolName()).append(": ").append(result.getResult()).append("\n");
+        }
+        return new LoopResult(answer.toString().trim(), false);
     }
 
     /**
-     * 构建 ReAct 工作流的用户提示词（包含查询和工具信息）
+     * 构建 ReAct 工作流的用户提示词（包含对话记忆和查询），工具以 function calling 的方式单独提供
      */
-    private String buildReActUserPrompt(String query, List<Long> toolIds) {
+    private String buildReActUserPrompt(AgentExecutionRequest request, String knowledge) {
         StringBuilder prompt = new StringBuilder();
 
-        // 添加当前问题
-        prompt.append("Current question: ").append(query).append("\n\n");
+        // 添加知识库检索结果
+        if (knowledge != null) {
+            prompt.append("Relevant knowledge base content:\n").append(knowledge).append("\n\n");
+        }
 
-        // 如果有工具可用，添加工具列表到提示词
-        if (toolIds != null && !toolIds.isEmpty()) {
-            prompt.append("You have access to following tools:\n");
-            for (Long toolId : toolIds) {
-                prompt.append("- Tool ID: ").append(toolId).append("\n");
+        // 添加对话记忆
+        if (request.getConversationSummary() != null && !request.getConversationSummary().isBlank()) {
+            prompt.append("Conversation summary: ").append(request.getConversationSummary()).append("\n\n");
+        }
+        if (request.getHistory() != null && !request.getHistory().isEmpty()) {
+            prompt.append("Recent conversation:\n");
+            for (Message message : request.getHistory()) {
+                prompt.append(message.getRole().getValue()).append(": ").append(message.getContent()).append("\n");
             }
-            prompt.append("\nUse these tools when needed.\n");
+            prompt.append("\n");
         }
 
+        // 添加当前问题
+        prompt.append("Current question: ").append(request.getQuery()).append("\n\n");
+
         prompt.append("Please provide a helpful answer.");
         return prompt.toString();
     }
 
     /**
      * 流式执行 Agent
+     * <p>
+     * 没有工具且知识库检索已就绪时直接流式生成；有工具时在独立的虚拟线程上执行工具调用循环，不占用请求线程，
+     * 不再提供工具的最后一步流式生成。截止时间到达时中断生成，已输出的内容作为部分回答正常结束
      */
     @Override
-    public void executeStream(Agent agent, AgentExecutionRequest request, Long userId, StreamingChatCallback callback) {
-        log.info("Executing ReAct workflow stream for agent: {}, query: {}", agent.getId(), request.getQuery());
+    public void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                              CancellationToken cancellationToken, ExecutionBudget budget,
+                              StreamingChatCallback callback) {
+        log.info("Executing ReAct workflow stream for agent: {}, query: {}", runtime.agentId(), request.getQuery());
 
         try {
-            // 1. 获取 Agent 的系统提示词
-            String systemPrompt = getSystemPrompt(agent);
-
-            // 2. 构建用户问题
-            List<Long> toolIds = agentService.getAgentToolIds(agent.getId());
-            String userQuestion = buildReActUserPrompt(request.getQuery(), toolIds);
-
-            // 3. 获取 Agent 的模型配置
-            ModelConfigDto agentModelConfig = null;
-            if (agent.getLlmModelConfigId() != null) {
-                try {
-                    agentModelConfig = modelConfigService.getConfigById(agent.getLlmModelConfigId());
-                    log.info("Using agent model config: {}, model: {}, endpoint: {}",
-                            agentModelConfig.getName(), agentModelConfig.getModel(), agentModelConfig.getEndpoint());
-                } catch (Exception e) {
-                    log.warn("Failed to get agent model config, using default: {}", e.getMessage());
-                }
+            // 预检索与构建提示词同时开始
+            AgentKnowledgeRetriever.Retrieval retrieval = knowledgeRetriever.start(runtime, request.getQuery(), budget);
+            String knowledge = retrieval != null ? retrieval.awaitContext() : null;
+            ModelConfigDto agentModelConfig = runtime.modelConfig();
+            if (!runtime.tools().isEmpty() || retrieval != null && knowledge == null) {
+                // 有工具（含未就绪的知识库检索）时先完成工具调用循环（期间流式回传工具进度），再流式输出最终回答
+                executor.execute(() -> streamLoop(runtime, request, retrieval, knowledge, cancellationToken, budget,
+                        callback));
+                return;
             }
 
-            // 4. 流式生成回答
+            String systemPrompt = runtime.systemPrompt();
+            String userQuestion = buildReActUserPrompt(request, knowledge);
+            budget.check("LLM stream");
+            CancellationToken streamToken = budget.cancelAtDeadline(cancellationToken);
+            StreamingLlmService.StreamCallback streamCallback = streamCallback(cancellationToken, budget, callback);
+
+            // 没有工具时直接流式生成回答
             if (agentModelConfig != null) {
                 // 使用 Agent 的模型配置进行流式生成
                 streamingLlmService.streamGenerateWithConfig(
                         systemPrompt,
                         userQuestion,
                         agentModelConfig,
-                        new StreamingLlmService.StreamCallback() {
-                            @Override
-                            public void onContent(String content) {
-                                callback.onContent(content);
-                            }
-
-                            @Override
-                            public void onComplete() {
-                                callback.onComplete();
-                            }
-
-                            @Override
-                            public void onError(Exception e) {
-                                log.error("Error in stream generation", e);
-                                callback.onError(e);
-                            }
-                        }
+                        request.getResponseCache(),
+                        budget,
+                        streamToken,
+                        streamCallback
                 );
             } else {
                 // 使用全局配置进行流式生成
@@ -223,30 +369,86 @@ public class ReActWorkflowExecutor implements WorkflowExecutor {
                         systemPrompt,
                         userQuestion,
                         null,
-                        1000,
-                        new StreamingLlmService.StreamCallback() {
-                            @Override
-                            public void onContent(String content) {
-                                callback.onContent(content);
-                            }
-
-                            @Override
-                            public void onComplete() {
-                                callback.onComplete();
-                            }
-
-                            @Override
-                            public void onError(Exception e) {
-                                log.error("Error in stream generation", e);
-                                callback.onError(e);
-                            }
-                        }
+                        budget.maxTokens(1000),
+                        request.getResponseCache(),
+                        streamToken,
+                        streamCallback
                 );
             }
 
+        } catch (ExecutionBudgetExceededException e) {
+            log.warn("ReAct stream execution budget exhausted: {}", e.getMessage());
+            callback.onComplete();
+        } catch (Exception e) {
+            log.error("Error in ReAct stream execution", e);
+            callback.onError(e);
+        }
+    }
+
+    /**
+     * 执行工具调用循环，最后一步以循环中的对话消息流式生成回答；
+     * 模型在提供工具的一步直接作答时，回答作为一个片段输出
+     */
+    private void streamLoop(AgentRuntime runtime, AgentExecutionRequest request,
+                            AgentKnowledgeRetriever.Retrieval retrieval, String knowledge,
+                            CancellationToken cancellationToken, ExecutionBudget budget,
+                            StreamingChatCallback callback) {
+        try {
+            LoopResult result = runLoop(runtime, request, retrieval, knowledge, true, cancellationToken, budget,
+                    progress -> callback.onToolProgress(progress.toolName(), progress.message()),
+                    new ArrayList<>(), new ArrayList<>());
+            if (result.finalStep() != null) {
+                budget.check("LLM stream");
+                streamingLlmService.streamChat(result.finalStep(), runtime.modelConfig(), request.getResponseCache(),
+                        budget, budget.cancelAtDeadline(cancellationToken),
+                        streamCallback(cancellationToken, budget, callback));
+                return;
+            }
+            if (!result.answer().isEmpty()) {
+                callback.onContent(result.answer());
+            }
+            callback.onComplete();
+        } catch (ExecutionBudgetExceededException e) {
+            log.warn("ReAct stream execution budget exhausted: {}", e.getMessage());
+            callback.onComplete();
         } catch (Exception e) {
             log.error("Error in ReAct stream execution", e);
             callback.onError(e);
         }
     }
+
+    /**
+     * 转发流式生成的回调；截止时间到达而中断时以已输出的内容作为部分回答正常结束
+     */
+    private StreamingLlmService.StreamCallback streamCallback(CancellationToken cancellationToken,
+                                                              ExecutionBudget budget,
+                                                              StreamingChatCallback callback) {
+        return new StreamingLlmService.StreamCallback() {
+            @Override
+            public void onContent(String content) {
+                callback.onContent(content);
+            }
+
+            @Override
+            public void onComplete() {
+                callback.onComplete();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (e instanceof CancellationException && !cancellationToken.isCancelled() && budget.isExpired()) {
+                    log.warn("ReAct stream reached the execution deadline, ending with partial answer");
+                    callback.onComplete();
+                    return;
+                }
+                log.error("Error in stream generation", e);
+                callback.onError(e);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 }
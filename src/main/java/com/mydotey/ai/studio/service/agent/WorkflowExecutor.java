@@ -2,17 +2,43 @@ package com.mydotey.ai.studio.service.agent;
 
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
-import com.mydotey.ai.studio.entity.Agent;
 import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
 
 public interface WorkflowExecutor {
     /**
      * 执行 Agent（非流式）
      */
-    AgentExecutionResponse execute(Agent agent, AgentExecutionRequest request, Long userId);
+    default AgentExecutionResponse execute(AgentRuntime runtime, AgentExecutionRequest request, Long userId) {
+        return execute(runtime, request, userId, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内执行 Agent（非流式），预算用尽时以已有结果作为部分回答返回
+     */
+    AgentExecutionResponse execute(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                                   ExecutionBudget budget);
 
     /**
      * 流式执行 Agent
      */
-    void executeStream(Agent agent, AgentExecutionRequest request, Long userId, StreamingChatCallback callback);
+    default void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                               StreamingChatCallback callback) {
+        executeStream(runtime, request, userId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * 流式执行 Agent，取消令牌触发时中止进行中的生成
+     */
+    default void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                               CancellationToken cancellationToken, StreamingChatCallback callback) {
+        executeStream(runtime, request, userId, cancellationToken, ExecutionBudget.UNLIMITED, callback);
+    }
+
+    /**
+     * 在执行预算内流式执行 Agent，预算用尽时输出部分回答后正常结束
+     */
+    void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                       CancellationToken cancellationToken, ExecutionBudget budget, StreamingChatCallback callback);
 }
@@ -0,0 +1,211 @@
+package com.mydotey.ai.studio.service.agent.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.BusinessException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 自定义工作流的有向无环图
+ * <p>
+ * 由 Agent 的 workflowConfig 解析而来，格式如下：
+ * <pre>
+ * {
+ *   "nodes": [
+ *     {"id": "docs", "type": "retrieval", "query": "{{query}}", "topK": 5},
+ *     {"id": "weather", "type": "tool", "tool": "weather", "arguments": {"city": "{{query}}"}},
+ *     {"id": "answer", "type": "llm", "prompt": "Context: {{docs}}\nWeather: {{weather}}\n{{query}}"}
+ *   ],
+ *   "output": "answer"
+ * }
+ * </pre>
+ * 节点的上游由 dependsOn 和模板中引用的节点共同决定，分支节点的 then/else 中的节点依赖该分支节点。
+ * 解析时检查节点 ID、类型、引用和环，只保留输出节点及其上游，并按拓扑顺序排列
+ */
+public final class WorkflowGraph {
+
+    /**
+     * 模板中可直接引用的请求变量
+     */
+    public static final Set<String> REQUEST_VARIABLES = Set.of("query", "summary", "history");
+
+    /**
+     * 分支条件支持的运算符
+     */
+    public static final Set<String> BRANCH_OPERATORS = Set.of("empty", "notEmpty", "equals", "contains", "matches");
+
+    private static final Pattern NODE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final List<WorkflowNode> nodes;
+    private final WorkflowNode output;
+
+    private WorkflowGraph(List<WorkflowNode> nodes, WorkflowNode output) {
+        this.nodes = nodes;
+        this.output = output;
+    }
+
+    /**
+     * 按拓扑顺序排列的节点，上游总在下游之前
+     */
+    public List<WorkflowNode> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 输出节点，其结果作为 Agent 的回答
+     */
+    public WorkflowNode output() {
+        return output;
+    }
+
+    /**
+     * 解析并校验工作流定义
+     *
+     * @throws BusinessException 定义无效
+     */
+    public static WorkflowGraph parse(String json, ObjectMapper objectMapper) {
+        JsonNode root;
+        try {
+            root = json == null || json.isBlank() ? null : objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new BusinessException("Invalid workflow config: " + e.getMessage());
+        }
+        JsonNode definitions = root != null ? root.get("nodes") : null;
+        if (definitions == null || !definitions.isArray() || definitions.isEmpty()) {
+            throw new BusinessException("Invalid workflow config: nodes are required");
+        }
+
+        Map<String, JsonNode> configs = new LinkedHashMap<>();
+        Map<String, WorkflowNodeType> types = new HashMap<>();
+        for (JsonNode definition : definitions) {
+            String id = definition.path("id").asText("");
+            if (!NODE_ID.matcher(id).matches() || REQUEST_VARIABLES.contains(id)) {
+                throw new BusinessException("Invalid workflow config: invalid node id: " + id);
+            }
+            if (configs.putIfAbsent(id, definition) != null) {
+                throw new BusinessException("Invalid workflow config: duplicate node id: " + id);
+            }
+            try {
+                types.put(id, WorkflowNodeType.of(definition.path("type").asText("")));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("Invalid workflow config: unknown type of node " + id + ": "
+                        + definition.path("type").asText());
+            }
+        }
+
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        configs.keySet().forEach(id -> dependencies.put(id, new LinkedHashSet<>()));
+        configs.forEach((id, config) -> {
+            Set<String> upstream = dependencies.get(id);
+            for (JsonNode dependency : config.path("dependsOn")) {
+                upstream.add(requireNode(configs, id, dependency.asText()));
+            }
+            for (String reference : WorkflowTemplate.references(config)) {
+                if (!REQUEST_VARIABLES.contains(reference)) {
+                    upstream.add(requireNode(configs, id, reference));
+                }
+            }
+            if (types.get(id) == WorkflowNodeType.BRANCH) {
+                if (!config.has("condition")) {
+                    throw new BusinessException("Invalid workflow config: condition is required for branch " + id);
+                }
+                String operator = config.path("condition").path("operator").asText("notEmpty");
+                if (!BRANCH_OPERATORS.contains(operator)) {
+                    throw new BusinessException("Invalid workflow config: unknown operator of branch " + id + ": "
+                            + operator);
+                }
+                for (String field : List.of("then", "else")) {
+                    for (JsonNode target : config.path(field)) {
+                        dependencies.get(requireNode(configs, id, target.asText())).add(id);
+                    }
+                }
+            }
+        });
+
+        String outputId = root.path("output").asText(null);
+        if (outputId == null) {
+            outputId = new ArrayList<>(configs.keySet()).get(configs.size() - 1);
+        }
+        if (!configs.containsKey(outputId)) {
+            throw new BusinessException("Invalid workflow config: unknown output node: " + outputId);
+        }
+
+        List<String> order = sort(dependencies, required(dependencies, outputId));
+        Map<String, WorkflowNode> nodes = new LinkedHashMap<>();
+        for (String id : order) {
+            nodes.put(id, new WorkflowNode(id, types.get(id), List.copyOf(dependencies.get(id)), configs.get(id)));
+        }
+        return new WorkflowGraph(List.copyOf(nodes.values()), nodes.get(outputId));
+    }
+
+    private static String requireNode(Map<String, JsonNode> configs, String id, String reference) {
+        if (!configs.containsKey(reference)) {
+            throw new BusinessException("Invalid workflow config: node " + id + " references unknown node: "
+                    + reference);
+        }
+        if (reference.equals(id)) {
+            throw new BusinessException("Invalid workflow config: node " + id + " references itself");
+        }
+        return reference;
+    }
+
+    /**
+     * 输出节点及其所有上游
+     */
+    private static Set<String> required(Map<String, Set<String>> dependencies, String outputId) {
+        Set<String> required = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(outputId));
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (required.add(id)) {
+                pending.addAll(dependencies.get(id));
+            }
+        }
+        return required;
+    }
+
+    /**
+     * 拓扑排序，同一层的节点保持定义顺序
+     */
+    private static List<String> sort(Map<String, Set<String>> dependencies, Set<String> required) {
+        Map<String, Integer> remaining = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+            if (required.contains(entry.getKey())) {
+                remaining.put(entry.getKey(), (int) entry.getValue().stream().filter(required::contains).count());
+            }
+        }
+        List<String> order = new ArrayList<>(remaining.size());
+        Deque<String> ready = new ArrayDeque<>();
+        remaining.forEach((id, count) -> {
+            if (count == 0) {
+                ready.add(id);
+            }
+        });
+        while (!ready.isEmpty()) {
+            String id = ready.poll();
+            order.add(id);
+            for (Map.Entry<String, Integer> downstream : remaining.entrySet()) {
+                if (downstream.getValue() > 0 && dependencies.get(downstream.getKey()).contains(id)) {
+                    downstream.setValue(downstream.getValue() - 1);
+                    if (downstream.getValue() == 0) {
+                        ready.add(downstream.getKey());
+                    }
+                }
+            }
+        }
+        if (order.size() != remaining.size()) {
+            throw new BusinessException("Invalid workflow config: nodes contain a cycle");
+        }
+        return order;
+    }
+}
@@ -0,0 +1,24 @@
+package com.mydotey.ai.studio.service.agent.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * 工作流节点
+ *
+ * @param id 节点 ID，模板中以 {{id}} 引用其输出
+ * @param type 节点类型
+ * @param dependsOn 上游节点，包括显式声明的依赖、模板引用的节点和控制该节点的分支节点
+ * @param config 节点的 JSON 定义
+ */
+public record WorkflowNode(String id, WorkflowNodeType type, List<String> dependsOn, JsonNode config) {
+
+    /**
+     * 读取文本属性，不存在时返回默认值
+     */
+    public String text(String field, String defaultValue) {
+        JsonNode value = config.get(field);
+        return value != null && !value.isNull() ? value.asText() : defaultValue;
+    }
+}
@@ -0,0 +1,33 @@
+package com.mydotey.ai.studio.service.agent.workflow;
+
+import java.util.Locale;
+
+/**
+ * 工作流节点类型
+ */
+public enum WorkflowNodeType {
+    /**
+     * 从 Agent 关联的知识库检索文档
+     */
+    RETRIEVAL,
+    /**
+     * 调用大语言模型
+     */
+    LLM,
+    /**
+     * 调用 Agent 绑定的 MCP 工具
+     */
+    TOOL,
+    /**
+     * 按模板组合上游节点的输出
+     */
+    TRANSFORM,
+    /**
+     * 按条件选择执行的下游节点
+     */
+    BRANCH;
+
+    public static WorkflowNodeType of(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,89 @@
+package com.mydotey.ai.studio.service.agent.workflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 工作流模板
+ * <p>
+ * 文本中的 {{name}} 替换为同名变量：请求变量（query、summary、history）或节点的输出，
+ * 未知的变量替换为空字符串
+ */
+public final class WorkflowTemplate {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{\\s*([A-Za-z0-9_-]+)\\s*}}");
+
+    private WorkflowTemplate() {
+    }
+
+    /**
+     * 替换文本中的变量
+     */
+    public static String render(String template, Map<String, String> variables) {
+        if (template == null || template.indexOf('{') < 0) {
+            return template;
+        }
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuilder rendered = new StringBuilder();
+        while (matcher.find()) {
+            String value = variables.getOrDefault(matcher.group(1), "");
+            matcher.appendReplacement(rendered, Matcher.quoteReplacement(value != null ? value : ""));
+        }
+        matcher.appendTail(rendered);
+        return rendered.toString();
+    }
+
+    /**
+     * 替换 JSON 中所有字符串值里的变量，返回新的 JSON，原 JSON 不变
+     */
+    public static JsonNode render(JsonNode template, Map<String, String> variables) {
+        if (template == null) {
+            return null;
+        }
+        if (template.isTextual()) {
+            return TextNode.valueOf(render(template.asText(), variables));
+        }
+        if (template.isObject()) {
+            ObjectNode rendered = ((ObjectNode) template).objectNode();
+            template.properties().forEach(field -> rendered.set(field.getKey(), render(field.getValue(), variables)));
+            return rendered;
+        }
+        if (template.isArray()) {
+            ArrayNode rendered = ((ArrayNode) template).arrayNode();
+            template.forEach(element -> rendered.add(render(element, variables)));
+            return rendered;
+        }
+        return template;
+    }
+
+    /**
+     * 收集 JSON 中所有字符串值引用的变量名
+     */
+    public static Set<String> references(JsonNode node) {
+        Set<String> names = new LinkedHashSet<>();
+        collect(node, names);
+        return names;
+    }
+
+    private static void collect(JsonNode node, Set<String> names) {
+        if (node == null) {
+            return;
+        }
+        if (node.isTextual()) {
+            Matcher matcher = VARIABLE.matcher(node.asText());
+            while (matcher.find()) {
+                names.add(matcher.group(1));
+            }
+        } else if (node.isContainerNode()) {
+            node.forEach(child -> collect(child, names));
+        }
+    }
+}
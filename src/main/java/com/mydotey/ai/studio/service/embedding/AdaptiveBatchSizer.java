@@ -0,0 +1,31 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 动态批量大小
+ * 被限流或请求过大时减半，连续成功后逐步增大，上限由调用方的 Provider 配置决定
+ */
+public class AdaptiveBatchSizer {
+
+    private final AtomicInteger size;
+
+    public AdaptiveBatchSizer(int initialSize) {
+        this.size = new AtomicInteger(Math.max(1, initialSize));
+    }
+
+    /**
+     * 当前批量大小，不超过 maxSize
+     */
+    public int current(int maxSize) {
+        return Math.max(1, Math.min(size.get(), maxSize));
+    }
+
+    public void grow(int maxSize) {
+        size.updateAndGet(s -> Math.min(maxSize, s + Math.max(1, s / 4)));
+    }
+
+    public void shrink() {
+        size.updateAndGet(s -> Math.max(1, s / 2));
+    }
+}
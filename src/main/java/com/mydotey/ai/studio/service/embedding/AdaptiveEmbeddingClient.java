@@ -0,0 +1,240 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import com.mydotey.ai.studio.config.EmbeddingConfig;
+import com.mydotey.ai.studio.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流感知的自适应向量化客户端
+ * <p>
+ * 按模型维护剩余额度、AIMD 并发上限和动态批量大小：
+ * 分批时根据当前批量大小和 token 上限切分，并发度受 AIMD 控制，
+ * 遇到 429 / 5xx / 网络错误时带抖动退避重试，请求过大时拆分批次，
+ * 使批量向量化在不触发失败的前提下尽量贴近服务端限额
+ */
+@Slf4j
+@Component
+public class AdaptiveEmbeddingClient {
+
+    private final EmbeddingConfig config;
+    private final Executor executor;
+    private final BackoffPolicy backoffPolicy;
+    private final Map<String, ModelState> states = new ConcurrentHashMap<>();
+
+    public AdaptiveEmbeddingClient(EmbeddingConfig config,
+                                   @Qualifier("embeddingExecutor") Executor executor) {
+        this.config = config;
+        this.executor = executor;
+        this.backoffPolicy = new BackoffPolicy(config.getRetryBaseDelay(), config.getRetryMaxDelay());
+    }
+
+    /**
+     * 单批请求
+     */
+    @FunctionalInterface
+    public interface BatchCall {
+        /**
+         * 发送一批文本并返回结果，HTTP 错误应以 {@link HttpStatusCodeException} 原样抛出
+         */
+        BatchResult call(List<String> batch) throws Exception;
+    }
+
+    /**
+     * 单批请求结果
+     */
+    public record BatchResult(List<float[]> embeddings, HttpHeaders headers) {
+    }
+
+    /**
+     * 批量向量化
+     *
+     * @param modelKey 模型标识，相同标识共享额度和并发状态
+     * @param texts 文本列表
+     * @param maxBatchSize Provider 允许的最大批量条数
+     * @param maxBatchTokens Provider 允许的单批最大估算 token 数
+     * @param call 单批请求
+     * @return 与输入顺序一致的向量列表
+     */
+    public List<float[]> embed(String modelKey, List<String> texts, int maxBatchSize, int maxBatchTokens,
+                               BatchCall call) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        ModelState state = states.computeIfAbsent(modelKey, k -> new ModelState(maxBatchSize));
+        float[][] results = new float[texts.size()][];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        int offset = 0;
+        try {
+            while (offset < texts.size()) {
+                // 先拿到并发许可再切分下一批，使批量大小反映最新的限流反馈
+                state.limiter.acquire();
+                int end = nextBatchEnd(texts, offset, state.sizer.current(maxBatchSize), maxBatchTokens);
+                int start = offset;
+                CompletableFuture<Void> future;
+                try {
+                    future = CompletableFuture.runAsync(() -> {
+                        try {
+                            embedWithRetry(state, texts.subList(start, end), start, results, maxBatchSize, call);
+                        } finally {
+                            state.limiter.release();
+                        }
+                    }, executor);
+                } catch (RuntimeException e) {
+                    state.limiter.release();
+                    throw e;
+                }
+                futures.add(future);
+                offset = end;
+                if (futures.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while dispatching embedding batches", e);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("Failed to generate embeddings: " + cause.getMessage(), cause);
+        }
+        return List.of(results);
+    }
+
+    /**
+     * 获取模型当前的 AIMD 并发上限，便于监控
+     */
+    public int getConcurrencyLimit(String modelKey) {
+        ModelState state = states.get(modelKey);
+        return state != null ? state.limiter.getLimit() : config.getInitialConcurrency();
+    }
+
+    private void embedWithRetry(ModelState state, List<String> batch, int offset, float[][] results,
+                                int maxBatchSize, BatchCall call) {
+        int attempt = 0;
+        while (true) {
+            long window = state.limiter.window();
+            try {
+                state.budget.awaitCapacity(estimateTokens(batch));
+                BatchResult result = call.call(batch);
+                state.budget.update(result.headers());
+                state.limiter.onSuccess();
+                state.sizer.grow(maxBatchSize);
+                for (int i = 0; i < batch.size(); i++) {
+                    results[offset + i] = result.embeddings().get(i);
+                }
+                return;
+            } catch (HttpStatusCodeException e) {
+                state.budget.update(e.getResponseHeaders());
+                if (isTooLarge(e) && batch.size() > 1) {
+                    // 请求体过大时拆成两半顺序处理
+                    state.sizer.shrink();
+                    int mid = batch.size() / 2;
+                    embedWithRetry(state, batch.subList(0, mid), offset, results, maxBatchSize, call);
+                    embedWithRetry(state, batch.subList(mid, batch.size()), offset + mid, results, maxBatchSize, call);
+                    return;
+                }
+                boolean throttled = e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+                if (throttled) {
+                    state.limiter.onThrottle(window);
+                    state.sizer.shrink();
+                }
+                if (!(throttled || e.getStatusCode().is5xxServerError()) || attempt >= config.getMaxRetries()) {
+                    throw new RuntimeException("Embedding request failed with status " + e.getStatusCode().value()
+                            + ": " + e.getResponseBodyAsString(), e);
+                }
+                Long retryAfterNanos = RateLimitBudget.parseRetryAfterNanos(e.getResponseHeaders());
+                sleepBeforeRetry(attempt++, retryAfterNanos != null ? TimeUnit.NANOSECONDS.toMillis(retryAfterNanos) : null,
+                        e.getStatusCode().value());
+            } catch (ResourceAccessException e) {
+                if (attempt >= config.getMaxRetries()) {
+                    throw new RuntimeException("Embedding request failed: " + e.getMessage(), e);
+                }
+                sleepBeforeRetry(attempt++, null, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for embedding rate limit", e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to generate embeddings: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void sleepBeforeRetry(int attempt, Long retryAfterMillis, int status) {
+        long delay = backoffPolicy.delayMillis(attempt, retryAfterMillis);
+        log.warn("Embedding request failed (status {}), retry #{} in {}ms", status, attempt + 1, delay);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while backing off embedding request", ie);
+        }
+    }
+
+    private static boolean isTooLarge(HttpStatusCodeException e) {
+        int status = e.getStatusCode().value();
+        if (status == HttpStatus.PAYLOAD_TOO_LARGE.value()) {
+            return true;
+        }
+        String body = e.getResponseBodyAsString();
+        return status == HttpStatus.BAD_REQUEST.value() && body != null
+                && (body.contains("maximum context length") || body.contains("too many inputs")
+                || body.contains("max_tokens_per_request"));
+    }
+
+    /**
+     * 从 offset 起按批量条数和 token 上限确定本批结束位置，至少包含一条
+     */
+    static int nextBatchEnd(List<String> texts, int offset, int batchSize, int maxBatchTokens) {
+        int end = offset;
+        int tokens = 0;
+        while (end < texts.size() && end - offset < batchSize) {
+            int next = TokenEstimator.estimate(texts.get(end));
+            if (end > offset && tokens + next > maxBatchTokens) {
+                break;
+            }
+            tokens += next;
+            end++;
+        }
+        return end;
+    }
+
+    private static int estimateTokens(List<String> batch) {
+        int tokens = 0;
+        for (String text : batch) {
+            tokens += TokenEstimator.estimate(text);
+        }
+        return tokens;
+    }
+
+    /**
+     * 单个模型的自适应状态
+     */
+    private class ModelState {
+        final RateLimitBudget budget = new RateLimitBudget(config.getRetryMaxDelay());
+        final AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(
+                config.getInitialConcurrency(), 1, config.getMaxConcurrency());
+        final AdaptiveBatchSizer sizer;
+
+        ModelState(int initialBatchSize) {
+            this.sizer = new AdaptiveBatchSizer(initialBatchSize);
+        }
+    }
+}
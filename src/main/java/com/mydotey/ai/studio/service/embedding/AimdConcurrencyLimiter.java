@@ -0,0 +1,119 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD（加性增、乘性减）并发控制器
+ * 每次成功将并发上限增加 1/limit（约每轮增加 1），被限流时将上限减半，
+ * 使并发度在服务端限额附近自适应振荡。
+ * 同一时刻在途的请求往往一起被限流，上次减半之前发出的请求被限流时不再减半，每个窗口最多减半一次
+ */
+public class AimdConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private long window;
+
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * 获取一个并发许可，达到上限时等待
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求成功，加性增加上限
+     */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前窗口，发出请求前取得，被限流时传给 {@link #onThrottle(long)}
+     */
+    public long window() {
+        lock.lock();
+        try {
+            return window;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求被限流，乘性减小上限；请求发出后上限已经减小过时忽略
+     *
+     * @param requestWindow 请求发出前取得的 {@link #window()}
+     */
+    public void onThrottle(long requestWindow) {
+        lock.lock();
+        try {
+            if (requestWindow != window) {
+                return;
+            }
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            window++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
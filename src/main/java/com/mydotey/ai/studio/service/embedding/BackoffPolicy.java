@@ -0,0 +1,30 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带全抖动（full jitter）的指数退避
+ * 第 n 次重试等待 [0, min(maxDelay, baseDelay * 2^n)) 内的随机时长，避免多个调用方同时重试
+ */
+public class BackoffPolicy {
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public BackoffPolicy(long baseDelayMillis, long maxDelayMillis) {
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * 计算第 attempt 次重试（从 0 开始）的等待时长，服务端给出 Retry-After 时取两者较大值
+     */
+    public long delayMillis(int attempt, Long retryAfterMillis) {
+        long ceiling = baseDelayMillis << Math.min(attempt, 20);
+        long jittered = ThreadLocalRandom.current().nextLong(Math.min(maxDelayMillis, ceiling) + 1);
+        if (retryAfterMillis != null) {
+            return Math.min(maxDelayMillis, Math.max(jittered, retryAfterMillis));
+        }
+        return jittered;
+    }
+}
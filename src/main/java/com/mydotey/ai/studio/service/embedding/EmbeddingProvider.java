@@ -0,0 +1,150 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.EmbeddingConfig;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 单个向量模型配置对应的 Provider
+ * 持有配置快照、独立的连接池 HTTP 客户端和限流器，批量切分、并发和重试交由 {@link AdaptiveEmbeddingClient}
+ */
+@Slf4j
+public class EmbeddingProvider implements AutoCloseable {
+
+    @Getter
+    private final ModelConfigDto config;
+    @Getter
+    private final int maxBatchSize;
+    @Getter
+    private final int maxBatchTokens;
+
+    private final HttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final AdaptiveEmbeddingClient adaptiveClient;
+    private final String modelKey;
+
+    public EmbeddingProvider(ModelConfigDto config, EmbeddingConfig defaults, ObjectMapper objectMapper,
+                             AdaptiveEmbeddingClient adaptiveClient) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.adaptiveClient = adaptiveClient;
+        // 同一端点、模型和密钥共享服务端配额，配置更新重建 Provider 后仍沿用已学习到的限流状态
+        this.modelKey = config.getEndpoint() + "|" + config.getModel() + "|" + Objects.hashCode(config.getApiKey());
+        this.maxBatchSize = positiveOrDefault(config.getMaxBatchSize(), defaults.getBatchSize());
+        this.maxBatchTokens = positiveOrDefault(config.getMaxBatchTokens(), defaults.getMaxBatchTokens());
+        this.rateLimiter = new TokenBucketRateLimiter(
+                config.getRequestsPerMinute() != null ? config.getRequestsPerMinute() : defaults.getRequestsPerMinute());
+
+        int timeout = positiveOrDefault(config.getTimeout(), defaults.getTimeout());
+        // JDK HttpClient 自带连接池，每个 Provider 独享一个实例，互不影响
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeout))
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(timeout));
+        this.restTemplate = new RestTemplate(factory);
+    }
+
+    /**
+     * 批量生成向量，内部按 Provider 限制切分为多次请求，结果顺序与输入一致
+     */
+    public List<float[]> embedBatch(List<String> texts) {
+        try {
+            return adaptiveClient.embed(modelKey, texts, maxBatchSize, maxBatchTokens, this::requestEmbeddings);
+        } catch (RuntimeException e) {
+            log.error("Failed to generate embeddings with config: {}", config.getName(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 判断当前 Provider 是否基于给定配置的同一版本创建
+     */
+    public boolean isSameVersion(ModelConfigDto other) {
+        return Objects.equals(config.getId(), other.getId())
+                && Objects.equals(config.getUpdatedAt(), other.getUpdatedAt());
+    }
+
+    private AdaptiveEmbeddingClient.BatchResult requestEmbeddings(List<String> batch) throws Exception {
+        rateLimiter.acquire();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(config.getApiKey());
+
+        String body = objectMapper.writeValueAsString(Map.of("model", config.getModel(), "input", batch));
+        String url = config.getEndpoint() + "/embeddings";
+        ResponseEntity<String> response = restTemplate.postForEntity(url, new HttpEntity<>(body, headers), String.class);
+
+        return new AdaptiveEmbeddingClient.BatchResult(
+                parseEmbeddings(response.getBody(), batch.size()), response.getHeaders());
+    }
+
+    /**
+     * 解析向量响应，按 index 字段还原输入顺序
+     *
+     * @throws IllegalStateException 条数不符，index 越界、重复或缺失，或缺少向量
+     */
+    List<float[]> parseEmbeddings(String responseBody, int expected) throws Exception {
+        JsonNode dataArray = objectMapper.readTree(responseBody).get("data");
+        if (dataArray == null || dataArray.size() != expected) {
+            throw new IllegalStateException("Unexpected embedding count, expected " + expected + ", got "
+                    + (dataArray == null ? 0 : dataArray.size()));
+        }
+
+        float[][] embeddings = new float[expected][];
+        for (int i = 0; i < dataArray.size(); i++) {
+            JsonNode dataNode = dataArray.get(i);
+            JsonNode indexNode = dataNode.get("index");
+            if (indexNode != null && !indexNode.canConvertToInt()) {
+                throw new IllegalStateException("Invalid embedding index at position " + i + ": " + indexNode);
+            }
+            int index = indexNode != null ? indexNode.asInt() : i;
+            if (index < 0 || index >= expected) {
+                throw new IllegalStateException("Embedding index " + index + " out of range, expected 0 to "
+                        + (expected - 1));
+            }
+            if (embeddings[index] != null) {
+                throw new IllegalStateException("Duplicate embedding index " + index);
+            }
+            JsonNode embeddingNode = dataNode.get("embedding");
+            if (embeddingNode == null || !embeddingNode.isArray()) {
+                throw new IllegalStateException("Missing embedding for index " + index);
+            }
+            float[] embedding = new float[embeddingNode.size()];
+            for (int j = 0; j < embeddingNode.size(); j++) {
+                embedding[j] = (float) embeddingNode.get(j).asDouble();
+            }
+            embeddings[index] = embedding;
+        }
+        // 条数与输入一致且 index 在范围内互不重复，因此每个位置都已填充
+        return List.of(embeddings);
+    }
+
+    @Override
+    public void close() {
+        // 不打断进行中的请求，待其完成后释放连接
+        httpClient.shutdown();
+    }
+
+    private static int positiveOrDefault(Integer value, int defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
+    }
+}
@@ -0,0 +1,117 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.EmbeddingConfig;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.enums.ModelConfigType;
+import com.mydotey.ai.studio.event.ModelConfigChangedEvent;
+import com.mydotey.ai.studio.service.ModelConfigService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 向量模型 Provider 注册表
+ * 按 ModelConfig ID 缓存 Provider，避免每次向量化都查询数据库和重建 HTTP 客户端；
+ * 收到配置变更事件后失效对应条目
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmbeddingProviderRegistry {
+
+    private final ModelConfigService modelConfigService;
+    private final EmbeddingConfig embeddingConfig;
+    private final ObjectMapper objectMapper;
+    private final AdaptiveEmbeddingClient adaptiveClient;
+
+    private final Map<Long, EmbeddingProvider> providers = new ConcurrentHashMap<>();
+    private final AtomicReference<EmbeddingProvider> defaultProvider = new AtomicReference<>();
+    private final AtomicReference<EmbeddingProvider> fallbackProvider = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 获取默认向量模型的 Provider，仅在首次使用或配置变更后查询数据库
+     */
+    public EmbeddingProvider getDefaultProvider() {
+        EmbeddingProvider provider = defaultProvider.get();
+        if (provider != null) {
+            return provider;
+        }
+        long loadedGeneration = generation.get();
+        provider = getProvider(modelConfigService.getDefaultConfig(ModelConfigType.EMBEDDING));
+        // 加载期间如果发生了配置变更，则不缓存可能已过期的默认 Provider
+        if (generation.get() == loadedGeneration) {
+            defaultProvider.compareAndSet(null, provider);
+        }
+        return provider;
+    }
+
+    /**
+     * 获取指定配置的 Provider，配置版本变化时重建
+     */
+    public EmbeddingProvider getProvider(ModelConfigDto config) {
+        if (config.getId() == null) {
+            // 配置文件中的回退配置没有 ID，单独缓存
+            EmbeddingProvider existing = fallbackProvider.get();
+            if (existing != null) {
+                return existing;
+            }
+            EmbeddingProvider created = new EmbeddingProvider(config, embeddingConfig, objectMapper, adaptiveClient);
+            if (fallbackProvider.compareAndSet(null, created)) {
+                return created;
+            }
+            created.close();
+            return fallbackProvider.get();
+        }
+        return providers.compute(config.getId(), (id, existing) -> {
+            if (existing != null && existing.isSameVersion(config)) {
+                return existing;
+            }
+            if (existing != null) {
+                existing.close();
+            }
+            log.info("Creating embedding provider for config: {} ({})", config.getName(), id);
+            return new EmbeddingProvider(config, embeddingConfig, objectMapper, adaptiveClient);
+        });
+    }
+
+    /**
+     * 失效指定配置的 Provider，同时清空默认 Provider 引用
+     */
+    public void invalidate(Long configId) {
+        generation.incrementAndGet();
+        defaultProvider.set(null);
+        if (configId != null) {
+            EmbeddingProvider removed = providers.remove(configId);
+            if (removed != null) {
+                removed.close();
+                log.info("Invalidated embedding provider for config: {}", configId);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.getType() == ModelConfigType.EMBEDDING) {
+            invalidate(event.getConfigId());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        providers.values().forEach(EmbeddingProvider::close);
+        providers.clear();
+        EmbeddingProvider fallback = fallbackProvider.getAndSet(null);
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+}
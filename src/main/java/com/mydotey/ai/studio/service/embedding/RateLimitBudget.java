@@ -0,0 +1,155 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 单个模型的请求数 / token 数剩余额度
+ * 根据服务端返回的 x-ratelimit-* 和 Retry-After 响应头更新，在额度耗尽时等待到重置时间再发送请求
+ */
+public class RateLimitBudget {
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long maxWaitNanos;
+
+    private long remainingRequests = -1;
+    private long remainingTokens = -1;
+    private long requestsResetAt;
+    private long tokensResetAt;
+    private long blockedUntil;
+
+    /**
+     * @param maxWaitMillis 单次等待额度重置的最长时间
+     */
+    public RateLimitBudget(long maxWaitMillis) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * 等待直到额度足以发送一个估算 token 数为 tokens 的请求，并预扣本地额度
+     */
+    public void awaitCapacity(int tokens) throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long until = blockedUntil;
+            if (remainingRequests == 0) {
+                until = Math.max(until, requestsResetAt);
+            }
+            if (remainingTokens >= 0 && remainingTokens < tokens) {
+                until = Math.max(until, tokensResetAt);
+            }
+            waitNanos = Math.min(until - now, maxWaitNanos);
+            if (waitNanos > 0) {
+                // 到达重置时间后额度未知，交由下一次响应头刷新
+                remainingRequests = -1;
+                remainingTokens = -1;
+            } else {
+                if (remainingRequests > 0) {
+                    remainingRequests--;
+                }
+                if (remainingTokens > 0) {
+                    remainingTokens = Math.max(0, remainingTokens - tokens);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 根据响应头刷新额度
+     */
+    public void update(HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Long requests = parseLong(headers.getFirst("x-ratelimit-remaining-requests"));
+            if (requests != null) {
+                remainingRequests = requests;
+                requestsResetAt = now + parseDurationNanos(headers.getFirst("x-ratelimit-reset-requests"));
+            }
+            Long tokens = parseLong(headers.getFirst("x-ratelimit-remaining-tokens"));
+            if (tokens != null) {
+                remainingTokens = tokens;
+                tokensResetAt = now + parseDurationNanos(headers.getFirst("x-ratelimit-reset-tokens"));
+            }
+            Long retryAfterNanos = parseRetryAfterNanos(headers);
+            if (retryAfterNanos != null) {
+                blockedUntil = Math.max(blockedUntil, now + retryAfterNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 解析 Retry-After（秒）或 retry-after-ms 响应头
+     */
+    public static Long parseRetryAfterNanos(HttpHeaders headers) {
+        if (headers == null) {
+            return null;
+        }
+        Long millis = parseLong(headers.getFirst("retry-after-ms"));
+        if (millis != null) {
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        Long seconds = parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        return seconds != null ? TimeUnit.SECONDS.toNanos(seconds) : null;
+    }
+
+    /**
+     * 解析 OpenAI 风格的时长，如 "20ms"、"1s"、"6m0s"、"1h2m3.5s"
+     */
+    static long parseDurationNanos(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1_000;
+                default -> amount;
+            };
+        }
+        if (!matched) {
+            // 纯数字按秒处理
+            try {
+                millis = Double.parseDouble(value.trim()) * 1_000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos((long) (millis * 1_000));
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 简单的匀速限流器
+ * 通过 CAS 预约下一个可用时间槽实现，不持有锁，等待期间不会阻塞其他调用方
+ */
+public class TokenBucketRateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param permitsPerMinute 每分钟允许的请求数，小于等于 0 表示不限流
+     */
+    public TokenBucketRateLimiter(int permitsPerMinute) {
+        this.intervalNanos = permitsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / permitsPerMinute : 0;
+    }
+
+    /**
+     * 获取一个许可，必要时等待
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot = nextFreeNanos.getAndUpdate(prev -> Math.max(prev, now) + intervalNanos);
+        long waitNanos = Math.max(slot, now) - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public boolean isUnlimited() {
+        return intervalNanos == 0;
+    }
+}
@@ -1,17 +1,20 @@
 package com.mydotey.ai.studio.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.dto.ModelConfigDto;
 import com.mydotey.ai.studio.dto.ModelConfigRequest;
 import com.mydotey.ai.studio.dto.ModelConfigResponse;
 import com.mydotey.ai.studio.entity.ModelConfig;
 import com.mydotey.ai.studio.enums.ModelConfigType;
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.event.ModelConfigChangedEvent;
 import com.mydotey.ai.studio.mapper.ModelConfigMapper;
 import com.mydotey.ai.studio.service.ModelConfigService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,6 +28,8 @@ import java.util.stream.Collectors;
 public class ModelConfigServiceImpl implements ModelConfigService {
 
     private final ModelConfigMapper modelConfigMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
 
     @Override
     @Transactional
@@ -49,6 +54,7 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         config.setStatus("active");
 
         modelConfigMapper.insert(config);
+        publishChanged(config);
 
         return toResponse(config);
     }
@@ -75,6 +81,7 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         config.setUpdatedAt(Instant.now());
 
         modelConfigMapper.updateById(config);
+        publishChanged(config);
 
         return toResponse(config);
     }
@@ -92,6 +99,7 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         }
 
         modelConfigMapper.deleteById(id);
+        publishChanged(config);
     }
 
     @Override
@@ -150,6 +158,7 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         config.setIsDefault(true);
         config.setUpdatedAt(Instant.now());
         modelConfigMapper.updateById(config);
+        publishChanged(config);
     }
 
     @Override
@@ -178,6 +187,20 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         if (request.getType() == ModelConfigType.EMBEDDING && request.getDimension() == null) {
             throw new BusinessException("向量模型必须设置维度");
         }
+        if (request.getEndpoints() != null && !request.getEndpoints().isBlank()) {
+            try {
+                objectMapper.readValue(request.getEndpoints(), String[].class);
+            } catch (Exception e) {
+                throw new BusinessException("附加端点必须是字符串数组");
+            }
+        }
+    }
+
+    /**
+     * 发布配置变更事件，由监听方在事务提交后失效本地缓存
+     */
+    private void publishChanged(ModelConfig config) {
+        eventPublisher.publishEvent(new ModelConfigChangedEvent(config.getId(), config.getType()));
     }
 
     private void removePreviousDefault(ModelConfigType type, Long orgId) {
@@ -213,6 +236,8 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         trimmed.setName(request.getName() != null ? request.getName().trim() : null);
         trimmed.setType(request.getType());
         trimmed.setEndpoint(request.getEndpoint() != null ? request.getEndpoint().trim() : null);
+        trimmed.setEndpoints(request.getEndpoints() != null && !request.getEndpoints().isBlank()
+                ? request.getEndpoints().trim() : null);
         trimmed.setApiKey(request.getApiKey() != null ? request.getApiKey().trim() : null);
         trimmed.setModel(request.getModel() != null ? request.getModel().trim() : null);
         trimmed.setDimension(request.getDimension());
@@ -220,6 +245,12 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         trimmed.setMaxTokens(request.getMaxTokens());
         trimmed.setTimeout(request.getTimeout());
         trimmed.setEnableStreaming(request.getEnableStreaming());
+        trimmed.setMaxBatchSize(request.getMaxBatchSize());
+        trimmed.setMaxBatchTokens(request.getMaxBatchTokens());
+        trimmed.setRequestsPerMinute(request.getRequestsPerMinute());
+        trimmed.setMaxConcurrency(request.getMaxConcurrency());
+        trimmed.setResponseCacheEnabled(request.getResponseCacheEnabled());
+        trimmed.setResponseCacheTtl(request.getResponseCacheTtl());
         trimmed.setIsDefault(request.getIsDefault());
         trimmed.setDescription(request.getDescription() != null ? request.getDescription().trim() : null);
 
@@ -1,9 +1,8 @@
 package com.mydotey.ai.studio.service.impl;
 
 import com.mydotey.ai.studio.dto.ModelConfigDto;
-import com.mydotey.ai.studio.enums.ModelConfigType;
 import com.mydotey.ai.studio.service.EmbeddingService;
-import com.mydotey.ai.studio.service.ModelConfigService;
+import com.mydotey.ai.studio.service.embedding.EmbeddingProviderRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
@@ -17,34 +16,32 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ModelEmbeddingServiceImpl implements EmbeddingService {
 
-    private final ModelConfigService modelConfigService;
+    private final EmbeddingProviderRegistry providerRegistry;
 
     @Override
     public float[] embed(String text) {
-        ModelConfigDto config = modelConfigService.getDefaultConfig(ModelConfigType.EMBEDDING);
-        return embedWithConfig(text, config);
+        return providerRegistry.getDefaultProvider().embedBatch(List.of(text)).get(0);
     }
 
     @Override
     public List<float[]> embedBatch(List<String> texts) {
-        ModelConfigDto config = modelConfigService.getDefaultConfig(ModelConfigType.EMBEDDING);
-        return embedBatchWithConfig(texts, config);
+        return providerRegistry.getDefaultProvider().embedBatch(texts);
     }
 
     @Override
     public int getDimension() {
-        ModelConfigDto config = modelConfigService.getDefaultConfig(ModelConfigType.EMBEDDING);
-        return config.getDimension();
+        return providerRegistry.getDefaultProvider().getConfig().getDimension();
     }
 
     public float[] embedWithConfig(String text, ModelConfigDto config) {
-        // TODO: 实现实际的向量生成逻辑，使用config中的配置
-        log.info("Embedding with config: {}", config.getName());
-        return new float[config.getDimension()];
+        return embedBatchWithConfig(List.of(text), config).get(0);
     }
 
     public List<float[]> embedBatchWithConfig(List<String> texts, ModelConfigDto config) {
-        // TODO: 实现批量向量生成
-        return texts.stream().map(text -> embedWithConfig(text, config)).toList();
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        log.debug("Embedding {} texts with config: {}", texts.size(), config.getName());
+        return providerRegistry.getProvider(config).embedBatch(texts);
     }
 }
@@ -0,0 +1,372 @@
+package com.mydotey.ai.studio.service.journal;
+
+import com.mydotey.ai.studio.config.MessageJournalConfig;
+import com.mydotey.ai.studio.entity.Message;
+import com.mydotey.ai.studio.mapper.ConversationMapper;
+import com.mydotey.ai.studio.mapper.MessageMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天消息的写后持久化
+ * <p>
+ * 消息的 ID 在请求线程上从序列预先分配，消息本身进入有界队列后立即返回，由单个写入线程按批以多行 INSERT 写入；
+ * 对话更新时间在内存中合并，每批消息写入后以一条 UPDATE 更新。队列按追加顺序写入，
+ * 数据库暂时不可用（连接失败、死锁、超时等）时按退避间隔重试同一批，写入线程运行期间不丢弃；
+ * 其他错误导致同一对话的消息写入失败后，该对话后续的消息（包括之后批次中的）不再写入，不会出现回答已保存而问题丢失，
+ * 直到下次通过 {@link #sync(Long)} 重新读取该对话。
+ * 在事务中追加的消息在事务提交后才进入队列，事务回滚时丢弃。
+ * 读取对话的消息前调用 {@link #sync(Long)} 等待该对话尚未写入的消息
+ */
+@Slf4j
+@Component
+public class MessageJournal {
+
+    private final MessageMapper messageMapper;
+    private final ConversationMapper conversationMapper;
+    private final MessageJournalConfig config;
+    private final BlockingQueue<Message> queue;
+    private final Map<Long, Instant> touches = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+    private final Set<Long> failed = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Counter dropped;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageJournal(MessageMapper messageMapper, ConversationMapper conversationMapper,
+                          MessageJournalConfig config, MeterRegistry meterRegistry) {
+        this.messageMapper = messageMapper;
+        this.conversationMapper = conversationMapper;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        Gauge.builder("chat.message.journal.queue.depth", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be persisted")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.message.journal.dropped")
+                .description("Chat messages that failed to be persisted")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        writer = Thread.ofPlatform().name("message-journal").daemon().start(this::run);
+    }
+
+    /**
+     * 停止接收新消息，等待写完队列中剩余的消息
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join(config.getShutdownTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Message journal shutdown timed out, {} messages not persisted", queue.size());
+        }
+    }
+
+    /**
+     * 预先分配消息 ID，一次往返分配一次请求需要的所有 ID
+     *
+     * @param count 分配的数量
+     * @return 递增的 ID 列表
+     */
+    public List<Long> reserveIds(int count) {
+        return messageMapper.nextIds(count);
+    }
+
+    /**
+     * 追加消息，未分配 ID 时先分配
+     * 在事务中调用时提交后才进入队列；未启用时在当前线程上同步写入
+     *
+     * @throws IllegalStateException 队列已满且同一对话排在前面的消息迟迟没有写入
+     */
+    public void append(Message message) {
+        if (message.getId() == null) {
+            message.setId(reserveIds(1).get(0));
+        }
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(Instant.now());
+        }
+        if (!config.isEnabled()) {
+            messageMapper.insertBatch(List.of(message));
+            return;
+        }
+        afterCommit(() -> enqueue(message));
+    }
+
+    /**
+     * 更新对话的更新时间，同一对话的多次更新合并为一次
+     */
+    public void touch(Long conversationId) {
+        Instant now = Instant.now();
+        if (!config.isEnabled()) {
+            conversationMapper.touchAll(Map.of(conversationId, now));
+            return;
+        }
+        afterCommit(() -> touches.merge(conversationId, now, (a, b) -> a.isAfter(b) ? a : b));
+    }
+
+    /**
+     * 等待对话中已追加的消息写入，超过等待时间后直接返回
+     * 已追加的消息全部处理完后，之前写入失败的对话重新开始写入
+     */
+    public void sync(Long conversationId) {
+        if (conversationId == null) {
+            return;
+        }
+        if (pending.containsKey(conversationId) && !await(conversationId, 0)) {
+            return;
+        }
+        failed.remove(conversationId);
+    }
+
+    /**
+     * 等待对话待写入的消息数不超过 allowed
+     *
+     * @return 超时或被中断时返回 false
+     */
+    private boolean await(Long conversationId, int allowed) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(config.getSyncTimeout());
+        lock.lock();
+        try {
+            while (pending.getOrDefault(conversationId, 0) > allowed) {
+                if (remaining <= 0) {
+                    log.warn("Timed out waiting for pending messages of conversation: {}", conversationId);
+                    return false;
+                }
+                remaining = written.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void enqueue(Message message) {
+        Long conversationId = message.getConversationId();
+        pending.merge(conversationId, 1, Integer::sum);
+        boolean queued = false;
+        try {
+            queued = running && queue.offer(message, config.getOfferTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queued) {
+            // 队列已满或正在关闭，先等待同一对话排在前面的消息写入，再在当前线程上写入，不越过前面的消息
+            log.warn("Message journal is unavailable, persisting message of conversation {} synchronously",
+                    conversationId);
+            if (!await(conversationId, 1)) {
+                IllegalStateException e = new IllegalStateException(
+                        "Message journal is overloaded, conversation: " + conversationId);
+                fail(message, e);
+                done(List.of(message));
+                throw e;
+            }
+            write(List.of(message));
+            done(List.of(message));
+        }
+    }
+
+    private void run() {
+        List<Message> batch = new ArrayList<>(config.getMaxBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(config.getFlushInterval(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, config.getMaxBatchSize() - 1);
+                    write(batch);
+                    done(batch);
+                    batch.clear();
+                }
+                flushTouches();
+            } catch (InterruptedException e) {
+                log.warn("Message journal writer interrupted, {} messages not persisted", queue.size());
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in message journal writer", e);
+            }
+        }
+        flushTouches();
+    }
+
+    /**
+     * 多行 INSERT 写入一批消息；失败时逐条写入，某条失败后同一对话的后续消息不再写入
+     */
+    private void write(List<Message> batch) {
+        List<Message> writable = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            if (failed.contains(message.getConversationId())) {
+                drop(message, null);
+            } else {
+                writable.add(message);
+            }
+        }
+        if (writable.isEmpty()) {
+            return;
+        }
+        boolean keepRetrying = Thread.currentThread() == writer;
+        try {
+            insertWithRetry(writable, keepRetrying);
+            return;
+        } catch (Exception e) {
+            if (writable.size() == 1) {
+                fail(writable.get(0), e);
+                return;
+            }
+            log.warn("Failed to persist batch of {} messages, retrying one by one: {}", writable.size(),
+                    e.getMessage());
+        }
+        for (Message message : writable) {
+            if (failed.contains(message.getConversationId())) {
+                drop(message, null);
+                continue;
+            }
+            try {
+                insertWithRetry(List.of(message), keepRetrying);
+            } catch (Exception e) {
+                fail(message, e);
+            }
+        }
+    }
+
+    /**
+     * 写入消息，数据库暂时不可用时按退避间隔重试；写入线程运行期间一直重试，
+     * 正在关闭或在请求线程上写入时最多重试 maxRetries 次
+     *
+     * @param keepRetrying 是否在写入线程运行期间一直重试
+     */
+    private void insertWithRetry(List<Message> messages, boolean keepRetrying) {
+        long backoff = config.getRetryBackoff();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                messageMapper.insertBatch(messages);
+                return;
+            } catch (RuntimeException e) {
+                if (!isTransient(e) || !(keepRetrying && running) && attempt > config.getMaxRetries()) {
+                    throw e;
+                }
+                log.warn("Failed to persist {} messages (attempt {}), retrying in {}ms: {}", messages.size(),
+                        attempt, backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, config.getMaxRetryBackoff());
+            }
+        }
+    }
+
+    /**
+     * 连接失败、死锁、锁等待超时等重试后可能成功的错误
+     */
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    private void fail(Message message, Exception e) {
+        failed.add(message.getConversationId());
+        drop(message, e);
+    }
+
+    private void drop(Message message, Exception e) {
+        dropped.increment();
+        if (e != null) {
+            log.error("Failed to persist message {} of conversation {}", message.getId(),
+                    message.getConversationId(), e);
+        } else {
+            log.error("Skipped message {} of conversation {} after an earlier message failed", message.getId(),
+                    message.getConversationId());
+        }
+    }
+
+    /**
+     * 减少对话待写入的消息数并唤醒等待的读取
+     */
+    private void done(List<Message> batch) {
+        for (Message message : batch) {
+            pending.computeIfPresent(message.getConversationId(), (id, count) -> count > 1 ? count - 1 : null);
+        }
+        lock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushTouches() {
+        if (touches.isEmpty()) {
+            return;
+        }
+        Map<Long, Instant> batch = new HashMap<>();
+        for (Long conversationId : touches.keySet()) {
+            Instant updatedAt = touches.remove(conversationId);
+            if (updatedAt != null) {
+                batch.put(conversationId, updatedAt);
+            }
+        }
+        try {
+            conversationMapper.touchAll(batch);
+        } catch (Exception e) {
+            log.warn("Failed to update {} conversations: {}", batch.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.mydotey.ai.studio.service.StreamingLlmService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带对冲和失败切换的流式调用
+ * <p>
+ * 首个尝试在对冲延迟内没有收到任何内容时，向另一个端点发送相同请求，先收到内容的尝试胜出，
+ * 其余尝试被取消；收到内容前失败的尝试会切换到尚未尝试过的端点。胜出后的失败直接传给下游，
+ * 不再重试，避免重复输出。调用方可随时 {@link #cancel()} 中止整个调用
+ */
+@Slf4j
+public class HedgedStreamCall {
+
+    /**
+     * 向指定端点发起流式请求，返回的 Future 取消时中断上游连接
+     */
+    @FunctionalInterface
+    public interface Launcher {
+        CompletableFuture<?> launch(String endpoint, StreamingLlmService.StreamCallback callback) throws Exception;
+    }
+
+    private final LlmEndpointRouter router;
+    private final List<String> candidates;
+    private final Launcher launcher;
+    private final StreamingLlmService.StreamCallback downstream;
+    private final Executor executor;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicReference<AttemptCallback> winner = new AtomicReference<>();
+    private final List<AttemptCallback> attempts = new CopyOnWriteArrayList<>();
+    private final Set<String> tried = new HashSet<>();
+    private volatile boolean terminated;
+
+    public HedgedStreamCall(LlmEndpointRouter router, List<String> candidates, Launcher launcher,
+                            StreamingLlmService.StreamCallback downstream, Executor executor) {
+        this.router = router;
+        this.candidates = candidates;
+        this.launcher = launcher;
+        this.downstream = downstream;
+        this.executor = executor;
+    }
+
+    /**
+     * 发起调用
+     *
+     * @return 下游收到结束或错误时完成的 Future
+     */
+    public CompletableFuture<Void> start() {
+        AttemptCallback first = launchNext();
+        if (first != null && candidates.size() > 1) {
+            long delay = router.hedgeDelayMillis(first.attempt.getEndpoint());
+            if (delay >= 0) {
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(this::hedge);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * 取消调用：中止所有进行中的尝试并关闭上游连接，下游收到 {@link CancellationException}
+     *
+     * @return 调用尚未结束、本次取消生效时返回 true
+     */
+    public boolean cancel() {
+        if (!terminate()) {
+            return false;
+        }
+        for (AttemptCallback attempt : attempts) {
+            attempt.cancel();
+        }
+        downstream.onError(new CancellationException("LLM stream cancelled"));
+        done.complete(null);
+        return true;
+    }
+
+    private void hedge() {
+        if (winner.get() == null && !isTerminated()) {
+            AttemptCallback hedge = launchNext();
+            if (hedge != null) {
+                log.info("Hedging LLM stream to endpoint: {}", hedge.attempt.getEndpoint());
+            }
+        }
+    }
+
+    /**
+     * 在尚未尝试过的端点上发起一次尝试
+     *
+     * @return 新的尝试，没有可用端点或已结束时返回 null
+     */
+    private AttemptCallback launchNext() {
+        AttemptCallback callback;
+        synchronized (this) {
+            if (terminated || winner.get() != null || tried.size() >= router.getMaxAttempts()) {
+                return null;
+            }
+            String endpoint = router.select(candidates, tried);
+            if (endpoint == null) {
+                return null;
+            }
+            tried.add(endpoint);
+            callback = new AttemptCallback(router.start(endpoint));
+            attempts.add(callback);
+        }
+        try {
+            callback.setFuture(launcher.launch(callback.attempt.getEndpoint(), callback));
+        } catch (Exception e) {
+            callback.onError(e);
+        }
+        return callback;
+    }
+
+    private synchronized boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * 标记结束，只有第一次调用返回 true
+     */
+    private synchronized boolean terminate() {
+        if (terminated) {
+            return false;
+        }
+        terminated = true;
+        return true;
+    }
+
+    /**
+     * 尚未胜出的尝试在收到内容前失败，还有其他进行中的尝试时等待它们，否则切换端点
+     */
+    private void onAttemptFailed(AttemptCallback failed, Exception e) {
+        attempts.remove(failed);
+        if (!attempts.isEmpty()) {
+            return;
+        }
+        AttemptCallback next = launchNext();
+        if (next != null) {
+            log.warn("LLM stream attempt failed on {}, retrying on {}: {}",
+                    failed.attempt.getEndpoint(), next.attempt.getEndpoint(), e.getMessage());
+            return;
+        }
+        if (attempts.isEmpty() && terminate()) {
+            downstream.onError(e);
+            done.complete(null);
+        }
+    }
+
+    /**
+     * 单次尝试的回调，只有胜出的尝试会把事件传给下游
+     */
+    private class AttemptCallback implements StreamingLlmService.StreamCallback {
+        private final LlmEndpointRouter.Attempt attempt;
+        private volatile CompletableFuture<?> future;
+        private volatile boolean cancelled;
+
+        AttemptCallback(LlmEndpointRouter.Attempt attempt) {
+            this.attempt = attempt;
+        }
+
+        void setFuture(CompletableFuture<?> future) {
+            this.future = future;
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            attempt.release();
+            CompletableFuture<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+
+        /**
+         * 争取成为胜出的尝试，第一次胜出时取消其余尝试
+         */
+        private boolean claim() {
+            if (winner.get() == this) {
+                return true;
+            }
+            if (!winner.compareAndSet(null, this)) {
+                return false;
+            }
+            attempt.firstByte();
+            for (AttemptCallback other : attempts) {
+                if (other != this) {
+                    other.cancel();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void onContent(String content) {
+            if (claim() && !terminated) {
+                downstream.onContent(content);
+            }
+        }
+
+        @Override
+        public void onFinish(String finishReason) {
+            if (claim()) {
+                downstream.onFinish(finishReason);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!claim()) {
+                attempt.release();
+                return;
+            }
+            attempt.success();
+            if (terminate()) {
+                downstream.onComplete();
+                done.complete(null);
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            AttemptCallback current = winner.get();
+            if (current == this) {
+                attempt.failure();
+                if (terminate()) {
+                    downstream.onError(e);
+                    done.complete(null);
+                }
+            } else if (current != null || cancelled) {
+                // 被对冲取消
+                attempt.release();
+            } else {
+                attempt.failure();
+                onAttemptFailed(this, e);
+            }
+        }
+    }
+}
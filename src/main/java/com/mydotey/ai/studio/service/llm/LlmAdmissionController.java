@@ -0,0 +1,465 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
+import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LLM 调用准入控制
+ * <p>
+ * 每个模型配置一个许可池，限制同时进行的上游调用数。没有空闲许可时调用排队，放行顺序为：
+ * 交互式调用优先于批处理调用（批处理最多占用一定比例的许可）；同一优先级内按组织做加权公平排队
+ * （start-time fair queuing，组织每放行一次虚拟时间前进 1/权重）；同一组织内按用户轮转。
+ * 队列已满或排队超时的调用以 {@link LlmOverloadedException} 拒绝，附带按平均占用时长估算的重试等待时间。
+ * 许可在完成 Future 之前已经分配，Future 完成失败（已取消或超时）时立即归还
+ */
+@Slf4j
+@Component
+public class LlmAdmissionController {
+
+    /**
+     * 未指定模型配置的调用共用的许可池
+     */
+    public static final String DEFAULT_POOL = "default";
+
+    /**
+     * 许可占用时长 EWMA 的平滑系数
+     */
+    private static final double HOLD_EWMA_ALPHA = 0.2;
+
+    /**
+     * 准入许可，调用结束后归还，重复归还没有副作用
+     */
+    @FunctionalInterface
+    public interface Permit {
+        void release();
+    }
+
+    private static final Permit UNLIMITED = () -> { };
+
+    private final LlmConfig llmConfig;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public LlmAdmissionController(LlmConfig llmConfig, MeterRegistry meterRegistry) {
+        this.llmConfig = llmConfig;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setName("llm-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 模型配置对应的许可池
+     */
+    public static String poolKey(ModelConfigDto modelConfig) {
+        return modelConfig != null && modelConfig.getId() != null
+                ? "model-config:" + modelConfig.getId()
+                : DEFAULT_POOL;
+    }
+
+    /**
+     * 以当前线程的调用方申请模型配置的许可
+     *
+     * @param modelConfig 模型配置，null 表示全局配置
+     * @return 获得许可时完成的 Future；被拒绝时以 {@link LlmOverloadedException} 失败；
+     *         调用方放弃等待时可取消该 Future
+     */
+    public CompletableFuture<Permit> acquire(ModelConfigDto modelConfig) {
+        return acquire(poolKey(modelConfig), modelConfig != null ? modelConfig.getMaxConcurrency() : null,
+                LlmCallContext.current());
+    }
+
+    /**
+     * 申请许可
+     *
+     * @param poolKey 许可池
+     * @param maxConcurrency 池的最大并发数，null 或非正数时使用默认值
+     * @param caller 调用方
+     */
+    public CompletableFuture<Permit> acquire(String poolKey, Integer maxConcurrency, LlmCallContext.Caller caller) {
+        LlmConfig.Admission config = llmConfig.getAdmission();
+        if (!config.isEnabled()) {
+            return CompletableFuture.completedFuture(UNLIMITED);
+        }
+        int limit = maxConcurrency != null && maxConcurrency > 0 ? maxConcurrency : config.getMaxConcurrent();
+        return pools.computeIfAbsent(poolKey, Pool::new).acquire(Math.max(1, limit), caller);
+    }
+
+    /**
+     * 以当前线程的调用方申请许可，阻塞直到获得许可
+     *
+     * @throws LlmOverloadedException 队列已满或排队超时
+     */
+    public Permit acquireBlocking(ModelConfigDto modelConfig) {
+        try {
+            return acquire(modelConfig).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 许可池当前排队数
+     */
+    public int queueDepth(String poolKey) {
+        Pool pool = pools.get(poolKey);
+        return pool != null ? pool.queued : 0;
+    }
+
+    /**
+     * 许可池当前占用的许可数
+     */
+    public int inUse(String poolKey) {
+        Pool pool = pools.get(poolKey);
+        return pool != null ? pool.inUse : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private int orgWeight(Long orgId) {
+        Integer weight = orgId != null ? llmConfig.getAdmission().getOrgWeights().get(orgId) : null;
+        return weight != null && weight > 0 ? weight : 1;
+    }
+
+    /**
+     * 排队中的调用
+     */
+    private static final class Waiter {
+        final LlmCallContext.Caller caller;
+        final String orgKey;
+        final String userKey;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+        boolean queued;
+        volatile ScheduledFuture<?> timeout;
+
+        Waiter(LlmCallContext.Caller caller) {
+            this.caller = caller;
+            this.orgKey = String.valueOf(caller.orgId());
+            this.userKey = String.valueOf(caller.userId());
+        }
+    }
+
+    /**
+     * 一个模型配置的许可池，所有状态由 lock 保护，Future 在锁外完成
+     */
+    private final class Pool {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<LlmPriority, ClassQueue> queues = new EnumMap<>(LlmPriority.class);
+        private final Map<LlmPriority, Timer> waitTimers = new EnumMap<>(LlmPriority.class);
+        private int limit;
+        private volatile int inUse;
+        private int batchInUse;
+        private volatile int queued;
+        private double holdMillisEwma = 1000;
+
+        Pool(String key) {
+            this.key = key;
+            for (LlmPriority priority : LlmPriority.values()) {
+                queues.put(priority, new ClassQueue());
+                waitTimers.put(priority, Timer.builder("llm.admission.wait")
+                        .description("Time LLM calls spent waiting for admission")
+                        .tag("pool", key)
+                        .tag("priority", priority.name().toLowerCase())
+                        .register(meterRegistry));
+            }
+            Gauge.builder("llm.admission.queue.depth", this, pool -> pool.queued)
+                    .description("LLM calls waiting for admission")
+                    .tag("pool", key)
+                    .register(meterRegistry);
+            Gauge.builder("llm.admission.in.use", this, pool -> pool.inUse)
+                    .description("LLM calls holding an admission permit")
+                    .tag("pool", key)
+                    .register(meterRegistry);
+        }
+
+        CompletableFuture<Permit> acquire(int limit, LlmCallContext.Caller caller) {
+            LlmConfig.Admission config = llmConfig.getAdmission();
+            Waiter waiter = new Waiter(caller);
+            List<Waiter> granted;
+            lock.lock();
+            try {
+                this.limit = limit;
+                if (queued >= config.getMaxQueueSize()) {
+                    return CompletableFuture.failedFuture(reject(caller.priority(), "queue_full"));
+                }
+                queues.get(caller.priority()).add(waiter);
+                waiter.queued = true;
+                queued++;
+                granted = dispatch();
+            } finally {
+                lock.unlock();
+            }
+            complete(granted);
+
+            if (!waiter.future.isDone()) {
+                long timeoutMillis = caller.priority() == LlmPriority.INTERACTIVE
+                        ? config.getInteractiveQueueTimeout()
+                        : config.getBatchQueueTimeout();
+                try {
+                    waiter.timeout = scheduler.schedule(() -> timeout(waiter), timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 应用停止中，不再限制排队时间
+                }
+                // 超时、取消都会走到这里，把调用移出队列
+                waiter.future.whenComplete((permit, error) -> {
+                    if (waiter.timeout != null) {
+                        waiter.timeout.cancel(false);
+                    }
+                    if (error != null) {
+                        remove(waiter);
+                    }
+                });
+            }
+            return waiter.future;
+        }
+
+        private void timeout(Waiter waiter) {
+            LlmOverloadedException error;
+            lock.lock();
+            try {
+                if (!waiter.queued) {
+                    return;
+                }
+                dequeue(waiter);
+                error = reject(waiter.caller.priority(), "timeout");
+            } finally {
+                lock.unlock();
+            }
+            waiter.future.completeExceptionally(error);
+        }
+
+        private void remove(Waiter waiter) {
+            lock.lock();
+            try {
+                if (waiter.queued) {
+                    dequeue(waiter);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 把调用移出队列，调用方持有锁
+         */
+        private void dequeue(Waiter waiter) {
+            waiter.queued = false;
+            queued--;
+            queues.get(waiter.caller.priority()).remove(waiter);
+        }
+
+        private void release(LlmPriority priority, long acquiredAt) {
+            List<Waiter> granted;
+            lock.lock();
+            try {
+                inUse--;
+                if (priority == LlmPriority.BATCH) {
+                    batchInUse--;
+                }
+                double heldMillis = (System.nanoTime() - acquiredAt) / 1_000_000.0;
+                holdMillisEwma += HOLD_EWMA_ALPHA * (heldMillis - holdMillisEwma);
+                granted = dispatch();
+            } finally {
+                lock.unlock();
+            }
+            complete(granted);
+        }
+
+        /**
+         * 在有空闲许可时按优先级和公平顺序取出排队的调用并分配许可，调用方持有锁
+         */
+        private List<Waiter> dispatch() {
+            List<Waiter> granted = List.of();
+            int batchLimit = Math.max(1, (int) (limit * llmConfig.getAdmission().getBatchMaxShare()));
+            while (inUse < limit) {
+                Waiter next = null;
+                for (LlmPriority priority : LlmPriority.values()) {
+                    if (priority == LlmPriority.BATCH && batchInUse >= batchLimit) {
+                        continue;
+                    }
+                    next = queues.get(priority).poll();
+                    if (next != null) {
+                        break;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.queued = false;
+                queued--;
+                inUse++;
+                if (next.caller.priority() == LlmPriority.BATCH) {
+                    batchInUse++;
+                }
+                if (granted.isEmpty()) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(next);
+            }
+            return granted;
+        }
+
+        /**
+         * 在锁外完成已分配许可的 Future，调用方已放弃等待时归还许可
+         */
+        private void complete(List<Waiter> granted) {
+            for (Waiter waiter : granted) {
+                long now = System.nanoTime();
+                LlmPriority priority = waiter.caller.priority();
+                AtomicBoolean released = new AtomicBoolean();
+                Permit permit = () -> {
+                    if (released.compareAndSet(false, true)) {
+                        release(priority, now);
+                    }
+                };
+                if (waiter.future.complete(permit)) {
+                    waitTimers.get(priority).record(now - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+                } else {
+                    permit.release();
+                }
+            }
+        }
+
+        /**
+         * 记录拒绝并生成异常，调用方持有锁
+         */
+        private LlmOverloadedException reject(LlmPriority priority, String reason) {
+            meterRegistry.counter("llm.admission.rejected", "pool", key,
+                    "priority", priority.name().toLowerCase(), "reason", reason).increment();
+            // 按平均占用时长估算排在前面的调用全部放行所需的时间
+            double waitMillis = holdMillisEwma * (queued + 1) / Math.max(1, limit);
+            int retryAfter = (int) Math.min(llmConfig.getAdmission().getMaxRetryAfter(),
+                    Math.max(1, Math.ceil(waitMillis / 1000)));
+            log.warn("LLM call rejected by admission control - pool: {}, priority: {}, reason: {}, queued: {}",
+                    key, priority, reason, queued);
+            return new LlmOverloadedException("LLM capacity exhausted, please retry later", retryAfter);
+        }
+    }
+
+    /**
+     * 同一优先级的排队：组织间加权公平，组织内用户轮转
+     */
+    private final class ClassQueue {
+        private final Map<String, OrgQueue> orgs = new HashMap<>();
+        private double virtualTime;
+
+        void add(Waiter waiter) {
+            OrgQueue org = orgs.computeIfAbsent(waiter.orgKey, k -> new OrgQueue(orgWeight(waiter.caller.orgId())));
+            if (org.isEmpty()) {
+                // 重新进入排队的组织不能用空闲期间积累的份额插队
+                org.startTag = Math.max(org.startTag, virtualTime);
+            }
+            org.add(waiter);
+        }
+
+        Waiter poll() {
+            OrgQueue next = null;
+            Iterator<OrgQueue> it = orgs.values().iterator();
+            while (it.hasNext()) {
+                OrgQueue org = it.next();
+                if (org.isEmpty()) {
+                    // 已经没有领先份额的空闲组织不再需要保留
+                    if (org.startTag <= virtualTime) {
+                        it.remove();
+                    }
+                    continue;
+                }
+                if (next == null || org.startTag < next.startTag) {
+                    next = org;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            virtualTime = next.startTag;
+            next.startTag += 1.0 / next.weight;
+            return next.poll();
+        }
+
+        void remove(Waiter waiter) {
+            OrgQueue org = orgs.get(waiter.orgKey);
+            if (org != null) {
+                org.remove(waiter);
+            }
+        }
+    }
+
+    /**
+     * 一个组织的排队，按用户分组轮转
+     */
+    private static final class OrgQueue {
+        private final int weight;
+        private final LinkedHashMap<String, ArrayDeque<Waiter>> users = new LinkedHashMap<>();
+        private double startTag;
+
+        OrgQueue(int weight) {
+            this.weight = weight;
+        }
+
+        boolean isEmpty() {
+            return users.isEmpty();
+        }
+
+        void add(Waiter waiter) {
+            users.computeIfAbsent(waiter.userKey, k -> new ArrayDeque<>()).add(waiter);
+        }
+
+        Waiter poll() {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = users.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> first = it.next();
+            Waiter waiter = first.getValue().poll();
+            it.remove();
+            if (!first.getValue().isEmpty()) {
+                // 轮到的用户移到末尾
+                users.put(first.getKey(), first.getValue());
+            }
+            return waiter;
+        }
+
+        void remove(Waiter waiter) {
+            ArrayDeque<Waiter> queue = users.get(waiter.userKey);
+            if (queue != null && queue.remove(waiter) && queue.isEmpty()) {
+                users.remove(waiter.userKey);
+            }
+        }
+    }
+}
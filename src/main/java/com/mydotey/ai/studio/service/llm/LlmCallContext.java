@@ -0,0 +1,130 @@
+package com.mydotey.ai.studio.service.llm;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 当前线程发起的 LLM 调用所属的调用方，供准入控制做公平排队
+ * <p>
+ * HTTP 请求由认证过滤器绑定为交互式调用；未绑定的线程（后台任务）视为批处理调用。
+ * 请求中的工作交给其他线程执行时，执行器以 {@link #propagating(ExecutorService)} 包装，
+ * 任务在提交时捕获调用方，执行期间绑定到执行线程
+ */
+public final class LlmCallContext {
+
+    /**
+     * 调用方
+     *
+     * @param orgId 组织 ID，可能为空
+     * @param userId 用户 ID，可能为空
+     * @param priority 优先级
+     */
+    public record Caller(Long orgId, Long userId, LlmPriority priority) {
+    }
+
+    private static final Caller BACKGROUND = new Caller(null, null, LlmPriority.BATCH);
+
+    private static final ThreadLocal<Caller> CURRENT = new ThreadLocal<>();
+
+    private LlmCallContext() {
+    }
+
+    /**
+     * 当前调用方，未绑定时返回后台批处理调用方
+     */
+    public static Caller current() {
+        Caller caller = CURRENT.get();
+        return caller != null ? caller : BACKGROUND;
+    }
+
+    public static void set(Caller caller) {
+        CURRENT.set(caller);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 捕获当前线程的调用方，任务执行期间绑定到执行线程，结束后恢复执行线程原来的调用方
+     */
+    public static Runnable wrap(Runnable task) {
+        Caller caller = CURRENT.get();
+        return () -> {
+            Caller previous = CURRENT.get();
+            bind(caller);
+            try {
+                task.run();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    /**
+     * 提交的任务都以 {@link #wrap(Runnable)} 包装的执行器
+     */
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * 提交的任务都以 {@link #wrap(Runnable)} 包装的执行器，关闭时关闭原执行器
+     */
+    public static ExecutorService propagating(ExecutorService executor) {
+        return new PropagatingExecutorService(executor);
+    }
+
+    private static void bind(Caller caller) {
+        if (caller != null) {
+            CURRENT.set(caller);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * submit、invokeAll 等都经过 execute，一并携带调用方
+     */
+    private static final class PropagatingExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        PropagatingExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(wrap(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.LlmConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LLM 多端点路由
+ * <p>
+ * 每个端点维护延迟 EWMA、进行中的请求数、熔断器和首 token 时间样本。
+ * 选择时在可用端点中随机取两个，选 EWMA ×（进行中请求数 + 1）较小的一个（power of two choices）；
+ * 所有端点都已熔断时退化为在全部端点中选择，避免单端点配置被完全阻断。
+ * 流式请求以首 token 时间、非流式请求以总耗时计入 EWMA
+ */
+@Slf4j
+@Component
+public class LlmEndpointRouter {
+
+    private static final TypeReference<List<String>> ENDPOINT_LIST = new TypeReference<>() {
+    };
+
+    private final LlmConfig.Routing properties;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<String, EndpointState> states = new ConcurrentHashMap<>();
+
+    public LlmEndpointRouter(LlmConfig llmConfig, ObjectMapper objectMapper) {
+        this.properties = llmConfig.getRouting();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 组装端点池，主端点在前，附加端点去重后追加
+     *
+     * @param primary 主端点
+     * @param extraEndpointsJson 附加端点的 JSON 数组，可为 null
+     * @throws IllegalStateException 主端点未配置
+     */
+    public List<String> candidates(String primary, String extraEndpointsJson) {
+        requirePrimary(primary);
+        if (extraEndpointsJson == null || extraEndpointsJson.isBlank()) {
+            return List.of(primary);
+        }
+        try {
+            return candidates(primary, objectMapper.readValue(extraEndpointsJson, ENDPOINT_LIST));
+        } catch (Exception e) {
+            log.warn("Invalid endpoints config, using primary endpoint only: {}", e.getMessage());
+            return List.of(primary);
+        }
+    }
+
+    /**
+     * 组装端点池，主端点在前，附加端点去重后追加
+     *
+     * @throws IllegalStateException 主端点未配置
+     */
+    public List<String> candidates(String primary, List<String> extraEndpoints) {
+        requirePrimary(primary);
+        Set<String> endpoints = new LinkedHashSet<>();
+        endpoints.add(primary);
+        if (extraEndpoints != null) {
+            for (String endpoint : extraEndpoints) {
+                if (endpoint != null && !endpoint.isBlank()) {
+                    endpoints.add(endpoint.trim());
+                }
+            }
+        }
+        return List.copyOf(endpoints);
+    }
+
+    private static void requirePrimary(String primary) {
+        if (primary == null || primary.isBlank()) {
+            throw new IllegalStateException("LLM endpoint is not configured");
+        }
+    }
+
+    /**
+     * 选择端点
+     *
+     * @param candidates 端点池
+     * @param excluded 本次请求已尝试过的端点
+     * @return 选中的端点，全部排除时返回 null
+     */
+    public String select(List<String> candidates, Collection<String> excluded) {
+        List<String> remaining = new ArrayList<>(candidates.size());
+        List<String> available = new ArrayList<>(candidates.size());
+        for (String endpoint : candidates) {
+            if (excluded.contains(endpoint)) {
+                continue;
+            }
+            remaining.add(endpoint);
+            if (state(endpoint).breaker.isAvailable()) {
+                available.add(endpoint);
+            }
+        }
+        List<String> pool = available.isEmpty() ? remaining : available;
+        if (pool.isEmpty()) {
+            return null;
+        }
+        if (pool.size() == 1) {
+            return pool.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(pool.size());
+        int second = random.nextInt(pool.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        String a = pool.get(first);
+        String b = pool.get(second);
+        return state(a).score() <= state(b).score() ? a : b;
+    }
+
+    /**
+     * 开始一次请求，返回的句柄必须以 success / failure / release 之一结束
+     */
+    public Attempt start(String endpoint) {
+        EndpointState state = state(endpoint);
+        state.breaker.onAttempt();
+        state.inflight.incrementAndGet();
+        return new Attempt(endpoint, state);
+    }
+
+    /**
+     * 计算对冲延迟：该端点首 token 时间的分位数，限制在上下限之间
+     *
+     * @return 对冲延迟（毫秒），未启用或样本不足时返回 -1
+     */
+    public long hedgeDelayMillis(String endpoint) {
+        if (!properties.isHedgeEnabled()) {
+            return -1;
+        }
+        long percentile = state(endpoint).ttftPercentile(properties.getHedgePercentile(),
+                properties.getHedgeMinSamples());
+        if (percentile < 0) {
+            return -1;
+        }
+        return Math.min(properties.getHedgeMaxDelay(), Math.max(properties.getHedgeMinDelay(), percentile));
+    }
+
+    public int getMaxAttempts() {
+        return Math.max(1, properties.getMaxAttempts());
+    }
+
+    public double getLatencyEwma(String endpoint) {
+        return state(endpoint).ewma();
+    }
+
+    public int getInflight(String endpoint) {
+        return state(endpoint).inflight.get();
+    }
+
+    public CircuitBreaker.State getCircuitState(String endpoint) {
+        return state(endpoint).breaker.getState();
+    }
+
+    private EndpointState state(String endpoint) {
+        return states.computeIfAbsent(endpoint, e -> new EndpointState(properties));
+    }
+
+    /**
+     * 单次请求的句柄，结束方法只有第一次调用生效
+     */
+    public static class Attempt {
+        private final String endpoint;
+        private final EndpointState state;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean firstByteSeen = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Attempt(String endpoint, EndpointState state) {
+            this.endpoint = endpoint;
+            this.state = state;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * 收到首个 token，记录首 token 时间
+         */
+        public void firstByte() {
+            if (!finished.get() && firstByteSeen.compareAndSet(false, true)) {
+                long millis = elapsedMillis();
+                state.recordLatency(millis);
+                state.recordTtft(millis);
+            }
+        }
+
+        public void success() {
+            if (finished.compareAndSet(false, true)) {
+                if (!firstByteSeen.get()) {
+                    state.recordLatency(elapsedMillis());
+                }
+                state.inflight.decrementAndGet();
+                state.breaker.onSuccess();
+            }
+        }
+
+        public void failure() {
+            if (finished.compareAndSet(false, true)) {
+                state.inflight.decrementAndGet();
+                state.breaker.onFailure();
+            }
+        }
+
+        /**
+         * 不计成败地结束，用于被对冲取消或请求本身有误（如 4xx）的情况
+         */
+        public void release() {
+            if (finished.compareAndSet(false, true)) {
+                state.inflight.decrementAndGet();
+                state.breaker.onRelease();
+            }
+        }
+
+        private long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 端点状态
+     */
+    private static class EndpointState {
+        private final double alpha;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final CircuitBreaker breaker;
+        private final long[] ttftSamples;
+        private int sampleCount;
+        private int sampleIndex;
+        private double ewmaMillis = -1;
+
+        EndpointState(LlmConfig.Routing properties) {
+            this.alpha = properties.getEwmaAlpha();
+            this.breaker = new CircuitBreaker(properties.getFailureThreshold(), properties.getOpenDuration());
+            this.ttftSamples = new long[Math.max(1, properties.getSampleWindow())];
+        }
+
+        /**
+         * 未知端点的 EWMA 视为 0，优先被探测
+         */
+        double score() {
+            return (Math.max(0, ewma()) + 1) * (inflight.get() + 1);
+        }
+
+        synchronized double ewma() {
+            return ewmaMillis;
+        }
+
+        synchronized void recordLatency(long millis) {
+            ewmaMillis = ewmaMillis < 0 ? millis : alpha * millis + (1 - alpha) * ewmaMillis;
+        }
+
+        synchronized void recordTtft(long millis) {
+            ttftSamples[sampleIndex] = millis;
+            sampleIndex = (sampleIndex + 1) % ttftSamples.length;
+            sampleCount = Math.min(sampleCount + 1, ttftSamples.length);
+        }
+
+        synchronized long ttftPercentile(double percentile, int minSamples) {
+            if (sampleCount == 0 || sampleCount < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(ttftSamples, sampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sampleCount) - 1;
+            return sorted[Math.min(sampleCount - 1, Math.max(0, index))];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mydotey.ai.studio.service.llm;
+
+/**
+ * LLM 调用的优先级，排队时交互式调用先于批处理调用放行
+ */
+public enum LlmPriority {
+    /**
+     * 用户在线等待的调用（聊天、RAG 问答等）
+     */
+    INTERACTIVE,
+    /**
+     * 后台任务（对话摘要压缩等）
+     */
+    BATCH
+}
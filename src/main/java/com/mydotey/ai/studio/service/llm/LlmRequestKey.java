@@ -0,0 +1,67 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.mydotey.ai.studio.dto.LlmRequest;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * LLM 请求的规范化键
+ * 以端点和规范化后的请求（模型、消息、温度、最大长度、工具）计算 SHA-256，
+ * 模型配置 ID 和 API Key 同时参与计算，不同配置或组织的相同请求不会共享结果；
+ * stream 标志不参与计算；用于响应缓存和请求合并
+ */
+public class LlmRequestKey {
+
+    /**
+     * 规范化序列化：属性和 Map 键按字母排序，保证相同请求得到相同字节
+     */
+    private static final ObjectMapper CANONICAL_MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private LlmRequestKey() {
+    }
+
+    /**
+     * 计算请求键
+     *
+     * @param modelConfig 模型配置，为空表示全局默认配置
+     * @param apiKey 实际使用的 API Key，只参与摘要计算
+     */
+    public static String of(String endpoint, ModelConfigDto modelConfig, String apiKey, LlmRequest request) {
+        String configId = modelConfig != null && modelConfig.getId() != null
+                ? String.valueOf(modelConfig.getId())
+                : "default";
+        LlmRequest canonical = LlmRequest.builder()
+                .model(request.getModel())
+                .messages(request.getMessages())
+                .temperature(request.getTemperature())
+                .maxTokens(request.getMaxTokens())
+                .tools(request.getTools())
+                .build();
+        return hash(endpoint + "\n" + configId + "\n" + apiKey, canonical);
+    }
+
+    /**
+     * 对任意可序列化的值计算规范化哈希，前缀用于区分不同来源
+     */
+    public static String hash(String prefix, Object value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(CANONICAL_MAPPER.writeValueAsBytes(value));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to build request key", e);
+        }
+    }
+}
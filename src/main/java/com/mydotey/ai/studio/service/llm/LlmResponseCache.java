@@ -0,0 +1,169 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.dto.LlmRequest;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM 响应精确匹配缓存
+ * <p>
+ * 以 {@link LlmRequestKey} 作为键，一级缓存为进程内 Caffeine，可选 Redis 作为多节点共享的二级缓存。
+ * 只缓存温度不高于阈值的确定性请求，且只缓存正常结束（finish_reason 为 stop）的响应
+ */
+@Slf4j
+@Component
+public class LlmResponseCache {
+
+    private static final String REDIS_KEY_PREFIX = "llm:resp:";
+    private static final String FINISH_REASON_STOP = "stop";
+
+    private final LlmConfig.ResponseCache properties;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final Cache<String, Entry> localCache;
+
+    public LlmResponseCache(LlmConfig llmConfig, ObjectMapper objectMapper,
+                            ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        this.properties = llmConfig.getResponseCache();
+        this.objectMapper = objectMapper;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxEntries())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(entry.ttlSeconds());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return TimeUnit.SECONDS.toNanos(entry.ttlSeconds());
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 判断本次请求是否启用缓存
+     * 聊天机器人的设置优先于模型配置，两者都未指定时使用全局开关；温度超过阈值时始终不缓存
+     *
+     * @param modelConfig 模型配置，可为 null
+     * @param chatbotOverride 聊天机器人的设置，可为 null
+     * @param temperature 实际使用的温度
+     */
+    public boolean isEnabled(ModelConfigDto modelConfig, Boolean chatbotOverride, Double temperature) {
+        if (temperature == null || temperature > properties.getMaxTemperature()) {
+            return false;
+        }
+        if (chatbotOverride != null) {
+            return chatbotOverride;
+        }
+        if (modelConfig != null && modelConfig.getResponseCacheEnabled() != null) {
+            return modelConfig.getResponseCacheEnabled();
+        }
+        return properties.isEnabled();
+    }
+
+    /**
+     * 获取缓存过期时间（秒），模型配置未指定时使用全局默认值
+     */
+    public int getTtlSeconds(ModelConfigDto modelConfig) {
+        if (modelConfig != null && modelConfig.getResponseCacheTtl() != null && modelConfig.getResponseCacheTtl() > 0) {
+            return modelConfig.getResponseCacheTtl();
+        }
+        return properties.getTtl();
+    }
+
+    /**
+     * 生成缓存键，stream 标志不参与计算，流式和非流式请求共享缓存；
+     * 模型配置和 API Key 参与计算，不同配置或组织之间不共享缓存
+     */
+    public String buildKey(String endpoint, ModelConfigDto modelConfig, String apiKey, LlmRequest request) {
+        return LlmRequestKey.of(endpoint, modelConfig, apiKey, request);
+    }
+
+    /**
+     * 查询缓存，本地未命中时查询 Redis 并回填本地缓存
+     *
+     * @return 命中的响应，未命中返回 null
+     */
+    public LlmResponse get(String key) {
+        Entry entry = localCache.getIfPresent(key);
+        if (entry != null) {
+            return entry.response();
+        }
+
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key);
+            if (json == null) {
+                return null;
+            }
+            LlmResponse response = objectMapper.readValue(json, LlmResponse.class);
+            Long ttl = redisTemplate.getExpire(REDIS_KEY_PREFIX + key, TimeUnit.SECONDS);
+            if (ttl != null && ttl > 0) {
+                localCache.put(key, new Entry(response, ttl));
+            }
+            return response;
+        } catch (Exception e) {
+            log.warn("Failed to read LLM response cache from Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，未正常结束的响应不缓存
+     */
+    public void put(String key, LlmResponse response, int ttlSeconds) {
+        if (response == null || response.getContent() == null
+                || !FINISH_REASON_STOP.equals(response.getFinishReason()) || ttlSeconds <= 0) {
+            return;
+        }
+        localCache.put(key, new Entry(response, ttlSeconds));
+
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key,
+                    objectMapper.writeValueAsString(response), Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            log.warn("Failed to write LLM response cache to Redis: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 命中后流式回放时每个分片的字符数
+     */
+    public int getReplayChunkSize() {
+        return Math.max(1, properties.getReplayChunkSize());
+    }
+
+    private StringRedisTemplate redisTemplate() {
+        return properties.isRedisEnabled() ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    private record Entry(LlmResponse response, long ttlSeconds) {
+    }
+}
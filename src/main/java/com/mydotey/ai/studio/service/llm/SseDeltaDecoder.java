@@ -0,0 +1,190 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+
+/**
+ * 流式补全增量解码器
+ * <p>
+ * 直接在原始字节上用非阻塞 JsonParser 提取 choices[0].delta.content 和 choices[0].finish_reason，
+ * 不构建 JsonNode 树；同一个流的所有 data 行复用同一个解析器，遇到非法数据时重建解析器。
+ * 非线程安全，每个流使用一个实例
+ */
+public class SseDeltaDecoder implements AutoCloseable {
+
+    /**
+     * 相邻两段负载之间补一个空白作为根级值的分隔
+     */
+    private static final byte[] SEPARATOR = {'\n'};
+
+    private final JsonFactory jsonFactory;
+    private JsonParser parser;
+
+    public SseDeltaDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * 解码一条 data 负载
+     *
+     * @param data 字节数组，解码期间不得修改
+     * @param offset 负载起始位置
+     * @param length 负载长度，必须是一个完整的 JSON 对象
+     * @param delta 输出，解码前会被重置
+     * @throws IOException 负载不是合法的 JSON 对象
+     */
+    public void decode(byte[] data, int offset, int length, Delta delta) throws IOException {
+        delta.reset();
+        JsonParser p = parser();
+        try {
+            ByteArrayFeeder feeder = (ByteArrayFeeder) p.getNonBlockingInputFeeder();
+            feeder.feedInput(SEPARATOR, 0, SEPARATOR.length);
+            if (p.nextToken() != JsonToken.NOT_AVAILABLE) {
+                throw new IOException("Unexpected content between stream chunks");
+            }
+            feeder.feedInput(data, offset, offset + length);
+            if (next(p) != JsonToken.START_OBJECT) {
+                throw new IOException("Stream chunk is not a JSON object");
+            }
+            readChunk(p, delta);
+            // 读到 NOT_AVAILABLE 说明本段输入已全部消费，下一段可以继续喂给同一个解析器
+            if (p.nextToken() != JsonToken.NOT_AVAILABLE) {
+                throw new IOException("Unexpected trailing content in stream chunk");
+            }
+        } catch (IOException | RuntimeException e) {
+            reset();
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        reset();
+    }
+
+    private JsonParser parser() throws IOException {
+        if (parser == null) {
+            parser = jsonFactory.createNonBlockingByteArrayParser();
+        }
+        return parser;
+    }
+
+    private void reset() {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // 丢弃损坏的解析器
+            }
+            parser = null;
+        }
+    }
+
+    /**
+     * 读取根对象，只关心 choices 数组的第一个元素
+     */
+    private void readChunk(JsonParser p, Delta delta) throws IOException {
+        while (next(p) == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = next(p);
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                readChoices(p, delta);
+            } else {
+                skip(p, value);
+            }
+        }
+    }
+
+    private void readChoices(JsonParser p, Delta delta) throws IOException {
+        boolean first = true;
+        JsonToken token;
+        while ((token = next(p)) != JsonToken.END_ARRAY) {
+            if (first && token == JsonToken.START_OBJECT) {
+                readChoice(p, delta);
+            } else {
+                skip(p, token);
+            }
+            first = false;
+        }
+    }
+
+    private void readChoice(JsonParser p, Delta delta) throws IOException {
+        while (next(p) == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = next(p);
+            if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                readDelta(p, delta);
+            } else if ("finish_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                delta.finishReason = p.getText();
+            } else {
+                skip(p, value);
+            }
+        }
+    }
+
+    private void readDelta(JsonParser p, Delta delta) throws IOException {
+        while (next(p) == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = next(p);
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                delta.content = p.getText();
+            } else {
+                skip(p, value);
+            }
+        }
+    }
+
+    /**
+     * 跳过当前值；非阻塞解析器的 skipChildren 遇到不完整输入会死循环，这里自行按深度跳过
+     */
+    private static void skip(JsonParser p, JsonToken current) throws IOException {
+        if (current == null || !current.isStructStart()) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            JsonToken token = next(p);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * 读取下一个 token，输入在 JSON 对象结束前耗尽时视为非法数据
+     */
+    private static JsonToken next(JsonParser p) throws IOException {
+        JsonToken token = p.nextToken();
+        if (token == null || token == JsonToken.NOT_AVAILABLE) {
+            throw new IOException("Incomplete JSON in stream chunk");
+        }
+        return token;
+    }
+
+    /**
+     * 单个增量的解码结果，可在同一个流内重复使用
+     */
+    public static class Delta {
+        private String content;
+        private String finishReason;
+
+        public String getContent() {
+            return content;
+        }
+
+        public String getFinishReason() {
+            return finishReason;
+        }
+
+        void reset() {
+            content = null;
+            finishReason = null;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.mydotey.ai.studio.service.StreamingLlmService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LLM 流式响应的逐行订阅者
+ * <p>
+ * 直接在响应字节上切分 SSE 行，data 负载交给 {@link SseDeltaDecoder} 解码，不为每行创建字符串；
+ * 每处理完一批数据才请求下一批，下游写出变慢时上游读取随之暂停，形成背压；
+ * 保证 onComplete / onError 只回调一次
+ */
+@Slf4j
+public class SseLineSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE_MARKER = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_LINE_CAPACITY = 1024;
+
+    private final StreamingLlmService.StreamCallback callback;
+    private final SseDeltaDecoder decoder;
+    private final SseDeltaDecoder.Delta delta = new SseDeltaDecoder.Delta();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private volatile Flow.Subscription subscription;
+    private volatile boolean cancelled;
+    private byte[] line = new byte[INITIAL_LINE_CAPACITY];
+    private int lineLength;
+
+    public SseLineSubscriber(JsonFactory jsonFactory, StreamingLlmService.StreamCallback callback) {
+        this.callback = callback;
+        this.decoder = new SseDeltaDecoder(jsonFactory);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (!terminated.get()) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    consume(buffer);
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        // 终止后继续消费剩余数据，让连接正常归还连接池
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        decoder.close();
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (!terminated.get() && lineLength > 0) {
+            // 最后一行没有换行符
+            handleLine(line, lineLength);
+            lineLength = 0;
+        }
+        decoder.close();
+        complete();
+    }
+
+    /**
+     * 以错误结束流，重复调用只生效一次
+     */
+    public void fail(Throwable throwable) {
+        if (terminated.compareAndSet(false, true)) {
+            log.error("LLM stream failed", throwable);
+            callback.onError(throwable instanceof Exception e ? e : new RuntimeException(throwable));
+        }
+    }
+
+    /**
+     * 取消读取，不再回调，并关闭上游连接（不再读完剩余数据）
+     */
+    public void cancel() {
+        cancelled = true;
+        terminated.set(true);
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private void complete() {
+        if (terminated.compareAndSet(false, true)) {
+            callback.onComplete();
+        }
+    }
+
+    /**
+     * 把缓冲区按换行符切分，跨缓冲区的半行暂存在 line 中
+     */
+    private void consume(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && !terminated.get()) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int newline = -1;
+            for (int i = start; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            int end = newline >= 0 ? newline : limit;
+            append(buffer, end - start);
+            if (newline < 0) {
+                return;
+            }
+            buffer.position(newline + 1);
+            handleLine(line, lineLength);
+            lineLength = 0;
+        }
+    }
+
+    private void append(ByteBuffer buffer, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        buffer.get(line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void handleLine(byte[] bytes, int length) {
+        int start = 0;
+        int end = length;
+        while (start < end && isWhitespace(bytes[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+        if (!startsWith(bytes, start, end, DATA_PREFIX)) {
+            return;
+        }
+        start += DATA_PREFIX.length;
+        while (start < end && isWhitespace(bytes[start])) {
+            start++;
+        }
+        if (end - start == DONE_MARKER.length && startsWith(bytes, start, end, DONE_MARKER)) {
+            complete();
+            return;
+        }
+        if (start == end) {
+            return;
+        }
+
+        try {
+            decoder.decode(bytes, start, end - start, delta);
+        } catch (IOException e) {
+            log.warn("Failed to parse stream data: {}, error: {}",
+                    new String(bytes, start, end - start, StandardCharsets.UTF_8), e.getMessage());
+            return;
+        }
+        if (delta.getContent() != null) {
+            callback.onContent(delta.getContent());
+        }
+        if (delta.getFinishReason() != null) {
+            callback.onFinish(delta.getFinishReason());
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
@@ -0,0 +1,176 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.mydotey.ai.studio.service.StreamingLlmService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 流式响应多播
+ * <p>
+ * 作为上游流的回调，把内容分发给多个订阅者；已收到的内容会缓存下来，
+ * 后加入的订阅者先回放缓存再接收后续内容，保证每个订阅者都收到完整的 token 序列。
+ * 分发和加入在同一把锁内进行，单个订阅者的异常不影响其他订阅者。
+ * 订阅者可以单独退出，最后一个订阅者退出时中断上游
+ */
+@Slf4j
+public class StreamMulticast implements StreamingLlmService.StreamCallback {
+
+    private final Consumer<StreamMulticast> onTerminate;
+    private final List<String> chunks = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private String finishReason;
+    private boolean terminated;
+    private Runnable upstreamCancel;
+
+    /**
+     * @param onTerminate 上游结束时回调，用于从进行中的流中移除自己
+     */
+    public StreamMulticast(Consumer<StreamMulticast> onTerminate) {
+        this.onTerminate = onTerminate;
+    }
+
+    /**
+     * 加入订阅，先回放已收到的内容
+     *
+     * @return 订阅者收到结束或错误时完成的 Future；上游已经结束时返回 null，调用方应重新发起请求
+     */
+    public synchronized CompletableFuture<Void> subscribe(StreamingLlmService.StreamCallback callback) {
+        if (terminated) {
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(callback, new CompletableFuture<>());
+        for (String chunk : chunks) {
+            deliver(subscriber, s -> s.callback().onContent(chunk));
+        }
+        if (finishReason != null) {
+            deliver(subscriber, s -> s.callback().onFinish(finishReason));
+        }
+        subscribers.add(subscriber);
+        return subscriber.done();
+    }
+
+    /**
+     * 设置中断上游的操作，最后一个订阅者退出时执行
+     */
+    public synchronized void setUpstreamCancel(Runnable upstreamCancel) {
+        this.upstreamCancel = upstreamCancel;
+    }
+
+    /**
+     * 退出订阅，该订阅者收到 {@link CancellationException}；最后一个订阅者退出时结束多播并中断上游，
+     * 之后相同的请求会发起新的上游流
+     *
+     * @return 本次退出导致上游被中断时返回 true
+     */
+    public boolean unsubscribe(StreamingLlmService.StreamCallback callback) {
+        Runnable cancel;
+        synchronized (this) {
+            if (terminated) {
+                return false;
+            }
+            Subscriber removed = null;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.callback() == callback) {
+                    removed = subscriber;
+                    break;
+                }
+            }
+            if (removed == null) {
+                return false;
+            }
+            subscribers.remove(removed);
+            deliver(removed, s -> s.callback().onError(new CancellationException("LLM stream cancelled")));
+            removed.done().complete(null);
+            if (!subscribers.isEmpty() || upstreamCancel == null) {
+                return false;
+            }
+            terminated = true;
+            cancel = upstreamCancel;
+        }
+        onTerminate.accept(this);
+        cancel.run();
+        return true;
+    }
+
+    public synchronized int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public synchronized void onContent(String content) {
+        if (terminated) {
+            return;
+        }
+        chunks.add(content);
+        for (Subscriber subscriber : subscribers) {
+            deliver(subscriber, s -> s.callback().onContent(content));
+        }
+    }
+
+    @Override
+    public synchronized void onFinish(String reason) {
+        if (terminated) {
+            return;
+        }
+        finishReason = reason;
+        for (Subscriber subscriber : subscribers) {
+            deliver(subscriber, s -> s.callback().onFinish(reason));
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (!terminate()) {
+            return;
+        }
+        synchronized (this) {
+            for (Subscriber subscriber : subscribers) {
+                deliver(subscriber, s -> s.callback().onComplete());
+                subscriber.done().complete(null);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (!terminate()) {
+            return;
+        }
+        synchronized (this) {
+            for (Subscriber subscriber : subscribers) {
+                deliver(subscriber, s -> s.callback().onError(e));
+                subscriber.done().complete(null);
+            }
+        }
+    }
+
+    /**
+     * 标记结束并移出进行中的流，之后的订阅请求会发起新的上游请求
+     */
+    private boolean terminate() {
+        synchronized (this) {
+            if (terminated) {
+                return false;
+            }
+            terminated = true;
+        }
+        onTerminate.accept(this);
+        return true;
+    }
+
+    private static void deliver(Subscriber subscriber, Consumer<Subscriber> action) {
+        try {
+            action.accept(subscriber);
+        } catch (Exception e) {
+            log.warn("Stream subscriber callback failed", e);
+        }
+    }
+
+    private record Subscriber(StreamingLlmService.StreamCallback callback, CompletableFuture<Void> done) {
+    }
+}
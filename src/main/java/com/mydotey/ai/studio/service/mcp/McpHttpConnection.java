@@ -0,0 +1,429 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mydotey.ai.studio.config.McpConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 一个 MCP streamable HTTP 服务器上的会话
+ * <p>
+ * 首个请求前完成 initialize 握手并记录服务端分配的 Mcp-Session-Id，之后的请求都带上该会话 ID；
+ * 服务端返回 404 表示会话已失效，重新握手后重试一次。每个请求是一次独立的 POST，多个请求同时在共享
+ * HttpClient 的连接池上进行，不等待前一个请求的响应。响应为 JSON 时直接解析；为 SSE 流时逐个处理事件，
+ * 进度通知回调给调用方，直到收到对应 ID 的响应。请求超时或被取消时关闭响应流并发送 notifications/cancelled
+ */
+@Slf4j
+public class McpHttpConnection {
+
+    /**
+     * 客户端声明的 MCP 协议版本（streamable HTTP 传输）
+     */
+    public static final String PROTOCOL_VERSION = "2025-03-26";
+
+    /**
+     * 会话 ID 的请求头和响应头
+     */
+    public static final String SESSION_HEADER = "Mcp-Session-Id";
+
+    private static final String ACCEPT = "application/json, text/event-stream";
+    private static final int MAX_ERROR_BODY_CHARS = 500;
+
+    private final String name;
+    private final URI endpoint;
+    private final Map<String, String> headers;
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper;
+    private final long initializeTimeoutMillis;
+    private final Semaphore permits;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, Call> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock sessionLock = new ReentrantLock();
+    private volatile boolean initialized;
+    private volatile String sessionId;
+    private volatile boolean closed;
+
+    /**
+     * @param headers 每个请求都带上的请求头（如认证信息）
+     * @param executor 执行请求的线程池，请求在其中阻塞等待响应
+     */
+    public McpHttpConnection(String name, URI endpoint, Map<String, String> headers, HttpClient httpClient,
+                             ExecutorService executor, ObjectMapper objectMapper, McpConfig.Http config) {
+        this.name = name;
+        this.endpoint = endpoint;
+        this.headers = headers;
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.initializeTimeoutMillis = config.getInitializeTimeout();
+        this.permits = new Semaphore(Math.max(1, config.getMaxConcurrentRequests()));
+    }
+
+    /**
+     * 发送请求
+     *
+     * @param onProgress 非空时在请求中声明进度令牌，服务端的进度通知（notifications/progress 的 params）依次回调
+     * @return 完整的 JSON-RPC 响应；超时以 {@link TimeoutException} 失败，HTTP 错误或连接关闭以 {@link IOException} 失败
+     */
+    public CompletableFuture<JsonNode> request(String method, JsonNode params, long timeoutMillis,
+                                               Consumer<JsonNode> onProgress) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("MCP connection closed: " + name));
+        }
+        long id = nextId.incrementAndGet();
+        JsonNode effectiveParams = onProgress != null
+                ? McpMessages.withProgressToken(objectMapper, params, id)
+                : params;
+        Call call = new Call(id, McpMessages.request(objectMapper, id, method, effectiveParams), onProgress);
+        pending.put(id, call);
+
+        call.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        call.future.whenComplete((response, error) -> {
+            pending.remove(id);
+            if (error == null) {
+                return;
+            }
+            // 超时、取消或连接关闭，停止读取响应
+            call.abort();
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+                notifyCancelled(id, cause instanceof TimeoutException ? "timeout" : "cancelled");
+            }
+        });
+        call.task = executor.submit(() -> run(call));
+        if (call.future.isDone()) {
+            call.abort();
+        }
+        return call.future;
+    }
+
+    /**
+     * 进行中的请求数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 当前会话 ID，尚未握手或服务端不使用会话时为 null
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 关闭连接，进行中的请求以 {@link IOException} 失败，并通知服务端结束会话
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException error = new IOException("MCP connection closed: " + name);
+        pending.values().forEach(call -> call.future.completeExceptionally(error));
+        pending.clear();
+
+        String session = sessionId;
+        if (session != null) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(endpoint).DELETE().header(SESSION_HEADER, session);
+            headers.forEach(builder::header);
+            httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding())
+                    .exceptionally(e -> {
+                        log.debug("Failed to terminate MCP session: {}", name, e);
+                        return null;
+                    });
+        }
+    }
+
+    private void run(Call call) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            call.future.completeExceptionally(new CancellationException("MCP request interrupted"));
+            return;
+        }
+        try {
+            call.future.complete(exchange(call));
+        } catch (Exception e) {
+            call.future.completeExceptionally(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private JsonNode exchange(Call call) throws Exception {
+        ensureInitialized();
+        HttpResponse<Stream<String>> response = post(call.message, null);
+        String sentSession = response.request().headers().firstValue(SESSION_HEADER).orElse(null);
+        if (response.statusCode() == 404 && sentSession != null) {
+            response.body().close();
+            log.info("MCP session expired, re-initializing: {}", name);
+            expire(sentSession);
+            ensureInitialized();
+            response = post(call.message, null);
+        }
+        return read(response, call);
+    }
+
+    private void ensureInitialized() throws Exception {
+        if (initialized) {
+            return;
+        }
+        sessionLock.lock();
+        try {
+            if (!initialized) {
+                initialize();
+                initialized = true;
+            }
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    private void initialize() throws Exception {
+        sessionId = null;
+        long id = nextId.incrementAndGet();
+        Call call = new Call(id, McpMessages.request(objectMapper, id, "initialize",
+                McpMessages.initializeParams(objectMapper, PROTOCOL_VERSION)), null);
+        HttpResponse<Stream<String>> response = post(call.message, Duration.ofMillis(initializeTimeoutMillis));
+        JsonNode message = read(response, call);
+        if (message.has("error")) {
+            throw new IOException("MCP initialize failed: " + message.get("error"));
+        }
+        sessionId = response.headers().firstValue(SESSION_HEADER).orElse(null);
+        JsonNode result = message.path("result");
+        log.info("MCP server initialized: {}, protocol: {}, server: {}, session: {}", name,
+                result.path("protocolVersion").asText(), result.path("serverInfo"), sessionId);
+
+        HttpResponse<Stream<String>> ack = post(McpMessages.notification(objectMapper, "notifications/initialized", null),
+                Duration.ofMillis(initializeTimeoutMillis));
+        ack.body().close();
+        if (ack.statusCode() >= 400) {
+            log.warn("MCP server rejected initialized notification: {}, status: {}", name, ack.statusCode());
+        }
+    }
+
+    /**
+     * 会话失效后下次请求重新握手；并发请求只有第一个触发重新握手
+     */
+    private void expire(String staleSession) {
+        sessionLock.lock();
+        try {
+            if (Objects.equals(sessionId, staleSession)) {
+                initialized = false;
+                sessionId = null;
+            }
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    private HttpResponse<Stream<String>> post(JsonNode message, Duration timeout) throws Exception {
+        return httpClient.send(buildPost(message, timeout), HttpResponse.BodyHandlers.ofLines());
+    }
+
+    private HttpRequest buildPost(JsonNode message, Duration timeout) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(endpoint)
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(message)));
+        headers.forEach(builder::header);
+        builder.setHeader("Content-Type", "application/json");
+        builder.setHeader("Accept", ACCEPT);
+        String session = sessionId;
+        if (session != null) {
+            builder.setHeader(SESSION_HEADER, session);
+        }
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 读取响应：JSON 响应直接解析，SSE 响应读到对应 ID 的消息为止
+     */
+    private JsonNode read(HttpResponse<Stream<String>> response, Call call) throws Exception {
+        try (Stream<String> lines = response.body()) {
+            call.body = lines;
+            if (call.aborted) {
+                throw new CancellationException("MCP request cancelled");
+            }
+            int status = response.statusCode();
+            if (status >= 400) {
+                String body = lines.collect(Collectors.joining("\n"));
+                throw new IOException("MCP HTTP request failed: " + name + ", status: " + status + ", body: "
+                        + (body.length() > MAX_ERROR_BODY_CHARS ? body.substring(0, MAX_ERROR_BODY_CHARS) : body));
+            }
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (contentType.startsWith("text/event-stream")) {
+                return readEvents(lines.iterator(), call);
+            }
+            String body = lines.collect(Collectors.joining("\n"));
+            if (body.isBlank()) {
+                throw new IOException("MCP HTTP response has no body: " + name + ", status: " + status);
+            }
+            JsonNode message = handle(objectMapper.readTree(body), call);
+            if (message == null) {
+                throw new IOException("MCP HTTP response does not answer request " + call.id + ": " + name);
+            }
+            return message;
+        }
+    }
+
+    private JsonNode readEvents(Iterator<String> lines, Call call) throws IOException {
+        StringBuilder data = new StringBuilder();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty()) {
+                JsonNode message = dispatchEvent(data, call);
+                if (message != null) {
+                    return message;
+                }
+            } else if (line.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                String value = line.substring(5);
+                data.append(value.startsWith(" ") ? value.substring(1) : value);
+            }
+            // event、id、retry 字段和注释行不影响 JSON-RPC 消息
+        }
+        JsonNode message = dispatchEvent(data, call);
+        if (message != null) {
+            return message;
+        }
+        throw new IOException("MCP SSE stream ended without a response: " + name);
+    }
+
+    private JsonNode dispatchEvent(StringBuilder data, Call call) {
+        if (data.isEmpty()) {
+            return null;
+        }
+        String event = data.toString();
+        data.setLength(0);
+        try {
+            return handle(objectMapper.readTree(event), call);
+        } catch (IOException e) {
+            log.debug("Ignoring non JSON-RPC SSE event from MCP server {}: {}", name, event);
+            return null;
+        }
+    }
+
+    /**
+     * 处理一条或一批消息：服务端请求只应答 ping，进度通知回调给调用方
+     *
+     * @return 对应请求的响应，没有时返回 null
+     */
+    private JsonNode handle(JsonNode message, Call call) {
+        if (message.isArray()) {
+            JsonNode found = null;
+            for (JsonNode item : message) {
+                JsonNode response = handle(item, call);
+                if (response != null) {
+                    found = response;
+                }
+            }
+            return found;
+        }
+        JsonNode id = message.get("id");
+        if (message.has("method")) {
+            String method = message.get("method").asText();
+            if (id != null && !id.isNull()) {
+                answerServerRequest(id, method);
+            } else if (McpMessages.PROGRESS.equals(method) && call.onProgress != null
+                    && message.path("params").path("progressToken").asLong(-1) == call.id) {
+                try {
+                    call.onProgress.accept(message.get("params"));
+                } catch (Exception e) {
+                    log.warn("MCP progress listener failed: {}", name, e);
+                }
+            }
+            return null;
+        }
+        return id != null && id.canConvertToLong() && id.asLong() == call.id ? message : null;
+    }
+
+    private void answerServerRequest(JsonNode id, String method) {
+        postAsync(McpMessages.response(objectMapper, id, method));
+    }
+
+    private void notifyCancelled(long id, String reason) {
+        if (closed) {
+            return;
+        }
+        postAsync(McpMessages.notification(objectMapper, "notifications/cancelled", objectMapper.createObjectNode()
+                .put("requestId", id)
+                .put("reason", reason)));
+    }
+
+    private void postAsync(ObjectNode message) {
+        try {
+            httpClient.sendAsync(buildPost(message, null), HttpResponse.BodyHandlers.discarding())
+                    .exceptionally(e -> {
+                        log.debug("Failed to send MCP message: {}", name, e);
+                        return null;
+                    });
+        } catch (IOException e) {
+            log.debug("Failed to send MCP message: {}", name, e);
+        }
+    }
+
+    /**
+     * 一个进行中的请求
+     */
+    private static final class Call {
+        private final long id;
+        private final ObjectNode message;
+        private final Consumer<JsonNode> onProgress;
+        private final CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        private volatile Future<?> task;
+        private volatile Stream<String> body;
+        private volatile boolean aborted;
+
+        Call(long id, ObjectNode message, Consumer<JsonNode> onProgress) {
+            this.id = id;
+            this.message = message;
+            this.onProgress = onProgress;
+        }
+
+        /**
+         * 关闭响应流并中断等待中的请求
+         */
+        void abort() {
+            aborted = true;
+            Stream<String> current = body;
+            if (current != null) {
+                current.close();
+            }
+            Future<?> currentTask = task;
+            if (currentTask != null) {
+                currentTask.cancel(true);
+            }
+        }
+    }
+}
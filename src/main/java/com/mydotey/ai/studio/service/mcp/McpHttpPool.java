@@ -0,0 +1,193 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * MCP streamable HTTP 连接池
+ * <p>
+ * 所有服务器共用一个 HttpClient，由它维护到各服务器的长连接；每个服务器一个会话，
+ * 服务器的地址或请求头变化后旧会话被关闭并重新握手
+ */
+@Slf4j
+@Component
+public class McpHttpPool {
+
+    /**
+     * 旧格式请求头的分隔：换行，或下一个 "Name:" 之前的逗号，值中的逗号和冒号保留
+     */
+    private static final Pattern LEGACY_HEADER_SEPARATOR = Pattern.compile("\\r?\\n|,(?=\\s*[A-Za-z0-9-]+\\s*:)");
+
+    private final McpConfig.Http config;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final ConcurrentHashMap<Long, Entry> connections = new ConcurrentHashMap<>();
+
+    private record Entry(String fingerprint, McpHttpConnection connection) {
+    }
+
+    public McpHttpPool(McpConfig mcpConfig, ObjectMapper objectMapper) {
+        this.config = mcpConfig.getHttp();
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mcp-http-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .version(config.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * 向服务器发送请求并等待响应
+     *
+     * @param onProgress 非空时接收服务端的进度通知
+     * @return 完整的 JSON-RPC 响应
+     * @throws TimeoutException 超过请求超时时间
+     * @throws IOException HTTP 错误或连接失败
+     */
+    public JsonNode request(McpServer server, String method, JsonNode params,
+                            Consumer<JsonNode> onProgress) throws Exception {
+        return request(server, method, params, onProgress, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内发送请求，请求超时按剩余时间收紧
+     *
+     * @throws com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException 预算已用尽
+     */
+    public JsonNode request(McpServer server, String method, JsonNode params,
+                            Consumer<JsonNode> onProgress, ExecutionBudget budget) throws Exception {
+        budget.check("MCP request " + method);
+        long timeoutMillis = budget.timeoutMillis(config.getRequestTimeout());
+        CompletableFuture<JsonNode> future = connection(server)
+                .request(method, params, timeoutMillis, onProgress);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // 调用方放弃等待（例如 Agent 工具调用超时），取消请求
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new TimeoutException("MCP request timed out after " + timeoutMillis
+                        + "ms: " + method + " on " + server.getName());
+            }
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * 关闭服务器的会话，下次请求时重新握手
+     */
+    public void evict(Long serverId) {
+        Entry entry = connections.remove(serverId);
+        if (entry != null) {
+            entry.connection().close();
+        }
+    }
+
+    /**
+     * 服务器被修改或删除后关闭它的会话
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMcpServerChanged(McpServerChangedEvent event) {
+        if (event.isConnectionChanged()) {
+            evict(event.getServerId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connections.values().forEach(entry -> entry.connection().close());
+        connections.clear();
+        httpClient.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private McpHttpConnection connection(McpServer server) {
+        String endpointUrl = Objects.requireNonNull(server.getEndpointUrl(), "MCP server endpoint URL is required");
+        String fingerprint = endpointUrl + "\n" + server.getHeaders();
+        Entry entry = connections.get(server.getId());
+        if (entry != null && entry.fingerprint().equals(fingerprint)) {
+            return entry.connection();
+        }
+        McpHttpConnection connection = new McpHttpConnection(server.getName(), URI.create(endpointUrl.trim()),
+                parseHeaders(server.getHeaders(), objectMapper), httpClient, executor, objectMapper, config);
+        Entry previous = connections.put(server.getId(), new Entry(fingerprint, connection));
+        if (previous != null) {
+            log.info("MCP server endpoint changed, replacing session: {}", server.getName());
+            previous.connection().close();
+        }
+        return connection;
+    }
+
+    /**
+     * 解析服务器配置的请求头：JSON 对象，或旧格式的 "Name: value" 列表；
+     * 不允许自定义的请求头（如 Host、Content-Length）被忽略
+     */
+    static Map<String, String> parseHeaders(String raw, ObjectMapper objectMapper) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        if (raw == null || raw.isBlank()) {
+            return parsed;
+        }
+        String text = raw.trim();
+        if (text.startsWith("{")) {
+            try {
+                for (Map.Entry<String, JsonNode> field : objectMapper.readTree(text).properties()) {
+                    JsonNode value = field.getValue();
+                    if (value != null && !value.isNull()) {
+                        parsed.put(field.getKey(), value.isValueNode() ? value.asText() : value.toString());
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Invalid MCP server headers, ignoring: {}", e.getMessage());
+            }
+        } else {
+            for (String line : LEGACY_HEADER_SEPARATOR.split(text)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    parsed.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                }
+            }
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        parsed.forEach((name, value) -> {
+            try {
+                HttpRequest.newBuilder().header(name, value);
+                headers.put(name, value);
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unsupported MCP server header: {}", name);
+            }
+        });
+        return headers;
+    }
+}
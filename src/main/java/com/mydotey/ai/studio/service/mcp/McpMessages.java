@@ -0,0 +1,71 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * MCP JSON-RPC 消息构建，stdio 和 HTTP 连接共用
+ */
+final class McpMessages {
+
+    /**
+     * 服务端发送进度通知的方法名
+     */
+    static final String PROGRESS = "notifications/progress";
+
+    private McpMessages() {
+    }
+
+    static ObjectNode request(ObjectMapper objectMapper, long id, String method, JsonNode params) {
+        ObjectNode message = notification(objectMapper, method, params);
+        message.put("id", id);
+        return message;
+    }
+
+    static ObjectNode notification(ObjectMapper objectMapper, String method, JsonNode params) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("jsonrpc", "2.0");
+        message.put("method", method);
+        if (params != null) {
+            message.set("params", params);
+        }
+        return message;
+    }
+
+    static ObjectNode response(ObjectMapper objectMapper, JsonNode id, String method) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id);
+        if ("ping".equals(method)) {
+            response.set("result", objectMapper.createObjectNode());
+        } else {
+            response.set("error", objectMapper.createObjectNode()
+                    .put("code", -32601)
+                    .put("message", "Method not found: " + method));
+        }
+        return response;
+    }
+
+    static ObjectNode initializeParams(ObjectMapper objectMapper, String protocolVersion) {
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("protocolVersion", protocolVersion);
+        params.set("capabilities", objectMapper.createObjectNode());
+        params.set("clientInfo", objectMapper.createObjectNode()
+                .put("name", "ai-studio")
+                .put("version", "1.0"));
+        return params;
+    }
+
+    /**
+     * 在参数的 _meta 中声明进度令牌，服务端据此发送 notifications/progress
+     */
+    static JsonNode withProgressToken(ObjectMapper objectMapper, JsonNode params, long token) {
+        ObjectNode copy = params instanceof ObjectNode object ? object.deepCopy() : objectMapper.createObjectNode();
+        JsonNode meta = copy.get("_meta");
+        ObjectNode metaCopy = meta instanceof ObjectNode object ? object : objectMapper.createObjectNode();
+        metaCopy.put("progressToken", token);
+        copy.set("_meta", metaCopy);
+        return copy;
+    }
+}
@@ -3,72 +3,101 @@ package com.mydotey.ai.studio.service.mcp;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class McpRpcClient {
 
+    private final McpStdioPool stdioPool;
+    private final McpHttpPool httpPool;
+    private final McpToolResultCache resultCache;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public List<ToolDefinition> listTools(McpServer server) throws Exception {
         log.info("Listing tools for MCP server: {}", server.getName());
 
-        McpTransport transport = createTransport(server);
-        try {
-            String request = buildJsonRpcRequest("tools/list", null);
-            String response = transport.sendRequest(request);
+        JsonNode response = send(server, "tools/list", null, null, ExecutionBudget.UNLIMITED);
+        return parseToolsResponse(response);
+    }
+
+    public JsonNode callTool(McpServer server, String toolName, JsonNode arguments) throws Exception {
+        return callTool(server, toolName, arguments, null);
+    }
+
+    /**
+     * 调用工具，长时间运行的工具在返回结果前通过 onProgress 回传进度
+     *
+     * @param onProgress 非空时接收 notifications/progress 的 params（progress、total、message）
+     */
+    public JsonNode callTool(McpServer server, String toolName, JsonNode arguments,
+                             Consumer<JsonNode> onProgress) throws Exception {
+        return requestToolCall(server, toolName, arguments, onProgress, ExecutionBudget.UNLIMITED).get("content");
+    }
+
+    /**
+     * 调用已同步的工具，开启了结果缓存的工具按参数缓存结果，相同参数的并发调用只执行一次
+     */
+    public JsonNode callTool(McpServer server, McpTool tool, JsonNode arguments,
+                             Consumer<JsonNode> onProgress) throws Exception {
+        return callTool(server, tool, arguments, onProgress, ExecutionBudget.UNLIMITED);
+    }
 
-            return parseToolsResponse(response);
-        } finally {
-            transport.close();
+    /**
+     * 在执行预算内调用已同步的工具，请求超时按剩余时间收紧，命中结果缓存时不受预算限制
+     *
+     * @throws com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException 预算已用尽
+     */
+    public JsonNode callTool(McpServer server, McpTool tool, JsonNode arguments,
+                             Consumer<JsonNode> onProgress, ExecutionBudget budget) throws Exception {
+        if (!resultCache.isCacheable(tool)) {
+            return requestToolCall(server, tool.getToolName(), arguments, onProgress, budget).get("content");
         }
+        JsonNode result = resultCache.get(server, tool, arguments,
+            () -> requestToolCall(server, tool.getToolName(), arguments, onProgress, budget));
+        return result.get("content");
     }
 
-    public JsonNode callTool(McpServer server, String toolName, JsonNode arguments) throws Exception {
+    /**
+     * @return tools/call 的 result
+     */
+    private JsonNode requestToolCall(McpServer server, String toolName, JsonNode arguments,
+                                     Consumer<JsonNode> onProgress, ExecutionBudget budget) throws Exception {
         log.info("Calling tool: {} on server: {}", toolName, server.getName());
 
-        McpTransport transport = createTransport(server);
-        try {
-            String request = buildJsonRpcRequest("tools/call",
-                objectMapper.createObjectNode()
-                    .put("name", toolName)
-                    .set("arguments", arguments));
-
-            String response = transport.sendRequest(request);
-            return parseToolCallResponse(response);
-        } finally {
-            transport.close();
-        }
+        JsonNode response = send(server, "tools/call",
+            objectMapper.createObjectNode()
+                .put("name", toolName)
+                .set("arguments", arguments),
+            onProgress, budget);
+        return parseToolCallResponse(response);
     }
 
-    private McpTransport createTransport(McpServer server) throws Exception {
+    /**
+     * 发送请求：stdio 服务器复用进程池中的常驻进程，HTTP 服务器复用连接池中的会话
+     */
+    private JsonNode send(McpServer server, String method, JsonNode params,
+                          Consumer<JsonNode> onProgress, ExecutionBudget budget) throws Exception {
         if ("STDIO".equals(server.getConnectionType())) {
-            return new StdioMcpTransport(server.getCommand(), server.getWorkingDir());
+            return stdioPool.request(server, method, params, onProgress, budget);
         } else if ("HTTP".equals(server.getConnectionType())) {
-            return new HttpMcpTransport(server.getEndpointUrl(), server.getHeaders());
+            return httpPool.request(server, method, params, onProgress, budget);
         } else {
             throw new Exception("Unsupported connection type: " + server.getConnectionType());
         }
     }
 
-    private String buildJsonRpcRequest(String method, Object params) throws Exception {
-        var request = objectMapper.createObjectNode();
-        request.put("jsonrpc", "2.0");
-        request.put("id", System.currentTimeMillis());
-        request.put("method", method);
-        if (params != null) {
-            request.set("params", objectMapper.valueToTree(params));
-        }
-        return objectMapper.writeValueAsString(request);
-    }
-
-    private List<ToolDefinition> parseToolsResponse(String response) throws Exception {
-        JsonNode root = objectMapper.readTree(response);
+    private List<ToolDefinition> parseToolsResponse(JsonNode root) throws Exception {
         if (root == null) {
             throw new Exception("Invalid JSON-RPC response: root is null");
         }
@@ -112,8 +141,7 @@ public class McpRpcClient {
         return toolDefinitions;
     }
 
-    private JsonNode parseToolCallResponse(String response) throws Exception {
-        JsonNode root = objectMapper.readTree(response);
+    private JsonNode parseToolCallResponse(JsonNode root) throws Exception {
         if (root == null) {
             throw new Exception("Invalid JSON-RPC response: root is null");
         }
@@ -136,8 +164,7 @@ public class McpRpcClient {
         if (!result.has("content")) {
             throw new Exception("Invalid JSON-RPC response: missing 'content' field in result");
         }
-        JsonNode content = result.get("content");
-        return content;
+        return result;
     }
 
     public static class ToolDefinition {
@@ -0,0 +1,341 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 一个常驻 MCP stdio 进程上的 JSON-RPC 连接
+ * <p>
+ * 启动后先完成 initialize 握手。请求按自增 ID 多路复用同一对管道：写入由锁串行化，
+ * 读线程逐行读取响应并按 ID 完成对应的 Future，因此多个请求可以同时进行。
+ * 请求超时或被取消时发送 notifications/cancelled；进程退出时所有进行中的请求立即失败。
+ * 声明了进度令牌的请求按令牌接收服务端的进度通知
+ */
+@Slf4j
+public class McpStdioConnection {
+
+    /**
+     * 客户端声明的 MCP 协议版本
+     */
+    public static final String PROTOCOL_VERSION = "2024-11-05";
+
+    private final String name;
+    private final ObjectMapper objectMapper;
+    private final Process process;
+    private final BufferedWriter writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Consumer<JsonNode>> progressListeners = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private volatile long lastUsedAt = System.currentTimeMillis();
+
+    private McpStdioConnection(String name, Process process, ObjectMapper objectMapper) {
+        this.name = name;
+        this.process = process;
+        this.objectMapper = objectMapper;
+        this.writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+        Thread.ofPlatform().daemon().name("mcp-stdio-" + name).start(this::readLoop);
+        Thread.ofPlatform().daemon().name("mcp-stderr-" + name).start(this::drainErrors);
+    }
+
+    /**
+     * 启动进程并完成 initialize 握手
+     *
+     * @param name 服务器名称，用于线程名和日志
+     * @throws Exception 进程启动失败、握手失败或超时
+     */
+    public static McpStdioConnection start(String name, List<String> command, String workingDir,
+                                           ObjectMapper objectMapper, long initializeTimeoutMillis) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (workingDir != null && !workingDir.isEmpty()) {
+            processBuilder.directory(new File(workingDir));
+        }
+        log.info("Starting MCP process: {}", command);
+        McpStdioConnection connection = new McpStdioConnection(name, processBuilder.start(), objectMapper);
+        try {
+            connection.initialize(initializeTimeoutMillis);
+        } catch (Exception e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * 发送请求
+     *
+     * @return 完整的 JSON-RPC 响应；超时以 {@link TimeoutException} 失败，进程退出以 {@link IOException} 失败
+     */
+    public CompletableFuture<JsonNode> request(String method, JsonNode params, long timeoutMillis) {
+        return request(method, params, timeoutMillis, null);
+    }
+
+    /**
+     * 发送请求，非空的 onProgress 以请求 ID 作为进度令牌接收 notifications/progress 的 params
+     */
+    public CompletableFuture<JsonNode> request(String method, JsonNode params, long timeoutMillis,
+                                               Consumer<JsonNode> onProgress) {
+        return send(method, params, timeoutMillis, onProgress, true);
+    }
+
+    /**
+     * 发送 ping，不计为使用，健康检查不会让空闲进程一直保持存活
+     */
+    public CompletableFuture<JsonNode> ping(long timeoutMillis) {
+        return send("ping", null, timeoutMillis, null, false);
+    }
+
+    /**
+     * 最近一次发送请求的时间（毫秒时间戳），ping 不计在内
+     */
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    private CompletableFuture<JsonNode> send(String method, JsonNode params, long timeoutMillis,
+                                             Consumer<JsonNode> onProgress, boolean touch) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("MCP process closed: " + name));
+        }
+        long id = nextId.incrementAndGet();
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pending.put(id, future);
+        if (closed) {
+            // 读线程已经结束，不会再有响应
+            pending.remove(id);
+            return CompletableFuture.failedFuture(new IOException("MCP process closed: " + name));
+        }
+        if (touch) {
+            lastUsedAt = System.currentTimeMillis();
+        }
+        if (onProgress != null) {
+            progressListeners.put(id, onProgress);
+            params = McpMessages.withProgressToken(objectMapper, params, id);
+        }
+
+        try {
+            write(McpMessages.request(objectMapper, id, method, params));
+        } catch (IOException e) {
+            pending.remove(id);
+            progressListeners.remove(id);
+            close();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, error) -> {
+            progressListeners.remove(id);
+            if (error == null) {
+                return;
+            }
+            // 超时、取消或进程退出，不再等待这个请求的响应
+            pending.remove(id);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+                notifyCancelled(id, cause instanceof TimeoutException ? "timeout" : "cancelled");
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 发送通知（没有响应）
+     */
+    public void notify(String method, JsonNode params) throws IOException {
+        write(McpMessages.notification(objectMapper, method, params));
+    }
+
+    public boolean isAlive() {
+        return !closed && process.isAlive();
+    }
+
+    /**
+     * 进行中的请求数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 关闭连接并结束进程，进行中的请求以 {@link IOException} 失败
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        failPending(new IOException("MCP process closed: " + name));
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.debug("Error closing MCP process stdin: {}", name, e);
+        }
+        process.destroy();
+        process.onExit().orTimeout(5, TimeUnit.SECONDS).exceptionally(e -> {
+            process.destroyForcibly();
+            return process;
+        });
+    }
+
+    private void initialize(long timeoutMillis) throws Exception {
+        JsonNode response;
+        try {
+            response = request("initialize", McpMessages.initializeParams(objectMapper, PROTOCOL_VERSION),
+                    timeoutMillis).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new TimeoutException("MCP initialize timed out after " + timeoutMillis + "ms: " + name);
+            }
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        if (response.has("error")) {
+            throw new IOException("MCP initialize failed: " + response.get("error"));
+        }
+        JsonNode result = response.path("result");
+        log.info("MCP server initialized: {}, protocol: {}, server: {}", name,
+                result.path("protocolVersion").asText(), result.path("serverInfo"));
+        notify("notifications/initialized", null);
+    }
+
+    private void notifyCancelled(long id, String reason) {
+        if (closed) {
+            return;
+        }
+        try {
+            notify("notifications/cancelled", objectMapper.createObjectNode()
+                    .put("requestId", id)
+                    .put("reason", reason));
+        } catch (IOException e) {
+            log.debug("Failed to send MCP cancellation: {}", name, e);
+        }
+    }
+
+    private void write(JsonNode message) throws IOException {
+        String line = objectMapper.writeValueAsString(message);
+        writeLock.lock();
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 读线程：响应按 ID 分发，进度通知按令牌分发，服务端发来的请求只应答 ping，其他消息忽略
+     */
+    private void readLoop() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode message;
+                try {
+                    message = objectMapper.readTree(line);
+                } catch (Exception e) {
+                    log.debug("Ignoring non JSON-RPC output from MCP process {}: {}", name, line);
+                    continue;
+                }
+                dispatch(message);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Error reading MCP process output: {}", name, e);
+            }
+        }
+        if (!closed) {
+            log.warn("MCP process terminated unexpectedly: {}", name);
+        }
+        closed = true;
+        failPending(new IOException("MCP process terminated unexpectedly: " + name));
+    }
+
+    private void dispatch(JsonNode message) {
+        JsonNode id = message.get("id");
+        if (message.has("method")) {
+            String method = message.get("method").asText();
+            if (id != null && !id.isNull()) {
+                answerServerRequest(id, method);
+            } else if (McpMessages.PROGRESS.equals(method)) {
+                dispatchProgress(message.path("params"));
+            }
+            return;
+        }
+        if (id == null || !id.canConvertToLong()) {
+            log.debug("Ignoring MCP message without request id: {}", name);
+            return;
+        }
+        CompletableFuture<JsonNode> future = pending.remove(id.asLong());
+        if (future != null) {
+            future.complete(message);
+        }
+    }
+
+    private void dispatchProgress(JsonNode params) {
+        JsonNode token = params.get("progressToken");
+        Consumer<JsonNode> listener = token != null && token.canConvertToLong()
+                ? progressListeners.get(token.asLong())
+                : null;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(params);
+        } catch (Exception e) {
+            log.warn("MCP progress listener failed: {}", name, e);
+        }
+    }
+
+    private void answerServerRequest(JsonNode id, String method) {
+        try {
+            write(McpMessages.response(objectMapper, id, method));
+        } catch (IOException e) {
+            log.debug("Failed to answer MCP server request: {}", name, e);
+        }
+    }
+
+    private void drainErrors() {
+        try (BufferedReader errorReader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = errorReader.readLine()) != null) {
+                log.warn("MCP process stderr [{}]: {}", name, line);
+            }
+        } catch (IOException e) {
+            log.debug("MCP process stderr closed: {}", name);
+        }
+    }
+
+    private void failPending(Exception error) {
+        pending.values().forEach(future -> future.completeExceptionally(error));
+        pending.clear();
+        progressListeners.clear();
+    }
+}
@@ -0,0 +1,364 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.mydotey.ai.studio.mapper.McpServerMapper;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * MCP stdio 进程池
+ * <p>
+ * 每个 stdio 服务器保持若干常驻进程，请求分配给进行中请求最少的进程。进程退出或健康检查失败后
+ * 在下次请求或下次健康检查时重启，连续启动失败时按指数退避等待；空闲过久的进程被关闭。
+ * 服务器的命令或工作目录变化后旧进程被替换。应用启动后预先启动所有启用的 stdio 服务器
+ */
+@Slf4j
+@Component
+public class McpStdioPool {
+
+    private final McpConfig.Stdio config;
+    private final McpServerMapper mcpServerMapper;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<Long, ServerPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public McpStdioPool(McpConfig mcpConfig, McpServerMapper mcpServerMapper, ObjectMapper objectMapper) {
+        this.config = mcpConfig.getStdio();
+        this.mcpServerMapper = mcpServerMapper;
+        this.objectMapper = objectMapper;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setName("mcp-stdio-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, config.getHealthCheckInterval());
+        this.scheduler.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 向服务器发送请求并等待响应
+     *
+     * @return 完整的 JSON-RPC 响应
+     * @throws TimeoutException 超过请求超时时间
+     * @throws IOException 进程启动失败或在请求过程中退出
+     */
+    public JsonNode request(McpServer server, String method, JsonNode params) throws Exception {
+        return request(server, method, params, null);
+    }
+
+    /**
+     * 向服务器发送请求并等待响应
+     *
+     * @param onProgress 非空时接收服务端的进度通知
+     * @return 完整的 JSON-RPC 响应
+     */
+    public JsonNode request(McpServer server, String method, JsonNode params,
+                            Consumer<JsonNode> onProgress) throws Exception {
+        return request(server, method, params, onProgress, ExecutionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在执行预算内发送请求，请求超时按剩余时间收紧
+     *
+     * @throws com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException 预算已用尽
+     */
+    public JsonNode request(McpServer server, String method, JsonNode params,
+                            Consumer<JsonNode> onProgress, ExecutionBudget budget) throws Exception {
+        budget.check("MCP request " + method);
+        long timeoutMillis = budget.timeoutMillis(config.getRequestTimeout());
+        McpStdioConnection connection = pool(server).acquire();
+        CompletableFuture<JsonNode> future = connection.request(method, params, timeoutMillis, onProgress);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // 调用方放弃等待（例如 Agent 工具调用超时），取消请求
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new TimeoutException("MCP request timed out after " + timeoutMillis
+                        + "ms: " + method + " on " + server.getName());
+            }
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * 关闭服务器的所有进程，下次请求时重新启动
+     */
+    public void evict(Long serverId) {
+        ServerPool pool = pools.remove(serverId);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * 服务器被修改或删除后关闭它的进程，已删除的服务器不再占用进程
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMcpServerChanged(McpServerChangedEvent event) {
+        if (event.isConnectionChanged()) {
+            evict(event.getServerId());
+        }
+    }
+
+    /**
+     * 预先启动所有启用的 stdio 服务器，在虚拟线程上进行，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!config.isWarmUp()) {
+            return;
+        }
+        Thread.ofVirtual().name("mcp-stdio-warmup").start(() -> {
+            List<McpServer> servers = mcpServerMapper.selectList(new LambdaQueryWrapper<McpServer>()
+                    .eq(McpServer::getConnectionType, "STDIO")
+                    .eq(McpServer::getStatus, "ACTIVE"));
+            for (McpServer server : servers) {
+                try {
+                    pool(server).acquire();
+                } catch (Exception e) {
+                    log.warn("Failed to warm up MCP server: {}, error: {}", server.getName(), e.getMessage());
+                }
+            }
+            log.info("Warmed up {} MCP stdio servers", servers.size());
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pools.values().forEach(ServerPool::close);
+        pools.clear();
+    }
+
+    private ServerPool pool(McpServer server) {
+        String fingerprint = server.getCommand() + "\n" + server.getWorkingDir();
+        ServerPool pool = pools.get(server.getId());
+        if (pool != null && pool.fingerprint.equals(fingerprint)) {
+            return pool;
+        }
+        ServerPool created = new ServerPool(server, fingerprint);
+        ServerPool previous = pools.put(server.getId(), created);
+        if (previous != null) {
+            log.info("MCP server command changed, replacing processes: {}", server.getName());
+            previous.close();
+        }
+        return created;
+    }
+
+    /**
+     * 健康检查：关闭空闲过久的进程，ping 空闲进程，重启退出或无响应的进程
+     */
+    private void checkHealth() {
+        for (ServerPool pool : pools.values()) {
+            try {
+                pool.checkHealth();
+            } catch (Exception e) {
+                log.warn("MCP health check failed: {}", pool.name, e);
+            }
+        }
+    }
+
+    /**
+     * 一个服务器的进程
+     */
+    private final class ServerPool {
+        private final String name;
+        private final String fingerprint;
+        private final List<String> command;
+        private final String workingDir;
+        private final Slot[] slots;
+
+        ServerPool(McpServer server, String fingerprint) {
+            this.name = server.getName();
+            this.fingerprint = fingerprint;
+            this.command = Arrays.asList(Objects.requireNonNull(server.getCommand(),
+                    "MCP server command is required").trim().split("\\s+"));
+            this.workingDir = server.getWorkingDir();
+            this.slots = new Slot[Math.max(1, config.getProcessesPerServer())];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot(slots.length > 1 ? name + "-" + i : name);
+            }
+        }
+
+        /**
+         * 选择进行中请求最少的进程；没有可用进程或所有进程都在忙时启动一个新进程
+         */
+        McpStdioConnection acquire() throws Exception {
+            McpStdioConnection best = null;
+            for (Slot slot : slots) {
+                McpStdioConnection connection = slot.live();
+                if (connection != null && (best == null || connection.pendingCount() < best.pendingCount())) {
+                    best = connection;
+                }
+            }
+            if (best != null && best.pendingCount() == 0) {
+                return best;
+            }
+            Exception lastError = null;
+            for (Slot slot : slots) {
+                if (slot.live() != null) {
+                    continue;
+                }
+                try {
+                    return slot.start();
+                } catch (Exception e) {
+                    lastError = e;
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+            throw lastError != null ? lastError : new IOException("MCP server unavailable: " + name);
+        }
+
+        void checkHealth() {
+            long now = System.currentTimeMillis();
+            for (Slot slot : slots) {
+                McpStdioConnection connection = slot.connection;
+                if (connection == null) {
+                    continue;
+                }
+                if (!connection.isAlive()) {
+                    log.warn("MCP process exited, restarting: {}", slot.name);
+                    slot.restart();
+                } else if (connection.pendingCount() == 0 && now - connection.getLastUsedAt() > config.getIdleTimeout()) {
+                    log.info("Closing idle MCP process: {}", slot.name);
+                    slot.stop(connection);
+                } else if (connection.pendingCount() == 0 && !ping(connection)) {
+                    log.warn("MCP process not responding to ping, restarting: {}", slot.name);
+                    slot.stop(connection);
+                    slot.restart();
+                }
+            }
+        }
+
+        private boolean ping(McpStdioConnection connection) {
+            try {
+                JsonNode response = connection.ping(config.getInitializeTimeout()).get();
+                return !response.has("error") || response.path("error").path("code").asInt() == -32601;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        void close() {
+            for (Slot slot : slots) {
+                McpStdioConnection connection = slot.connection;
+                if (connection != null) {
+                    slot.stop(connection);
+                }
+            }
+        }
+
+        /**
+         * 一个进程位，进程退出后在原位重启
+         */
+        private final class Slot {
+            private final String name;
+            private final ReentrantLock lock = new ReentrantLock();
+            private volatile McpStdioConnection connection;
+            private long nextStartAt;
+            private long backoff;
+
+            Slot(String name) {
+                this.name = name;
+            }
+
+            McpStdioConnection live() {
+                McpStdioConnection current = connection;
+                return current != null && current.isAlive() ? current : null;
+            }
+
+            /**
+             * 启动进程，退避期内直接失败；并发的启动请求等待同一次启动
+             */
+            McpStdioConnection start() throws Exception {
+                lock.lock();
+                try {
+                    McpStdioConnection current = live();
+                    if (current != null) {
+                        return current;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now < nextStartAt) {
+                        throw new IOException("MCP server " + name + " failed to start, retrying in "
+                                + (nextStartAt - now) + "ms");
+                    }
+                    if (connection != null) {
+                        connection.close();
+                    }
+                    try {
+                        connection = McpStdioConnection.start(name, command, workingDir, objectMapper,
+                                config.getInitializeTimeout());
+                        backoff = 0;
+                        nextStartAt = 0;
+                        return connection;
+                    } catch (Exception e) {
+                        connection = null;
+                        backoff = backoff == 0
+                                ? config.getRestartBackoff()
+                                : Math.min(backoff * 2, config.getMaxRestartBackoff());
+                        nextStartAt = now + backoff;
+                        log.warn("Failed to start MCP process: {}, retrying in {}ms, error: {}",
+                                name, backoff, e.getMessage());
+                        throw e;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            void restart() {
+                try {
+                    start();
+                } catch (Exception e) {
+                    // 已记录，下次请求或健康检查时重试
+                }
+            }
+
+            void stop(McpStdioConnection expected) {
+                lock.lock();
+                try {
+                    if (connection == expected) {
+                        connection = null;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                expected.close();
+            }
+        }
+    }
+}
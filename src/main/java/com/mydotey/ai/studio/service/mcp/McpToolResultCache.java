@@ -0,0 +1,171 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.service.llm.LlmRequestKey;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MCP 工具调用结果缓存
+ * <p>
+ * 以服务器 ID、工具名称和规范化后的参数（对象属性按字母排序）作为键，过期时间按工具设置，
+ * 条目数有上限。相同键的并发调用只有一个真正执行，其他调用等待同一结果；
+ * 工具返回错误（isError）或调用失败时不缓存。命中情况按工具记录到 mcp.tool.cache 指标
+ */
+@Slf4j
+@Component
+public class McpToolResultCache {
+
+    private static final String METRIC = "mcp.tool.cache";
+
+    private final McpConfig.ResultCache config;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Entry> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 真正执行工具调用
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @return tools/call 的 result
+         */
+        JsonNode load() throws Exception;
+    }
+
+    public McpToolResultCache(McpConfig mcpConfig, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.config = mcpConfig.getResultCache();
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(entry.ttlSeconds());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return TimeUnit.SECONDS.toNanos(entry.ttlSeconds());
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        Gauge.builder(METRIC + ".size", cache, Cache::estimatedSize)
+                .description("Cached MCP tool results")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 工具是否缓存结果
+     */
+    public boolean isCacheable(McpTool tool) {
+        return config.isEnabled() && Boolean.TRUE.equals(tool.getResultCacheEnabled()) && ttlSeconds(tool) > 0;
+    }
+
+    /**
+     * 获取缓存的结果，未命中时执行调用；相同参数的并发调用共享一次执行
+     *
+     * @return tools/call 的 result，调用方不应修改
+     */
+    public JsonNode get(McpServer server, McpTool tool, JsonNode arguments, Loader loader) throws Exception {
+        String key = key(server.getId(), tool.getToolName(), arguments);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            record(server, tool, "hit");
+            return entry.result();
+        }
+
+        CompletableFuture<JsonNode> created = new CompletableFuture<>();
+        CompletableFuture<JsonNode> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            record(server, tool, "shared");
+            return await(existing);
+        }
+        try {
+            // 上一次执行可能刚刚写入缓存并退出
+            entry = cache.getIfPresent(key);
+            if (entry != null) {
+                record(server, tool, "hit");
+                created.complete(entry.result());
+                return entry.result();
+            }
+            record(server, tool, "miss");
+            JsonNode result = loader.load();
+            if (!result.path("isError").asBoolean(false)) {
+                cache.put(key, new Entry(result, ttlSeconds(tool)));
+            }
+            created.complete(result);
+            return result;
+        } catch (Exception e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * 清除一个工具的缓存结果，工具设置变化时调用
+     */
+    public void invalidate(Long serverId, String toolName) {
+        String prefix = serverId + "\n" + toolName + "\n";
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 清除一个服务器所有工具的缓存结果，工具列表重新同步时调用
+     */
+    public void invalidateServer(Long serverId) {
+        String prefix = serverId + "\n";
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private String key(Long serverId, String toolName, JsonNode arguments) {
+        String prefix = serverId + "\n" + toolName + "\n";
+        Object canonical = arguments == null ? null : objectMapper.convertValue(arguments, Object.class);
+        return prefix + LlmRequestKey.hash("mcp-tool", canonical);
+    }
+
+    private int ttlSeconds(McpTool tool) {
+        Integer ttl = tool.getResultCacheTtl();
+        return ttl != null ? ttl : config.getDefaultTtl();
+    }
+
+    private void record(McpServer server, McpTool tool, String result) {
+        meterRegistry.counter(METRIC, "server", String.valueOf(server.getName()),
+                "tool", String.valueOf(tool.getToolName()), "result", result).increment();
+    }
+
+    private static JsonNode await(CompletableFuture<JsonNode> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private record Entry(JsonNode result, long ttlSeconds) {
+    }
+}
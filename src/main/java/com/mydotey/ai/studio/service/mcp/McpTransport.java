@@ -1,6 +0,0 @@
-package com.mydotey.ai.studio.service.mcp;
-
-public interface McpTransport {
-    String sendRequest(String jsonRequest) throws Exception;
-    void close();
-}
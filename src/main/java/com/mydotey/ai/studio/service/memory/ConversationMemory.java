@@ -0,0 +1,33 @@
+package com.mydotey.ai.studio.service.memory;
+
+import com.mydotey.ai.studio.dto.Message;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一轮对话可用的记忆：滚动摘要加最近的消息
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationMemory {
+
+    /**
+     * 较早消息的摘要，没有时为 null
+     */
+    private String summary;
+
+    /**
+     * 摘要之后的最近消息，按时间正序
+     */
+    private List<Message> messages;
+
+    public static ConversationMemory empty() {
+        return new ConversationMemory(null, List.of());
+    }
+}
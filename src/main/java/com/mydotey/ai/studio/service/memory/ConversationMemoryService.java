@@ -0,0 +1,244 @@
+package com.mydotey.ai.studio.service.memory;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.mydotey.ai.studio.config.ConversationMemoryConfig;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.entity.Conversation;
+import com.mydotey.ai.studio.entity.Message;
+import com.mydotey.ai.studio.mapper.ConversationMapper;
+import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.LlmGenerationService;
+import com.mydotey.ai.studio.util.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 对话记忆服务
+ * <p>
+ * 每轮对话只读取对话的滚动摘要和摘要之后最近的若干条消息（按 (conversation_id, id) 键集查询），
+ * 开销与对话长度无关；最近消息的条数或 token 数超过阈值时，异步把较早的消息连同旧摘要交给 LLM
+ * 生成新摘要，并以旧的摘要位置为条件更新，避免并发压缩互相覆盖
+ */
+@Slf4j
+@Service
+public class ConversationMemoryService {
+
+    private static final String SUMMARY_SYSTEM_PROMPT =
+            """
+            你负责维护一段对话的滚动摘要。
+            请把已有摘要和新增的对话内容合并为一份新的摘要：
+            1. 保留用户的目标、偏好、已确认的事实和尚未解决的问题
+            2. 保留助手给出的关键结论
+            3. 省略寒暄和重复内容，不要编造
+            只输出摘要本身。
+            """;
+
+    private static final int MAX_COMPACTION_ROUNDS = 10;
+
+    private final ConversationMapper conversationMapper;
+    private final MessageMapper messageMapper;
+    private final LlmGenerationService llmGenerationService;
+    private final ConversationMemoryConfig config;
+    private final Executor compactionExecutor;
+    private final Set<Long> compacting = ConcurrentHashMap.newKeySet();
+
+    public ConversationMemoryService(ConversationMapper conversationMapper,
+                                     MessageMapper messageMapper,
+                                     LlmGenerationService llmGenerationService,
+                                     ConversationMemoryConfig config,
+                                     @Qualifier("memoryCompactionExecutor") Executor compactionExecutor) {
+        this.conversationMapper = conversationMapper;
+        this.messageMapper = messageMapper;
+        this.llmGenerationService = llmGenerationService;
+        this.config = config;
+        this.compactionExecutor = compactionExecutor;
+    }
+
+    /**
+     * 加载对话记忆，超过阈值时安排异步压缩
+     *
+     * @param conversationId 对话 ID
+     * @return 摘要和最近消息，对话不存在时为空
+     */
+    public ConversationMemory load(Long conversationId) {
+        Conversation conversation = conversationMapper.selectById(conversationId);
+        if (conversation == null) {
+            return ConversationMemory.empty();
+        }
+
+        int windowSize = config.getWindowSize();
+        List<Message> recent = selectRecent(conversationId, conversation.getSummarizedUntilId(), windowSize + 1);
+        boolean overflow = recent.size() > windowSize;
+
+        // recent 按 ID 倒序，从最新的消息开始装入，至少保留一条
+        List<com.mydotey.ai.studio.dto.Message> window = new ArrayList<>();
+        int tokens = 0;
+        for (int i = 0; i < Math.min(recent.size(), windowSize); i++) {
+            Message message = recent.get(i);
+            int messageTokens = TokenEstimator.estimate(message.getContent());
+            if (!window.isEmpty() && tokens + messageTokens > config.getMaxWindowTokens()) {
+                overflow = true;
+                break;
+            }
+            tokens += messageTokens;
+            window.add(toDto(message));
+        }
+        Collections.reverse(window);
+
+        if (overflow && recent.size() > config.getKeepRecent()) {
+            scheduleCompaction(conversationId);
+        }
+        return new ConversationMemory(conversation.getSummary(), window);
+    }
+
+    /**
+     * 安排异步压缩，同一个对话同时只有一个压缩任务
+     */
+    public void scheduleCompaction(Long conversationId) {
+        if (!compacting.add(conversationId)) {
+            return;
+        }
+        try {
+            compactionExecutor.execute(() -> {
+                try {
+                    compact(conversationId);
+                } catch (Exception e) {
+                    log.warn("Failed to compact conversation memory: {}", conversationId, e);
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        } catch (RuntimeException e) {
+            compacting.remove(conversationId);
+            log.warn("Failed to schedule conversation memory compaction: {}", conversationId, e);
+        }
+    }
+
+    /**
+     * 把最近 keepRecent 条之前的未摘要消息压缩进摘要
+     */
+    void compact(Long conversationId) {
+        for (int round = 0; round < MAX_COMPACTION_ROUNDS; round++) {
+            if (!compactOnce(conversationId)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 执行一轮压缩
+     *
+     * @return 还有待压缩的消息时返回 true
+     */
+    private boolean compactOnce(Long conversationId) {
+        Conversation conversation = conversationMapper.selectById(conversationId);
+        if (conversation == null) {
+            return false;
+        }
+        Long summarizedUntilId = conversation.getSummarizedUntilId();
+
+        // 最近 keepRecent 条保留原文，只压缩它们之前的消息
+        Long cutoffId = null;
+        if (config.getKeepRecent() > 0) {
+            List<Message> newest = messageMapper.selectList(new LambdaQueryWrapper<Message>()
+                    .select(Message::getId)
+                    .eq(Message::getConversationId, conversationId)
+                    .gt(summarizedUntilId != null, Message::getId, summarizedUntilId)
+                    .orderByDesc(Message::getId)
+                    .last("LIMIT " + config.getKeepRecent()));
+            if (newest.size() < config.getKeepRecent()) {
+                return false;
+            }
+            cutoffId = newest.get(newest.size() - 1).getId();
+        }
+
+        List<Message> candidates = messageMapper.selectList(new LambdaQueryWrapper<Message>()
+                .select(Message::getId, Message::getRole, Message::getContent)
+                .eq(Message::getConversationId, conversationId)
+                .gt(summarizedUntilId != null, Message::getId, summarizedUntilId)
+                .lt(cutoffId != null, Message::getId, cutoffId)
+                .orderByAsc(Message::getId)
+                .last("LIMIT " + config.getCompactionBatchSize()));
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        // 控制单次输入的长度，剩余的留给下一轮
+        StringBuilder transcript = new StringBuilder();
+        if (conversation.getSummary() != null && !conversation.getSummary().isBlank()) {
+            transcript.append("已有摘要：\n").append(conversation.getSummary()).append("\n\n");
+        }
+        transcript.append("新增对话：\n");
+        int budget = config.getMaxWindowTokens() * 2;
+        int tokens = TokenEstimator.estimate(transcript.toString());
+        Long lastFoldedId = null;
+        for (Message message : candidates) {
+            String line = message.getRole() + ": " + message.getContent() + "\n";
+            int lineTokens = TokenEstimator.estimate(line);
+            if (lastFoldedId != null && tokens + lineTokens > budget) {
+                break;
+            }
+            transcript.append(line);
+            tokens += lineTokens;
+            lastFoldedId = message.getId();
+        }
+
+        LlmResponse response = llmGenerationService.generate(SUMMARY_SYSTEM_PROMPT, transcript.toString(),
+                0.0, config.getSummaryMaxTokens());
+        if (response.getContent() == null || response.getContent().isBlank()) {
+            return false;
+        }
+
+        LambdaUpdateWrapper<Conversation> update = new LambdaUpdateWrapper<Conversation>()
+                .eq(Conversation::getId, conversationId)
+                .set(Conversation::getSummary, response.getContent().trim())
+                .set(Conversation::getSummarizedUntilId, lastFoldedId);
+        if (summarizedUntilId == null) {
+            update.isNull(Conversation::getSummarizedUntilId);
+        } else {
+            update.eq(Conversation::getSummarizedUntilId, summarizedUntilId);
+        }
+        if (conversationMapper.update(null, update) == 0) {
+            log.info("Conversation memory changed during compaction, skipped: {}", conversationId);
+            return false;
+        }
+
+        log.info("Compacted conversation memory: {}, summarized until message: {}", conversationId, lastFoldedId);
+        return !lastFoldedId.equals(candidates.get(candidates.size() - 1).getId())
+                || candidates.size() == config.getCompactionBatchSize();
+    }
+
+    /**
+     * 按 ID 倒序读取摘要之后最近的消息
+     */
+    private List<Message> selectRecent(Long conversationId, Long afterId, int limit) {
+        return messageMapper.selectList(new LambdaQueryWrapper<Message>()
+                .select(Message::getId, Message::getRole, Message::getContent)
+                .eq(Message::getConversationId, conversationId)
+                .gt(afterId != null, Message::getId, afterId)
+                .orderByDesc(Message::getId)
+                .last("LIMIT " + limit));
+    }
+
+    private com.mydotey.ai.studio.dto.Message toDto(Message message) {
+        MessageRole role = switch (message.getRole() == null ? "" : message.getRole().toLowerCase()) {
+            case "assistant" -> MessageRole.ASSISTANT;
+            case "system" -> MessageRole.SYSTEM;
+            default -> MessageRole.USER;
+        };
+        return com.mydotey.ai.studio.dto.Message.builder()
+                .role(role)
+                .content(message.getContent())
+                .build();
+    }
+}
@@ -0,0 +1,281 @@
+package com.mydotey.ai.studio.service.stream;
+
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 可续传的流式回答
+ * <p>
+ * 生成的内容写入固定容量的环形缓冲区，每个片段的事件 ID 为 "流 ID:结束偏移"（偏移按字符计）。
+ * 订阅者可以从任意仍在缓冲区内的偏移开始订阅：先补发偏移之后的内容，再接收后续的实时内容。
+ * 本身也是 {@link StreamingChatCallback}，生成端把内容、结束和错误直接写入即可。
+ * 客户端订阅者断开后流继续生成，所有客户端都断开时通知空闲监听器，由其决定是否取消上游生成
+ */
+@Slf4j
+public class ResumableStream implements StreamingChatCallback {
+
+    private final String id;
+    private final Long userId;
+    private final char[] ring;
+    private final Consumer<ResumableStream> onTerminate;
+    private final Consumer<ResumableStream> onIdle;
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<StreamingChatCallback> subscribers = new ArrayList<>();
+    private final Map<StreamingChatCallback, Runnable> clients = new IdentityHashMap<>();
+    private long idleSince = -1;
+    private long end;
+    private boolean completed;
+    private Exception error;
+
+    public ResumableStream(String id, Long userId, int capacity, Consumer<ResumableStream> onTerminate) {
+        this(id, userId, capacity, onTerminate, stream -> { });
+    }
+
+    /**
+     * @param onTerminate 流结束时回调
+     * @param onIdle 最后一个客户端断开且流仍在生成时回调
+     */
+    public ResumableStream(String id, Long userId, int capacity, Consumer<ResumableStream> onTerminate,
+                           Consumer<ResumableStream> onIdle) {
+        this.id = id;
+        this.userId = userId;
+        this.ring = new char[Math.max(1, capacity)];
+        this.onTerminate = onTerminate;
+        this.onIdle = onIdle;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * 上游生成的取消令牌
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * 生成事件 ID
+     */
+    public static String eventId(String streamId, long offset) {
+        return streamId + ":" + offset;
+    }
+
+    @Override
+    public void onContent(String content) {
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (isTerminated()) {
+                return;
+            }
+            write(content);
+            String eventId = eventId(id, end);
+            for (StreamingChatCallback subscriber : subscribers) {
+                try {
+                    subscriber.onContent(content, eventId);
+                } catch (Exception e) {
+                    log.warn("Stream subscriber failed on content: {}", id, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        terminate(null);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        terminate(e);
+    }
+
+    /**
+     * 从指定偏移开始订阅
+     *
+     * @param offset 已收到内容的结束偏移，0 表示从头开始
+     * @return 偏移已被覆盖或超出已生成的范围时返回 false
+     */
+    public boolean subscribe(long offset, StreamingChatCallback subscriber) {
+        lock.lock();
+        try {
+            if (offset < start() || offset > end) {
+                return false;
+            }
+            if (offset < end) {
+                subscriber.onContent(read(offset), eventId(id, end));
+            }
+            if (completed) {
+                subscriber.onComplete();
+            } else if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscribers.add(subscriber);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以客户端身份订阅，客户端令牌取消（连接断开）时自动退出
+     *
+     * @return 同 {@link #subscribe(long, StreamingChatCallback)}
+     */
+    public boolean subscribe(long offset, StreamingChatCallback subscriber, CancellationToken clientToken) {
+        lock.lock();
+        try {
+            if (!subscribe(offset, subscriber)) {
+                return false;
+            }
+            if (subscribers.contains(subscriber)) {
+                idleSince = -1;
+                clients.put(subscriber, clientToken.onCancel(() -> detach(subscriber)));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 没有客户端订阅的时长（毫秒），有客户端或流已结束时返回 -1
+     */
+    public long idleMillis() {
+        lock.lock();
+        try {
+            return idleSince < 0 || completed || error != null ? -1 : System.currentTimeMillis() - idleSince;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unsubscribe(StreamingChatCallback subscriber) {
+        lock.lock();
+        try {
+            subscribers.remove(subscriber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return completed || error != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void terminate(Exception e) {
+        List<StreamingChatCallback> notified;
+        lock.lock();
+        try {
+            if (completed || error != null) {
+                return;
+            }
+            if (e == null) {
+                completed = true;
+            } else {
+                error = e;
+            }
+            notified = new ArrayList<>(subscribers);
+            subscribers.clear();
+            clients.values().forEach(Runnable::run);
+            clients.clear();
+            // 在锁内通知，保证与补发的内容、其他订阅者看到的顺序一致
+            for (StreamingChatCallback subscriber : notified) {
+                try {
+                    if (e == null) {
+                        subscriber.onComplete();
+                    } else {
+                        subscriber.onError(e);
+                    }
+                } catch (Exception ex) {
+                    log.warn("Stream subscriber failed on termination: {}", id, ex);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        onTerminate.accept(this);
+    }
+
+    /**
+     * 客户端断开后退出订阅，最后一个客户端退出时通知空闲
+     */
+    private void detach(StreamingChatCallback subscriber) {
+        lock.lock();
+        try {
+            if (clients.remove(subscriber) == null) {
+                return;
+            }
+            subscribers.remove(subscriber);
+            if (!clients.isEmpty() || completed || error != null) {
+                return;
+            }
+            idleSince = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+        onIdle.accept(this);
+    }
+
+    /**
+     * 缓冲区中最早内容的偏移
+     */
+    private long start() {
+        return Math.max(0, end - ring.length);
+    }
+
+    /**
+     * 写入环形缓冲区，超过容量的部分只保留末尾
+     */
+    private void write(String content) {
+        int length = content.length();
+        int i = Math.max(0, length - ring.length);
+        while (i < length) {
+            int pos = (int) ((end + i) % ring.length);
+            int n = Math.min(length - i, ring.length - pos);
+            content.getChars(i, i + n, ring, pos);
+            i += n;
+        }
+        end += length;
+    }
+
+    /**
+     * 读取 [offset, end) 的内容，调用方保证 offset 仍在缓冲区内
+     */
+    private String read(long offset) {
+        int length = (int) (end - offset);
+        char[] out = new char[length];
+        int pos = (int) (offset % ring.length);
+        int first = Math.min(length, ring.length - pos);
+        System.arraycopy(ring, pos, out, 0, first);
+        if (first < length) {
+            System.arraycopy(ring, 0, out, first, length - first);
+        }
+        return new String(out);
+    }
+}
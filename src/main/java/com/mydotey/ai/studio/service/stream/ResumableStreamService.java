@@ -0,0 +1,415 @@
+package com.mydotey.ai.studio.service.stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.config.StreamResumeConfig;
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 流式回答续传服务
+ * <p>
+ * 本节点生成的流保存在进程内，流结束后再保留一段时间；启用 Redis 时流内容同时按批写入 Redis，
+ * 重连落到其他节点时从 Redis 补发并轮询后续内容，直到流结束。
+ * 所有客户端断开后等待一段时间，期间没有客户端重连（包括通过 Redis 续传的其他节点）则取消上游生成
+ */
+@Slf4j
+@Service
+public class ResumableStreamService {
+
+    private static final String REDIS_KEY_PREFIX = "chat:stream:";
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_COMPLETED = "completed";
+    private static final String STATUS_FAILED = "failed";
+    private static final String STATUS_CANCELLED = "cancelled";
+    private static final String FIELD_TAIL_SEEN = "tailSeen";
+
+    private final StreamResumeConfig config;
+    private final long maxStreamMillis;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final Cache<String, ResumableStream> streams;
+    private final ScheduledExecutorService scheduler;
+
+    public ResumableStreamService(StreamResumeConfig config, LlmConfig llmConfig,
+                                  ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        this.config = config;
+        this.maxStreamMillis = llmConfig.getStreamTimeout();
+        this.redisTemplateProvider = redisTemplateProvider;
+        long runningNanos = TimeUnit.MILLISECONDS.toNanos(maxStreamMillis)
+                + TimeUnit.SECONDS.toNanos(config.getRetention());
+        long retentionNanos = TimeUnit.SECONDS.toNanos(config.getRetention());
+        // 进行中的流最多保留到连接超时后再加保留时间，结束时重置为保留时间
+        this.streams = Caffeine.newBuilder()
+                .maximumSize(config.getMaxStreams())
+                .expireAfter(new Expiry<String, ResumableStream>() {
+                    @Override
+                    public long expireAfterCreate(String key, ResumableStream stream, long currentTime) {
+                        return runningNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, ResumableStream stream, long currentTime,
+                                                  long currentDuration) {
+                        return retentionNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, ResumableStream stream, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(r);
+            thread.setName("stream-resume");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * 已打开的流
+     *
+     * @param output 生成端写入的回调
+     * @param cancellationToken 生成端监听的取消令牌
+     */
+    public record OpenedStream(StreamingChatCallback output, CancellationToken cancellationToken) {
+    }
+
+    /**
+     * 打开一个可续传的流，下游回调作为第一个订阅者
+     *
+     * @return 生成端写入的回调，未启用续传时直接返回下游回调
+     */
+    public StreamingChatCallback open(Long userId, StreamingChatCallback downstream) {
+        return open(userId, downstream, CancellationToken.NONE).output();
+    }
+
+    /**
+     * 打开一个可续传的流，下游回调作为第一个客户端
+     *
+     * @param clientToken 下游连接断开时取消的令牌
+     * @return 未启用续传时直接返回下游回调和客户端令牌；否则返回流本身和流的取消令牌，
+     *         后者在所有客户端断开超过等待时间后才取消
+     */
+    public OpenedStream open(Long userId, StreamingChatCallback downstream, CancellationToken clientToken) {
+        if (!config.isEnabled()) {
+            return new OpenedStream(downstream, clientToken);
+        }
+        ResumableStream stream = new ResumableStream(UUID.randomUUID().toString(), userId,
+                config.getBufferChars(), this::onTerminate, this::onIdle);
+        streams.put(stream.getId(), stream);
+        if (isRedisEnabled()) {
+            stream.subscribe(0, new RedisMirror(stream.getId(), userId));
+        }
+        stream.subscribe(0, downstream, clientToken);
+        return new OpenedStream(stream, stream.getCancellationToken());
+    }
+
+    /**
+     * 按 Last-Event-ID 续传
+     *
+     * @param lastEventId 客户端最后收到的事件 ID
+     * @param userId 当前用户，必须与流的创建者一致
+     * @return 流不存在、已过期或缺失部分已被覆盖时返回 false，此时回调不会收到任何事件
+     */
+    public boolean resume(String lastEventId, Long userId, StreamingChatCallback callback) {
+        return resume(lastEventId, userId, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * 按 Last-Event-ID 续传，客户端令牌取消时退出订阅
+     *
+     * @see #resume(String, Long, StreamingChatCallback)
+     */
+    public boolean resume(String lastEventId, Long userId, CancellationToken clientToken,
+                          StreamingChatCallback callback) {
+        if (!config.isEnabled() || lastEventId == null) {
+            return false;
+        }
+        int separator = lastEventId.lastIndexOf(':');
+        if (separator <= 0) {
+            return false;
+        }
+        String streamId = lastEventId.substring(0, separator);
+        long offset;
+        try {
+            offset = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (offset < 0) {
+            return false;
+        }
+
+        ResumableStream stream = streams.getIfPresent(streamId);
+        if (stream != null) {
+            return Objects.equals(stream.getUserId(), userId)
+                    && !stream.getCancellationToken().isCancelled()
+                    && stream.subscribe(offset, callback, clientToken);
+        }
+        if (isRedisEnabled()) {
+            return resumeFromRedis(streamId, offset, userId, clientToken, callback);
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void onTerminate(ResumableStream stream) {
+        if (stream.getCancellationToken().isCancelled()) {
+            // 已取消的流内容不完整，不再续传
+            streams.asMap().remove(stream.getId(), stream);
+            return;
+        }
+        // 重新写入以把过期时间重置为保留时间
+        streams.asMap().replace(stream.getId(), stream, stream);
+    }
+
+    private void onIdle(ResumableStream stream) {
+        long graceMillis = TimeUnit.SECONDS.toMillis(config.getDisconnectGrace());
+        try {
+            scheduler.schedule(() -> checkIdle(stream, graceMillis), graceMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            stream.getCancellationToken().cancel();
+        }
+    }
+
+    /**
+     * 等待时间内没有客户端重连则取消上游生成；其他节点正在通过 Redis 续传时继续等待
+     */
+    private void checkIdle(ResumableStream stream, long graceMillis) {
+        long idleMillis = stream.idleMillis();
+        if (idleMillis < 0) {
+            return;
+        }
+        if (idleMillis < graceMillis || isTailedRemotely(stream.getId(), graceMillis)) {
+            scheduler.schedule(() -> checkIdle(stream, graceMillis),
+                    Math.max(graceMillis - idleMillis, config.getRedisPollInterval()), TimeUnit.MILLISECONDS);
+            return;
+        }
+        log.info("No client reconnected to stream {} within {}ms, cancelling generation", stream.getId(), graceMillis);
+        stream.getCancellationToken().cancel();
+    }
+
+    private boolean isTailedRemotely(String streamId, long graceMillis) {
+        if (!isRedisEnabled()) {
+            return false;
+        }
+        try {
+            Object tailSeen = redisTemplateProvider.getObject().opsForHash().get(metaKey(streamId), FIELD_TAIL_SEEN);
+            return tailSeen != null && System.currentTimeMillis() - Long.parseLong(tailSeen.toString()) < graceMillis;
+        } catch (Exception e) {
+            log.warn("Failed to read stream tail state from Redis: {}", streamId, e);
+            return false;
+        }
+    }
+
+    private boolean isRedisEnabled() {
+        return config.isRedisEnabled() && redisTemplateProvider.getIfAvailable() != null;
+    }
+
+    private static String metaKey(String streamId) {
+        return REDIS_KEY_PREFIX + streamId;
+    }
+
+    private static String chunksKey(String streamId) {
+        return REDIS_KEY_PREFIX + streamId + ":chunks";
+    }
+
+    private boolean resumeFromRedis(String streamId, long offset, Long userId, CancellationToken clientToken,
+                                    StreamingChatCallback callback) {
+        StringRedisTemplate redis = redisTemplateProvider.getIfAvailable();
+        Map<Object, Object> meta;
+        try {
+            meta = redis.opsForHash().entries(metaKey(streamId));
+        } catch (Exception e) {
+            log.warn("Failed to read stream from Redis: {}", streamId, e);
+            return false;
+        }
+        if (meta.isEmpty() || !String.valueOf(userId).equals(meta.get("userId"))
+                || STATUS_CANCELLED.equals(meta.get("status"))) {
+            return false;
+        }
+        log.info("Resuming stream {} from Redis at offset {}", streamId, offset);
+        new RedisTail(redis, streamId, offset, clientToken, callback).poll();
+        return true;
+    }
+
+    /**
+     * 把流内容按批追加到 Redis 列表，结束时写入状态
+     */
+    private class RedisMirror implements StreamingChatCallback {
+        private final String streamId;
+        private final ReentrantLock ioLock = new ReentrantLock();
+        private final StringBuilder pending = new StringBuilder();
+        private boolean flushScheduled;
+
+        RedisMirror(String streamId, Long userId) {
+            this.streamId = streamId;
+            scheduler.execute(() -> redis(redis -> {
+                redis.opsForHash().putAll(metaKey(streamId),
+                        Map.of("userId", String.valueOf(userId), "status", STATUS_RUNNING));
+                redis.expire(metaKey(streamId), Duration.ofMillis(maxStreamMillis)
+                        .plusSeconds(config.getRetention()));
+            }));
+        }
+
+        @Override
+        public void onContent(String content) {
+            synchronized (pending) {
+                pending.append(content);
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            scheduler.schedule(this::flush, config.getRedisFlushInterval(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onComplete() {
+            scheduler.execute(() -> finish(STATUS_COMPLETED, null));
+        }
+
+        @Override
+        public void onError(Exception e) {
+            String status = e instanceof CancellationException ? STATUS_CANCELLED : STATUS_FAILED;
+            scheduler.execute(() -> finish(status, String.valueOf(e.getMessage())));
+        }
+
+        private void flush() {
+            ioLock.lock();
+            try {
+                String chunk;
+                synchronized (pending) {
+                    chunk = pending.toString();
+                    pending.setLength(0);
+                    flushScheduled = false;
+                }
+                if (!chunk.isEmpty()) {
+                    redis(redis -> {
+                        redis.opsForList().rightPush(chunksKey(streamId), chunk);
+                        redis.expire(chunksKey(streamId), Duration.ofMillis(maxStreamMillis)
+                                .plusSeconds(config.getRetention()));
+                    });
+                }
+            } finally {
+                ioLock.unlock();
+            }
+        }
+
+        private void finish(String status, String error) {
+            flush();
+            redis(redis -> {
+                redis.opsForHash().put(metaKey(streamId), "status", status);
+                if (error != null) {
+                    redis.opsForHash().put(metaKey(streamId), "error", error);
+                }
+                Duration retention = Duration.ofSeconds(config.getRetention());
+                redis.expire(metaKey(streamId), retention);
+                redis.expire(chunksKey(streamId), retention);
+            });
+        }
+
+        private void redis(Consumer<StringRedisTemplate> action) {
+            try {
+                action.accept(redisTemplateProvider.getObject());
+            } catch (Exception e) {
+                log.warn("Failed to mirror stream to Redis: {}", streamId, e);
+            }
+        }
+    }
+
+    /**
+     * 从 Redis 补发并轮询后续内容
+     */
+    private class RedisTail {
+        private final StringRedisTemplate redis;
+        private final String streamId;
+        private final long offset;
+        private final CancellationToken clientToken;
+        private final StreamingChatCallback callback;
+        private final long deadline = System.currentTimeMillis() + maxStreamMillis;
+        private long nextIndex;
+        private long position;
+
+        RedisTail(StringRedisTemplate redis, String streamId, long offset, CancellationToken clientToken,
+                  StreamingChatCallback callback) {
+            this.redis = redis;
+            this.streamId = streamId;
+            this.offset = offset;
+            this.clientToken = clientToken;
+            this.callback = callback;
+        }
+
+        void poll() {
+            if (clientToken.isCancelled()) {
+                return;
+            }
+            try {
+                // 先读状态再读内容：状态已结束时，结束前写入的内容一定都能读到
+                Map<Object, Object> meta = redis.opsForHash().entries(metaKey(streamId));
+                Object status = meta.get("status");
+                if (STATUS_RUNNING.equals(status)) {
+                    // 告知生成节点仍有客户端在续传，避免其在等待时间后取消生成
+                    redis.opsForHash().put(metaKey(streamId), FIELD_TAIL_SEEN,
+                            String.valueOf(System.currentTimeMillis()));
+                }
+                List<String> chunks = redis.opsForList().range(chunksKey(streamId), nextIndex, -1);
+                if (chunks != null) {
+                    for (String chunk : chunks) {
+                        long chunkStart = position;
+                        position += chunk.length();
+                        nextIndex++;
+                        if (position > offset) {
+                            String content = chunk.substring((int) Math.max(0, offset - chunkStart));
+                            callback.onContent(content, ResumableStream.eventId(streamId, position));
+                        }
+                    }
+                }
+                if (STATUS_COMPLETED.equals(status)) {
+                    callback.onComplete();
+                } else if (STATUS_FAILED.equals(status)) {
+                    callback.onError(new RuntimeException(String.valueOf(meta.get("error"))));
+                } else if (STATUS_CANCELLED.equals(status)) {
+                    callback.onError(new CancellationException(String.valueOf(meta.get("error"))));
+                } else if (meta.isEmpty() || System.currentTimeMillis() > deadline) {
+                    callback.onError(new RuntimeException("Stream expired"));
+                } else {
+                    scheduler.schedule(this::poll, config.getRedisPollInterval(), TimeUnit.MILLISECONDS);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to resume stream from Redis: {}", streamId, e);
+                callback.onError(e);
+            }
+        }
+    }
+}
@@ -5,12 +5,15 @@ import com.mydotey.ai.studio.entity.WebPage;
 import com.mydotey.ai.studio.mapper.WebCrawlTaskMapper;
 import com.mydotey.ai.studio.mapper.WebPageMapper;
 import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 爬取编排器
@@ -18,13 +21,19 @@ import java.util.concurrent.*;
  */
 @Slf4j
 @Component
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class CrawlOrchestrator {
 
     private final WebScraper webScraper;
     private final WebCrawlTaskMapper taskMapper;
     private final WebPageMapper pageMapper;
 
+    /**
+     * 是否使用虚拟线程执行爬取，与 Tomcat 请求处理共用同一开关
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     /**
      * 执行爬取任务
      * @param task 爬取任务
@@ -39,17 +48,19 @@ public class CrawlOrchestrator {
         task.setUpdatedAt(Instant.now());
         taskMapper.updateById(task);
 
+        CrawlProgress progress = new CrawlProgress(task);
         try {
             // 创建 URL 过滤器
             UrlFilter urlFilter = new UrlFilter(task.getUrlPattern());
 
             // 根据策略执行爬取
             if ("DFS".equalsIgnoreCase(task.getCrawlStrategy())) {
-                executeDFS(task, urlFilter);
+                executeDFS(task, urlFilter, progress);
             } else {
                 // 默认使用 BFS
-                executeBFS(task, urlFilter);
+                executeBFS(task, urlFilter, progress);
             }
+            progress.applyTo(task);
 
             // 更新任务状态为完成
             task.setStatus("COMPLETED");
@@ -62,6 +73,7 @@ public class CrawlOrchestrator {
 
         } catch (Exception e) {
             log.error("Error executing crawl task: id=" + task.getId(), e);
+            progress.applyTo(task);
             task.setStatus("FAILED");
             task.setErrorMessage(e.getMessage());
             task.setCompletedAt(Instant.now());
@@ -73,75 +85,68 @@ public class CrawlOrchestrator {
     /**
      * 执行 BFS 策略爬取
      */
-    private void executeBFS(WebCrawlTask task, UrlFilter urlFilter) {
+    private void executeBFS(WebCrawlTask task, UrlFilter urlFilter, CrawlProgress progress) {
         int concurrentLimit = task.getConcurrentLimit() != null ? task.getConcurrentLimit() : 1;
-        ExecutorService executorService = Executors.newFixedThreadPool(concurrentLimit);
+        ExecutorService executorService = newCrawlExecutor(concurrentLimit);
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
 
         try {
-            // 使用队列实现 BFS
-            Queue<UrlTask> queue = new LinkedList<>();
+            // 使用队列实现 BFS，工作线程会并发追加新发现的链接
+            Queue<UrlTask> queue = new ConcurrentLinkedQueue<>();
             Set<String> visited = ConcurrentHashMap.newKeySet();
 
             // 添加起始 URL
             queue.offer(new UrlTask(task.getStartUrl(), 0));
             visited.add(task.getStartUrl());
 
-            List<Future<?>> futures = new ArrayList<>();
+            int inFlight = 0;
 
-            while (!queue.isEmpty() || !futures.isEmpty()) {
-                // 提交任务到线程池
-                while (!queue.isEmpty() && futures.size() < concurrentLimit * 2) {
+            while (!queue.isEmpty() || inFlight > 0) {
+                // 提交任务，同时进行的页面数不超过并发限制
+                while (!queue.isEmpty() && inFlight < concurrentLimit) {
                     UrlTask urlTask = queue.poll();
                     if (urlTask != null) {
-                        Future<?> future = executorService.submit(() -> {
-                            crawlPage(task, urlTask.url, urlTask.depth, urlFilter, visited, queue);
+                        completionService.submit(() -> {
+                            crawlPage(task, urlTask.url, urlTask.depth, urlFilter, visited, queue, progress);
+                            return null;
                         });
-                        futures.add(future);
+                        inFlight++;
                     }
                 }
 
-                // 等待至少一个任务完成
-                if (!futures.isEmpty()) {
-                    futures.removeIf(future -> {
-                        if (future.isDone()) {
-                            try {
-                                future.get();
-                            } catch (InterruptedException | ExecutionException e) {
-                                log.error("Error in crawl task", e);
-                            }
-                            return true;
-                        }
-                        return false;
-                    });
+                // 阻塞等待任一任务完成，而不是轮询
+                if (inFlight > 0) {
+                    try {
+                        completionService.take().get();
+                    } catch (ExecutionException e) {
+                        log.error("Error in crawl task", e);
+                    }
+                    inFlight--;
                 }
 
                 // 更新进度
-                if (!queue.isEmpty() || !futures.isEmpty()) {
+                if (!queue.isEmpty() || inFlight > 0) {
                     task.setTotalPages(visited.size());
                     task.setUpdatedAt(Instant.now());
+                    progress.applyTo(task);
                     taskMapper.updateById(task);
                 }
             }
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Crawl task interrupted", e);
         } finally {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            shutdown(executorService);
         }
     }
 
     /**
      * 执行 DFS 策略爬取
      */
-    private void executeDFS(WebCrawlTask task, UrlFilter urlFilter) {
+    private void executeDFS(WebCrawlTask task, UrlFilter urlFilter, CrawlProgress progress) {
         int concurrentLimit = task.getConcurrentLimit() != null ? task.getConcurrentLimit() : 1;
-        ExecutorService executorService = Executors.newFixedThreadPool(concurrentLimit);
+        ExecutorService executorService = newCrawlExecutor(concurrentLimit);
 
         try {
             Set<String> visited = ConcurrentHashMap.newKeySet();
@@ -160,7 +165,7 @@ public class CrawlOrchestrator {
                 visited.add(urlTask.url);
 
                 Future<Void> future = executorService.submit(() -> {
-                    List<String> links = crawlPage(task, urlTask.url, urlTask.depth, urlFilter, visited, null);
+                    List<String> links = crawlPage(task, urlTask.url, urlTask.depth, urlFilter, visited, null, progress);
 
                     // DFS: 将发现的链接压入栈中（后进先出）
                     if (links != null && !links.isEmpty()) {
@@ -186,19 +191,35 @@ public class CrawlOrchestrator {
                 // 更新进度
                 task.setTotalPages(visited.size());
                 task.setUpdatedAt(Instant.now());
+                progress.applyTo(task);
                 taskMapper.updateById(task);
             }
 
         } finally {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
+            shutdown(executorService);
+        }
+    }
+
+    /**
+     * 创建单个爬取任务使用的执行器
+     * 虚拟线程模式下每个页面一个虚拟线程，并发度由调用方按 concurrentLimit 控制
+     */
+    private ExecutorService newCrawlExecutor(int concurrentLimit) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("crawler-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(concurrentLimit);
+    }
+
+    private void shutdown(ExecutorService executorService) {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
                 executorService.shutdownNow();
-                Thread.currentThread().interrupt();
             }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -207,7 +228,8 @@ public class CrawlOrchestrator {
      * @return 提取的链接列表
      */
     private List<String> crawlPage(WebCrawlTask task, String url, int depth,
-                                   UrlFilter urlFilter, Set<String> visited, Queue<UrlTask> queue) {
+                                   UrlFilter urlFilter, Set<String> visited, Queue<UrlTask> queue,
+                                   CrawlProgress progress) {
         try {
             log.debug("Crawling: url={}, depth={}", url, depth);
 
@@ -232,9 +254,7 @@ public class CrawlOrchestrator {
             pageMapper.insert(page);
 
             // 更新成功计数
-            synchronized (task) {
-                task.setSuccessPages(task.getSuccessPages() + 1);
-            }
+            progress.successPages.incrementAndGet();
 
             // 提取并过滤链接
             List<String> links = result.getLinks();
@@ -248,8 +268,7 @@ public class CrawlOrchestrator {
             // 对于 BFS，将符合条件的链接加入队列
             if (queue != null) {
                 for (String link : filteredLinks) {
-                    if (!visited.contains(link)) {
-                        visited.add(link);
+                    if (visited.add(link)) {
                         queue.offer(new UrlTask(link, depth + 1));
                     }
                 }
@@ -272,9 +291,7 @@ public class CrawlOrchestrator {
             pageMapper.insert(page);
 
             // 更新失败计数
-            synchronized (task) {
-                task.setFailedPages(task.getFailedPages() + 1);
-            }
+            progress.failedPages.incrementAndGet();
 
             return Collections.emptyList();
 
@@ -293,14 +310,31 @@ public class CrawlOrchestrator {
             pageMapper.insert(page);
 
             // 更新失败计数
-            synchronized (task) {
-                task.setFailedPages(task.getFailedPages() + 1);
-            }
+            progress.failedPages.incrementAndGet();
 
             return Collections.emptyList();
         }
     }
 
+    /**
+     * 爬取计数
+     * 工作线程只做原子自增，由编排线程在更新任务前写回实体，避免在实体上加锁导致虚拟线程被钉住
+     */
+    private static class CrawlProgress {
+        final AtomicInteger successPages;
+        final AtomicInteger failedPages;
+
+        CrawlProgress(WebCrawlTask task) {
+            this.successPages = new AtomicInteger(task.getSuccessPages() != null ? task.getSuccessPages() : 0);
+            this.failedPages = new AtomicInteger(task.getFailedPages() != null ? task.getFailedPages() : 0);
+        }
+
+        void applyTo(WebCrawlTask task) {
+            task.setSuccessPages(successPages.get());
+            task.setFailedPages(failedPages.get());
+        }
+    }
+
     /**
      * URL 任务，包含 URL 和深度信息
      */
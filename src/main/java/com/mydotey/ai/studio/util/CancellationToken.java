@@ -0,0 +1,78 @@
+package com.mydotey.ai.studio.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 取消令牌
+ * <p>
+ * 由发起方（如 SSE 连接断开）触发取消，执行方注册回调以中止进行中的工作。
+ * 取消只生效一次，取消之后注册的回调立即执行
+ */
+@Slf4j
+public class CancellationToken {
+
+    /**
+     * 永远不会被取消的令牌
+     */
+    public static final CancellationToken NONE = new CancellationToken() {
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public Runnable onCancel(Runnable callback) {
+            return () -> { };
+        }
+    };
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+    /**
+     * 触发取消
+     *
+     * @return 第一次取消时返回 true
+     */
+    public boolean cancel() {
+        if (!cancelled.compareAndSet(false, true)) {
+            return false;
+        }
+        // 先移除再执行，与 onCancel 竞争时保证每个回调只执行一次
+        for (Runnable callback : callbacks) {
+            if (callbacks.remove(callback)) {
+                run(callback);
+            }
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * 注册取消回调，已取消时立即执行
+     *
+     * @return 注销回调的句柄，工作正常结束后应调用以释放引用
+     */
+    public Runnable onCancel(Runnable callback) {
+        callbacks.add(callback);
+        if (cancelled.get() && callbacks.remove(callback)) {
+            run(callback);
+        }
+        return () -> callbacks.remove(callback);
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.warn("Cancellation callback failed", e);
+        }
+    }
+}
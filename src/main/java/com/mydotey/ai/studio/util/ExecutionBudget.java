@@ -0,0 +1,159 @@
+package com.mydotey.ai.studio.util;
+
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 执行预算
+ * <p>
+ * 一次 Agent 执行的截止时间和 token 预算，随执行传给 LLM、MCP 工具和向量检索：
+ * 每一步按剩余时间确定超时，按剩余 token 确定 maxTokens，LLM 响应的用量从预算中扣除。
+ * 预算用尽时抛出 {@link ExecutionBudgetExceededException}，由执行器以已有结果作为部分回答返回
+ */
+public class ExecutionBudget {
+
+    /**
+     * 不限时间和 token 的预算
+     */
+    public static final ExecutionBudget UNLIMITED = new ExecutionBudget(0, 0, 0, 0);
+
+    private final long deadlineNanos;
+    private final boolean timeLimited;
+    private final boolean tokenLimited;
+    private final AtomicLong remainingTokens;
+    private final long reserveMillis;
+    private final long reserveTokens;
+
+    private ExecutionBudget(long timeoutMillis, long maxTokens, long reserveMillis, long reserveTokens) {
+        this.timeLimited = timeoutMillis > 0;
+        this.deadlineNanos = timeLimited ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        this.tokenLimited = maxTokens > 0;
+        this.remainingTokens = new AtomicLong(tokenLimited ? maxTokens : Long.MAX_VALUE);
+        this.reserveMillis = reserveMillis;
+        this.reserveTokens = reserveTokens;
+    }
+
+    /**
+     * 从现在开始计时的预算
+     *
+     * @param timeoutMillis 总时长（毫秒），不大于 0 表示不限
+     * @param maxTokens 总 token 数，不大于 0 表示不限
+     */
+    public static ExecutionBudget of(long timeoutMillis, long maxTokens) {
+        return of(timeoutMillis, maxTokens, 0, 0);
+    }
+
+    /**
+     * 从现在开始计时的预算，并为最终回答预留时间和 token
+     *
+     * @param reserveMillis 剩余时间低于该值时 {@link #isLow()} 为 true
+     * @param reserveTokens 剩余 token 低于该值时 {@link #isLow()} 为 true
+     */
+    public static ExecutionBudget of(long timeoutMillis, long maxTokens, long reserveMillis, long reserveTokens) {
+        return timeoutMillis > 0 || maxTokens > 0
+                ? new ExecutionBudget(timeoutMillis, maxTokens, reserveMillis, reserveTokens)
+                : UNLIMITED;
+    }
+
+    public boolean isTimeLimited() {
+        return timeLimited;
+    }
+
+    /**
+     * 剩余时间（毫秒），不限时返回 {@link Long#MAX_VALUE}
+     */
+    public long remainingMillis() {
+        if (!timeLimited) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 剩余 token 数，不限时返回 {@link Long#MAX_VALUE}
+     */
+    public long remainingTokens() {
+        return Math.max(0, remainingTokens.get());
+    }
+
+    public boolean isExpired() {
+        return timeLimited && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 截止时间已到或 token 已用完
+     */
+    public boolean isExhausted() {
+        return isExpired() || tokenLimited && remainingTokens.get() <= 0;
+    }
+
+    /**
+     * 剩余预算已不足预留值，应停止调用工具，直接给出回答
+     */
+    public boolean isLow() {
+        return timeLimited && remainingMillis() < reserveMillis
+                || tokenLimited && remainingTokens() < reserveTokens;
+    }
+
+    /**
+     * 预算用尽时抛出异常
+     *
+     * @param step 正在进行的步骤，用于错误信息
+     * @throws ExecutionBudgetExceededException 预算已用尽
+     */
+    public void check(String step) {
+        if (isExpired()) {
+            throw new ExecutionBudgetExceededException("Execution deadline exceeded before " + step);
+        }
+        if (tokenLimited && remainingTokens.get() <= 0) {
+            throw new ExecutionBudgetExceededException("Token budget exhausted before " + step);
+        }
+    }
+
+    /**
+     * 按剩余时间收紧超时
+     *
+     * @param timeoutMillis 该步骤原本的超时
+     */
+    public long timeoutMillis(long timeoutMillis) {
+        return Math.min(timeoutMillis, remainingMillis());
+    }
+
+    /**
+     * 按剩余 token 收紧 maxTokens
+     *
+     * @param maxTokens 原本的 maxTokens，null 表示不设置
+     */
+    public Integer maxTokens(Integer maxTokens) {
+        if (!tokenLimited) {
+            return maxTokens;
+        }
+        int remaining = (int) Math.min(Integer.MAX_VALUE, remainingTokens());
+        return maxTokens != null ? Math.min(maxTokens, remaining) : remaining;
+    }
+
+    /**
+     * 扣除已使用的 token
+     */
+    public void consume(Integer tokens) {
+        if (tokenLimited && tokens != null && tokens > 0) {
+            remainingTokens.addAndGet(-tokens);
+        }
+    }
+
+    /**
+     * 截止时间到达时取消的令牌，parent 取消时随之取消；不限时直接返回 parent
+     */
+    public CancellationToken cancelAtDeadline(CancellationToken parent) {
+        if (!timeLimited) {
+            return parent;
+        }
+        CancellationToken token = new CancellationToken();
+        parent.onCancel(token::cancel);
+        CompletableFuture.delayedExecutor(remainingMillis(), TimeUnit.MILLISECONDS).execute(token::cancel);
+        return token;
+    }
+}
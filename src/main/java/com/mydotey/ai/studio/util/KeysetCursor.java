@@ -0,0 +1,51 @@
+package com.mydotey.ai.studio.util;
+
+import com.mydotey.ai.studio.common.exception.BusinessException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * 键集分页游标
+ * <p>
+ * 记录上一页最后一行的排序键（时间戳和 ID），下一页以 {@code (时间戳, id) < (游标时间戳, 游标 id)} 继续查询，
+ * 不使用 OFFSET，翻页代价与页码无关。编码为 URL 安全的 base64("epochMicros:id")，
+ * 时间戳保留到微秒，与 PostgreSQL TIMESTAMP 的精度一致，不会因截断跳过同一毫秒内的行
+ *
+ * @param timestamp 排序时间戳
+ * @param id 行 ID，时间戳相同时的次级排序键
+ */
+public record KeysetCursor(Instant timestamp, long id) {
+
+    /**
+     * 编码为字符串游标
+     */
+    public String encode() {
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, timestamp);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((micros + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析字符串游标
+     *
+     * @return 游标为空时返回 null，表示第一页
+     * @throws BusinessException 游标格式错误
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            long micros = Long.parseLong(value.substring(0, separator));
+            long id = Long.parseLong(value.substring(separator + 1));
+            return new KeysetCursor(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), id);
+        } catch (RuntimeException e) {
+            throw new BusinessException("Invalid cursor: " + cursor);
+        }
+    }
+}
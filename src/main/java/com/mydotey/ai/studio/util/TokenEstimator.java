@@ -0,0 +1,31 @@
+package com.mydotey.ai.studio.util;
+
+/**
+ * Token 数量估算工具
+ * 不依赖具体分词器，按 ASCII 约 4 字符 / token、非 ASCII（如中文）约 1 字符 / token 粗略估算，
+ * 结果偏保守，用于批量切分和预算控制等不需要精确计数的场景
+ */
+public class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的 token 数
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int ascii = 0;
+        int nonAscii = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                nonAscii++;
+            }
+        }
+        return (ascii + 3) / 4 + nonAscii;
+    }
+}
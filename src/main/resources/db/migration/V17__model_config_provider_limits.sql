@@ -0,0 +1,9 @@
+-- 为模型配置添加 Provider 级别的批量与限流参数
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS max_batch_size INTEGER;
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS max_batch_tokens INTEGER;
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS requests_per_minute INTEGER;
+
+-- 添加注释
+COMMENT ON COLUMN model_configs.max_batch_size IS '单次批量请求的最大文本条数，为空时使用全局默认值';
+COMMENT ON COLUMN model_configs.max_batch_tokens IS '单次批量请求的最大估算 token 数，为空时使用全局默认值';
+COMMENT ON COLUMN model_configs.requests_per_minute IS '每分钟最大请求数，为空或 0 表示不限流';
@@ -0,0 +1,7 @@
+-- 为 LLM 模型配置添加响应缓存参数
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS response_cache_enabled BOOLEAN DEFAULT FALSE;
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS response_cache_ttl INTEGER;
+
+-- 添加注释
+COMMENT ON COLUMN model_configs.response_cache_enabled IS '是否对确定性生成（低温度）启用精确匹配响应缓存';
+COMMENT ON COLUMN model_configs.response_cache_ttl IS '响应缓存过期时间（秒），为空时使用全局默认值';
@@ -0,0 +1,5 @@
+-- 为 LLM 模型配置添加附加端点，与主端点组成端点池
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS endpoints JSONB;
+
+-- 添加注释
+COMMENT ON COLUMN model_configs.endpoints IS '附加端点（JSON 字符串数组），与 endpoint 一起按延迟和负载路由';
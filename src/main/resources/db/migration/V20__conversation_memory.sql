@@ -0,0 +1,10 @@
+-- 为对话添加滚动摘要，较早的消息压缩进摘要后不再参与每轮加载
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS summary TEXT;
+ALTER TABLE conversations ADD COLUMN IF NOT EXISTS summarized_until_id BIGINT;
+
+-- 按对话倒序读取最近消息的键集查询索引
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_id_id ON messages(conversation_id, id);
+
+-- 添加注释
+COMMENT ON COLUMN conversations.summary IS '对话的滚动摘要，覆盖 summarized_until_id 及之前的消息';
+COMMENT ON COLUMN conversations.summarized_until_id IS '已压缩进摘要的最后一条消息 ID';
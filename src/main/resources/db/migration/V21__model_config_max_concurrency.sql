@@ -0,0 +1,5 @@
+-- 为模型配置添加并发上限，供 LLM 调用准入控制使用
+ALTER TABLE model_configs ADD COLUMN IF NOT EXISTS max_concurrency INTEGER;
+
+-- 添加注释
+COMMENT ON COLUMN model_configs.max_concurrency IS '同时进行的最大上游调用数，超出的调用排队，为空时使用全局默认值';
@@ -0,0 +1,7 @@
+-- 为 MCP 工具添加结果缓存设置，纯查询类工具可按参数缓存调用结果
+ALTER TABLE mcp_tools ADD COLUMN IF NOT EXISTS result_cache_enabled BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE mcp_tools ADD COLUMN IF NOT EXISTS result_cache_ttl INTEGER;
+
+-- 添加注释
+COMMENT ON COLUMN mcp_tools.result_cache_enabled IS '是否缓存工具调用结果，只应对幂等的查询类工具开启';
+COMMENT ON COLUMN mcp_tools.result_cache_ttl IS '结果缓存过期时间（秒），为空时使用全局默认值';
@@ -0,0 +1,7 @@
+-- 对话列表按更新时间倒序的键集分页索引
+CREATE INDEX IF NOT EXISTS idx_conversations_chatbot_user_updated_at
+    ON conversations(chatbot_id, user_id, updated_at, id);
+
+-- 对话消息按创建时间的键集分页索引
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_created_at
+    ON messages(conversation_id, created_at, id);
@@ -7,6 +7,7 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -39,6 +40,27 @@ class GlobalExceptionHandlerTest {
         when(request.getHeader("X-Correlation-Id")).thenReturn(null);
     }
 
+    @Test
+    void handleLlmOverloadedException_ShouldReturnTooManyRequestsWithRetryAfter() {
+        // Given
+        LlmOverloadedException exception = new LlmOverloadedException("LLM capacity exhausted", 7);
+
+        // When
+        ResponseEntity<ApiResponse<Void>> response = exceptionHandler.handleLlmOverloadedException(exception, request);
+
+        // Then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("7", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(429, response.getBody().getCode());
+
+        Counter errorCounter = meterRegistry.find("errors.total")
+                .tag("type", "LlmOverloadedException")
+                .tag("status", "429")
+                .counter();
+        assertNotNull(errorCounter);
+        assertEquals(1.0, errorCounter.count());
+    }
+
     @Test
     void handleAuthException_ShouldReturnForbiddenStatusAndRecordMetric() {
         // Given
@@ -0,0 +1,89 @@
+package com.mydotey.ai.studio.common.sse;
+
+import com.mydotey.ai.studio.config.SseConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SSE 合并写入的负载基准
+ * <p>
+ * 模拟大量并发流、上游逐字符输出、每次写出有固定开销的场景，对比逐个写出和合并写出的
+ * 写出次数、每帧字节数和总耗时。依赖实际耗时，不在默认的测试中运行，
+ * 通过 {@code mvn test -Dtest=CoalescingSseWriterBenchmark} 运行
+ */
+@DisplayName("SSE 合并写入负载基准")
+class CoalescingSseWriterBenchmark {
+
+    private static final int STREAMS = 200;
+    private static final int DELTAS_PER_STREAM = 300;
+    private static final long DELTA_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long FLUSH_COST_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private record Result(long flushes, double bytesPerFrame, long elapsedMillis) {
+    }
+
+    private Result run(long windowMillis) throws Exception {
+        SseConfig config = new SseConfig();
+        config.getCoalescing().setWindowMillis(windowMillis);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SseWriterFactory factory = new SseWriterFactory(config, meterRegistry);
+        String expected = "x".repeat(DELTAS_PER_STREAM);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<RecordingSseEmitter>> streams = new ArrayList<>();
+            for (int i = 0; i < STREAMS; i++) {
+                streams.add(executor.submit(() -> {
+                    RecordingSseEmitter emitter = new RecordingSseEmitter(FLUSH_COST_NANOS);
+                    CoalescingSseWriter writer = factory.create(emitter, "load");
+                    for (int j = 0; j < DELTAS_PER_STREAM; j++) {
+                        writer.append("x");
+                        LockSupport.parkNanos(DELTA_INTERVAL_NANOS);
+                    }
+                    writer.send("[DONE]");
+                    writer.complete();
+                    return emitter;
+                }));
+            }
+            for (Future<RecordingSseEmitter> stream : streams) {
+                RecordingSseEmitter emitter = stream.get(30, TimeUnit.SECONDS);
+                assertTrue(emitter.awaitCompletion());
+                List<String> frames = emitter.dataFrames();
+                assertEquals("[DONE]", frames.get(frames.size() - 1));
+                assertEquals(expected, String.join("", frames.subList(0, frames.size() - 1)));
+            }
+        } finally {
+            factory.shutdown();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long flushes = (long) meterRegistry.counter("sse.flushes", "endpoint", "load").count();
+        double bytesPerFrame = meterRegistry.summary("sse.frame.bytes", "endpoint", "load").mean();
+        return new Result(flushes, bytesPerFrame, elapsedMillis);
+    }
+
+    @Test
+    @DisplayName("合并写出应该大幅减少写出次数且内容不变")
+    void testCoalescingReducesFlushes() throws Exception {
+        Result passthrough = run(0);
+        Result coalesced = run(20);
+
+        // 逐个写出：每个增量一帧，加上结束标记
+        assertEquals((long) STREAMS * (DELTAS_PER_STREAM + 1), passthrough.flushes());
+        assertTrue(coalesced.flushes() * 10 < passthrough.flushes(),
+                "coalesced " + coalesced + " vs passthrough " + passthrough);
+        assertTrue(coalesced.bytesPerFrame() > passthrough.bytesPerFrame() * 10,
+                "coalesced " + coalesced + " vs passthrough " + passthrough);
+    }
+}
@@ -0,0 +1,133 @@
+package com.mydotey.ai.studio.common.sse;
+
+import com.mydotey.ai.studio.config.SseConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SSE 合并写入器测试")
+class CoalescingSseWriterTest {
+
+    private SseConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private SseWriterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        config = new SseConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        factory = new SseWriterFactory(config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.shutdown();
+    }
+
+    @Test
+    @DisplayName("时间窗口内的增量应该合并为一个事件")
+    void testDeltasCoalescedWithinWindow() throws InterruptedException {
+        config.getCoalescing().setWindowMillis(50);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        CoalescingSseWriter writer = factory.create(emitter, "chat");
+
+        writer.append("你");
+        writer.append("好");
+        writer.append("！");
+        assertTrue(emitter.frames.isEmpty());
+
+        Thread.sleep(200);
+
+        assertEquals(List.of("你好！"), emitter.awaitDataFrames(1));
+        assertEquals(3, meterRegistry.counter("sse.deltas", "endpoint", "chat").count());
+        assertEquals(1, meterRegistry.counter("sse.flushes", "endpoint", "chat").count());
+        assertEquals(9, meterRegistry.summary("sse.frame.bytes", "endpoint", "chat").totalAmount());
+    }
+
+    @Test
+    @DisplayName("达到字节阈值时应该立即写出")
+    void testFlushOnByteThreshold() throws InterruptedException {
+        config.getCoalescing().setWindowMillis(10_000);
+        config.getCoalescing().setMaxBytes(4);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        CoalescingSseWriter writer = factory.create(emitter, "chat");
+
+        writer.append("ab");
+        assertTrue(emitter.frames.isEmpty());
+        writer.append("cd");
+
+        assertEquals(List.of("abcd"), emitter.awaitDataFrames(1));
+    }
+
+    @Test
+    @DisplayName("结束标记和 complete 之前应该先写出缓冲区")
+    void testControlEventsPreserveOrder() throws InterruptedException {
+        config.getCoalescing().setWindowMillis(10_000);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        CoalescingSseWriter writer = factory.create(emitter, "chat");
+
+        writer.append("答");
+        writer.append("案");
+        writer.send("[DONE]");
+        writer.append("尾部");
+        writer.complete();
+
+        assertTrue(emitter.awaitCompletion());
+        assertEquals(List.of("答案", "[DONE]", "尾部"), emitter.dataFrames());
+    }
+
+    @Test
+    @DisplayName("端点配置的窗口为 0 时逐个写出")
+    void testEndpointOverrideDisablesCoalescing() throws InterruptedException {
+        SseConfig.Coalescing passthrough = new SseConfig.Coalescing();
+        passthrough.setWindowMillis(0);
+        config.getEndpoints().put("rag", passthrough);
+        RecordingSseEmitter emitter = new RecordingSseEmitter();
+        CoalescingSseWriter writer = factory.create(emitter, "rag");
+
+        writer.append("a");
+        writer.append("b");
+
+        assertEquals(List.of("a", "b"), emitter.awaitDataFrames(2));
+    }
+
+    @Test
+    @DisplayName("卡住的连接不影响其他连接的定时 flush")
+    void testStalledStreamDoesNotDelayOthers() throws InterruptedException {
+        config.setFlushThreads(1);
+        config.getCoalescing().setWindowMillis(10);
+        factory.shutdown();
+        factory = new SseWriterFactory(config, meterRegistry);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingSseEmitter stalled = new RecordingSseEmitter(gate);
+        RecordingSseEmitter healthy = new RecordingSseEmitter();
+        CoalescingSseWriter stalledWriter = factory.create(stalled, "chat");
+        CoalescingSseWriter healthyWriter = factory.create(healthy, "chat");
+
+        stalledWriter.append("卡");
+        Thread.sleep(50);
+        stalledWriter.append("住");
+        healthyWriter.append("正常");
+
+        assertEquals(List.of("正常"), healthy.awaitDataFrames(1));
+        gate.countDown();
+        assertEquals(List.of("卡", "住"), stalled.awaitDataFrames(2));
+    }
+
+    @Test
+    @DisplayName("UTF-8 字节数计算")
+    void testUtf8Length() {
+        assertEquals(3, CoalescingSseWriter.utf8Length("abc"));
+        assertEquals(6, CoalescingSseWriter.utf8Length("你好"));
+        assertEquals(2, CoalescingSseWriter.utf8Length("é"));
+        assertEquals(4, CoalescingSseWriter.utf8Length("😀"));
+        assertEquals(0, CoalescingSseWriter.utf8Length(null));
+    }
+}
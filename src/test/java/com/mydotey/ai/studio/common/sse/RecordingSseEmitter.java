@@ -0,0 +1,94 @@
+package com.mydotey.ai.studio.common.sse;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 记录写出事件的 SseEmitter，可模拟每次写出（flush）的开销或卡住的客户端
+ */
+class RecordingSseEmitter extends SseEmitter {
+
+    final List<String> frames = new CopyOnWriteArrayList<>();
+    private final long flushCostNanos;
+    private final CountDownLatch gate;
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    RecordingSseEmitter() {
+        this(0);
+    }
+
+    RecordingSseEmitter(long flushCostNanos) {
+        this(flushCostNanos, new CountDownLatch(0));
+    }
+
+    /**
+     * 每次写出都等到 gate 打开，模拟卡住的客户端
+     */
+    RecordingSseEmitter(CountDownLatch gate) {
+        this(0, gate);
+    }
+
+    private RecordingSseEmitter(long flushCostNanos, CountDownLatch gate) {
+        this.flushCostNanos = flushCostNanos;
+        this.gate = gate;
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) {
+        StringBuilder frame = new StringBuilder();
+        for (DataWithMediaType data : builder.build()) {
+            frame.append(data.getData());
+        }
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flushCostNanos > 0) {
+            LockSupport.parkNanos(flushCostNanos);
+        }
+        frames.add(frame.toString());
+    }
+
+    @Override
+    public void complete() {
+        super.complete();
+        completed.countDown();
+    }
+
+    /**
+     * 取各事件 data 字段的内容（去掉写入器补的前导空格）
+     */
+    List<String> dataFrames() {
+        return frames.stream()
+                .map(frame -> frame.substring(frame.indexOf("data: ") + 6, frame.length() - 2))
+                .toList();
+    }
+
+    /**
+     * 等待写出的事件达到指定数量，事件在连接自己的线程上异步写出
+     */
+    List<String> awaitDataFrames(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (frames.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return dataFrames();
+    }
+
+    /**
+     * 等待响应结束
+     */
+    boolean awaitCompletion() throws InterruptedException {
+        return completed.await(5, TimeUnit.SECONDS);
+    }
+
+    String joinedData() {
+        return String.join("", dataFrames());
+    }
+}
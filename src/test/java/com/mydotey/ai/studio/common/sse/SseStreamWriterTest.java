@@ -0,0 +1,58 @@
+package com.mydotey.ai.studio.common.sse;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SSE 写入器测试")
+class SseStreamWriterTest {
+
+    @Test
+    @DisplayName("卡住的客户端不阻塞调用方和其他连接，恢复后按顺序写出")
+    void testStalledClientDoesNotBlockCaller() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingSseEmitter stalled = new RecordingSseEmitter(gate);
+        RecordingSseEmitter healthy = new RecordingSseEmitter();
+        SseStreamWriter stalledWriter = new SseStreamWriter(stalled);
+        SseStreamWriter healthyWriter = new SseStreamWriter(healthy);
+
+        // 在同一个线程上交替写入两个连接，卡住的连接不影响另一个
+        assertTrue(stalledWriter.send("a"));
+        assertTrue(healthyWriter.send("x"));
+        assertTrue(stalledWriter.send("b"));
+        assertTrue(healthyWriter.send("y"));
+        stalledWriter.complete();
+
+        assertEquals(List.of("x", "y"), healthy.awaitDataFrames(2));
+        assertTrue(stalled.frames.isEmpty());
+
+        gate.countDown();
+        assertTrue(stalled.awaitCompletion());
+        assertEquals(List.of("a", "b"), stalled.dataFrames());
+    }
+
+    @Test
+    @DisplayName("积压过多时按断开处理并通知关闭监听器")
+    void testBacklogClosesStream() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        SseStreamWriter writer = new SseStreamWriter(new RecordingSseEmitter(gate));
+        CountDownLatch closed = new CountDownLatch(1);
+        writer.onClose(closed::countDown);
+
+        boolean accepted = true;
+        for (int i = 0; i <= SseStreamWriter.MAX_QUEUED_EVENTS + 1 && accepted; i++) {
+            accepted = writer.send("delta");
+        }
+
+        assertFalse(accepted);
+        assertTrue(writer.isClosed());
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertFalse(writer.send("late"));
+        gate.countDown();
+    }
+}
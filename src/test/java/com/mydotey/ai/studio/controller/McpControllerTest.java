@@ -4,7 +4,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mydotey.ai.studio.dto.CreateMcpServerRequest;
 import com.mydotey.ai.studio.dto.McpServerResponse;
 import com.mydotey.ai.studio.dto.UpdateMcpServerRequest;
+import com.mydotey.ai.studio.dto.UpdateMcpToolCacheRequest;
 import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
 import com.mydotey.ai.studio.service.McpServerService;
 import com.mydotey.ai.studio.service.McpToolSyncService;
 import org.junit.jupiter.api.BeforeEach;
@@ -76,4 +78,29 @@ public class McpControllerTest {
                 .requestAttr("userId", 1L))
                 .andExpect(status().isOk());
     }
+
+    @Test
+    void testUpdateToolCache_Success() throws Exception {
+        // Given
+        UpdateMcpToolCacheRequest request = new UpdateMcpToolCacheRequest();
+        request.setResultCacheEnabled(true);
+        request.setResultCacheTtl(600);
+
+        McpTool tool = new McpTool();
+        tool.setId(5L);
+        tool.setToolName("currency_rate");
+        tool.setResultCacheEnabled(true);
+        tool.setResultCacheTtl(600);
+
+        when(mcpToolSyncService.updateToolCacheSettings(any(), any(), any())).thenReturn(tool);
+
+        // When & Then
+        mockMvc.perform(put("/api/mcp/tools/5/cache")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request))
+                .requestAttr("userId", 1L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.resultCacheEnabled").value(true))
+                .andExpect(jsonPath("$.data.resultCacheTtl").value(600));
+    }
 }
@@ -1,29 +1,46 @@
 package com.mydotey.ai.studio.service;
 
 import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.config.AgentConfig;
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
 import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.service.agent.AgentRuntime;
+import com.mydotey.ai.studio.service.agent.AgentRuntimeCache;
 import com.mydotey.ai.studio.service.agent.WorkflowExecutor;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 public class AgentExecutionServiceTest {
 
-    private AgentService agentService = mock(AgentService.class);
+    private AgentRuntimeCache agentRuntimeCache = mock(AgentRuntimeCache.class);
 
     // Test implementation of WorkflowExecutor that simulates ReActWorkflowExecutor
     // Note: The class name must end with "WorkflowExecutor" to be properly registered
     private static class ReActWorkflowExecutor implements WorkflowExecutor {
         @Override
-        public AgentExecutionResponse execute(Agent agent, AgentExecutionRequest request, Long userId) {
+        public AgentExecutionResponse execute(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                                              ExecutionBudget budget) {
             return AgentExecutionResponse.builder()
                 .answer("Test answer")
                 .isComplete(true)
                 .build();
         }
+
+        @Override
+        public void executeStream(AgentRuntime runtime, AgentExecutionRequest request, Long userId,
+                                  CancellationToken cancellationToken, ExecutionBudget budget,
+                                  StreamingChatCallback callback) {
+            callback.onContent("Test answer");
+            callback.onComplete();
+        }
     }
 
     @Test
@@ -38,10 +55,11 @@ public class AgentExecutionServiceTest {
         request.setQuery("Test query");
 
         WorkflowExecutor mockReActExecutor = new ReActWorkflowExecutor();
-        AgentExecutionService executionService = new AgentExecutionService(agentService, java.util.List.of(mockReActExecutor));
+        AgentExecutionService executionService = new AgentExecutionService(agentRuntimeCache, java.util.List.of(mockReActExecutor),
+            new AgentConfig());
         executionService.init();
 
-        when(agentService.getAgent(agentId)).thenReturn(agent);
+        when(agentRuntimeCache.get(agentId)).thenReturn(runtime(agent));
 
         // When
         AgentExecutionResponse response = executionService.executeAgent(agentId, request, 1L);
@@ -63,10 +81,11 @@ public class AgentExecutionServiceTest {
         request.setQuery("Test query");
 
         WorkflowExecutor mockReActExecutor = new ReActWorkflowExecutor();
-        AgentExecutionService executionService = new AgentExecutionService(agentService, java.util.List.of(mockReActExecutor));
+        AgentExecutionService executionService = new AgentExecutionService(agentRuntimeCache, java.util.List.of(mockReActExecutor),
+            new AgentConfig());
         executionService.init();
 
-        when(agentService.getAgent(1L)).thenReturn(agent);
+        when(agentRuntimeCache.get(1L)).thenReturn(runtime(agent));
 
         // When
         AgentExecutionResponse response = executionService.executeAgent(1L, request, 1L);
@@ -86,10 +105,11 @@ public class AgentExecutionServiceTest {
         request.setQuery("Test query");
 
         WorkflowExecutor mockReActExecutor = new ReActWorkflowExecutor();
-        AgentExecutionService executionService = new AgentExecutionService(agentService, java.util.List.of(mockReActExecutor));
+        AgentExecutionService executionService = new AgentExecutionService(agentRuntimeCache, java.util.List.of(mockReActExecutor),
+            new AgentConfig());
         executionService.init();
 
-        when(agentService.getAgent(1L)).thenReturn(agent);
+        when(agentRuntimeCache.get(1L)).thenReturn(runtime(agent));
 
         // When & Then
         BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -98,4 +118,8 @@ public class AgentExecutionServiceTest {
 
         assertTrue(exception.getMessage().contains("Unsupported workflow type: CUSTOM"));
     }
+
+    private static AgentRuntime runtime(Agent agent) {
+        return new AgentRuntime(agent, List.of(), Map.of(), List.of(), null, AgentRuntime.DEFAULT_SYSTEM_PROMPT);
+    }
 }
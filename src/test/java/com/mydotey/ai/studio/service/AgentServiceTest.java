@@ -3,11 +3,13 @@ package com.mydotey.ai.studio.service;
 import com.mydotey.ai.studio.dto.CreateAgentRequest;
 import com.mydotey.ai.studio.dto.UpdateAgentRequest;
 import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.event.AgentChangedEvent;
 import com.mydotey.ai.studio.mapper.AgentKnowledgeBaseMapper;
 import com.mydotey.ai.studio.mapper.AgentMapper;
 import com.mydotey.ai.studio.mapper.AgentToolMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
 
@@ -21,7 +23,9 @@ public class AgentServiceTest {
     private AgentKnowledgeBaseMapper agentKbMapper = mock(AgentKnowledgeBaseMapper.class);
     private AgentToolMapper agentToolMapper = mock(AgentToolMapper.class);
     private ModelConfigService modelConfigService = mock(ModelConfigService.class);
-    private AgentService agentService = new AgentService(agentMapper, agentKbMapper, agentToolMapper, modelConfigService);
+    private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private AgentService agentService = new AgentService(agentMapper, agentKbMapper, agentToolMapper, modelConfigService,
+            eventPublisher);
 
     @Test
     void testCreateAgent_Success() {
@@ -85,6 +89,22 @@ public class AgentServiceTest {
         Agent updatedAgent = captor.getValue();
         assertEquals("Updated Name", updatedAgent.getName());
         assertEquals("New prompt", updatedAgent.getSystemPrompt());
+
+        ArgumentCaptor<AgentChangedEvent> eventCaptor = ArgumentCaptor.forClass(AgentChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(agentId, eventCaptor.getValue().getAgentId());
+    }
+
+    @Test
+    void testDeleteAgent_PublishesChangedEvent() {
+        // When
+        agentService.deleteAgent(1L, 1L);
+
+        // Then
+        verify(agentMapper).deleteById(1L);
+        ArgumentCaptor<AgentChangedEvent> eventCaptor = ArgumentCaptor.forClass(AgentChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(1L, eventCaptor.getValue().getAgentId());
     }
 
     @Test
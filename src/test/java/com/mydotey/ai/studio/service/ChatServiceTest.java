@@ -2,19 +2,31 @@ package com.mydotey.ai.studio.service;
 
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.MessageRole;
 import com.mydotey.ai.studio.dto.chatbot.ChatRequest;
 import com.mydotey.ai.studio.dto.chatbot.ChatResponse;
 import com.mydotey.ai.studio.entity.Chatbot;
 import com.mydotey.ai.studio.entity.Conversation;
 import com.mydotey.ai.studio.mapper.ChatbotMapper;
-import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.memory.ConversationMemory;
+import com.mydotey.ai.studio.service.journal.MessageJournal;
+import com.mydotey.ai.studio.service.memory.ConversationMemoryService;
+import com.mydotey.ai.studio.service.stream.ResumableStreamService;
+import com.mydotey.ai.studio.util.CancellationToken;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -30,7 +42,7 @@ class ChatServiceTest {
     private ConversationService conversationService;
 
     @Mock
-    private MessageMapper messageMapper;
+    private MessageJournal messageJournal;
 
     @Mock
     private AgentExecutionService agentExecutionService;
@@ -38,6 +50,12 @@ class ChatServiceTest {
     @Mock
     private ChatbotService chatbotService;
 
+    @Mock
+    private ConversationMemoryService conversationMemoryService;
+
+    @Mock
+    private ResumableStreamService resumableStreamService;
+
     @InjectMocks
     private ChatService chatService;
 
@@ -60,6 +78,7 @@ class ChatServiceTest {
                 .build();
 
         when(chatbotMapper.selectById(1L)).thenReturn(chatbot);
+        when(messageJournal.reserveIds(2)).thenReturn(List.of(10L, 11L));
         when(conversationService.create(1L, null)).thenReturn(
                 com.mydotey.ai.studio.dto.chatbot.ConversationResponse.builder()
                         .id(1L)
@@ -75,5 +94,143 @@ class ChatServiceTest {
 
         assertNotNull(response);
         assertEquals("你好！有什么可以帮助你的吗？", response.getAnswer());
+        assertEquals(11L, response.getMessageId());
+
+        // 消息交给写后持久化，按用户消息、助手回复的顺序追加
+        ArgumentCaptor<com.mydotey.ai.studio.entity.Message> captor =
+                ArgumentCaptor.forClass(com.mydotey.ai.studio.entity.Message.class);
+        verify(messageJournal, times(2)).append(captor.capture());
+        assertEquals(List.of(10L, 11L), captor.getAllValues().stream()
+                .map(com.mydotey.ai.studio.entity.Message::getId).toList());
+        assertEquals(List.of("user", "assistant"), captor.getAllValues().stream()
+                .map(com.mydotey.ai.studio.entity.Message::getRole).toList());
+        verify(messageJournal).touch(1L);
+        verify(messageJournal, never()).sync(any());
+    }
+
+    @Test
+    @DisplayName("已有对话应该把摘要和最近消息传给 Agent")
+    void testSendMessageWithConversationMemory() {
+        ChatRequest request = new ChatRequest();
+        request.setChatbotId(1L);
+        request.setConversationId(5L);
+        request.setMessage("继续");
+
+        Chatbot chatbot = new Chatbot();
+        chatbot.setId(1L);
+        chatbot.setAgentId(1L);
+
+        List<Message> history = List.of(
+                Message.builder().role(MessageRole.USER).content("上一个问题").build(),
+                Message.builder().role(MessageRole.ASSISTANT).content("上一个回答").build());
+
+        when(chatbotMapper.selectById(1L)).thenReturn(chatbot);
+        when(conversationMemoryService.load(5L)).thenReturn(new ConversationMemory("早先的摘要", history));
+        when(messageJournal.reserveIds(2)).thenReturn(List.of(20L, 21L));
+        when(agentExecutionService.executeAgent(anyLong(), any(AgentExecutionRequest.class), any()))
+                .thenReturn(AgentExecutionResponse.builder().answer("好的").build());
+
+        chatService.chat(request, null);
+
+        ArgumentCaptor<AgentExecutionRequest> captor = ArgumentCaptor.forClass(AgentExecutionRequest.class);
+        verify(agentExecutionService).executeAgent(eq(1L), captor.capture(), any());
+        assertEquals("早先的摘要", captor.getValue().getConversationSummary());
+        assertEquals(history, captor.getValue().getHistory());
+        verify(conversationService, never()).create(any(), any());
+        // 加载记忆前等待上一轮尚未写入的消息
+        InOrder inOrder = inOrder(messageJournal, conversationMemoryService);
+        inOrder.verify(messageJournal).sync(5L);
+        inOrder.verify(conversationMemoryService).load(5L);
+    }
+
+    @Test
+    @DisplayName("生成失败时删除本次新建的对话，不保存消息")
+    void testGenerationFailureDiscardsNewConversation() {
+        ChatRequest request = new ChatRequest();
+        request.setChatbotId(1L);
+        request.setMessage("你好");
+
+        Chatbot chatbot = new Chatbot();
+        chatbot.setId(1L);
+        chatbot.setAgentId(1L);
+
+        when(chatbotMapper.selectById(1L)).thenReturn(chatbot);
+        when(conversationService.create(1L, null)).thenReturn(
+                com.mydotey.ai.studio.dto.chatbot.ConversationResponse.builder().id(3L).chatbotId(1L).build());
+        when(messageJournal.reserveIds(2)).thenReturn(List.of(10L, 11L));
+        when(agentExecutionService.executeAgent(anyLong(), any(AgentExecutionRequest.class), any()))
+                .thenThrow(new RuntimeException("LLM unavailable"));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> chatService.chat(request, null));
+
+        assertEquals("LLM unavailable", e.getMessage());
+        verify(conversationService).delete(3L);
+        verify(messageJournal, never()).append(any());
+        verify(messageJournal, never()).touch(any());
+    }
+
+    @Test
+    @DisplayName("已有对话生成失败时保留对话，不保存本次的消息")
+    void testGenerationFailureKeepsExistingConversation() {
+        ChatRequest request = new ChatRequest();
+        request.setChatbotId(1L);
+        request.setConversationId(5L);
+        request.setMessage("继续");
+
+        Chatbot chatbot = new Chatbot();
+        chatbot.setId(1L);
+        chatbot.setAgentId(1L);
+
+        when(chatbotMapper.selectById(1L)).thenReturn(chatbot);
+        when(conversationMemoryService.load(5L)).thenReturn(ConversationMemory.empty());
+        when(messageJournal.reserveIds(2)).thenReturn(List.of(20L, 21L));
+        when(agentExecutionService.executeAgent(anyLong(), any(AgentExecutionRequest.class), any()))
+                .thenThrow(new RuntimeException("LLM unavailable"));
+
+        assertThrows(RuntimeException.class, () -> chatService.chat(request, null));
+
+        verify(conversationService, never()).delete(any());
+        verify(messageJournal, never()).append(any());
+    }
+
+    @Test
+    @DisplayName("流式生成失败时删除本次新建的对话")
+    void testStreamFailureDiscardsNewConversation() throws Exception {
+        ChatRequest request = new ChatRequest();
+        request.setChatbotId(1L);
+        request.setMessage("你好");
+
+        Chatbot chatbot = new Chatbot();
+        chatbot.setId(1L);
+        chatbot.setAgentId(1L);
+
+        StreamingChatCallback callback = mock(StreamingChatCallback.class);
+        RuntimeException failure = new RuntimeException("LLM unavailable");
+        when(chatbotMapper.selectById(1L)).thenReturn(chatbot);
+        when(conversationService.create(1L, null)).thenReturn(
+                com.mydotey.ai.studio.dto.chatbot.ConversationResponse.builder().id(3L).chatbotId(1L).build());
+        when(messageJournal.reserveIds(2)).thenReturn(List.of(10L, 11L));
+        when(resumableStreamService.open(null, callback, CancellationToken.NONE))
+                .thenReturn(new ResumableStreamService.OpenedStream(callback, CancellationToken.NONE));
+        doAnswer(invocation -> {
+            StreamingLlmService.StreamCallback streamCallback = invocation.getArgument(4);
+            streamCallback.onError(failure);
+            return null;
+        }).when(agentExecutionService).executeAgentStream(anyLong(), any(AgentExecutionRequest.class), any(),
+                any(CancellationToken.class), any(StreamingLlmService.StreamCallback.class));
+
+        CompletableFuture<Thread> discardThread = new CompletableFuture<>();
+        doAnswer(invocation -> discardThread.complete(Thread.currentThread()))
+                .when(conversationService).delete(3L);
+
+        chatService.chatStream(request, null, callback);
+
+        // 删除对话在独立的虚拟线程上进行，不占用 LLM 回调线程
+        Thread thread = discardThread.get(5, TimeUnit.SECONDS);
+        assertNotSame(Thread.currentThread(), thread);
+        assertTrue(thread.isVirtual());
+        verify(conversationService).delete(3L);
+        verify(callback).onError(failure);
+        verify(callback, never()).onComplete();
     }
 }
@@ -0,0 +1,239 @@
+package com.mydotey.ai.studio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.dto.AgentExecutionResponse;
+import com.mydotey.ai.studio.dto.chatbot.ChatRequest;
+import com.mydotey.ai.studio.dto.chatbot.ChatResponse;
+import com.mydotey.ai.studio.dto.chatbot.ConversationResponse;
+import com.mydotey.ai.studio.entity.Chatbot;
+import com.mydotey.ai.studio.mapper.ChatbotMapper;
+import com.mydotey.ai.studio.service.journal.MessageJournal;
+import com.mydotey.ai.studio.service.memory.ConversationMemoryService;
+import com.mydotey.ai.studio.service.stream.ResumableStreamService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 聊天请求的连接池占用基准
+ * <p>
+ * 连接池容量 {@value #POOL_SIZE}，{@value #THREADS} 个线程并发发送聊天请求，生成回答模拟为 {@value #GENERATION_MILLIS}ms
+ * 的网络等待，每次数据库访问 {@value #QUERY_MILLIS}ms。对比整个请求包在一个事务中（原实现）与拆分为短事务（现实现）的吞吐，
+ * 生成期间仍持有连接的次数和等待连接的时间作为 {@link ConnectionMetrics} 的辅助计数一并输出在 JMH 结果中。运行 main 方法即可
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(ChatTransactionBenchmark.THREADS)
+@Fork(1)
+public class ChatTransactionBenchmark {
+
+    static final int POOL_SIZE = 4;
+    static final int THREADS = 16;
+    static final long GENERATION_MILLIS = 20;
+    static final long QUERY_MILLIS = 1;
+
+    private BoundedPool pool;
+    private TransactionTemplate transactionTemplate;
+    private ChatService chatService;
+
+    /**
+     * 每个线程的连接占用统计，JMH 在每轮结束时汇总所有线程的计数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ConnectionMetrics {
+
+        private static final ThreadLocal<ConnectionMetrics> CURRENT = new ThreadLocal<>();
+
+        /**
+         * 生成期间仍持有连接的次数
+         */
+        public long generationsHoldingConnection;
+
+        /**
+         * 等待连接的总时间（毫秒）
+         */
+        public double connectionWaitMillis;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            generationsHoldingConnection = 0;
+            connectionWaitMillis = 0;
+            CURRENT.set(this);
+        }
+
+        static void record(Consumer<ConnectionMetrics> update) {
+            ConnectionMetrics metrics = CURRENT.get();
+            if (metrics != null) {
+                update.accept(metrics);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        pool = new BoundedPool(POOL_SIZE);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(pool.dataSource()));
+
+        Chatbot chatbot = new Chatbot();
+        chatbot.setId(1L);
+        chatbot.setAgentId(1L);
+        ChatbotMapper chatbotMapper = stub(ChatbotMapper.class);
+        when(chatbotMapper.selectById(any())).thenAnswer(invocation -> query(() -> chatbot));
+
+        ConversationService conversationService = stub(ConversationService.class);
+        when(conversationService.create(any(), any()))
+                .thenAnswer(invocation -> query(() -> ConversationResponse.builder().id(1L).build()));
+
+        MessageJournal messageJournal = stub(MessageJournal.class);
+        when(messageJournal.reserveIds(2)).thenAnswer(invocation -> query(() -> List.of(1L, 2L)));
+
+        AgentExecutionResponse answer = AgentExecutionResponse.builder().answer("answer").build();
+        AgentExecutionService agentExecutionService = stub(AgentExecutionService.class);
+        when(agentExecutionService.executeAgent(any(), any(), any())).thenAnswer(invocation -> {
+            if (TransactionSynchronizationManager.hasResource(pool.dataSource())) {
+                ConnectionMetrics.record(metrics -> metrics.generationsHoldingConnection++);
+            }
+            TimeUnit.MILLISECONDS.sleep(GENERATION_MILLIS);
+            return answer;
+        });
+
+        chatService = new ChatService(chatbotMapper, conversationService, messageJournal, agentExecutionService,
+                stub(ChatbotService.class), new ObjectMapper(), stub(ConversationMemoryService.class),
+                stub(ResumableStreamService.class));
+    }
+
+    /**
+     * 原实现：整个请求在一个事务中，生成期间持有连接
+     */
+    @Benchmark
+    public ChatResponse singleTransaction(ConnectionMetrics metrics) {
+        return transactionTemplate.execute(status -> chatService.chat(request(), 1L));
+    }
+
+    /**
+     * 现实现：只有数据库访问在短事务中，生成期间不持有连接
+     */
+    @Benchmark
+    public ChatResponse shortTransactions(ConnectionMetrics metrics) {
+        return chatService.chat(request(), 1L);
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setChatbotId(1L);
+        request.setMessage("hello");
+        return request;
+    }
+
+    /**
+     * 模拟一次数据库访问：已在事务中时使用事务的连接，否则从连接池取一个连接，用完归还
+     */
+    private <T> T query(Supplier<T> result) {
+        return transactionTemplate.execute(status -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(QUERY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result.get();
+        });
+    }
+
+    /**
+     * 不记录调用的 mock，避免长时间运行时积累调用记录
+     */
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    /**
+     * 有界连接池，连接用完时等待，等待时间计入当前线程的统计
+     */
+    static class BoundedPool {
+
+        private final Semaphore permits;
+        private final DataSource dataSource;
+
+        BoundedPool(int size) {
+            this.permits = new Semaphore(size, true);
+            this.dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{DataSource.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "getConnection" -> acquire();
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "BoundedPool";
+                        default -> defaultValue(method.getReturnType());
+                    });
+        }
+
+        DataSource dataSource() {
+            return dataSource;
+        }
+
+        private Connection acquire() throws InterruptedException {
+            long start = System.nanoTime();
+            permits.acquire();
+            double waitMillis = (System.nanoTime() - start) / 1e6;
+            ConnectionMetrics.record(metrics -> metrics.connectionWaitMillis += waitMillis);
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "close" -> {
+                            if (closed.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                            yield null;
+                        }
+                        case "isClosed" -> closed.get();
+                        case "getAutoCommit" -> true;
+                        case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "PooledConnection";
+                        default -> defaultValue(method.getReturnType());
+                    });
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChatTransactionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,186 @@
+package com.mydotey.ai.studio.service;
+
+import com.mydotey.ai.studio.config.AccessCountConfig;
+import com.mydotey.ai.studio.mapper.ChatbotMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("聊天机器人访问计数测试")
+class ChatbotAccessCounterTest {
+
+    private ChatbotMapper chatbotMapper;
+    private AccessCountConfig config;
+    private ObjectProvider<StringRedisTemplate> redisProvider;
+    private ChatbotAccessCounter counter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        chatbotMapper = mock(ChatbotMapper.class);
+        config = new AccessCountConfig();
+        // 测试中手动写入
+        config.setFlushInterval(3600_000);
+        redisProvider = mock(ObjectProvider.class);
+        counter = new ChatbotAccessCounter(chatbotMapper, config, redisProvider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        counter.shutdown();
+    }
+
+    @Test
+    @DisplayName("并发访问只在内存中累加，写入时每个聊天机器人一个增量")
+    void testConcurrentIncrementsFlushedAsDeltas() throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        counter.increment(1L);
+                    }
+                    counter.increment(2L);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        verifyNoInteractions(chatbotMapper);
+        assertEquals(8000, counter.pending(1L));
+
+        counter.flush();
+
+        verify(chatbotMapper).incrementAccessCounts(Map.of(1L, 8000L, 2L, 8L));
+        assertEquals(0, counter.pending(1L));
+
+        // 没有新的访问时不写入
+        counter.flush();
+        verify(chatbotMapper, times(1)).incrementAccessCounts(any());
+    }
+
+    @Test
+    @DisplayName("写入失败时增量放回，下次一起写入")
+    void testFailedFlushRetried() {
+        when(chatbotMapper.incrementAccessCounts(any()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenReturn(1);
+
+        counter.increment(1L);
+        counter.increment(1L);
+        counter.flush();
+        assertEquals(2, counter.pending(1L));
+
+        counter.increment(1L);
+        counter.flush();
+
+        verify(chatbotMapper).incrementAccessCounts(Map.of(1L, 3L));
+        assertEquals(0, counter.pending(1L));
+    }
+
+    @Test
+    @DisplayName("关闭时写入剩余的增量")
+    void testShutdownFlushes() {
+        counter.increment(5L);
+
+        counter.shutdown();
+
+        verify(chatbotMapper).incrementAccessCounts(Map.of(5L, 1L));
+    }
+
+    @Test
+    @DisplayName("启用 Redis 时增量累加在 Redis 中，写入数据库成功后才删除")
+    @SuppressWarnings("unchecked")
+    void testRedisIncrementsFlushedAfterRename() {
+        StringRedisTemplate redis = givenRedis();
+        HashOperations<String, Object, Object> hash = redis.opsForHash();
+        when(redis.hasKey("chatbot:access-count:flushing")).thenReturn(false);
+        when(redis.hasKey("chatbot:access-count:pending")).thenReturn(true);
+        when(hash.entries("chatbot:access-count:flushing")).thenReturn(Map.of("1", "3", "2", "1"));
+
+        counter.increment(1L);
+        counter.flush();
+
+        verify(hash).increment("chatbot:access-count:pending", "1", 1);
+        verify(redis).rename("chatbot:access-count:pending", "chatbot:access-count:flushing");
+        verify(chatbotMapper).incrementAccessCounts(Map.of(1L, 3L, 2L, 1L));
+        verify(redis).delete("chatbot:access-count:flushing");
+        verify(redis).delete("chatbot:access-count:flush-lock");
+    }
+
+    @Test
+    @DisplayName("Redis 中的增量写入数据库失败时保留，下次先写入这一批")
+    @SuppressWarnings("unchecked")
+    void testRedisFailedFlushRetried() {
+        StringRedisTemplate redis = givenRedis();
+        HashOperations<String, Object, Object> hash = redis.opsForHash();
+        when(redis.hasKey("chatbot:access-count:flushing")).thenReturn(false, true);
+        when(redis.hasKey("chatbot:access-count:pending")).thenReturn(true);
+        when(hash.entries("chatbot:access-count:flushing")).thenReturn(Map.of("1", "3"));
+        when(chatbotMapper.incrementAccessCounts(any()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenReturn(1);
+
+        counter.flush();
+        verify(redis, never()).delete("chatbot:access-count:flushing");
+
+        counter.flush();
+
+        // 第二次直接写入上次保留的一批，不再改名
+        verify(redis, times(1)).rename(anyString(), anyString());
+        verify(chatbotMapper, times(2)).incrementAccessCounts(Map.of(1L, 3L));
+        verify(redis).delete("chatbot:access-count:flushing");
+    }
+
+    @Test
+    @DisplayName("其他节点持有写入锁时不写入 Redis 中的增量")
+    @SuppressWarnings("unchecked")
+    void testRedisFlushSkippedWhenLocked() {
+        StringRedisTemplate redis = givenRedis();
+        ValueOperations<String, String> value = redis.opsForValue();
+        doReturn(false).when(value).setIfAbsent(eq("chatbot:access-count:flush-lock"), anyString(), any());
+
+        counter.flush();
+
+        verify(redis, never()).rename(anyString(), anyString());
+        verifyNoInteractions(chatbotMapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StringRedisTemplate givenRedis() {
+        config.setRedisEnabled(true);
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hash = mock(HashOperations.class);
+        ValueOperations<String, String> value = mock(ValueOperations.class);
+        when(redis.opsForHash()).thenReturn(hash);
+        when(redis.opsForValue()).thenReturn(value);
+        AtomicReference<String> lock = new AtomicReference<>();
+        doAnswer(invocation -> {
+            lock.set(invocation.getArgument(1));
+            return true;
+        }).when(value).setIfAbsent(eq("chatbot:access-count:flush-lock"), anyString(), any());
+        when(value.get("chatbot:access-count:flush-lock")).thenAnswer(invocation -> lock.get());
+        when(redisProvider.getIfAvailable()).thenReturn(redis);
+        return redis;
+    }
+}
@@ -26,6 +26,9 @@ class ChatbotServiceTest {
     @Mock
     private AgentMapper agentMapper;
 
+    @Mock
+    private ChatbotAccessCounter accessCounter;
+
     @InjectMocks
     private ChatbotService chatbotService;
 
@@ -70,4 +73,13 @@ class ChatbotServiceTest {
 
         assertThrows(Exception.class, () -> chatbotService.create(request, 1L));
     }
+
+    @Test
+    @DisplayName("访问计数只在内存中累加，不读写数据库")
+    void testIncrementAccessCount() {
+        chatbotService.incrementAccessCount(1L);
+
+        verify(accessCounter).increment(1L);
+        verifyNoInteractions(chatbotMapper);
+    }
 }
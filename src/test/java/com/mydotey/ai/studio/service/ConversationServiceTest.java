@@ -1,11 +1,21 @@
 package com.mydotey.ai.studio.service;
 
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.mydotey.ai.studio.common.exception.BusinessException;
 import com.mydotey.ai.studio.dto.chatbot.ConversationResponse;
+import com.mydotey.ai.studio.dto.chatbot.CursorPageResponse;
+import com.mydotey.ai.studio.dto.chatbot.MessageResponse;
 import com.mydotey.ai.studio.entity.Chatbot;
 import com.mydotey.ai.studio.entity.Conversation;
+import com.mydotey.ai.studio.entity.Message;
 import com.mydotey.ai.studio.mapper.ChatbotMapper;
 import com.mydotey.ai.studio.mapper.ConversationMapper;
 import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.journal.MessageJournal;
+import com.mydotey.ai.studio.util.KeysetCursor;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,6 +23,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Instant;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -30,9 +43,19 @@ class ConversationServiceTest {
     @Mock
     private MessageMapper messageMapper;
 
+    @Mock
+    private MessageJournal messageJournal;
+
     @InjectMocks
     private ConversationService conversationService;
 
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, Message.class);
+        TableInfoHelper.initTableInfo(assistant, Conversation.class);
+    }
+
     @Test
     @DisplayName("应该能够创建新对话")
     void testCreateConversation() {
@@ -62,4 +85,64 @@ class ConversationServiceTest {
 
         assertThrows(Exception.class, () -> conversationService.create(999L, 1L));
     }
+
+    @Test
+    @DisplayName("按游标分页时多查一行判断是否有下一页，默认不查询总数")
+    void testScrollConversations() {
+        Instant now = Instant.parse("2026-10-19T08:00:00.000001Z");
+        when(conversationMapper.selectList(any())).thenReturn(List.of(
+                conversation(3L, now), conversation(2L, now), conversation(1L, now.minusSeconds(1))));
+
+        CursorPageResponse<ConversationResponse> page =
+                conversationService.scrollByChatbotAndUser(1L, 1L, null, 2, false);
+
+        assertEquals(List.of(3L, 2L), page.getRecords().stream().map(ConversationResponse::getId).toList());
+        assertTrue(page.isHasMore());
+        assertEquals(new KeysetCursor(now, 2L), KeysetCursor.decode(page.getNextCursor()));
+        assertNull(page.getTotal());
+        verify(conversationMapper, never()).selectCount(any());
+    }
+
+    @Test
+    @DisplayName("最后一页没有游标，请求时返回总数")
+    void testScrollMessagesLastPageWithTotal() {
+        Conversation conversation = conversation(1L, Instant.now());
+        Message message = new Message();
+        message.setId(10L);
+        message.setConversationId(1L);
+        message.setCreatedAt(Instant.now());
+        when(conversationMapper.selectById(1L)).thenReturn(conversation);
+        when(messageMapper.selectCount(any())).thenReturn(1L);
+        when(messageMapper.selectList(any())).thenReturn(List.of(message));
+
+        String cursor = new KeysetCursor(Instant.now(), 11L).encode();
+        CursorPageResponse<MessageResponse> page = conversationService.scrollMessages(1L, 1L, cursor, 50, true);
+
+        assertEquals(1, page.getRecords().size());
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+        assertEquals(1L, page.getTotal());
+        verify(messageJournal).sync(1L);
+    }
+
+    @Test
+    @DisplayName("不能分页读取其他用户的对话消息")
+    void testScrollMessagesOfOtherUser() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation(1L, Instant.now()));
+
+        BusinessException e = assertThrows(BusinessException.class,
+                () -> conversationService.scrollMessages(1L, 2L, null, 50, false));
+
+        assertEquals("Conversation not found", e.getMessage());
+        verifyNoInteractions(messageMapper, messageJournal);
+    }
+
+    private static Conversation conversation(Long id, Instant updatedAt) {
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setChatbotId(1L);
+        conversation.setUserId(1L);
+        conversation.setUpdatedAt(updatedAt);
+        return conversation;
+    }
 }
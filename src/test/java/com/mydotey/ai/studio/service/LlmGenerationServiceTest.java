@@ -1,18 +1,29 @@
 package com.mydotey.ai.studio.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
 import com.mydotey.ai.studio.config.LlmConfig;
 import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.service.llm.LlmAdmissionController;
+import com.mydotey.ai.studio.service.llm.LlmEndpointRouter;
+import com.mydotey.ai.studio.service.llm.LlmResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.*;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -33,6 +44,15 @@ class LlmGenerationServiceTest {
     @Mock
     private PromptTemplateService promptTemplateService;
 
+    @Mock
+    private LlmResponseCache responseCache;
+
+    @Spy
+    private LlmEndpointRouter endpointRouter = new LlmEndpointRouter(new LlmConfig(), new ObjectMapper());
+
+    @Spy
+    private LlmAdmissionController admissionController = new LlmAdmissionController(new LlmConfig(), new SimpleMeterRegistry());
+
     @InjectMocks
     private LlmGenerationService llmGenerationService;
 
@@ -63,8 +83,10 @@ class LlmGenerationServiceTest {
             }
             """;
 
-        when(promptTemplateService.buildMessages(systemPrompt, userQuestion))
-                .thenReturn("[{\"role\":\"system\",\"content\":\"你是一个专业的助手\"},{\"role\":\"user\",\"content\":\"什么是人工智能？\"}]");
+        when(promptTemplateService.buildMessageList(systemPrompt, userQuestion))
+                .thenReturn(List.of(
+                        Message.builder().role(MessageRole.SYSTEM).content(systemPrompt).build(),
+                        Message.builder().role(MessageRole.USER).content(userQuestion).build()));
         when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
         when(config.getApiKey()).thenReturn("test-api-key");
         when(config.getModel()).thenReturn("gpt-3.5-turbo");
@@ -106,8 +128,8 @@ class LlmGenerationServiceTest {
         when(config.getModel()).thenReturn("gpt-3.5-turbo");
         when(config.getDefaultTemperature()).thenReturn(0.5);
         when(config.getDefaultMaxTokens()).thenReturn(500);
-        when(promptTemplateService.buildMessages(anyString(), anyString()))
-                .thenReturn("[]");
+        when(promptTemplateService.buildMessageList(anyString(), anyString()))
+                .thenReturn(List.of());
         when(objectMapper.writeValueAsString(any())).thenReturn("{\"temperature\":0.5,\"max_tokens\":500}");
 
         // Use real mapper for response parsing
@@ -120,7 +142,7 @@ class LlmGenerationServiceTest {
                 .thenReturn(new ResponseEntity<>("{\"choices\":[{\"message\":{\"content\":\"test\"},\"finish_reason\":\"stop\"}]}", HttpStatus.OK));
 
         // When
-        llmGenerationService.generate("系统提示", "用户问题", null, null);
+        llmGenerationService.generate("系统提示", "用户问题", (Double) null, null);
 
         // Then
         @SuppressWarnings("unchecked")
@@ -150,7 +172,7 @@ class LlmGenerationServiceTest {
         when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
         when(config.getApiKey()).thenReturn("test-api-key");
         when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
+        when(promptTemplateService.buildMessageList(anyString(), anyString())).thenReturn(List.of());
         when(objectMapper.writeValueAsString(any())).thenReturn("{}");
 
         // Use real mapper for response parsing
@@ -178,7 +200,8 @@ class LlmGenerationServiceTest {
     @DisplayName("当 API 调用失败时应该抛出异常")
     void testGenerateApiError() throws Exception {
         // Given
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
+        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
+        when(promptTemplateService.buildMessageList(anyString(), anyString())).thenReturn(List.of());
         when(objectMapper.writeValueAsString(any())).thenReturn("{}");
         when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
                 .thenThrow(new RuntimeException("API error"));
@@ -190,4 +213,63 @@ class LlmGenerationServiceTest {
 
         assertTrue(exception.getMessage().contains("Failed to generate response"));
     }
+
+    @Test
+    @DisplayName("准入控制拒绝时原样抛出过载异常，不发送请求")
+    void testGenerateOverloaded() throws Exception {
+        // Given
+        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
+        when(promptTemplateService.buildMessageList(anyString(), anyString())).thenReturn(List.of());
+        doThrow(new LlmOverloadedException("busy", 3)).when(admissionController).acquireBlocking(any());
+
+        // When & Then
+        LlmOverloadedException exception = assertThrows(LlmOverloadedException.class, () ->
+                llmGenerationService.generate("系统提示", "用户问题", 0.3, 1000));
+
+        assertEquals(3, exception.getRetryAfterSeconds());
+        verify(restTemplate, never()).postForEntity(anyString(), any(HttpEntity.class), eq(String.class));
+    }
+
+    @Test
+    @DisplayName("模型发起工具调用时应该解析 tool_calls，content 为 null")
+    void testChatWithToolCalls() throws Exception {
+        // Given
+        String responseBody = """
+            {
+                "choices": [{
+                    "message": {
+                        "role": "assistant",
+                        "content": null,
+                        "tool_calls": [{
+                            "id": "call_1",
+                            "type": "function",
+                            "function": {"name": "weather", "arguments": "{\\"city\\":\\"Beijing\\"}"}
+                        }]
+                    },
+                    "finish_reason": "tool_calls"
+                }]
+            }
+            """;
+        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        when(objectMapper.readTree(anyString())).thenAnswer(invocation -> realMapper.readTree(invocation.<String>getArgument(0)));
+        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>(responseBody, HttpStatus.OK));
+
+        List<Message> messages = List.of(Message.builder().role(MessageRole.USER).content("北京天气").build());
+        List<LlmTool> tools = List.of(LlmTool.builder()
+                .function(LlmTool.Function.builder().name("weather").build())
+                .build());
+
+        // When
+        LlmResponse response = llmGenerationService.chat(messages, tools, null, null);
+
+        // Then
+        assertNull(response.getContent());
+        assertEquals("tool_calls", response.getFinishReason());
+        assertEquals(1, response.getToolCalls().size());
+        assertEquals("call_1", response.getToolCalls().get(0).getId());
+        assertEquals("weather", response.getToolCalls().get(0).getFunction().getName());
+        assertEquals("{\"city\":\"Beijing\"}", response.getToolCalls().get(0).getFunction().getArguments());
+    }
 }
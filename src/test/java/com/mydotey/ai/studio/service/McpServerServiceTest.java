@@ -4,10 +4,12 @@ import com.mydotey.ai.studio.common.exception.BusinessException;
 import com.mydotey.ai.studio.dto.CreateMcpServerRequest;
 import com.mydotey.ai.studio.dto.UpdateMcpServerRequest;
 import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
 import com.mydotey.ai.studio.mapper.McpServerMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.Instant;
 import java.util.List;
@@ -19,12 +21,14 @@ import static org.mockito.Mockito.*;
 public class McpServerServiceTest {
 
     private McpServerMapper mcpServerMapper;
+    private ApplicationEventPublisher eventPublisher;
     private McpServerService mcpServerService;
 
     @BeforeEach
     void setUp() {
         mcpServerMapper = mock(McpServerMapper.class);
-        mcpServerService = new McpServerService(mcpServerMapper);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        mcpServerService = new McpServerService(mcpServerMapper, eventPublisher);
     }
 
     @Test
@@ -81,6 +85,7 @@ public class McpServerServiceTest {
         McpServer updatedServer = captor.getValue();
         assertEquals("Updated Name", updatedServer.getName());
         assertEquals("Updated Description", updatedServer.getDescription());
+        verify(eventPublisher).publishEvent(any(McpServerChangedEvent.class));
     }
 
     @Test
@@ -115,6 +120,7 @@ public class McpServerServiceTest {
 
         // Then
         verify(mcpServerMapper).deleteById(serverId);
+        verify(eventPublisher).publishEvent(any(McpServerChangedEvent.class));
     }
 
     @Test
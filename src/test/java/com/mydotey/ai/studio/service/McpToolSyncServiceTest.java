@@ -1,16 +1,22 @@
 package com.mydotey.ai.studio.service;
 
+import com.mydotey.ai.studio.common.exception.BusinessException;
+import com.mydotey.ai.studio.dto.UpdateMcpToolCacheRequest;
 import com.mydotey.ai.studio.entity.McpServer;
 import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
 import com.mydotey.ai.studio.mapper.McpServerMapper;
 import com.mydotey.ai.studio.mapper.McpToolMapper;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient.ToolDefinition;
+import com.mydotey.ai.studio.service.mcp.McpToolResultCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -19,6 +25,8 @@ public class McpToolSyncServiceTest {
     private McpServerMapper mcpServerMapper;
     private McpToolMapper mcpToolMapper;
     private McpRpcClient mcpRpcClient;
+    private McpToolResultCache mcpToolResultCache;
+    private ApplicationEventPublisher eventPublisher;
     private McpToolSyncService mcpToolSyncService;
 
     @BeforeEach
@@ -26,7 +34,10 @@ public class McpToolSyncServiceTest {
         mcpServerMapper = mock(McpServerMapper.class);
         mcpToolMapper = mock(McpToolMapper.class);
         mcpRpcClient = mock(McpRpcClient.class);
-        mcpToolSyncService = new McpToolSyncService(mcpServerMapper, mcpToolMapper, mcpRpcClient);
+        mcpToolResultCache = mock(McpToolResultCache.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        mcpToolSyncService = new McpToolSyncService(mcpServerMapper, mcpToolMapper, mcpRpcClient, mcpToolResultCache,
+                eventPublisher);
     }
 
     @Test
@@ -87,5 +98,38 @@ public class McpToolSyncServiceTest {
         // Then
         verify(mcpToolMapper).updateById(any(McpTool.class));
         verify(mcpToolMapper, never()).insert(any(McpTool.class));
+        verify(mcpToolResultCache).invalidateServer(serverId);
+    }
+
+    @Test
+    void testUpdateToolCacheSettings_InvalidatesCachedResults() {
+        // Given
+        McpTool tool = new McpTool();
+        tool.setId(100L);
+        tool.setServerId(1L);
+        tool.setToolName("currency_rate");
+        when(mcpToolMapper.selectById(100L)).thenReturn(tool);
+
+        UpdateMcpToolCacheRequest request = new UpdateMcpToolCacheRequest();
+        request.setResultCacheEnabled(true);
+        request.setResultCacheTtl(60);
+
+        // When
+        McpTool updated = mcpToolSyncService.updateToolCacheSettings(100L, request, 1L);
+
+        // Then
+        assertTrue(updated.getResultCacheEnabled());
+        assertEquals(60, updated.getResultCacheTtl());
+        verify(mcpToolMapper).updateById(tool);
+        verify(mcpToolResultCache).invalidate(1L, "currency_rate");
+        verify(eventPublisher).publishEvent(any(McpServerChangedEvent.class));
+    }
+
+    @Test
+    void testUpdateToolCacheSettings_ToolNotFound() {
+        when(mcpToolMapper.selectById(100L)).thenReturn(null);
+
+        assertThrows(BusinessException.class, () ->
+                mcpToolSyncService.updateToolCacheSettings(100L, new UpdateMcpToolCacheRequest(), 1L));
     }
 }
@@ -1,52 +1,140 @@
 package com.mydotey.ai.studio.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
 import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.service.llm.LlmAdmissionController;
+import com.mydotey.ai.studio.service.llm.LlmEndpointRouter;
+import com.mydotey.ai.studio.service.llm.LlmResponseCache;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.http.*;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.ArrayList;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @DisplayName("流式 LLM 服务测试")
-@ExtendWith(MockitoExtension.class)
 class StreamingLlmServiceTest {
 
-    @Mock
-    private RestTemplate restTemplate;
-
-    @Mock
+    private HttpServer server;
+    private HttpClient httpClient;
     private LlmConfig config;
-
-    @Mock
-    private ObjectMapper objectMapper;
-
-    @Mock
-    private PromptTemplateService promptTemplateService;
-
-    @InjectMocks
     private StreamingLlmService streamingLlmService;
+    private LlmEndpointRouter router;
+    private SimpleMeterRegistry meterRegistry;
+
+    private final AtomicReference<String> responseBody = new AtomicReference<>("");
+    private final AtomicInteger responseStatus = new AtomicInteger(200);
+    private final AtomicReference<String> requestBody = new AtomicReference<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicReference<CountDownLatch> responseGate = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/chat/completions", exchange -> {
+            requestCount.incrementAndGet();
+            requestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            CountDownLatch gate = responseGate.get();
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = responseBody.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(responseStatus.get(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        config = new LlmConfig();
+        config.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setApiKey("test-api-key");
+        config.setModel("gpt-3.5-turbo");
+
+        PromptTemplateService promptTemplateService = mock(PromptTemplateService.class);
+        when(promptTemplateService.buildMessageList(anyString(), anyString())).thenReturn(List.of());
+
+        httpClient = HttpClient.newHttpClient();
+        @SuppressWarnings("unchecked")
+        ObjectProvider<StringRedisTemplate> redisProvider = mock(ObjectProvider.class);
+        LlmResponseCache responseCache = new LlmResponseCache(config, new ObjectMapper(), redisProvider);
+        router = new LlmEndpointRouter(config, new ObjectMapper());
+        meterRegistry = new SimpleMeterRegistry();
+        streamingLlmService = new StreamingLlmService(httpClient, config, new ObjectMapper(),
+                promptTemplateService, responseCache, router, meterRegistry,
+                new LlmAdmissionController(config, meterRegistry));
+    }
 
-    // Use real ObjectMapper for JSON parsing
-    private final ObjectMapper realMapper = new ObjectMapper();
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        httpClient.close();
+    }
+
+    /**
+     * 记录回调结果的测试回调
+     */
+    private static class RecordingCallback implements StreamingLlmService.StreamCallback {
+        final List<String> contents = new CopyOnWriteArrayList<>();
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onContent(String content) {
+            contents.add(content);
+        }
+
+        @Override
+        public void onComplete() {
+            completions.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error.set(e);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS), "stream should terminate");
+        }
+    }
 
     @Test
     @DisplayName("应该成功流式生成并回调")
     void testStreamGenerateSuccess() throws Exception {
-        // Given
-        String systemPrompt = "你是一个专业的助手";
-        String userQuestion = "什么是人工智能？";
-        String streamResponseBody = """
+        responseBody.set("""
             data: {"choices":[{"delta":{"content":"人工智能"},"finish_reason":null}]}
 
             data: {"choices":[{"delta":{"content":"是"},"finish_reason":null}]}
@@ -54,234 +142,378 @@ class StreamingLlmServiceTest {
             data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
 
             data: [DONE]
-            """;
-
-        List<String> receivedContent = new ArrayList<>();
-        boolean[] completed = {false};
-        StreamingLlmService.StreamCallback callback = new StreamingLlmService.StreamCallback() {
-            @Override
-            public void onContent(String content) {
-                receivedContent.add(content);
-            }
+            """);
+        RecordingCallback callback = new RecordingCallback();
 
-            @Override
-            public void onComplete() {
-                completed[0] = true;
-            }
+        streamingLlmService.streamGenerate("你是一个专业的助手", "什么是人工智能？", 0.3, 1000, callback)
+                .get(5, TimeUnit.SECONDS);
+        callback.await();
 
-            @Override
-            public void onError(Exception e) {
-                throw new RuntimeException(e);
-            }
-        };
-
-        when(promptTemplateService.buildMessages(systemPrompt, userQuestion))
-                .thenReturn("[]");
-        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
-        when(config.getApiKey()).thenReturn("test-api-key");
-        when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
-
-        // Use real mapper for JSON parsing
-        when(objectMapper.readTree(anyString())).thenAnswer(invocation -> {
-            String json = invocation.getArgument(0);
-            return realMapper.readTree(json);
-        });
+        assertEquals(List.of("人工智能", "是"), callback.contents);
+        assertEquals(1, callback.completions.get(), "onComplete should be called exactly once");
+        assertNull(callback.error.get());
+    }
 
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(new ResponseEntity<>(streamResponseBody, HttpStatus.OK));
+    @Test
+    @DisplayName("没有 [DONE] 标记时应该在响应结束后完成")
+    void testStreamWithoutDoneMarker() throws Exception {
+        responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"内容\"}}]}\n\n");
+        RecordingCallback callback = new RecordingCallback();
 
-        // When
-        streamingLlmService.streamGenerate(systemPrompt, userQuestion, 0.3, 1000, callback);
+        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+        callback.await();
 
-        // Then
-        assertEquals(2, receivedContent.size());
-        assertEquals("人工智能", receivedContent.get(0));
-        assertEquals("是", receivedContent.get(1));
-        assertTrue(completed[0], "onComplete should be called");
+        assertEquals(List.of("内容"), callback.contents);
+        assertEquals(1, callback.completions.get());
     }
 
     @Test
-    @DisplayName("应该正确处理 [DONE] 标记")
-    void testStreamWithDoneMarker() throws Exception {
-        // Given
-        String streamResponseBody = """
-            data: {"choices":[{"delta":{"content":"内容"}}]}
+    @DisplayName("当连接失败时应该调用 onError")
+    void testStreamWithConnectionError() throws Exception {
+        config.setEndpoint("http://127.0.0.1:1");
+        RecordingCallback callback = new RecordingCallback();
 
-            data: [DONE]
-            """;
-
-        List<String> receivedContent = new ArrayList<>();
-        boolean[] completed = {false};
-        StreamingLlmService.StreamCallback callback = new StreamingLlmService.StreamCallback() {
-            @Override
-            public void onContent(String content) {
-                receivedContent.add(content);
-            }
+        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+        callback.await();
 
-            @Override
-            public void onComplete() {
-                completed[0] = true;
-            }
+        assertNotNull(callback.error.get());
+        assertEquals(0, callback.completions.get());
+    }
 
-            @Override
-            public void onError(Exception e) {}
-        };
+    @Test
+    @DisplayName("当 HTTP 状态非 OK 时应该调用 onError")
+    void testStreamWithNonOkStatus() throws Exception {
+        responseStatus.set(401);
+        responseBody.set("Error response");
+        RecordingCallback callback = new RecordingCallback();
 
-        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
-        when(config.getApiKey()).thenReturn("test-api-key");
-        when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
-        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+        callback.await();
 
-        // Use real mapper for JSON parsing
-        when(objectMapper.readTree(anyString())).thenAnswer(invocation -> {
-            String json = invocation.getArgument(0);
-            return realMapper.readTree(json);
-        });
+        assertNotNull(callback.error.get());
+        assertTrue(callback.error.get().getMessage().contains("Unexpected response status"));
+        assertTrue(callback.error.get().getMessage().contains("401"));
+    }
 
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(new ResponseEntity<>(streamResponseBody, HttpStatus.OK));
+    @Test
+    @DisplayName("当 temperature 为 null 时应该使用默认值")
+    void testStreamWithNullTemperature() throws Exception {
+        config.setDefaultTemperature(0.7);
+        config.setDefaultMaxTokens(2000);
+        responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"测试内容\"}}]}\n\ndata: [DONE]\n");
+        RecordingCallback callback = new RecordingCallback();
 
-        // When
-        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+        streamingLlmService.streamGenerate("提示", "问题", null, null, callback);
+        callback.await();
 
-        // Then
-        assertEquals(1, receivedContent.size());
-        assertEquals("内容", receivedContent.get(0));
-        assertTrue(completed[0]);
+        JsonNode sent = new ObjectMapper().readTree(requestBody.get());
+        assertEquals(0.7, sent.get("temperature").asDouble());
+        assertEquals(2000, sent.get("maxTokens").asInt());
+        assertTrue(sent.get("stream").asBoolean());
+        assertEquals(List.of("测试内容"), callback.contents);
     }
 
     @Test
-    @DisplayName("当流式请求失败时应该调用 onError")
-    void testStreamWithError() throws Exception {
-        // Given
-        Exception[] capturedError = new Exception[1];
-        StreamingLlmService.StreamCallback callback = new StreamingLlmService.StreamCallback() {
-            @Override
-            public void onContent(String content) {}
-
-            @Override
-            public void onComplete() {}
-
-            @Override
-            public void onError(Exception e) {
-                capturedError[0] = e;
-            }
-        };
+    @DisplayName("使用自定义模型配置时 maxTokens 按剩余预算收紧")
+    void testStreamWithConfigCapsMaxTokensByBudget() throws Exception {
+        responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"内容\"}}]}\n\ndata: [DONE]\n");
+        ModelConfigDto modelConfig = new ModelConfigDto();
+        modelConfig.setMaxTokens(2000);
+        RecordingCallback callback = new RecordingCallback();
+
+        streamingLlmService.streamGenerateWithConfig("提示", "问题", modelConfig, null,
+                ExecutionBudget.of(0, 300), CancellationToken.NONE, callback);
+        callback.await();
+
+        JsonNode sent = new ObjectMapper().readTree(requestBody.get());
+        assertEquals(300, sent.get("maxTokens").asInt());
+        assertEquals(List.of("内容"), callback.contents);
+    }
 
-        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
-        when(config.getApiKey()).thenReturn("test-api-key");
-        when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
-        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+    @Test
+    @DisplayName("启用响应缓存时第二次请求应该直接回放缓存内容")
+    void testStreamReplayFromResponseCache() throws Exception {
+        config.getResponseCache().setReplayChunkSize(2);
+        responseBody.set("""
+            data: {"choices":[{"delta":{"content":"缓存的回答"},"finish_reason":null}]}
 
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenThrow(new RuntimeException("Connection failed"));
+            data: {"choices":[{"delta":{},"finish_reason":"stop"}]}
 
-        // When
-        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+            data: [DONE]
+            """);
+
+        RecordingCallback first = new RecordingCallback();
+        streamingLlmService.streamGenerate("提示", "问题", 0.0, 1000, true, first).get(5, TimeUnit.SECONDS);
+        first.await();
 
-        // Then
-        assertNotNull(capturedError[0]);
-        assertTrue(capturedError[0].getMessage().contains("Connection failed"));
+        RecordingCallback second = new RecordingCallback();
+        streamingLlmService.streamGenerate("提示", "问题", 0.0, 1000, true, second).get(5, TimeUnit.SECONDS);
+        second.await();
+
+        assertEquals(1, requestCount.get(), "second request should be served from cache");
+        assertEquals(List.of("缓存", "的回", "答"), second.contents);
+        assertEquals(1, second.completions.get());
     }
 
     @Test
-    @DisplayName("当 HTTP 状态非 OK 时应该调用 onError")
-    void testStreamWithNonOkStatus() throws Exception {
-        // Given
-        String streamResponseBody = "Error response";
-        Exception[] capturedError = new Exception[1];
-        StreamingLlmService.StreamCallback callback = new StreamingLlmService.StreamCallback() {
-            @Override
-            public void onContent(String content) {}
-
-            @Override
-            public void onComplete() {}
-
-            @Override
-            public void onError(Exception e) {
-                capturedError[0] = e;
-            }
-        };
+    @DisplayName("温度高于阈值时不应该使用响应缓存")
+    void testStreamSkipsCacheForNonDeterministicRequest() throws Exception {
+        responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"内容\"},\"finish_reason\":\"stop\"}]}\n\ndata: [DONE]\n");
 
-        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
-        when(config.getApiKey()).thenReturn("test-api-key");
-        when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
-        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        for (int i = 0; i < 2; i++) {
+            RecordingCallback callback = new RecordingCallback();
+            streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, true, callback).get(5, TimeUnit.SECONDS);
+            callback.await();
+        }
 
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(new ResponseEntity<>(streamResponseBody, HttpStatus.UNAUTHORIZED));
+        assertEquals(2, requestCount.get());
+    }
 
-        // When
-        streamingLlmService.streamGenerate("提示", "问题", 0.3, 1000, callback);
+    @Test
+    @DisplayName("并发的相同请求应该共享一个上游流")
+    void testConcurrentIdenticalStreamsShareUpstream() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        responseGate.set(gate);
+        responseBody.set("""
+            data: {"choices":[{"delta":{"content":"共享"},"finish_reason":null}]}
+
+            data: {"choices":[{"delta":{"content":"内容"},"finish_reason":"stop"}]}
 
-        // Then
-        assertNotNull(capturedError[0]);
-        assertTrue(capturedError[0].getMessage().contains("Unexpected response status"));
-        assertTrue(capturedError[0].getMessage().contains("401"));
+            data: [DONE]
+            """);
+
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        var firstDone = streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, first);
+        var secondDone = streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, second);
+        gate.countDown();
+
+        firstDone.get(5, TimeUnit.SECONDS);
+        secondDone.get(5, TimeUnit.SECONDS);
+        first.await();
+        second.await();
+
+        assertEquals(1, requestCount.get());
+        assertEquals(List.of("共享", "内容"), first.contents);
+        assertEquals(List.of("共享", "内容"), second.contents);
     }
 
     @Test
-    @DisplayName("当 temperature 为 null 时应该使用默认值")
-    void testStreamWithNullTemperature() throws Exception {
-        // Given
-        String streamResponseBody = """
-            data: {"choices":[{"delta":{"content":"测试内容"}}]}
+    @DisplayName("不同模型配置的相同请求不应该共享上游流")
+    void testStreamsOfDifferentConfigsDoNotShareUpstream() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        responseGate.set(gate);
+        responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"内容\"},\"finish_reason\":\"stop\"}]}\n\ndata: [DONE]\n");
+        ModelConfigDto first = new ModelConfigDto();
+        first.setId(1L);
+        first.setApiKey("key-1");
+        ModelConfigDto second = new ModelConfigDto();
+        second.setId(2L);
+        second.setApiKey("key-2");
+
+        RecordingCallback firstCallback = new RecordingCallback();
+        RecordingCallback secondCallback = new RecordingCallback();
+        var firstDone = streamingLlmService.streamGenerateWithConfig("提示", "问题", first, firstCallback);
+        var secondDone = streamingLlmService.streamGenerateWithConfig("提示", "问题", second, secondCallback);
+        gate.countDown();
+
+        firstDone.get(5, TimeUnit.SECONDS);
+        secondDone.get(5, TimeUnit.SECONDS);
+        firstCallback.await();
+        secondCallback.await();
+
+        assertEquals(2, requestCount.get());
+        assertEquals(List.of("内容"), firstCallback.contents);
+        assertEquals(List.of("内容"), secondCallback.contents);
+    }
+
+    @Test
+    @DisplayName("取消令牌触发时应该中断上游并记录指标")
+    void testCancelStream() throws Exception {
+        config.setCoalesceRequests(false);
+        CountDownLatch gate = new CountDownLatch(1);
+        responseGate.set(gate);
+        responseBody.set("""
+            data: {"choices":[{"delta":{"content":"内容"},"finish_reason":"stop"}]}
 
             data: [DONE]
-            """;
+            """);
+
+        CancellationToken token = new CancellationToken();
+        RecordingCallback callback = new RecordingCallback();
+        var done = streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, null, token, callback);
+        token.cancel();
+        gate.countDown();
+
+        done.get(5, TimeUnit.SECONDS);
+        callback.await();
+
+        assertInstanceOf(CancellationException.class, callback.error.get());
+        assertTrue(callback.contents.isEmpty());
+        assertEquals(0, callback.completions.get());
+        assertEquals(1.0, meterRegistry.counter("llm.stream.cancelled", "model", "gpt-3.5-turbo").count());
+        assertEquals(1000.0, meterRegistry.counter("llm.stream.tokens.saved", "model", "gpt-3.5-turbo").count());
+    }
 
-        List<String> receivedContent = new ArrayList<>();
-        StreamingLlmService.StreamCallback callback = new StreamingLlmService.StreamCallback() {
-            @Override
-            public void onContent(String content) {
-                receivedContent.add(content);
-            }
+    @Test
+    @DisplayName("准入队列已满时应该以过载异常结束，排队的流在许可归还后继续")
+    void testStreamRejectedByAdmission() throws Exception {
+        config.setCoalesceRequests(false);
+        config.getAdmission().setMaxConcurrent(1);
+        config.getAdmission().setMaxQueueSize(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        responseGate.set(gate);
+        responseBody.set("""
+            data: {"choices":[{"delta":{"content":"内容"},"finish_reason":"stop"}]}
 
-            @Override
-            public void onComplete() {}
+            data: [DONE]
+            """);
+
+        RecordingCallback running = new RecordingCallback();
+        RecordingCallback queued = new RecordingCallback();
+        RecordingCallback rejected = new RecordingCallback();
+        var runningDone = streamingLlmService.streamGenerate("提示", "问题1", 0.7, 1000, running);
+        var queuedDone = streamingLlmService.streamGenerate("提示", "问题2", 0.7, 1000, queued);
+        streamingLlmService.streamGenerate("提示", "问题3", 0.7, 1000, rejected);
+
+        // 拒绝在调用返回前同步发生
+        assertInstanceOf(LlmOverloadedException.class, rejected.error.get());
+        gate.countDown();
+
+        runningDone.get(5, TimeUnit.SECONDS);
+        queuedDone.get(5, TimeUnit.SECONDS);
+        running.await();
+        queued.await();
+
+        assertEquals(2, requestCount.get());
+        assertEquals(List.of("内容"), queued.contents);
+        assertEquals(1, queued.completions.get());
+    }
 
-            @Override
-            public void onError(Exception e) {
-                throw new RuntimeException(e);
-            }
-        };
-
-        when(config.getEndpoint()).thenReturn("https://api.openai.com/v1");
-        when(config.getApiKey()).thenReturn("test-api-key");
-        when(config.getModel()).thenReturn("gpt-3.5-turbo");
-        when(config.getDefaultTemperature()).thenReturn(0.7);
-        when(config.getDefaultMaxTokens()).thenReturn(2000);
-        when(promptTemplateService.buildMessages(anyString(), anyString())).thenReturn("[]");
-        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
-
-        // Use real mapper for JSON parsing
-        when(objectMapper.readTree(anyString())).thenAnswer(invocation -> {
-            String json = invocation.getArgument(0);
-            return realMapper.readTree(json);
-        });
+    @Test
+    @DisplayName("共享流只在最后一个订阅者取消时中断上游")
+    void testSharedStreamCancelledByLastSubscriber() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        responseGate.set(gate);
+        responseBody.set("""
+            data: {"choices":[{"delta":{"content":"共享"},"finish_reason":"stop"}]}
 
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(new ResponseEntity<>(streamResponseBody, HttpStatus.OK));
+            data: [DONE]
+            """);
+
+        CancellationToken firstToken = new CancellationToken();
+        CancellationToken secondToken = new CancellationToken();
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, null, firstToken, first);
+        streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, null, secondToken, second);
+
+        firstToken.cancel();
+        first.await();
+        assertInstanceOf(CancellationException.class, first.error.get());
+        assertEquals(0.0, meterRegistry.counter("llm.stream.cancelled", "model", "gpt-3.5-turbo").count());
+
+        secondToken.cancel();
+        second.await();
+        gate.countDown();
+        assertInstanceOf(CancellationException.class, second.error.get());
+        assertEquals(1.0, meterRegistry.counter("llm.stream.cancelled", "model", "gpt-3.5-turbo").count());
+
+        // 上游已中断，相同的新请求会重新发起
+        RecordingCallback third = new RecordingCallback();
+        streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, third).get(5, TimeUnit.SECONDS);
+        third.await();
+        assertEquals(List.of("共享"), third.contents);
+    }
 
-        // When - call with null temperature and maxTokens
-        streamingLlmService.streamGenerate("提示", "问题", null, null, callback);
+    /**
+     * 启动一个固定返回内容的模拟端点
+     */
+    private HttpServer startServer(int status, String body, AtomicInteger counter) throws Exception {
+        HttpServer other = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        other.createContext("/chat/completions", exchange -> {
+            counter.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        other.start();
+        return other;
+    }
 
-        // Then - verify request was built with default values from config
-        verify(objectMapper).writeValueAsString(argThat(request -> {
-            // We can't directly inspect LlmRequest, but we verified the config defaults were called
-            return true;
-        }));
+    /**
+     * 让端点看起来很忙，使路由优先选择另一个端点
+     */
+    private void occupy(String endpoint, int count) {
+        for (int i = 0; i < count; i++) {
+            router.start(endpoint);
+        }
+    }
 
-        // Verify content was still received
-        assertEquals(1, receivedContent.size());
-        assertEquals("测试内容", receivedContent.get(0));
+    @Test
+    @DisplayName("首 token 超过对冲延迟时应该向另一个端点发送对冲请求")
+    void testHedgeToFasterEndpoint() throws Exception {
+        String slow = config.getEndpoint();
+        AtomicInteger fastRequests = new AtomicInteger();
+        HttpServer fastServer = startServer(200,
+                "data: {\"choices\":[{\"delta\":{\"content\":\"快\"},\"finish_reason\":\"stop\"}]}\n\ndata: [DONE]\n",
+                fastRequests);
+        try {
+            String fast = "http://127.0.0.1:" + fastServer.getAddress().getPort();
+            config.setEndpoints(List.of(fast));
+            config.getRouting().setHedgeEnabled(true);
+            config.getRouting().setHedgeMinSamples(1);
+            config.getRouting().setHedgeMinDelay(50);
+            // 积累慢端点的首 token 样本，并让快端点看起来很忙，使首次选择落在慢端点上
+            LlmEndpointRouter.Attempt warmUp = router.start(slow);
+            warmUp.firstByte();
+            warmUp.success();
+            occupy(fast, 10);
+
+            CountDownLatch gate = new CountDownLatch(1);
+            responseGate.set(gate);
+            responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"慢\"}}]}\n\ndata: [DONE]\n");
+
+            RecordingCallback callback = new RecordingCallback();
+            streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, callback).get(5, TimeUnit.SECONDS);
+            gate.countDown();
+            callback.await();
+
+            assertEquals(1, requestCount.get());
+            assertEquals(1, fastRequests.get());
+            assertEquals(List.of("快"), callback.contents);
+            assertEquals(1, callback.completions.get());
+        } finally {
+            fastServer.stop(0);
+        }
+    }
 
-        // Verify config defaults were accessed
-        verify(config).getDefaultTemperature();
-        verify(config).getDefaultMaxTokens();
+    @Test
+    @DisplayName("端点返回 5xx 时应该切换到另一个端点")
+    void testFailoverOnServerError() throws Exception {
+        AtomicInteger brokenRequests = new AtomicInteger();
+        HttpServer brokenServer = startServer(503, "unavailable", brokenRequests);
+        try {
+            String healthy = config.getEndpoint();
+            String broken = "http://127.0.0.1:" + brokenServer.getAddress().getPort();
+            config.setEndpoint(broken);
+            config.setEndpoints(List.of(healthy));
+            occupy(healthy, 10);
+            responseBody.set("data: {\"choices\":[{\"delta\":{\"content\":\"正常\"}}]}\n\ndata: [DONE]\n");
+
+            RecordingCallback callback = new RecordingCallback();
+            streamingLlmService.streamGenerate("提示", "问题", 0.7, 1000, callback).get(5, TimeUnit.SECONDS);
+            callback.await();
+
+            assertEquals(1, brokenRequests.get());
+            assertEquals(1, requestCount.get());
+            assertEquals(List.of("正常"), callback.contents);
+            assertNull(callback.error.get());
+        } finally {
+            brokenServer.stop(0);
+        }
     }
 }
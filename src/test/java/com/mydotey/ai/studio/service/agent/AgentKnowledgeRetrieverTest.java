@@ -0,0 +1,139 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.SourceDocument;
+import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.service.VectorSearchService;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Agent 知识库预检索测试")
+class AgentKnowledgeRetrieverTest {
+
+    private VectorSearchService vectorSearchService;
+    private AgentConfig agentConfig;
+    private AgentKnowledgeRetriever retriever;
+    private AgentRuntime runtime;
+
+    @BeforeEach
+    void setUp() {
+        vectorSearchService = mock(VectorSearchService.class);
+        agentConfig = new AgentConfig();
+        retriever = new AgentKnowledgeRetriever(vectorSearchService, agentConfig, new ObjectMapper());
+
+        Agent agent = new Agent();
+        agent.setId(1L);
+        runtime = new AgentRuntime(agent, List.of(100L), Map.of(), List.of(), null,
+                AgentRuntime.DEFAULT_SYSTEM_PROMPT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retriever.shutdown();
+    }
+
+    @Test
+    @DisplayName("没有关联知识库、未启用或问题为空时不检索")
+    void testStartSkipped() {
+        Agent agent = new Agent();
+        agent.setId(2L);
+        AgentRuntime withoutKnowledgeBase = new AgentRuntime(agent, List.of(), Map.of(), List.of(), null,
+                AgentRuntime.DEFAULT_SYSTEM_PROMPT);
+
+        assertNull(retriever.start(withoutKnowledgeBase, "What is AI?", ExecutionBudget.UNLIMITED));
+        assertNull(retriever.start(runtime, " ", ExecutionBudget.UNLIMITED));
+        agentConfig.getRetrieval().setEnabled(false);
+        assertNull(retriever.start(runtime, "What is AI?", ExecutionBudget.UNLIMITED));
+        verifyNoInteractions(vectorSearchService);
+    }
+
+    @Test
+    @DisplayName("等待时间内返回的结果格式化为上下文")
+    void testAwaitContext() {
+        when(vectorSearchService.search(eq("What is AI?"), eq(List.of(100L)), eq(5), eq(0.7), any()))
+                .thenReturn(List.of(document("ai.md", "AI is artificial intelligence")));
+
+        AgentKnowledgeRetriever.Retrieval retrieval =
+                retriever.start(runtime, "What is AI?", ExecutionBudget.UNLIMITED);
+
+        assertEquals("[1] (ai.md) AI is artificial intelligence", retrieval.awaitContext());
+    }
+
+    @Test
+    @DisplayName("检索未在等待时间内完成时返回 null，模型以原问题调用工具时复用进行中的检索")
+    void testPendingRetrievalReusedByToolCall() throws Exception {
+        agentConfig.getRetrieval().setInjectWait(50);
+        CountDownLatch release = new CountDownLatch(1);
+        when(vectorSearchService.search(any(), any(), anyInt(), anyDouble(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(document("ai.md", "AI is artificial intelligence"));
+        });
+
+        AgentKnowledgeRetriever.Retrieval retrieval =
+                retriever.start(runtime, "What is AI?", ExecutionBudget.UNLIMITED);
+        assertNull(retrieval.awaitContext());
+
+        LlmToolCall call = searchCall("{\"query\":\"what is ai?\"}");
+        assertTrue(retrieval.handles(call));
+        var observation = retrieval.call(call);
+        release.countDown();
+
+        AgentToolDispatcher.Observation result = observation.get(5, TimeUnit.SECONDS);
+        assertTrue(result.success());
+        assertEquals("[1] (ai.md) AI is artificial intelligence", result.result());
+        verify(vectorSearchService, times(1)).search(any(), any(), anyInt(), anyDouble(), any());
+    }
+
+    @Test
+    @DisplayName("模型以其他问题调用工具时重新检索，检索失败时返回错误结果")
+    void testDifferentQuerySearchesAgain() throws Exception {
+        when(vectorSearchService.search(eq("What is AI?"), any(), anyInt(), anyDouble(), any()))
+                .thenReturn(List.of());
+        when(vectorSearchService.search(eq("history of AI"), any(), anyInt(), anyDouble(), any()))
+                .thenThrow(new RuntimeException("Embedding service unavailable"));
+
+        AgentKnowledgeRetriever.Retrieval retrieval =
+                retriever.start(runtime, "What is AI?", ExecutionBudget.UNLIMITED);
+        assertEquals("No relevant content found in the knowledge base.", retrieval.awaitContext());
+
+        AgentToolDispatcher.Observation result =
+                retrieval.call(searchCall("{\"query\":\"history of AI\"}")).get(5, TimeUnit.SECONDS);
+        assertFalse(result.success());
+        assertEquals("Error: Embedding service unavailable", result.result());
+        verify(vectorSearchService).search(eq("history of AI"), any(), anyInt(), anyDouble(), any());
+    }
+
+    private static SourceDocument document(String name, String content) {
+        SourceDocument document = new SourceDocument();
+        document.setDocumentName(name);
+        document.setContent(content);
+        return document;
+    }
+
+    private static LlmToolCall searchCall(String arguments) {
+        return LlmToolCall.builder()
+                .id("call_1")
+                .function(LlmToolCall.Function.builder()
+                        .name(AgentKnowledgeRetriever.TOOL_NAME)
+                        .arguments(arguments)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,203 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.enums.ModelConfigType;
+import com.mydotey.ai.studio.event.AgentChangedEvent;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.mydotey.ai.studio.event.ModelConfigChangedEvent;
+import com.mydotey.ai.studio.service.AgentService;
+import com.mydotey.ai.studio.service.ModelConfigService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Agent 运行时快照缓存测试")
+class AgentRuntimeCacheTest {
+
+    private AgentConfig agentConfig;
+    private AgentService agentService;
+    private ModelConfigService modelConfigService;
+    private AgentToolDispatcher toolDispatcher;
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private AgentRuntimeCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        agentConfig = new AgentConfig();
+        agentService = mock(AgentService.class);
+        modelConfigService = mock(ModelConfigService.class);
+        toolDispatcher = mock(AgentToolDispatcher.class);
+        redisTemplateProvider = mock(ObjectProvider.class);
+        cache = new AgentRuntimeCache(agentConfig, agentService, modelConfigService, toolDispatcher,
+                redisTemplateProvider, mock(ObjectProvider.class));
+
+        givenAgent(1L, 100L, List.of(10L));
+        givenAgent(2L, null, List.of());
+
+        McpTool tool = new McpTool();
+        tool.setId(10L);
+        tool.setServerId(5L);
+        tool.setToolName("search");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("search", new AgentToolDispatcher.ResolvedTool("search", tool, new McpServer()));
+        when(toolDispatcher.resolve(List.of(10L))).thenReturn(tools);
+        when(toolDispatcher.resolve(List.of())).thenReturn(Map.of());
+        when(toolDispatcher.definitions(tools)).thenReturn(List.of(LlmTool.builder().build()));
+        when(toolDispatcher.definitions(Map.of())).thenReturn(List.of());
+
+        ModelConfigDto modelConfig = new ModelConfigDto();
+        modelConfig.setId(100L);
+        modelConfig.setName("gpt");
+        when(modelConfigService.getConfigById(100L)).thenReturn(modelConfig);
+    }
+
+    private void givenAgent(Long agentId, Long modelConfigId, List<Long> toolIds) {
+        Agent agent = new Agent();
+        agent.setId(agentId);
+        agent.setLlmModelConfigId(modelConfigId);
+        when(agentService.getAgent(agentId)).thenReturn(agent);
+        when(agentService.getAgentKnowledgeBaseIds(agentId)).thenReturn(List.of(agentId * 10));
+        when(agentService.getAgentToolIds(agentId)).thenReturn(toolIds);
+    }
+
+    @Test
+    @DisplayName("快照包含知识库、工具定义、模型配置和默认系统提示词，再次获取不查询数据库")
+    void testLoadOnce() {
+        AgentRuntime runtime = cache.get(1L);
+
+        assertEquals(List.of(10L), runtime.knowledgeBaseIds());
+        assertEquals(1, runtime.tools().size());
+        assertEquals(1, runtime.toolDefinitions().size());
+        assertEquals(100L, runtime.modelConfig().getId());
+        assertEquals(AgentRuntime.DEFAULT_SYSTEM_PROMPT, runtime.systemPrompt());
+        assertEquals("REACT", runtime.workflowType());
+        assertEquals(AgentRuntime.DEFAULT_MAX_ITERATIONS, runtime.maxIterations());
+
+        assertSame(runtime, cache.get(1L));
+        verify(agentService, times(1)).getAgent(1L);
+        verify(toolDispatcher, times(1)).resolve(List.of(10L));
+        verify(modelConfigService, times(1)).getConfigById(100L);
+    }
+
+    @Test
+    @DisplayName("Agent 更新或删除后重新加载")
+    void testInvalidateOnAgentChanged() {
+        AgentRuntime first = cache.get(1L);
+        cache.get(2L);
+
+        cache.onAgentChanged(new AgentChangedEvent(1L));
+
+        assertNotSame(first, cache.get(1L));
+        cache.get(2L);
+        verify(agentService, times(2)).getAgent(1L);
+        verify(agentService, times(1)).getAgent(2L);
+    }
+
+    @Test
+    @DisplayName("只有使用该 LLM 配置的快照随模型配置变更失效")
+    void testInvalidateOnModelConfigChanged() {
+        cache.get(1L);
+        cache.get(2L);
+
+        cache.onModelConfigChanged(new ModelConfigChangedEvent(100L, ModelConfigType.EMBEDDING));
+        cache.get(1L);
+        verify(agentService, times(1)).getAgent(1L);
+
+        cache.onModelConfigChanged(new ModelConfigChangedEvent(100L, ModelConfigType.LLM));
+        cache.get(1L);
+        cache.get(2L);
+        verify(agentService, times(2)).getAgent(1L);
+        verify(agentService, times(1)).getAgent(2L);
+    }
+
+    @Test
+    @DisplayName("MCP 服务器变更后引用其工具的快照失效")
+    void testInvalidateOnMcpServerChanged() {
+        cache.get(1L);
+        cache.get(2L);
+
+        cache.onMcpServerChanged(new McpServerChangedEvent(6L));
+        cache.get(1L);
+        verify(agentService, times(1)).getAgent(1L);
+
+        cache.onMcpServerChanged(new McpServerChangedEvent(5L));
+        cache.get(1L);
+        cache.get(2L);
+        verify(agentService, times(2)).getAgent(1L);
+        verify(agentService, times(1)).getAgent(2L);
+    }
+
+    @Test
+    @DisplayName("加载期间发生失效时，加载结果只用于本次执行不缓存")
+    void testInvalidatedWhileLoading() {
+        Agent agent = new Agent();
+        agent.setId(3L);
+        when(agentService.getAgent(3L)).thenAnswer(invocation -> {
+            cache.invalidateAgent(3L);
+            return agent;
+        });
+        when(agentService.getAgentToolIds(3L)).thenReturn(List.of());
+
+        assertNotNull(cache.get(3L));
+        cache.get(3L);
+        verify(agentService, times(2)).getAgent(3L);
+    }
+
+    @Test
+    @DisplayName("模型配置获取失败时使用全局配置且不缓存")
+    void testModelConfigFailureNotCached() {
+        when(modelConfigService.getConfigById(100L)).thenThrow(new IllegalStateException("db down"));
+
+        assertNull(cache.get(1L).modelConfig());
+        cache.get(1L);
+        verify(agentService, times(2)).getAgent(1L);
+    }
+
+    @Test
+    @DisplayName("关闭缓存时每次都加载")
+    void testDisabled() {
+        agentConfig.getRuntimeCache().setEnabled(false);
+
+        cache.get(2L);
+        cache.get(2L);
+        verify(agentService, times(2)).getAgent(2L);
+    }
+
+    @Test
+    @DisplayName("启用 Redis 时失效通知发布到频道，其他节点的通知使本地快照失效")
+    void testCrossNodeInvalidation() {
+        agentConfig.getRuntimeCache().setRedisEnabled(true);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplateProvider.getIfAvailable()).thenReturn(redisTemplate);
+
+        cache.onAgentChanged(new AgentChangedEvent(1L));
+        verify(redisTemplate).convertAndSend(eq("agent:runtime:invalidate"),
+                argThat((String message) -> message.endsWith("|agent|1")));
+
+        cache.get(1L);
+        cache.get(2L);
+        cache.onRemoteMessage("other-node|model|100");
+        cache.onRemoteMessage("other-node|agent|2");
+        cache.onRemoteMessage("malformed");
+        cache.onRemoteMessage("other-node|agent|x");
+        cache.get(1L);
+        cache.get(2L);
+        verify(agentService, times(2)).getAgent(1L);
+        verify(agentService, times(2)).getAgent(2L);
+    }
+}
@@ -0,0 +1,257 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.AgentConfig;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.mapper.McpServerMapper;
+import com.mydotey.ai.studio.mapper.McpToolMapper;
+import com.mydotey.ai.studio.service.mcp.McpRpcClient;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Agent 工具调用分发测试")
+class AgentToolDispatcherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private McpToolMapper mcpToolMapper;
+    private McpServerMapper mcpServerMapper;
+    private McpRpcClient mcpRpcClient;
+    private AgentConfig agentConfig;
+    private AgentToolDispatcher dispatcher;
+    private McpServer server;
+    private Map<String, AgentToolDispatcher.ResolvedTool> tools;
+
+    @BeforeEach
+    void setUp() {
+        mcpToolMapper = mock(McpToolMapper.class);
+        mcpServerMapper = mock(McpServerMapper.class);
+        mcpRpcClient = mock(McpRpcClient.class);
+        agentConfig = new AgentConfig();
+        dispatcher = new AgentToolDispatcher(mcpToolMapper, mcpServerMapper, mcpRpcClient, agentConfig, objectMapper);
+
+        server = new McpServer();
+        server.setId(1L);
+        server.setName("weather-server");
+        McpTool weather = tool(10L, "weather", "{\"type\":\"object\",\"properties\":{\"city\":{\"type\":\"string\"}}}");
+        McpTool slow = tool(11L, "slow", null);
+        tools = Map.of(
+                "weather", new AgentToolDispatcher.ResolvedTool("weather", weather, server),
+                "slow", new AgentToolDispatcher.ResolvedTool("slow", slow, server));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    private static McpTool tool(Long id, String name, String inputSchema) {
+        McpTool tool = new McpTool();
+        tool.setId(id);
+        tool.setServerId(1L);
+        tool.setToolName(name);
+        tool.setDescription(name + " tool");
+        tool.setInputSchema(inputSchema);
+        return tool;
+    }
+
+    private static LlmToolCall call(String id, String name, String arguments) {
+        return LlmToolCall.builder()
+                .id(id)
+                .function(LlmToolCall.Function.builder().name(name).arguments(arguments).build())
+                .build();
+    }
+
+    private JsonNode text(String text) {
+        return objectMapper.createArrayNode().add(objectMapper.createObjectNode()
+                .put("type", "text")
+                .put("text", text));
+    }
+
+    @Test
+    @DisplayName("工具名称规范化为合法的函数名，同名工具加上 ID 区分")
+    void testResolveAndDefinitions() {
+        McpTool first = tool(10L, "get weather", "{\"type\":\"object\"}");
+        McpTool second = tool(20L, "get weather", null);
+        second.setServerId(2L);
+        McpServer other = new McpServer();
+        other.setId(2L);
+        when(mcpToolMapper.selectBatchIds(List.of(10L, 20L))).thenReturn(List.of(first, second));
+        when(mcpServerMapper.selectBatchIds(anyCollection())).thenReturn(List.of(server, other));
+
+        Map<String, AgentToolDispatcher.ResolvedTool> resolved = dispatcher.resolve(List.of(10L, 20L));
+
+        assertEquals(List.of("get_weather", "get_weather_20"), List.copyOf(resolved.keySet()));
+        assertSame(other, resolved.get("get_weather_20").server());
+
+        List<LlmTool> definitions = dispatcher.definitions(resolved);
+        assertEquals("object", definitions.get(0).getFunction().getParameters().get("type").asText());
+        // 没有 schema 的工具使用空对象 schema
+        assertTrue(definitions.get(1).getFunction().getParameters().has("properties"));
+    }
+
+    @Test
+    @DisplayName("同一步的工具调用并发执行，耗时接近最慢的调用")
+    void testDispatchInParallel() throws Exception {
+        CountDownLatch started = new CountDownLatch(3);
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("weather").tool()), any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            // 三个调用都开始后才返回，串行执行时会一直等到超时
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            return text("Sunny in " + invocation.<JsonNode>getArgument(2).get("city").asText());
+        });
+        List<LlmToolCall> calls = List.of(
+                call("call_1", "weather", "{\"city\":\"Beijing\"}"),
+                call("call_2", "weather", "{\"city\":\"Shanghai\"}"),
+                call("call_3", "weather", "{\"city\":\"Shenzhen\"}"));
+        List<String> reported = new CopyOnWriteArrayList<>();
+
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(calls, tools,
+                CancellationToken.NONE, observation -> reported.add(observation.call().getId()));
+
+        assertEquals(3, observations.size());
+        assertEquals("call_1", observations.get(0).call().getId());
+        assertEquals("Sunny in Beijing", observations.get(0).result());
+        assertEquals("Sunny in Shenzhen", observations.get(2).result());
+        assertTrue(observations.stream().allMatch(AgentToolDispatcher.Observation::success));
+        assertEquals(3, reported.size());
+    }
+
+    @Test
+    @DisplayName("调用的截止时间不超过执行预算的剩余时间，预算传给 MCP 调用")
+    void testDispatchWithinBudget() throws Exception {
+        agentConfig.setToolCallTimeout(30000);
+        ExecutionBudget budget = ExecutionBudget.of(200, 0);
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("slow").tool()), any(), any(), eq(budget))).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return text("too late");
+        });
+
+        long start = System.nanoTime();
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(
+                List.of(call("call_1", "slow", "{}")), tools, CancellationToken.NONE, observation -> { },
+                progress -> { }, budget);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 3000, "should stop at the execution deadline: " + elapsedMillis);
+        assertFalse(observations.get(0).success());
+        assertTrue(observations.get(0).result().contains("timed out"));
+    }
+
+    @Test
+    @DisplayName("超时的调用以错误结果返回，不影响其他调用")
+    void testDispatchTimeout() throws Exception {
+        agentConfig.setToolCallTimeout(200);
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("slow").tool()), any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(5000);
+            return text("too late");
+        });
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("weather").tool()), any(), any(), any())).thenReturn(text("Sunny"));
+
+        long start = System.nanoTime();
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(
+                List.of(call("call_1", "slow", "{}"), call("call_2", "weather", "{}")),
+                tools, CancellationToken.NONE, observation -> { });
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 3000, "should not wait for the slow tool: " + elapsedMillis);
+        assertFalse(observations.get(0).success());
+        assertTrue(observations.get(0).result().contains("timed out"));
+        assertTrue(observations.get(1).success());
+        assertEquals("Sunny", observations.get(1).result());
+    }
+
+    @Test
+    @DisplayName("未知工具、非法参数和调用异常以错误结果返回")
+    void testDispatchFailures() throws Exception {
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("slow").tool()), any(), any(), any())).thenThrow(new IllegalStateException("boom"));
+
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(List.of(
+                        call("call_1", "missing", "{}"),
+                        call("call_2", "weather", "{not json"),
+                        call("call_3", "slow", "")),
+                tools, CancellationToken.NONE, observation -> { });
+
+        assertTrue(observations.stream().noneMatch(AgentToolDispatcher.Observation::success));
+        assertTrue(observations.get(0).result().contains("unknown tool"));
+        assertTrue(observations.get(1).result().contains("invalid arguments"));
+        assertEquals("Error: boom", observations.get(2).result());
+    }
+
+    @Test
+    @DisplayName("取消后未完成的调用立即以取消结果返回")
+    void testDispatchCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("slow").tool()), any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            Thread.sleep(5000);
+            return text("too late");
+        });
+        CancellationToken token = new CancellationToken();
+
+        CompletableFuture<List<AgentToolDispatcher.Observation>> result = CompletableFuture.supplyAsync(() ->
+                dispatcher.dispatch(List.of(call("call_1", "slow", "{}")), tools, token, observation -> { }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        token.cancel();
+
+        List<AgentToolDispatcher.Observation> observations = result.get(2, TimeUnit.SECONDS);
+        assertFalse(observations.get(0).success());
+        assertTrue(observations.get(0).result().contains("cancelled"));
+    }
+
+    @Test
+    @DisplayName("过长的结果被截断")
+    void testTruncateObservation() throws Exception {
+        agentConfig.setMaxObservationChars(10);
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("weather").tool()), any(), any(), any())).thenReturn(text("a".repeat(100)));
+
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(
+                List.of(call("call_1", "weather", "{}")), tools, CancellationToken.NONE, observation -> { });
+
+        assertTrue(observations.get(0).result().startsWith("a".repeat(10)));
+        assertTrue(observations.get(0).result().endsWith("(truncated)"));
+    }
+
+    @Test
+    @DisplayName("工具执行期间的进度在结果之前回调")
+    void testDispatchProgress() throws Exception {
+        when(mcpRpcClient.callTool(eq(server), eq(tools.get("slow").tool()), any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<JsonNode> onProgress = invocation.getArgument(3);
+            onProgress.accept(objectMapper.createObjectNode().put("progress", 1).put("total", 2));
+            onProgress.accept(objectMapper.createObjectNode().put("progress", 2).put("message", "indexing"));
+            return text("done");
+        });
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        List<AgentToolDispatcher.Observation> observations = dispatcher.dispatch(
+                List.of(call("call_1", "slow", "{}")), tools, CancellationToken.NONE,
+                observation -> events.add("result:" + observation.result()),
+                progress -> events.add(progress.toolName() + ":" + progress.message()));
+
+        assertEquals("done", observations.get(0).result());
+        assertEquals(List.of("slow:1/2", "slow:indexing", "result:done"), events);
+    }
+}
@@ -0,0 +1,306 @@
+package com.mydotey.ai.studio.service.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+import com.mydotey.ai.studio.dto.AgentExecutionRequest;
+import com.mydotey.ai.studio.dto.AgentExecutionResponse;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.SourceDocument;
+import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import com.mydotey.ai.studio.service.LlmGenerationService;
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.service.VectorSearchService;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.llm.LlmPriority;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("自定义工作流执行器测试")
+class CustomWorkflowExecutorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private VectorSearchService vectorSearchService;
+    private LlmGenerationService llmGenerationService;
+    private AgentToolDispatcher toolDispatcher;
+    private CustomWorkflowExecutor executor;
+    private Map<String, AgentToolDispatcher.ResolvedTool> tools;
+
+    @BeforeEach
+    void setUp() {
+        vectorSearchService = mock(VectorSearchService.class);
+        llmGenerationService = mock(LlmGenerationService.class);
+        toolDispatcher = mock(AgentToolDispatcher.class);
+        executor = new CustomWorkflowExecutor(vectorSearchService, llmGenerationService, toolDispatcher, objectMapper);
+
+        McpTool tool = new McpTool();
+        tool.setId(10L);
+        tool.setToolName("weather");
+        tools = Map.of("weather", new AgentToolDispatcher.ResolvedTool("weather", tool, new McpServer()));
+
+        // LLM 回显用户提示词
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            return LlmResponse.builder().content("LLM(" + messages.get(1).getContent() + ")").build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    private AgentRuntime runtime(String workflowConfig) {
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setWorkflowType("CUSTOM");
+        agent.setWorkflowConfig(workflowConfig);
+        return new AgentRuntime(agent, List.of(7L), tools, List.of(), null, AgentRuntime.DEFAULT_SYSTEM_PROMPT);
+    }
+
+    private static AgentExecutionRequest request(String query) {
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery(query);
+        return request;
+    }
+
+    private static SourceDocument document(String content) {
+        return SourceDocument.builder().content(content).build();
+    }
+
+    private void givenWeather(String result) {
+        when(toolDispatcher.dispatch(any(), eq(tools), any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<LlmToolCall> calls = invocation.getArgument(0);
+            return List.of(new AgentToolDispatcher.Observation(calls.get(0), "weather", result, true, 1));
+        });
+    }
+
+    @Test
+    @DisplayName("互不依赖的检索和工具节点并行执行，下游节点使用两者的输出")
+    void testParallelBranches() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        when(vectorSearchService.search(eq("Beijing"), eq(List.of(7L)), eq(3), anyDouble(), any())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            // 另一个节点没有同时执行时这里会等待超时
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            return List.of(document("doc-a"), document("doc-b"));
+        });
+        when(toolDispatcher.dispatch(any(), eq(tools), any(), any(), any(), any())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            List<LlmToolCall> calls = invocation.getArgument(0);
+            assertEquals("{\"city\":\"Beijing\"}", calls.get(0).getFunction().getArguments());
+            return List.of(new AgentToolDispatcher.Observation(calls.get(0), "weather", "Sunny", true, 1));
+        });
+
+        AgentExecutionResponse response = executor.execute(runtime("""
+                {"nodes": [
+                  {"id": "docs", "type": "retrieval", "topK": 3},
+                  {"id": "weather", "type": "tool", "tool": "weather", "arguments": {"city": "{{query}}"}},
+                  {"id": "answer", "type": "llm", "prompt": "{{docs}} | {{weather}}"}
+                ]}
+                """), request("Beijing"), 1L);
+
+        assertEquals("LLM([1] doc-a\n\n[2] doc-b | Sunny)", response.getAnswer());
+        assertTrue(response.getIsComplete());
+        assertEquals(3, response.getThoughtSteps().size());
+        assertEquals(1, response.getToolCalls().size());
+        assertEquals("Sunny", response.getToolCalls().get(0).getResult());
+    }
+
+    @Test
+    @DisplayName("同一次执行中输入相同的节点只执行一次")
+    void testMemoizeIdenticalNodes() {
+        givenWeather("Sunny");
+
+        AgentExecutionResponse response = executor.execute(runtime("""
+                {"nodes": [
+                  {"id": "a", "type": "tool", "tool": "weather", "arguments": {"city": "{{query}}"}},
+                  {"id": "b", "type": "tool", "tool": "weather", "arguments": {"city": "{{query}}"}},
+                  {"id": "summaryA", "type": "llm", "prompt": "Summarize {{query}}"},
+                  {"id": "summaryB", "type": "llm", "prompt": "Summarize {{query}}"},
+                  {"id": "answer", "type": "transform", "template": "{{a}}/{{b}}/{{summaryA}}/{{summaryB}}"}
+                ]}
+                """), request("Beijing"), 1L);
+
+        assertEquals("Sunny/Sunny/LLM(Summarize Beijing)/LLM(Summarize Beijing)", response.getAnswer());
+        verify(toolDispatcher, times(1)).dispatch(any(), any(), any(), any(), any(), any());
+        verify(llmGenerationService, times(1)).chat(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("分支只执行选中的路径，未选中路径上的节点及其下游被跳过")
+    void testBranch() {
+        when(vectorSearchService.search(anyString(), any(), anyInt(), anyDouble(), any())).thenReturn(List.of());
+        String workflow = """
+                {"nodes": [
+                  {"id": "docs", "type": "retrieval"},
+                  {"id": "route", "type": "branch", "condition": {"input": "{{docs}}", "operator": "empty"},
+                   "then": ["fallback"], "else": ["grounded"]},
+                  {"id": "fallback", "type": "llm", "prompt": "No context: {{query}}"},
+                  {"id": "grounded", "type": "llm", "prompt": "Context: {{docs}}"},
+                  {"id": "cite", "type": "transform", "template": "Sources: {{grounded}}", "dependsOn": ["grounded"]},
+                  {"id": "answer", "type": "transform", "template": "{{fallback}}{{cite}}"}
+                ]}
+                """;
+
+        AgentExecutionResponse response = executor.execute(runtime(workflow), request("What is AI?"), 1L);
+
+        assertEquals("LLM(No context: What is AI?)", response.getAnswer());
+        List<String> observations = response.getThoughtSteps().stream()
+                .map(AgentExecutionResponse.ThoughtStep::getObservation)
+                .toList();
+        assertEquals(List.of("", "true", "LLM(No context: What is AI?)", "Skipped", "Skipped",
+                "LLM(No context: What is AI?)"), observations);
+        verify(llmGenerationService, times(1)).chat(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("流式执行时先回传节点事件和工具进度，再输出结果")
+    void testStreamNodeEvents() {
+        when(toolDispatcher.dispatch(any(), eq(tools), any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<LlmToolCall> calls = invocation.getArgument(0);
+            Consumer<AgentToolDispatcher.Progress> onProgress = invocation.getArgument(4);
+            onProgress.accept(new AgentToolDispatcher.Progress(calls.get(0), "weather", "1/2"));
+            return List.of(new AgentToolDispatcher.Observation(calls.get(0), "weather", "{\"temp\":21}", true, 1));
+        });
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        executor.executeStream(runtime("""
+                {"nodes": [
+                  {"id": "weather", "type": "tool", "tool": "weather"},
+                  {"id": "temp", "type": "transform", "template": "{{weather}}", "jsonPointer": "/temp"}
+                ], "output": "temp"}
+                """), request("Beijing"), 1L, recorder(events));
+
+        assertEquals(List.of("weather:running", "weather:progress:1/2", "weather:completed:{\"temp\":21}",
+                "temp:running", "temp:completed:21", "content:21", "complete"), events);
+    }
+
+    @Test
+    @DisplayName("节点失败时下游随之失败，流式执行返回错误")
+    void testNodeFailure() {
+        when(toolDispatcher.dispatch(any(), eq(tools), any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<LlmToolCall> calls = invocation.getArgument(0);
+            return List.of(new AgentToolDispatcher.Observation(calls.get(0), "weather", "Error: timed out", false, 1));
+        });
+        String workflow = """
+                {"nodes": [
+                  {"id": "weather", "type": "tool", "tool": "weather"},
+                  {"id": "answer", "type": "llm", "prompt": "{{weather}}"}
+                ]}
+                """;
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        executor.executeStream(runtime(workflow), request("Beijing"), 1L, recorder(events));
+
+        assertEquals("error:Workflow node weather failed: Error: timed out", events.get(events.size() - 1));
+        assertTrue(events.contains("answer:failed:upstream node weather failed"));
+        verify(llmGenerationService, never()).chat(any(), any(), any(), any(), any());
+
+        AgentExecutionResponse response = executor.execute(runtime(workflow), request("Beijing"), 1L);
+        assertFalse(response.getIsComplete());
+        assertEquals("", response.getAnswer());
+        assertFalse(response.getToolCalls().get(0).getSuccess());
+    }
+
+    @Test
+    @DisplayName("预算用尽时以最后完成的节点输出作为部分回答")
+    void testBudgetExhausted() {
+        givenWeather("Sunny");
+        ExecutionBudget budget = ExecutionBudget.of(60000, 0);
+        doThrow(new ExecutionBudgetExceededException("Token budget exhausted before LLM call"))
+                .when(llmGenerationService).chat(any(), any(), any(), any(), eq(budget));
+        String workflow = """
+                {"nodes": [
+                  {"id": "weather", "type": "tool", "tool": "weather"},
+                  {"id": "answer", "type": "llm", "prompt": "{{weather}}"}
+                ]}
+                """;
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        executor.executeStream(runtime(workflow), request("Beijing"), 1L, CancellationToken.NONE, budget,
+                recorder(events));
+
+        assertEquals(List.of("content:Sunny", "complete"), events.subList(events.size() - 2, events.size()));
+
+        AgentExecutionResponse response = executor.execute(runtime(workflow), request("Beijing"), 1L, budget);
+        assertFalse(response.getIsComplete());
+        assertEquals("Sunny", response.getAnswer());
+    }
+
+    @Test
+    @DisplayName("LLM 节点在工作流线程上以请求的调用方排队")
+    void testLlmNodeKeepsCaller() {
+        LlmCallContext.Caller caller = new LlmCallContext.Caller(3L, 5L, LlmPriority.INTERACTIVE);
+        List<LlmCallContext.Caller> callers = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            callers.add(LlmCallContext.current());
+            threads.add(Thread.currentThread().getName());
+            return LlmResponse.builder().content("answer").build();
+        }).when(llmGenerationService).chat(any(), any(), any(), any(), any());
+
+        LlmCallContext.set(caller);
+        try {
+            AgentExecutionResponse response = executor.execute(runtime("""
+                    {"nodes": [
+                      {"id": "answer", "type": "llm", "prompt": "{{query}}"}
+                    ]}
+                    """), request("Beijing"), 1L);
+
+            assertEquals("answer", response.getAnswer());
+        } finally {
+            LlmCallContext.clear();
+        }
+
+        assertEquals(List.of(caller), callers);
+        assertTrue(threads.get(0).startsWith("agent-workflow-"));
+    }
+
+    private static StreamingChatCallback recorder(List<String> events) {
+        return new StreamingChatCallback() {
+            @Override
+            public void onContent(String content) {
+                events.add("content:" + content);
+            }
+
+            @Override
+            public void onWorkflowNode(String nodeId, String status, String detail) {
+                events.add(nodeId + ":" + status + (detail != null ? ":" + detail : ""));
+            }
+
+            @Override
+            public void onComplete() {
+                events.add("complete");
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        };
+    }
+}
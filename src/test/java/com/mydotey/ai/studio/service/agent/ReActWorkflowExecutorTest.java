@@ -2,21 +2,42 @@ package com.mydotey.ai.studio.service.agent;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
 import com.mydotey.ai.studio.dto.AgentExecutionRequest;
 import com.mydotey.ai.studio.dto.AgentExecutionResponse;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.LlmTool;
+import com.mydotey.ai.studio.dto.LlmToolCall;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
 import com.mydotey.ai.studio.dto.RagQueryRequest;
 import com.mydotey.ai.studio.dto.RagQueryResponse;
 import com.mydotey.ai.studio.entity.Agent;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
 import com.mydotey.ai.studio.service.*;
+import com.mydotey.ai.studio.service.llm.LlmCallContext;
+import com.mydotey.ai.studio.service.llm.LlmPriority;
 import com.mydotey.ai.studio.service.mcp.McpRpcClient;
+import com.mydotey.ai.studio.util.CancellationToken;
+import com.mydotey.ai.studio.util.ExecutionBudget;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class ReActWorkflowExecutorTest {
@@ -24,9 +45,10 @@ public class ReActWorkflowExecutorTest {
     private RagService ragService;
     private LlmGenerationService llmGenerationService;
     private McpRpcClient mcpRpcClient;
-    private AgentService agentService;
-    private ModelConfigService modelConfigService;
     private ObjectMapper objectMapper;
+    private AgentToolDispatcher toolDispatcher;
+    private AgentKnowledgeRetriever knowledgeRetriever;
+    private StreamingLlmService streamingLlmService;
     private ReActWorkflowExecutor executor;
 
     @BeforeEach
@@ -34,10 +56,12 @@ public class ReActWorkflowExecutorTest {
         ragService = mock(RagService.class);
         llmGenerationService = mock(LlmGenerationService.class);
         mcpRpcClient = mock(McpRpcClient.class);
-        agentService = mock(AgentService.class);
-        modelConfigService = mock(ModelConfigService.class);
         objectMapper = mock(ObjectMapper.class);
-        executor = new ReActWorkflowExecutor(ragService, llmGenerationService, mcpRpcClient, agentService, modelConfigService, objectMapper);
+        toolDispatcher = mock(AgentToolDispatcher.class);
+        knowledgeRetriever = mock(AgentKnowledgeRetriever.class);
+        streamingLlmService = mock(StreamingLlmService.class);
+        executor = new ReActWorkflowExecutor(ragService, llmGenerationService, mcpRpcClient,
+                streamingLlmService, objectMapper, toolDispatcher, knowledgeRetriever);
     }
 
     @Test
@@ -51,15 +75,13 @@ public class ReActWorkflowExecutorTest {
         AgentExecutionRequest request = new AgentExecutionRequest();
         request.setQuery("What is AI?");
 
-        when(agentService.getAgentKnowledgeBaseIds(1L)).thenReturn(List.of(1L));
-        when(agentService.getAgentToolIds(1L)).thenReturn(List.of());
 
         RagQueryResponse ragResponse = RagQueryResponse.builder()
                 .answer("AI is artificial intelligence")
                 .build();
 
         when(ragService.query(any(RagQueryRequest.class), any())).thenReturn(ragResponse);
-        when(llmGenerationService.generate(any(), any(), any(), any())).thenReturn(
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenReturn(
                 com.mydotey.ai.studio.dto.LlmResponse.builder()
                         .content("AI is artificial intelligence")
                         .finishReason("stop")
@@ -67,11 +89,473 @@ public class ReActWorkflowExecutorTest {
                         .build());
 
         // When
-        AgentExecutionResponse response = executor.execute(agent, request, 1L);
+        AgentExecutionResponse response = executor.execute(runtime(agent, Map.of(), List.of()), request, 1L);
 
         // Then
         assertNotNull(response);
         assertNotNull(response.getAnswer());
         assertTrue(response.getIsComplete());
     }
+
+    @Test
+    void testExecute_WithTools_FeedsObservationsBackUntilAnswer() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(5);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What's the weather in Beijing and Shanghai?");
+
+        McpTool tool = new McpTool();
+        tool.setId(10L);
+        tool.setToolName("weather");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("weather", new AgentToolDispatcher.ResolvedTool("weather", tool, new McpServer()));
+        List<LlmTool> definitions = List.of(LlmTool.builder()
+                .function(LlmTool.Function.builder().name("weather").build())
+                .build());
+
+        List<LlmToolCall> toolCalls = List.of(toolCall("call_1", "{\"city\":\"Beijing\"}"),
+                toolCall("call_2", "{\"city\":\"Shanghai\"}"));
+        when(toolDispatcher.dispatch(eq(toolCalls), eq(tools), any(), any(), any(), any())).thenReturn(List.of(
+                new AgentToolDispatcher.Observation(toolCalls.get(0), "weather", "Sunny", true, 10),
+                new AgentToolDispatcher.Observation(toolCalls.get(1), "weather", "Rainy", true, 20)));
+
+        // 记录每次调用时的消息快照，消息列表会在调用之间追加
+        List<List<Message>> requests = new ArrayList<>();
+        List<List<LlmTool>> offeredTools = new ArrayList<>();
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            requests.add(List.copyOf(invocation.<List<Message>>getArgument(0)));
+            offeredTools.add(invocation.getArgument(1));
+            if (requests.size() == 1) {
+                return LlmResponse.builder().finishReason("tool_calls").toolCalls(toolCalls).build();
+            }
+            return LlmResponse.builder().content("Beijing is sunny, Shanghai is rainy").finishReason("stop").build();
+        });
+
+        // When
+        AgentExecutionResponse response = executor.execute(runtime(agent, tools, definitions), request, 1L);
+
+        // Then
+        assertEquals("Beijing is sunny, Shanghai is rainy", response.getAnswer());
+        assertTrue(response.getIsComplete());
+        assertEquals(2, response.getToolCalls().size());
+        assertEquals(2, response.getThoughtSteps().size());
+        verify(toolDispatcher, times(1)).dispatch(any(), any(), any(), any(), any(), any());
+
+        assertEquals(definitions, offeredTools.get(0));
+        assertEquals(AgentRuntime.DEFAULT_SYSTEM_PROMPT, requests.get(0).get(0).getContent());
+        List<Message> second = requests.get(1);
+        assertEquals(5, second.size());
+        assertEquals(MessageRole.ASSISTANT, second.get(2).getRole());
+        assertEquals(toolCalls, second.get(2).getToolCalls());
+        assertEquals(MessageRole.TOOL, second.get(3).getRole());
+        assertEquals("call_1", second.get(3).getToolCallId());
+        assertEquals("Sunny", second.get(3).getContent());
+        assertEquals("call_2", second.get(4).getToolCallId());
+        assertEquals("Rainy", second.get(4).getContent());
+    }
+
+    @Test
+    void testExecute_LastIterationOffersNoTools() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(2);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("Loop forever");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("search");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("search", new AgentToolDispatcher.ResolvedTool("search", tool, new McpServer()));
+        LlmToolCall call = toolCall("call_1", "{}");
+        when(toolDispatcher.dispatch(any(), any(), any(), any(), any(), any())).thenReturn(List.of(
+                new AgentToolDispatcher.Observation(call, "search", "nothing", true, 5)));
+
+        List<List<LlmTool>> offeredTools = new ArrayList<>();
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            offeredTools.add(invocation.getArgument(1));
+            return offeredTools.get(offeredTools.size() - 1) != null
+                    ? LlmResponse.builder().finishReason("tool_calls").toolCalls(List.of(call)).build()
+                    : LlmResponse.builder().content("Best effort answer").finishReason("stop").build();
+        });
+
+        // When
+        AgentExecutionResponse response = executor.execute(
+                runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L);
+
+        // Then
+        assertEquals(2, offeredTools.size());
+        assertNotNull(offeredTools.get(0));
+        assertNull(offeredTools.get(1));
+        assertEquals("Best effort answer", response.getAnswer());
+    }
+
+    @Test
+    void testExecute_BudgetExhausted_ReturnsPartialAnswer() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(5);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What's the weather in Beijing?");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("weather");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("weather", new AgentToolDispatcher.ResolvedTool("weather", tool, new McpServer()));
+        LlmToolCall call = toolCall("call_1", "{\"city\":\"Beijing\"}");
+        ExecutionBudget budget = ExecutionBudget.of(60000, 0);
+        when(toolDispatcher.dispatch(any(), any(), any(), any(), any(), eq(budget))).thenReturn(List.of(
+                new AgentToolDispatcher.Observation(call, "weather", "Sunny", true, 5)));
+        when(llmGenerationService.chat(any(), any(), any(), any(), eq(budget)))
+                .thenReturn(LlmResponse.builder().content("Checking the weather").finishReason("tool_calls")
+                        .toolCalls(List.of(call)).build())
+                .thenThrow(new ExecutionBudgetExceededException("Execution deadline exceeded during LLM call"));
+
+        // When
+        AgentExecutionResponse response = executor.execute(
+                runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L, budget);
+
+        // Then
+        assertFalse(response.getIsComplete());
+        assertTrue(response.getAnswer().contains("Checking the weather"));
+        assertTrue(response.getAnswer().contains("- weather: Sunny"));
+        assertEquals("Execution budget exhausted", response.getThoughtSteps().get(1).getThought());
+        verify(llmGenerationService, times(2)).chat(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testExecute_LowBudgetOffersNoTools() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(5);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("Search something");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("search");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("search", new AgentToolDispatcher.ResolvedTool("search", tool, new McpServer()));
+        // 剩余 500 token，低于为回答预留的 1000 token
+        ExecutionBudget budget = ExecutionBudget.of(0, 500, 0, 1000);
+        List<List<LlmTool>> offeredTools = new ArrayList<>();
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            offeredTools.add(invocation.getArgument(1));
+            return LlmResponse.builder().content("Short answer").finishReason("stop").build();
+        });
+
+        // When
+        AgentExecutionResponse response = executor.execute(
+                runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L, budget);
+
+        // Then
+        assertEquals("Short answer", response.getAnswer());
+        assertEquals(1, offeredTools.size());
+        assertNull(offeredTools.get(0));
+        verifyNoInteractions(toolDispatcher);
+    }
+
+    @Test
+    void testExecuteStream_WithTools_StreamsToolProgressBeforeAnswer() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(3);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("Index the repository");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("indexer");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("indexer", new AgentToolDispatcher.ResolvedTool("indexer", tool, new McpServer()));
+        LlmToolCall call = toolCall("call_1", "{}");
+        when(toolDispatcher.dispatch(any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<AgentToolDispatcher.Progress> onProgress = invocation.getArgument(4);
+            onProgress.accept(new AgentToolDispatcher.Progress(call, "indexer", "50/100"));
+            return List.of(new AgentToolDispatcher.Observation(call, "indexer", "indexed", true, 5));
+        });
+        when(llmGenerationService.chat(any(), any(), any(), any(), any()))
+                .thenReturn(LlmResponse.builder().finishReason("tool_calls").toolCalls(List.of(call)).build())
+                .thenReturn(LlmResponse.builder().content("Done").finishReason("stop").build());
+
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        executor.executeStream(runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L, callback);
+
+        // Then
+        assertEquals(List.of("indexer:50/100", "content:Done", "complete"), callback.await());
+        assertTrue(callback.threads.stream().allMatch(thread -> thread.startsWith("agent-react-")));
+    }
+
+    @Test
+    void testExecuteStream_WithTools_StreamsFinalStep() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(2);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("Index the repository");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("indexer");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("indexer", new AgentToolDispatcher.ResolvedTool("indexer", tool, new McpServer()));
+        LlmToolCall call = toolCall("call_1", "{}");
+        when(toolDispatcher.dispatch(any(), any(), any(), any(), any(), any())).thenReturn(List.of(
+                new AgentToolDispatcher.Observation(call, "indexer", "indexed", true, 5)));
+        when(llmGenerationService.chat(any(), any(), any(), any(), any()))
+                .thenReturn(LlmResponse.builder().finishReason("tool_calls").toolCalls(List.of(call)).build());
+        List<List<Message>> streamed = new ArrayList<>();
+        List<LlmCallContext.Caller> callers = new ArrayList<>();
+        doAnswer(invocation -> {
+            streamed.add(List.copyOf(invocation.<List<Message>>getArgument(0)));
+            callers.add(LlmCallContext.current());
+            StreamingLlmService.StreamCallback streamCallback = invocation.getArgument(5);
+            streamCallback.onContent("Indexed ");
+            streamCallback.onContent("the repository");
+            streamCallback.onComplete();
+            return CompletableFuture.completedFuture(null);
+        }).when(streamingLlmService).streamChat(any(), any(), any(), any(), any(), any());
+
+        RecordingCallback callback = new RecordingCallback();
+        LlmCallContext.Caller caller = new LlmCallContext.Caller(3L, 1L, LlmPriority.INTERACTIVE);
+
+        // When
+        LlmCallContext.set(caller);
+        try {
+            executor.executeStream(runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L,
+                    callback);
+        } finally {
+            LlmCallContext.clear();
+        }
+
+        // Then
+        assertEquals(List.of("content:Indexed ", "content:the repository", "complete"), callback.await());
+        // 工具循环在其他线程上执行，最后一步仍以请求的调用方排队
+        assertEquals(List.of(caller), callers);
+        // 第一步提供工具，最后一步不提供工具，以流式生成
+        verify(llmGenerationService, times(1)).chat(any(), any(), any(), any(), any());
+        List<Message> finalStep = streamed.get(0);
+        assertEquals(4, finalStep.size());
+        assertEquals(MessageRole.TOOL, finalStep.get(3).getRole());
+        assertEquals("indexed", finalStep.get(3).getContent());
+    }
+
+    @Test
+    void testExecuteStream_WithTools_LlmFailureReachesOnError() throws Exception {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(3);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("Index the repository");
+
+        McpTool tool = new McpTool();
+        tool.setToolName("indexer");
+        Map<String, AgentToolDispatcher.ResolvedTool> tools =
+                Map.of("indexer", new AgentToolDispatcher.ResolvedTool("indexer", tool, new McpServer()));
+        when(llmGenerationService.chat(any(), any(), any(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to generate response: 401 Unauthorized"));
+
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        executor.executeStream(runtime(agent, tools, List.of(LlmTool.builder().build())), request, 1L, callback);
+
+        // Then
+        assertEquals(List.of("error:Failed to generate response: 401 Unauthorized"), callback.await());
+        verifyNoInteractions(streamingLlmService);
+    }
+
+    @Test
+    void testExecute_FirstStepFailure_Throws() {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(3);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What is AI?");
+        when(llmGenerationService.chat(any(), any(), any(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to generate response: 503"));
+
+        // When / Then
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> executor.execute(runtime(agent, Map.of(), List.of()), request, 1L));
+        assertEquals("Failed to generate response: 503", e.getMessage());
+    }
+
+    @Test
+    void testExecuteStream_WithoutTools_AgentModelConfigUsesBudget() {
+        // Given
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(3);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What is AI?");
+
+        ModelConfigDto modelConfig = new ModelConfigDto();
+        modelConfig.setMaxTokens(2000);
+        ExecutionBudget budget = ExecutionBudget.of(0, 300);
+        AgentRuntime runtime = new AgentRuntime(agent, List.of(), Map.of(), List.of(), modelConfig,
+                AgentRuntime.DEFAULT_SYSTEM_PROMPT);
+
+        // When
+        executor.executeStream(runtime, request, 1L, CancellationToken.NONE, budget,
+                mock(StreamingChatCallback.class));
+
+        // Then
+        verify(streamingLlmService).streamGenerateWithConfig(eq(AgentRuntime.DEFAULT_SYSTEM_PROMPT), any(),
+                eq(modelConfig), any(), eq(budget), any(), any());
+    }
+
+    @Test
+    void testExecute_SpeculativeRetrievalReady_InjectsContext() {
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(5);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What is AI?");
+
+        AgentKnowledgeRetriever.Retrieval retrieval = mock(AgentKnowledgeRetriever.Retrieval.class);
+        when(knowledgeRetriever.start(any(), eq("What is AI?"), any())).thenReturn(retrieval);
+        when(retrieval.awaitContext()).thenReturn("[1] (ai.md) AI is artificial intelligence");
+
+        List<List<Message>> requests = new ArrayList<>();
+        List<List<LlmTool>> offeredTools = new ArrayList<>();
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            requests.add(List.copyOf(invocation.<List<Message>>getArgument(0)));
+            offeredTools.add(invocation.getArgument(1));
+            return LlmResponse.builder().content("AI is artificial intelligence").finishReason("stop").build();
+        });
+
+        AgentExecutionResponse response = executor.execute(runtime(agent, Map.of(), List.of()), request, 1L);
+
+        assertEquals("AI is artificial intelligence", response.getAnswer());
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).get(1).getContent().contains("[1] (ai.md) AI is artificial intelligence"));
+        // 结果已放入提示词，不再提供检索工具
+        assertNull(offeredTools.get(0));
+        verify(retrieval, never()).toolDefinition();
+        verifyNoInteractions(toolDispatcher);
+    }
+
+    @Test
+    void testExecute_SpeculativeRetrievalPending_OffersSearchTool() {
+        Agent agent = new Agent();
+        agent.setId(1L);
+        agent.setMaxIterations(5);
+
+        AgentExecutionRequest request = new AgentExecutionRequest();
+        request.setQuery("What is AI?");
+
+        LlmTool searchTool = LlmTool.builder()
+                .function(LlmTool.Function.builder().name(AgentKnowledgeRetriever.TOOL_NAME).build())
+                .build();
+        LlmToolCall searchCall = LlmToolCall.builder()
+                .id("call_1")
+                .function(LlmToolCall.Function.builder()
+                        .name(AgentKnowledgeRetriever.TOOL_NAME)
+                        .arguments("{\"query\":\"What is AI?\"}")
+                        .build())
+                .build();
+        AgentKnowledgeRetriever.Retrieval retrieval = mock(AgentKnowledgeRetriever.Retrieval.class);
+        when(knowledgeRetriever.start(any(), any(), any())).thenReturn(retrieval);
+        when(retrieval.awaitContext()).thenReturn(null);
+        when(retrieval.toolDefinition()).thenReturn(searchTool);
+        when(retrieval.handles(searchCall)).thenReturn(true);
+        when(retrieval.call(searchCall)).thenReturn(CompletableFuture.completedFuture(
+                new AgentToolDispatcher.Observation(searchCall, AgentKnowledgeRetriever.TOOL_NAME,
+                        "[1] (ai.md) AI is artificial intelligence", true, 5)));
+
+        List<List<Message>> requests = new ArrayList<>();
+        List<List<LlmTool>> offeredTools = new ArrayList<>();
+        when(llmGenerationService.chat(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            requests.add(List.copyOf(invocation.<List<Message>>getArgument(0)));
+            offeredTools.add(invocation.getArgument(1));
+            if (requests.size() == 1) {
+                return LlmResponse.builder().finishReason("tool_calls").toolCalls(List.of(searchCall)).build();
+            }
+            return LlmResponse.builder().content("AI is artificial intelligence").finishReason("stop").build();
+        });
+
+        AgentExecutionResponse response = executor.execute(runtime(agent, Map.of(), List.of()), request, 1L);
+
+        assertEquals("AI is artificial intelligence", response.getAnswer());
+        assertEquals(List.of(searchTool), offeredTools.get(0));
+        Message observation = requests.get(1).get(3);
+        assertEquals(MessageRole.TOOL, observation.getRole());
+        assertEquals("call_1", observation.getToolCallId());
+        assertEquals("[1] (ai.md) AI is artificial intelligence", observation.getContent());
+        // 检索在本地执行，不经过 MCP 工具分发
+        verifyNoInteractions(toolDispatcher);
+    }
+
+    /**
+     * 记录流式事件和回调所在线程的回调，await 等到流结束
+     */
+    private static class RecordingCallback implements StreamingChatCallback {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onContent(String content) {
+            record("content:" + content);
+        }
+
+        @Override
+        public void onToolProgress(String toolName, String message) {
+            record(toolName + ":" + message);
+        }
+
+        @Override
+        public void onComplete() {
+            record("complete");
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            record("error:" + e.getMessage());
+            done.countDown();
+        }
+
+        private void record(String event) {
+            events.add(event);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        List<String> await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS), "stream should terminate");
+            return events;
+        }
+    }
+
+    private static AgentRuntime runtime(Agent agent, Map<String, AgentToolDispatcher.ResolvedTool> tools,
+                                        List<LlmTool> definitions) {
+        String systemPrompt = agent.getSystemPrompt() != null ? agent.getSystemPrompt()
+                : AgentRuntime.DEFAULT_SYSTEM_PROMPT;
+        return new AgentRuntime(agent, List.of(), tools, definitions, null, systemPrompt);
+    }
+
+    private static LlmToolCall toolCall(String id, String arguments) {
+        return LlmToolCall.builder()
+                .id(id)
+                .function(LlmToolCall.Function.builder().name("weather").arguments(arguments).build())
+                .build();
+    }
 }
@@ -0,0 +1,96 @@
+package com.mydotey.ai.studio.service.agent.workflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.common.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("工作流图解析测试")
+class WorkflowGraphTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private WorkflowGraph parse(String json) {
+        return WorkflowGraph.parse(json, objectMapper);
+    }
+
+    private static List<String> ids(WorkflowGraph graph) {
+        return graph.nodes().stream().map(WorkflowNode::id).toList();
+    }
+
+    @Test
+    @DisplayName("模板引用和 dependsOn 共同决定上游，按拓扑顺序排列并去掉与输出无关的节点")
+    void testDependenciesAndOrder() {
+        WorkflowGraph graph = parse("""
+                {"nodes": [
+                  {"id": "answer", "type": "llm", "prompt": "{{merge}} {{query}}"},
+                  {"id": "merge", "type": "transform", "template": "{{docs}} {{weather}}"},
+                  {"id": "unused", "type": "llm", "prompt": "{{query}}"},
+                  {"id": "docs", "type": "retrieval"},
+                  {"id": "weather", "type": "tool", "tool": "weather", "dependsOn": ["docs"]}
+                ], "output": "answer"}
+                """);
+
+        assertEquals(List.of("docs", "weather", "merge", "answer"), ids(graph));
+        assertEquals("answer", graph.output().id());
+        assertEquals(List.of("docs", "weather"), graph.nodes().get(2).dependsOn());
+        assertEquals(WorkflowNodeType.TOOL, graph.nodes().get(1).type());
+    }
+
+    @Test
+    @DisplayName("未指定输出时使用最后一个节点，分支路径上的节点依赖分支节点")
+    void testDefaultOutputAndBranchTargets() {
+        WorkflowGraph graph = parse("""
+                {"nodes": [
+                  {"id": "docs", "type": "retrieval"},
+                  {"id": "route", "type": "branch", "condition": {"input": "{{docs}}", "operator": "empty"},
+                   "then": ["fallback"], "else": ["grounded"]},
+                  {"id": "fallback", "type": "llm"},
+                  {"id": "grounded", "type": "llm", "prompt": "{{docs}}"},
+                  {"id": "answer", "type": "transform", "template": "{{fallback}}{{grounded}}"}
+                ]}
+                """);
+
+        assertEquals("answer", graph.output().id());
+        assertEquals(List.of("route"), graph.nodes().get(2).dependsOn());
+        assertEquals(List.of("route", "docs"), graph.nodes().get(3).dependsOn());
+    }
+
+    @Test
+    @DisplayName("无效的定义在解析时报错")
+    void testInvalidDefinitions() {
+        Map<String, String> invalid = Map.of(
+                "{}", "nodes are required",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"sql\"}]}", "unknown type",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"llm\"}, {\"id\": \"a\", \"type\": \"llm\"}]}", "duplicate",
+                "{\"nodes\": [{\"id\": \"query\", \"type\": \"llm\"}]}", "invalid node id",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"llm\", \"prompt\": \"{{b}}\"}]}", "unknown node",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"llm\", \"prompt\": \"{{b}}\"},"
+                        + " {\"id\": \"b\", \"type\": \"llm\", \"prompt\": \"{{a}}\"}]}", "cycle",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"branch\", \"condition\": {\"operator\": \"gt\"}}]}",
+                "unknown operator",
+                "{\"nodes\": [{\"id\": \"a\", \"type\": \"llm\"}], \"output\": \"b\"}", "unknown output");
+
+        invalid.forEach((json, message) -> {
+            BusinessException e = assertThrows(BusinessException.class, () -> parse(json), json);
+            assertTrue(e.getMessage().contains(message), e.getMessage());
+        });
+    }
+
+    @Test
+    @DisplayName("模板替换请求变量和节点输出，JSON 中的字符串值同样替换")
+    void testTemplate() throws Exception {
+        Map<String, String> variables = Map.of("query", "Beijing", "docs", "$1 \\ doc");
+
+        assertEquals("Q: Beijing, D: $1 \\ doc, X: ", WorkflowTemplate.render(
+                "Q: {{query}}, D: {{ docs }}, X: {{missing}}", variables));
+        assertEquals("{\"city\":\"Beijing\",\"days\":3,\"tags\":[\"$1 \\\\ doc\"]}", WorkflowTemplate.render(
+                objectMapper.readTree("{\"city\":\"{{query}}\",\"days\":3,\"tags\":[\"{{docs}}\"]}"),
+                variables).toString());
+    }
+}
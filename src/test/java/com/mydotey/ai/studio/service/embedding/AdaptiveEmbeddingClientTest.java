@@ -0,0 +1,176 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import com.mydotey.ai.studio.config.AsyncConfig;
+import com.mydotey.ai.studio.config.EmbeddingConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("自适应向量化客户端测试")
+class AdaptiveEmbeddingClientTest {
+
+    private EmbeddingConfig config;
+    private AdaptiveEmbeddingClient client;
+
+    @BeforeEach
+    void setUp() {
+        config = new EmbeddingConfig();
+        config.setRetryBaseDelay(1);
+        config.setRetryMaxDelay(10);
+        config.setMaxRetries(3);
+        client = new AdaptiveEmbeddingClient(config, Runnable::run);
+    }
+
+    private static AdaptiveEmbeddingClient.BatchResult echo(List<String> batch) {
+        List<float[]> embeddings = new ArrayList<>();
+        for (String text : batch) {
+            embeddings.add(new float[]{text.length()});
+        }
+        return new AdaptiveEmbeddingClient.BatchResult(embeddings, new HttpHeaders());
+    }
+
+    private static HttpClientErrorException error(HttpStatus status, String body) {
+        return HttpClientErrorException.create(status, status.getReasonPhrase(), new HttpHeaders(),
+                body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("应该按最大条数和 token 数确定批次边界")
+    void testNextBatchEnd() {
+        List<String> texts = List.of("a", "b", "c", "d", "e");
+        assertEquals(2, AdaptiveEmbeddingClient.nextBatchEnd(texts, 0, 2, 10000));
+        assertEquals(5, AdaptiveEmbeddingClient.nextBatchEnd(texts, 4, 2, 10000));
+
+        String text = "x".repeat(20); // 约 5 tokens
+        assertEquals(2, AdaptiveEmbeddingClient.nextBatchEnd(List.of(text, text, text), 0, 100, 10));
+
+        // 超过 token 上限的单条文本独占一个批次
+        assertEquals(2, AdaptiveEmbeddingClient.nextBatchEnd(List.of("short", "y".repeat(200)), 1, 100, 10));
+    }
+
+    @Test
+    @DisplayName("被限流后应该退避重试并保持结果顺序")
+    void testRetryOnTooManyRequests() {
+        AtomicInteger calls = new AtomicInteger();
+
+        List<float[]> result = client.embed("m", List.of("a", "bb", "ccc"), 10, 10000, batch -> {
+            if (calls.getAndIncrement() == 0) {
+                throw error(HttpStatus.TOO_MANY_REQUESTS, "rate limited");
+            }
+            return echo(batch);
+        });
+
+        assertEquals(3, result.size());
+        assertEquals(3f, result.get(2)[0]);
+        assertTrue(calls.get() >= 2);
+        assertTrue(client.getConcurrencyLimit("m") < config.getInitialConcurrency());
+    }
+
+    @Test
+    @DisplayName("请求过大时应该拆分批次")
+    void testSplitOnPayloadTooLarge() {
+        List<Integer> batchSizes = new ArrayList<>();
+
+        List<float[]> result = client.embed("m", List.of("a", "b", "c", "d"), 10, 10000, batch -> {
+            batchSizes.add(batch.size());
+            if (batch.size() > 1) {
+                throw error(HttpStatus.BAD_REQUEST, "This model's maximum context length is 8192 tokens");
+            }
+            return echo(batch);
+        });
+
+        assertEquals(4, result.size());
+        assertEquals(4, batchSizes.get(0));
+        assertTrue(batchSizes.contains(1));
+    }
+
+    @Test
+    @DisplayName("不可重试的错误应该直接失败")
+    void testNonRetryableError() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(RuntimeException.class, () -> client.embed("m", List.of("a"), 10, 10000, batch -> {
+            calls.incrementAndGet();
+            throw error(HttpStatus.UNAUTHORIZED, "invalid key");
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("限流器放宽后实际并发应该超过初始并发度")
+    void testConcurrencyGrowsBeyondInitialLimit() {
+        AdaptiveEmbeddingClient concurrentClient =
+                new AdaptiveEmbeddingClient(config, new AsyncConfig().embeddingExecutor());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            texts.add("t" + i);
+        }
+
+        List<float[]> result = concurrentClient.embed("m", texts, 1, 10000, batch -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return echo(batch);
+        });
+
+        assertEquals(200, result.size());
+        assertTrue(concurrentClient.getConcurrencyLimit("m") > config.getInitialConcurrency());
+        assertTrue(peak.get() > config.getInitialConcurrency(),
+                "peak concurrency " + peak.get() + " should exceed " + config.getInitialConcurrency());
+    }
+
+    @Test
+    @DisplayName("AIMD 限流器应该成功时加性增长、限流时乘性减半")
+    void testAimdLimiter() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(4, 1, 8);
+
+        limiter.onThrottle(limiter.window());
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess();
+        }
+        assertTrue(limiter.getLimit() > 2);
+        assertTrue(limiter.getLimit() <= 8);
+    }
+
+    @Test
+    @DisplayName("同一窗口内并发请求被限流时上限只减半一次")
+    void testAimdLimiterBackoffOncePerWindow() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 1, 8);
+        long window = limiter.window();
+
+        // 同时在途的 4 个请求都被限流
+        for (int i = 0; i < 4; i++) {
+            limiter.onThrottle(window);
+        }
+        assertEquals(4, limiter.getLimit());
+
+        // 减半之后发出的请求被限流时继续减半
+        limiter.onThrottle(limiter.window());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("应该解析限流响应头中的重置时长")
+    void testParseDuration() {
+        assertEquals(TimeUnit.SECONDS.toNanos(360), RateLimitBudget.parseDurationNanos("6m0s"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), RateLimitBudget.parseDurationNanos("1.5s"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), RateLimitBudget.parseDurationNanos("20ms"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.mydotey.ai.studio.service.embedding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.EmbeddingConfig;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("向量模型 Provider 测试")
+class EmbeddingProviderTest {
+
+    private EmbeddingProvider provider;
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            provider.close();
+        }
+    }
+
+    private EmbeddingProvider createProvider(Integer maxBatchSize, Integer maxBatchTokens) {
+        EmbeddingConfig embeddingConfig = new EmbeddingConfig();
+        ModelConfigDto config = new ModelConfigDto();
+        config.setId(1L);
+        config.setName("test");
+        config.setEndpoint("http://localhost:1");
+        config.setModel("text-embedding-test");
+        config.setMaxBatchSize(maxBatchSize);
+        config.setMaxBatchTokens(maxBatchTokens);
+        config.setUpdatedAt(Instant.parse("2026-01-01T00:00:00Z"));
+        provider = new EmbeddingProvider(config, embeddingConfig, new ObjectMapper(),
+                new AdaptiveEmbeddingClient(embeddingConfig, Runnable::run));
+        return provider;
+    }
+
+    @Test
+    @DisplayName("未配置限制时应该使用全局默认值")
+    void testDefaultLimits() {
+        EmbeddingProvider provider = createProvider(null, null);
+
+        assertEquals(new EmbeddingConfig().getBatchSize(), provider.getMaxBatchSize());
+        assertEquals(new EmbeddingConfig().getMaxBatchTokens(), provider.getMaxBatchTokens());
+    }
+
+    @Test
+    @DisplayName("配置更新时间不同时应该判定为不同版本")
+    void testIsSameVersion() {
+        EmbeddingProvider provider = createProvider(10, 100);
+
+        ModelConfigDto same = new ModelConfigDto();
+        same.setId(1L);
+        same.setUpdatedAt(Instant.parse("2026-01-01T00:00:00Z"));
+        ModelConfigDto changed = new ModelConfigDto();
+        changed.setId(1L);
+        changed.setUpdatedAt(Instant.parse("2026-02-01T00:00:00Z"));
+
+        assertTrue(provider.isSameVersion(same));
+        assertFalse(provider.isSameVersion(changed));
+    }
+
+    @Test
+    @DisplayName("应该按 index 还原顺序")
+    void testParseEmbeddingsByIndex() throws Exception {
+        EmbeddingProvider provider = createProvider(null, null);
+
+        List<float[]> embeddings = provider.parseEmbeddings("""
+                {"data": [{"index": 1, "embedding": [2.0]}, {"index": 0, "embedding": [1.0]}]}
+                """, 2);
+
+        assertEquals(1f, embeddings.get(0)[0]);
+        assertEquals(2f, embeddings.get(1)[0]);
+    }
+
+    @Test
+    @DisplayName("index 越界、重复或缺少向量时应该抛出明确的异常")
+    void testParseEmbeddingsRejectsInvalidIndex() {
+        EmbeddingProvider provider = createProvider(null, null);
+
+        IllegalStateException outOfRange = assertThrows(IllegalStateException.class, () -> provider.parseEmbeddings("""
+                {"data": [{"index": 0, "embedding": [1.0]}, {"index": 2, "embedding": [2.0]}]}
+                """, 2));
+        assertTrue(outOfRange.getMessage().contains("out of range"));
+
+        IllegalStateException negative = assertThrows(IllegalStateException.class, () -> provider.parseEmbeddings("""
+                {"data": [{"index": -1, "embedding": [1.0]}]}
+                """, 1));
+        assertTrue(negative.getMessage().contains("out of range"));
+
+        IllegalStateException duplicate = assertThrows(IllegalStateException.class, () -> provider.parseEmbeddings("""
+                {"data": [{"index": 0, "embedding": [1.0]}, {"index": 0, "embedding": [2.0]}]}
+                """, 2));
+        assertTrue(duplicate.getMessage().contains("Duplicate"));
+
+        IllegalStateException missing = assertThrows(IllegalStateException.class, () -> provider.parseEmbeddings("""
+                {"data": [{"index": 0}]}
+                """, 1));
+        assertTrue(missing.getMessage().contains("Missing"));
+    }
+}
@@ -0,0 +1,311 @@
+package com.mydotey.ai.studio.service.journal;
+
+import com.mydotey.ai.studio.config.MessageJournalConfig;
+import com.mydotey.ai.studio.entity.Message;
+import com.mydotey.ai.studio.mapper.ConversationMapper;
+import com.mydotey.ai.studio.mapper.MessageMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@DisplayName("消息写后持久化测试")
+class MessageJournalTest {
+
+    private MessageMapper messageMapper;
+    private ConversationMapper conversationMapper;
+    private MessageJournalConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageJournal journal;
+    private final List<List<Long>> batches = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        messageMapper = mock(MessageMapper.class);
+        conversationMapper = mock(ConversationMapper.class);
+        config = new MessageJournalConfig();
+        config.setFlushInterval(20);
+        meterRegistry = new SimpleMeterRegistry();
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            batches.add(messages.stream().map(Message::getId).toList());
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.shutdown();
+        }
+    }
+
+    private void startJournal() {
+        journal = new MessageJournal(messageMapper, conversationMapper, config, meterRegistry);
+        journal.start();
+    }
+
+    @Test
+    @DisplayName("写入期间追加的消息合并为一次多行 INSERT，按追加顺序写入")
+    void testBatchesInAppendOrder() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            batches.add(messages.stream().map(Message::getId).toList());
+            if (batches.size() == 1) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        journal.append(message(1L, 100L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        journal.append(message(2L, 100L));
+        journal.append(message(3L, 200L));
+        journal.append(message(4L, 100L));
+        release.countDown();
+        journal.sync(100L);
+        journal.sync(200L);
+
+        assertEquals(List.of(List.of(1L), List.of(2L, 3L, 4L)), batches);
+    }
+
+    @Test
+    @DisplayName("读取对话前等待该对话尚未写入的消息")
+    void testSyncWaitsForPendingMessages() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            List<Message> messages = invocation.getArgument(0);
+            batches.add(messages.stream().map(Message::getId).toList());
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        journal.append(message(1L, 100L));
+        // 其他对话没有待写入的消息，不等待
+        journal.sync(200L);
+        assertTrue(batches.isEmpty());
+
+        Thread reader = Thread.ofVirtual().start(() -> journal.sync(100L));
+        reader.join(100);
+        assertTrue(reader.isAlive());
+
+        release.countDown();
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+        assertEquals(List.of(List.of(1L)), batches);
+    }
+
+    @Test
+    @DisplayName("同一对话的多次更新时间合并为一次更新")
+    void testTouchesCoalesced() {
+        startJournal();
+
+        journal.touch(100L);
+        journal.touch(100L);
+        journal.touch(200L);
+
+        verify(conversationMapper, timeout(5000)).touchAll(argThat(touches -> touches.size() == 2
+                && touches.containsKey(100L) && touches.containsKey(200L)));
+        verify(conversationMapper, after(100).times(1)).touchAll(anyMap());
+    }
+
+    @Test
+    @DisplayName("批量写入失败时逐条写入，同一对话前面的消息失败后不再写入后面的消息")
+    void testFailedBatchKeepsConversationOrder() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            if (messages.size() > 1) {
+                throw new RuntimeException("batch failed");
+            }
+            if (messages.get(0).getId() == 2L) {
+                throw new RuntimeException("conversation deleted");
+            }
+            batches.add(messages.stream().map(Message::getId).toList());
+            if (batches.size() == 1) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return 1;
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        journal.append(message(1L, 100L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        journal.append(message(2L, 100L));
+        journal.append(message(3L, 200L));
+        journal.append(message(4L, 100L));
+        release.countDown();
+        journal.sync(100L);
+        journal.sync(200L);
+
+        assertEquals(List.of(List.of(1L), List.of(3L)), batches);
+        assertEquals(2.0, meterRegistry.get("chat.message.journal.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("对话的消息写入失败后，之后批次中该对话的消息也不再写入，重新读取对话后恢复写入")
+    void testFailedConversationSkippedAcrossBatches() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            if (messages.get(0).getId() == 1L) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                throw new RuntimeException("conversation deleted");
+            }
+            batches.add(messages.stream().map(Message::getId).toList());
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        // 问题写入失败时回答在下一批中
+        journal.append(message(1L, 100L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        journal.append(message(2L, 100L));
+        release.countDown();
+        journal.sync(100L);
+
+        assertTrue(batches.isEmpty());
+        assertEquals(2.0, meterRegistry.get("chat.message.journal.dropped").counter().count());
+
+        journal.append(message(3L, 100L));
+        journal.sync(100L);
+
+        assertEquals(List.of(List.of(3L)), batches);
+    }
+
+    @Test
+    @DisplayName("数据库暂时不可用时按退避间隔重试同一批，不丢弃消息")
+    void testTransientFailureRetried() {
+        config.setRetryBackoff(10);
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() <= 3) {
+                throw new TransientDataAccessResourceException("connection refused");
+            }
+            List<Message> messages = invocation.getArgument(0);
+            batches.add(messages.stream().map(Message::getId).toList());
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        journal.append(message(1L, 100L));
+        journal.sync(100L);
+        journal.append(message(2L, 100L));
+        journal.sync(100L);
+
+        assertEquals(List.of(List.of(1L), List.of(2L)), batches);
+        assertEquals(0.0, meterRegistry.get("chat.message.journal.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("队列已满时先等同一对话排在前面的消息写入，再在当前线程上写入")
+    void testFullQueueKeepsConversationOrder() throws Exception {
+        config.setQueueCapacity(1);
+        config.setOfferTimeout(10);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            if (messages.get(0).getId() == 1L) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            batches.add(messages.stream().map(Message::getId).toList());
+            return messages.size();
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        journal.append(message(1L, 100L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        journal.append(message(2L, 100L));
+        Thread appender = Thread.ofVirtual().start(() -> journal.append(message(3L, 100L)));
+        appender.join(200);
+        assertTrue(appender.isAlive());
+        assertTrue(batches.isEmpty());
+
+        release.countDown();
+        appender.join(5000);
+        assertFalse(appender.isAlive());
+        assertEquals(List.of(List.of(1L), List.of(2L), List.of(3L)), batches);
+    }
+
+    @Test
+    @DisplayName("队列已满且前面的消息迟迟没有写入时拒绝追加")
+    void testFullQueueShedsWhenConversationStalled() throws Exception {
+        config.setQueueCapacity(1);
+        config.setOfferTimeout(10);
+        config.setSyncTimeout(50);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 1;
+        }).when(messageMapper).insertBatch(any());
+        startJournal();
+
+        try {
+            journal.append(message(1L, 100L));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            journal.append(message(2L, 100L));
+
+            assertThrows(IllegalStateException.class, () -> journal.append(message(3L, 100L)));
+            assertEquals(1.0, meterRegistry.get("chat.message.journal.dropped").counter().count());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("未启用时在当前线程上同步写入")
+    void testDisabledWritesSynchronously() {
+        config.setEnabled(false);
+        when(messageMapper.nextIds(1)).thenReturn(List.of(7L));
+        startJournal();
+
+        Message message = message(null, 100L);
+        journal.append(message);
+        journal.touch(100L);
+
+        assertEquals(7L, message.getId());
+        assertNotNull(message.getCreatedAt());
+        assertEquals(List.of(List.of(7L)), batches);
+        verify(conversationMapper).touchAll(argThat(touches -> touches.keySet().equals(Set.of(100L))));
+    }
+
+    private static Message message(Long id, Long conversationId) {
+        Message message = new Message();
+        message.setId(id);
+        message.setConversationId(conversationId);
+        message.setRole("user");
+        message.setContent("message " + id);
+        if (id != null) {
+            message.setCreatedAt(Instant.now());
+        }
+        return message;
+    }
+}
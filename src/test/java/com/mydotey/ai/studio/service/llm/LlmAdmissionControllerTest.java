@@ -0,0 +1,215 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.mydotey.ai.studio.common.exception.LlmOverloadedException;
+import com.mydotey.ai.studio.config.LlmConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LLM 准入控制测试")
+class LlmAdmissionControllerTest {
+
+    private static final String POOL = "test";
+
+    private LlmConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private LlmAdmissionController controller;
+
+    private final List<String> grantOrder = Collections.synchronizedList(new ArrayList<>());
+    private final Deque<LlmAdmissionController.Permit> granted = new ArrayDeque<>();
+
+    @BeforeEach
+    void setUp() {
+        config = new LlmConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        controller = new LlmAdmissionController(config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.shutdown();
+    }
+
+    private static LlmCallContext.Caller caller(Long orgId, Long userId, LlmPriority priority) {
+        return new LlmCallContext.Caller(orgId, userId, priority);
+    }
+
+    /**
+     * 申请许可，获得许可时记录顺序
+     */
+    private CompletableFuture<LlmAdmissionController.Permit> acquire(String label, LlmCallContext.Caller caller) {
+        CompletableFuture<LlmAdmissionController.Permit> future = controller.acquire(POOL, 1, caller);
+        future.thenAccept(permit -> {
+            grantOrder.add(label);
+            granted.add(permit);
+        });
+        return future;
+    }
+
+    /**
+     * 依次归还最早获得的许可，直到没有新的许可被分配
+     */
+    private void drain() {
+        LlmAdmissionController.Permit permit;
+        while ((permit = granted.poll()) != null) {
+            permit.release();
+        }
+    }
+
+    @Test
+    @DisplayName("许可用完后排队，归还后按顺序放行")
+    void testQueueUntilReleased() {
+        acquire("first", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        CompletableFuture<LlmAdmissionController.Permit> second = acquire("second", caller(1L, 1L, LlmPriority.INTERACTIVE));
+
+        assertFalse(second.isDone());
+        assertEquals(1, controller.queueDepth(POOL));
+        assertEquals(1.0, meterRegistry.get("llm.admission.queue.depth").tag("pool", POOL).gauge().value());
+
+        drain();
+
+        assertEquals(List.of("first", "second"), grantOrder);
+        assertEquals(0, controller.queueDepth(POOL));
+        assertEquals(0, controller.inUse(POOL));
+        assertEquals(2, meterRegistry.get("llm.admission.wait").tag("pool", POOL)
+                .tag("priority", "interactive").timer().count());
+    }
+
+    @Test
+    @DisplayName("交互式调用先于先到的批处理调用放行")
+    void testInteractiveBeforeBatch() {
+        acquire("holder", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("batch", caller(1L, 2L, LlmPriority.BATCH));
+        acquire("interactive", caller(1L, 3L, LlmPriority.INTERACTIVE));
+
+        drain();
+
+        assertEquals(List.of("holder", "interactive", "batch"), grantOrder);
+    }
+
+    @Test
+    @DisplayName("组织之间按权重公平放行")
+    void testWeightedFairnessAcrossOrgs() {
+        config.getAdmission().getOrgWeights().put(1L, 2);
+        acquire("holder", caller(9L, 9L, LlmPriority.INTERACTIVE));
+        for (int i = 0; i < 4; i++) {
+            acquire("org1", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        }
+        for (int i = 0; i < 4; i++) {
+            acquire("org2", caller(2L, 2L, LlmPriority.INTERACTIVE));
+        }
+
+        drain();
+
+        // 前 6 次放行中权重 2 的组织占 4 次，而不是按到达顺序先放行完
+        List<String> firstSix = grantOrder.subList(1, 7);
+        assertEquals(4, Collections.frequency(firstSix, "org1"));
+        assertEquals(2, Collections.frequency(firstSix, "org2"));
+        assertEquals(9, grantOrder.size());
+    }
+
+    @Test
+    @DisplayName("同一组织内按用户轮转")
+    void testRoundRobinAcrossUsers() {
+        acquire("holder", caller(1L, 9L, LlmPriority.INTERACTIVE));
+        acquire("user1", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("user1", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("user1", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("user2", caller(1L, 2L, LlmPriority.INTERACTIVE));
+
+        drain();
+
+        assertEquals(List.of("holder", "user1", "user2", "user1", "user1"), grantOrder);
+    }
+
+    @Test
+    @DisplayName("队列已满时直接拒绝并给出重试等待时间")
+    void testRejectWhenQueueFull() {
+        config.getAdmission().setMaxQueueSize(1);
+        acquire("holder", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("queued", caller(1L, 1L, LlmPriority.INTERACTIVE));
+
+        CompletableFuture<LlmAdmissionController.Permit> rejected = controller.acquire(POOL, 1,
+                caller(1L, 1L, LlmPriority.INTERACTIVE));
+
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        LlmOverloadedException overloaded = assertInstanceOf(LlmOverloadedException.class, e.getCause());
+        assertEquals(429, overloaded.getCode());
+        assertTrue(overloaded.getRetryAfterSeconds() >= 1);
+        assertEquals(1.0, meterRegistry.get("llm.admission.rejected").tag("reason", "queue_full").counter().count());
+    }
+
+    @Test
+    @DisplayName("排队超时后拒绝并移出队列")
+    void testQueueTimeout() {
+        config.getAdmission().setBatchQueueTimeout(50);
+        acquire("holder", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        CompletableFuture<LlmAdmissionController.Permit> waiting = controller.acquire(POOL, 1,
+                caller(1L, 1L, LlmPriority.BATCH));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LlmOverloadedException.class, e.getCause());
+        assertEquals(0, controller.queueDepth(POOL));
+        assertEquals(1.0, meterRegistry.get("llm.admission.rejected").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    @DisplayName("放弃等待的调用移出队列，不占用许可")
+    void testCancelWaiting() {
+        acquire("holder", caller(1L, 1L, LlmPriority.INTERACTIVE));
+        CompletableFuture<LlmAdmissionController.Permit> cancelled = acquire("cancelled",
+                caller(1L, 1L, LlmPriority.INTERACTIVE));
+        acquire("next", caller(1L, 2L, LlmPriority.INTERACTIVE));
+
+        assertTrue(cancelled.cancel(false));
+        assertEquals(1, controller.queueDepth(POOL));
+        drain();
+
+        assertEquals(List.of("holder", "next"), grantOrder);
+        assertEquals(0, controller.inUse(POOL));
+    }
+
+    @Test
+    @DisplayName("批处理调用最多占用一部分许可")
+    void testBatchShare() {
+        CompletableFuture<LlmAdmissionController.Permit> first = controller.acquire(POOL, 4,
+                caller(null, null, LlmPriority.BATCH));
+        CompletableFuture<LlmAdmissionController.Permit> second = controller.acquire(POOL, 4,
+                caller(null, null, LlmPriority.BATCH));
+        CompletableFuture<LlmAdmissionController.Permit> third = controller.acquire(POOL, 4,
+                caller(null, null, LlmPriority.BATCH));
+        CompletableFuture<LlmAdmissionController.Permit> interactive = controller.acquire(POOL, 4,
+                caller(1L, 1L, LlmPriority.INTERACTIVE));
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertTrue(interactive.isDone());
+
+        first.join().release();
+        assertTrue(third.isDone());
+    }
+
+    @Test
+    @DisplayName("未启用时不限制")
+    void testDisabled() {
+        config.getAdmission().setEnabled(false);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(controller.acquire(POOL, 1, caller(1L, 1L, LlmPriority.INTERACTIVE)).isDone());
+        }
+        assertEquals(0, controller.inUse(POOL));
+    }
+}
@@ -0,0 +1,43 @@
+package com.mydotey.ai.studio.service.llm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LLM 调用方上下文测试")
+class LlmCallContextTest {
+
+    private static final LlmCallContext.Caller CALLER = new LlmCallContext.Caller(3L, 5L, LlmPriority.INTERACTIVE);
+
+    @AfterEach
+    void tearDown() {
+        LlmCallContext.clear();
+    }
+
+    @Test
+    @DisplayName("包装的执行器在执行线程上使用提交时的调用方，结束后恢复执行线程原来的调用方")
+    void testPropagatingExecutor() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        ExecutorService executor = LlmCallContext.propagating(pool);
+        try {
+            LlmCallContext.set(CALLER);
+            assertEquals(CALLER, executor.submit(LlmCallContext::current).get(5, TimeUnit.SECONDS));
+
+            // 未绑定调用方的线程提交的任务视为后台调用，不沿用执行线程上一个任务的调用方
+            LlmCallContext.clear();
+            assertEquals(LlmPriority.BATCH,
+                    executor.submit(LlmCallContext::current).get(5, TimeUnit.SECONDS).priority());
+            assertEquals(LlmPriority.BATCH,
+                    pool.submit(LlmCallContext::current).get(5, TimeUnit.SECONDS).priority());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(pool.isShutdown());
+    }
+}
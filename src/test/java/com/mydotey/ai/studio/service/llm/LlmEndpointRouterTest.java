@@ -0,0 +1,120 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.LlmConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LLM 多端点路由测试")
+class LlmEndpointRouterTest {
+
+    private static final String A = "http://a";
+    private static final String B = "http://b";
+
+    private LlmConfig config;
+    private LlmEndpointRouter router;
+
+    @BeforeEach
+    void setUp() {
+        config = new LlmConfig();
+        router = new LlmEndpointRouter(config, new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("应该把主端点放在首位并去重附加端点")
+    void testCandidates() {
+        assertEquals(List.of(A, B), router.candidates(A, "[\"http://b\", \"http://a\", \" \"]"));
+        assertEquals(List.of(A), router.candidates(A, "not json"));
+        assertEquals(List.of(A), router.candidates(A, (String) null));
+    }
+
+    @Test
+    @DisplayName("主端点未配置时应该明确报错")
+    void testCandidatesWithoutPrimary() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> router.candidates(null, (String) null));
+        assertEquals("LLM endpoint is not configured", e.getMessage());
+        assertThrows(IllegalStateException.class, () -> router.candidates(" ", List.of(B)));
+    }
+
+    @Test
+    @DisplayName("应该优先选择进行中请求较少的端点")
+    void testSelectPrefersLessLoadedEndpoint() {
+        router.start(A);
+        router.start(A);
+        router.start(A);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(B, router.select(List.of(A, B), Set.of()));
+        }
+        assertEquals(A, router.select(List.of(A, B), Set.of(B)));
+        assertNull(router.select(List.of(A, B), Set.of(A, B)));
+    }
+
+    @Test
+    @DisplayName("连续失败后应该熔断并避开该端点")
+    void testCircuitOpensAfterFailures() {
+        config.getRouting().setFailureThreshold(2);
+        router.start(A).failure();
+        assertEquals(CircuitBreaker.State.CLOSED, router.getCircuitState(A));
+        router.start(A).failure();
+        assertEquals(CircuitBreaker.State.OPEN, router.getCircuitState(A));
+        assertEquals(0, router.getInflight(A));
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(B, router.select(List.of(A, B), Set.of()));
+        }
+        // 全部熔断时仍然可以选择，避免单端点被完全阻断
+        assertEquals(A, router.select(List.of(A), Set.of()));
+    }
+
+    @Test
+    @DisplayName("对冲延迟应该取首 token 时间分位数并限制在上下限之间")
+    void testHedgeDelay() {
+        assertEquals(-1, router.hedgeDelayMillis(A), "hedging is disabled by default");
+
+        config.getRouting().setHedgeEnabled(true);
+        config.getRouting().setHedgeMinSamples(3);
+        config.getRouting().setHedgeMinDelay(100);
+        for (int i = 0; i < 2; i++) {
+            LlmEndpointRouter.Attempt attempt = router.start(A);
+            attempt.firstByte();
+            attempt.success();
+        }
+        assertEquals(-1, router.hedgeDelayMillis(A), "not enough samples");
+
+        LlmEndpointRouter.Attempt attempt = router.start(A);
+        attempt.firstByte();
+        attempt.success();
+        assertEquals(100, router.hedgeDelayMillis(A));
+        assertTrue(router.getLatencyEwma(A) >= 0);
+    }
+
+    @Test
+    @DisplayName("熔断到期后只放行一个试探请求")
+    void testCircuitBreakerHalfOpen() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, now::get);
+
+        breaker.onAttempt();
+        breaker.onFailure();
+        assertFalse(breaker.isAvailable());
+
+        now.addAndGet(1_000_000_000L);
+        assertTrue(breaker.isAvailable());
+        breaker.onAttempt();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable(), "only one trial request in half-open state");
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.isAvailable());
+    }
+}
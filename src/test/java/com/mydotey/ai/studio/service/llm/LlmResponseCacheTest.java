@@ -0,0 +1,118 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.dto.LlmRequest;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.Message;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.dto.ModelConfigDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@DisplayName("LLM 响应缓存测试")
+class LlmResponseCacheTest {
+
+    private LlmConfig config;
+    private ObjectProvider<StringRedisTemplate> redisProvider;
+    private LlmResponseCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config = new LlmConfig();
+        redisProvider = mock(ObjectProvider.class);
+        cache = new LlmResponseCache(config, new ObjectMapper(), redisProvider);
+    }
+
+    private static LlmRequest request(String question, boolean stream) {
+        return LlmRequest.builder()
+                .model("gpt-4")
+                .messages(List.of(
+                        Message.builder().role(MessageRole.SYSTEM).content("你是助手").build(),
+                        Message.builder().role(MessageRole.USER).content(question).build()))
+                .temperature(0.0)
+                .maxTokens(1000)
+                .stream(stream)
+                .build();
+    }
+
+    @Test
+    @DisplayName("相同请求应该生成相同的键，stream 标志不影响键")
+    void testBuildKeyIsStable() {
+        String key = cache.buildKey("http://llm", null, "sk-a", request("问题", false));
+
+        assertEquals(key, cache.buildKey("http://llm", null, "sk-a", request("问题", false)));
+        assertEquals(key, cache.buildKey("http://llm", null, "sk-a", request("问题", true)));
+        assertNotEquals(key, cache.buildKey("http://llm", null, "sk-a", request("另一个问题", false)));
+        assertNotEquals(key, cache.buildKey("http://other", null, "sk-a", request("问题", false)));
+    }
+
+    @Test
+    @DisplayName("不同模型配置或 API Key 的相同请求应该生成不同的键")
+    void testBuildKeyIsScopedToCaller() {
+        ModelConfigDto first = new ModelConfigDto();
+        first.setId(1L);
+        ModelConfigDto second = new ModelConfigDto();
+        second.setId(2L);
+        String key = cache.buildKey("http://llm", first, "sk-a", request("问题", false));
+
+        assertEquals(key, cache.buildKey("http://llm", first, "sk-a", request("问题", false)));
+        assertNotEquals(key, cache.buildKey("http://llm", second, "sk-a", request("问题", false)));
+        assertNotEquals(key, cache.buildKey("http://llm", first, "sk-b", request("问题", false)));
+        assertNotEquals(key, cache.buildKey("http://llm", null, "sk-a", request("问题", false)));
+    }
+
+    @Test
+    @DisplayName("聊天机器人设置优先于模型配置，温度超过阈值时不启用")
+    void testIsEnabled() {
+        ModelConfigDto modelConfig = new ModelConfigDto();
+
+        assertFalse(cache.isEnabled(modelConfig, null, 0.0), "global default is off");
+
+        modelConfig.setResponseCacheEnabled(true);
+        assertTrue(cache.isEnabled(modelConfig, null, 0.0));
+        assertFalse(cache.isEnabled(modelConfig, false, 0.0));
+        assertFalse(cache.isEnabled(modelConfig, null, 0.7));
+        assertFalse(cache.isEnabled(modelConfig, true, null));
+
+        modelConfig.setResponseCacheEnabled(null);
+        config.getResponseCache().setEnabled(true);
+        assertTrue(cache.isEnabled(modelConfig, null, 0.0));
+    }
+
+    @Test
+    @DisplayName("只缓存正常结束的响应")
+    void testPutAndGet() {
+        String key = cache.buildKey("http://llm", null, "sk-a", request("问题", false));
+        assertNull(cache.get(key));
+
+        cache.put(key, LlmResponse.builder().content("截断").finishReason("length").build(), 60);
+        assertNull(cache.get(key));
+
+        cache.put(key, LlmResponse.builder().content("回答").finishReason("stop").build(), 60);
+        assertEquals("回答", cache.get(key).getContent());
+
+        // 未开启 Redis 时不访问 Redis
+        verifyNoInteractions(redisProvider);
+    }
+
+    @Test
+    @DisplayName("模型配置的过期时间优先于全局默认值")
+    void testTtlSeconds() {
+        ModelConfigDto modelConfig = new ModelConfigDto();
+        assertEquals(config.getResponseCache().getTtl(), cache.getTtlSeconds(modelConfig));
+
+        modelConfig.setResponseCacheTtl(120);
+        assertEquals(120, cache.getTtlSeconds(modelConfig));
+    }
+}
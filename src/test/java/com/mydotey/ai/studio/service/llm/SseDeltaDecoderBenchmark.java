@@ -0,0 +1,81 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式增量解码的分配基准
+ * <p>
+ * 对比按行 readTree 与 {@link SseDeltaDecoder} 的吞吐和每次操作的分配量（gc.alloc.rate.norm），
+ * 运行 main 方法即可，GC profiler 已默认开启
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseDeltaDecoderBenchmark {
+
+    private static final String CHUNK = "{\"id\":\"chatcmpl-9xYz\",\"object\":\"chat.completion.chunk\","
+            + "\"created\":1718000000,\"model\":\"gpt-4o-mini\",\"system_fingerprint\":\"fp_0123456789\","
+            + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\" token\"},\"logprobs\":null,"
+            + "\"finish_reason\":null}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] bytes = CHUNK.getBytes(StandardCharsets.UTF_8);
+    private final String line = "data: " + CHUNK;
+
+    private SseDeltaDecoder decoder;
+    private SseDeltaDecoder.Delta delta;
+
+    @Setup
+    public void setUp() {
+        decoder = new SseDeltaDecoder(objectMapper.getFactory());
+        delta = new SseDeltaDecoder.Delta();
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.close();
+    }
+
+    /**
+     * 原实现：按行解码为字符串后构建 JsonNode 树
+     */
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws IOException {
+        String data = line.substring(6);
+        JsonNode choices = objectMapper.readTree(data).get("choices");
+        JsonNode choice = choices.get(0);
+        blackhole.consume(choice.get("delta").get("content").asText());
+        blackhole.consume(choice.get("finish_reason"));
+    }
+
+    /**
+     * 新实现：复用非阻塞解析器直接解码原始字节
+     */
+    @Benchmark
+    public void deltaDecoder(Blackhole blackhole) throws IOException {
+        decoder.decode(bytes, 0, bytes.length, delta);
+        blackhole.consume(delta.getContent());
+        blackhole.consume(delta.getFinishReason());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SseDeltaDecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("流式增量解码器测试")
+class SseDeltaDecoderTest {
+
+    private final SseDeltaDecoder decoder = new SseDeltaDecoder(new JsonFactory());
+    private final SseDeltaDecoder.Delta delta = new SseDeltaDecoder.Delta();
+
+    @AfterEach
+    void tearDown() {
+        decoder.close();
+    }
+
+    private void decode(String json) throws IOException {
+        byte[] bytes = ("data: " + json).getBytes(StandardCharsets.UTF_8);
+        decoder.decode(bytes, 6, bytes.length - 6, delta);
+    }
+
+    @Test
+    @DisplayName("应该提取内容和结束原因")
+    void testDecodeContentAndFinishReason() throws IOException {
+        decode("{\"id\":\"1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"你好\"},"
+                + "\"finish_reason\":null}]}");
+        assertEquals("你好", delta.getContent());
+        assertNull(delta.getFinishReason());
+
+        decode("{\"choices\":[{\"delta\":{},\"finish_reason\":\"stop\"}]}");
+        assertNull(delta.getContent());
+        assertEquals("stop", delta.getFinishReason());
+    }
+
+    @Test
+    @DisplayName("应该跳过无关的嵌套字段和后续 choice")
+    void testSkipNestedFields() throws IOException {
+        decode("{\"usage\":{\"a\":[1,{\"b\":2}]},\"choices\":[{\"logprobs\":{\"content\":[{\"token\":\"x\"}]},"
+                + "\"delta\":{\"tool_calls\":[{\"function\":{\"arguments\":\"{}\"}}],\"content\":\"a\\nb\"}},"
+                + "{\"delta\":{\"content\":\"second\"}}]}");
+        assertEquals("a\nb", delta.getContent());
+    }
+
+    @Test
+    @DisplayName("非法数据后应该重建解析器并继续解码")
+    void testRecoverAfterMalformedChunk() throws IOException {
+        assertThrows(IOException.class, () -> decode("{\"choices\":[{\"delta\":"));
+        assertThrows(IOException.class, () -> decode("not json"));
+
+        decode("{\"choices\":[{\"delta\":{\"content\":\"ok\"}}]}");
+        assertEquals("ok", delta.getContent());
+    }
+
+    @Test
+    @DisplayName("同一解析器应该能连续解码多段负载")
+    void testReuseAcrossChunks() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            decode("{\"choices\":[{\"delta\":{\"content\":\"" + i + "\"}}]}");
+            assertEquals(String.valueOf(i), delta.getContent());
+        }
+    }
+}
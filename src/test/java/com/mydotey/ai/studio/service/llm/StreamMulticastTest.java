@@ -0,0 +1,131 @@
+package com.mydotey.ai.studio.service.llm;
+
+import com.mydotey.ai.studio.service.StreamingLlmService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("流式响应多播测试")
+class StreamMulticastTest {
+
+    private static class RecordingCallback implements StreamingLlmService.StreamCallback {
+        final List<String> contents = new CopyOnWriteArrayList<>();
+        final AtomicReference<String> finishReason = new AtomicReference<>();
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+
+        @Override
+        public void onContent(String content) {
+            contents.add(content);
+        }
+
+        @Override
+        public void onFinish(String reason) {
+            finishReason.set(reason);
+        }
+
+        @Override
+        public void onComplete() {
+            completions.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error.set(e);
+        }
+    }
+
+    @Test
+    @DisplayName("后加入的订阅者应该先收到已产生的内容")
+    void testLateSubscriberReceivesAllTokens() {
+        AtomicInteger terminations = new AtomicInteger();
+        StreamMulticast multicast = new StreamMulticast(m -> terminations.incrementAndGet());
+        RecordingCallback early = new RecordingCallback();
+        RecordingCallback late = new RecordingCallback();
+
+        CompletableFuture<Void> earlyDone = multicast.subscribe(early);
+        multicast.onContent("你");
+        multicast.onContent("好");
+        CompletableFuture<Void> lateDone = multicast.subscribe(late);
+        multicast.onContent("！");
+        multicast.onFinish("stop");
+        multicast.onComplete();
+
+        assertEquals(List.of("你", "好", "！"), early.contents);
+        assertEquals(List.of("你", "好", "！"), late.contents);
+        assertEquals("stop", late.finishReason.get());
+        assertEquals(1, early.completions.get());
+        assertEquals(1, late.completions.get());
+        assertTrue(earlyDone.isDone());
+        assertTrue(lateDone.isDone());
+        assertEquals(1, terminations.get());
+    }
+
+    @Test
+    @DisplayName("结束后不再接受订阅，错误只通知一次")
+    void testTerminatedMulticastRejectsSubscribers() {
+        StreamMulticast multicast = new StreamMulticast(m -> { });
+        RecordingCallback callback = new RecordingCallback();
+        multicast.subscribe(callback);
+
+        multicast.onError(new RuntimeException("upstream failed"));
+        multicast.onComplete();
+
+        assertNotNull(callback.error.get());
+        assertEquals(0, callback.completions.get());
+        assertNull(multicast.subscribe(new RecordingCallback()));
+    }
+
+    @Test
+    @DisplayName("单个订阅者异常不影响其他订阅者")
+    void testFailingSubscriberIsIsolated() {
+        StreamMulticast multicast = new StreamMulticast(m -> { });
+        RecordingCallback healthy = new RecordingCallback();
+        multicast.subscribe(new RecordingCallback() {
+            @Override
+            public void onContent(String content) {
+                throw new IllegalStateException("client gone");
+            }
+        });
+        multicast.subscribe(healthy);
+
+        multicast.onContent("内容");
+        multicast.onComplete();
+
+        assertEquals(List.of("内容"), healthy.contents);
+        assertEquals(1, healthy.completions.get());
+    }
+
+    @Test
+    @DisplayName("最后一个订阅者退出时才中断上游")
+    void testLastUnsubscribeCancelsUpstream() {
+        AtomicInteger terminations = new AtomicInteger();
+        AtomicInteger upstreamCancels = new AtomicInteger();
+        StreamMulticast multicast = new StreamMulticast(m -> terminations.incrementAndGet());
+        multicast.setUpstreamCancel(upstreamCancels::incrementAndGet);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        CompletableFuture<Void> firstDone = multicast.subscribe(first);
+        multicast.subscribe(second);
+
+        assertFalse(multicast.unsubscribe(first));
+        multicast.onContent("内容");
+        assertTrue(multicast.unsubscribe(second));
+
+        assertInstanceOf(CancellationException.class, first.error.get());
+        assertTrue(firstDone.isDone());
+        assertTrue(first.contents.isEmpty());
+        assertEquals(List.of("内容"), second.contents);
+        assertEquals(1, upstreamCancels.get());
+        assertEquals(1, terminations.get());
+        assertNull(multicast.subscribe(new RecordingCallback()));
+    }
+}
@@ -0,0 +1,116 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的 MCP stdio 服务器，作为独立进程运行
+ * <p>
+ * 支持 initialize、ping、tools/list 和 tools/call；工具 echo 原样返回 text 参数，
+ * sleep 在等待 millis 毫秒后异步返回，pid 返回进程号，exit 让进程异常退出，
+ * progress 在返回前按请求中的进度令牌发送两个进度通知
+ */
+public class FakeMcpServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final PrintStream OUT = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+
+    /**
+     * 以当前 JVM 启动本服务器的命令
+     */
+    public static List<String> command() {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(FakeMcpServer.class.getName());
+        return command;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        // 模拟把日志写到 stdout 的服务器
+        OUT.println("fake mcp server starting");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            JsonNode request = MAPPER.readTree(line);
+            if (!request.has("id")) {
+                continue;
+            }
+            long id = request.get("id").asLong();
+            String method = request.get("method").asText();
+            JsonNode params = request.path("params");
+            switch (method) {
+                case "initialize" -> respond(id, MAPPER.createObjectNode()
+                        .put("protocolVersion", McpStdioConnection.PROTOCOL_VERSION)
+                        .set("serverInfo", MAPPER.createObjectNode().put("name", "fake")));
+                case "ping" -> respond(id, MAPPER.createObjectNode());
+                case "tools/list" -> respond(id, MAPPER.createObjectNode().set("tools", MAPPER.createArrayNode()
+                        .add(MAPPER.createObjectNode()
+                                .put("name", "echo")
+                                .put("description", "Echo text")
+                                .set("inputSchema", MAPPER.createObjectNode().put("type", "object")))));
+                case "tools/call" -> callTool(id, params.path("name").asText(), params.path("arguments"),
+                        params.path("_meta").get("progressToken"));
+                default -> {
+                    ObjectNode response = MAPPER.createObjectNode().put("jsonrpc", "2.0").put("id", id);
+                    response.set("error", MAPPER.createObjectNode().put("code", -32601).put("message", "not found"));
+                    write(response);
+                }
+            }
+        }
+    }
+
+    private static void callTool(long id, String name, JsonNode arguments, JsonNode progressToken) {
+        switch (name) {
+            case "echo" -> respond(id, text(arguments.path("text").asText()));
+            case "pid" -> respond(id, text(String.valueOf(ProcessHandle.current().pid())));
+            case "exit" -> System.exit(1);
+            case "progress" -> {
+                for (int i = 1; i <= 2 && progressToken != null; i++) {
+                    ObjectNode params = MAPPER.createObjectNode().put("progress", i).put("total", 2);
+                    params.set("progressToken", progressToken);
+                    write(MAPPER.createObjectNode().put("jsonrpc", "2.0").put("method", "notifications/progress")
+                            .set("params", params));
+                }
+                respond(id, text("done"));
+            }
+            case "sleep" -> new Thread(() -> {
+                try {
+                    Thread.sleep(arguments.path("millis").asLong());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                respond(id, text("slept"));
+            }).start();
+            default -> respond(id, text("unknown"));
+        }
+    }
+
+    private static ObjectNode text(String text) {
+        return MAPPER.createObjectNode().set("content", MAPPER.createArrayNode()
+                .add(MAPPER.createObjectNode().put("type", "text").put("text", text)));
+    }
+
+    private static void respond(long id, JsonNode result) {
+        ObjectNode response = MAPPER.createObjectNode().put("jsonrpc", "2.0").put("id", id);
+        response.set("result", result);
+        write(response);
+    }
+
+    private static synchronized void write(JsonNode message) {
+        try {
+            OUT.println(MAPPER.writeValueAsString(message));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
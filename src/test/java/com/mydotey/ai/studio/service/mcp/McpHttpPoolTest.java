@@ -0,0 +1,273 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("MCP streamable HTTP 连接池测试")
+class McpHttpPoolTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger initializeCount = new AtomicInteger();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<String> notifications = new CopyOnWriteArrayList<>();
+
+    private HttpServer httpServer;
+    private ExecutorService serverExecutor;
+    private McpConfig mcpConfig;
+    private McpHttpPool pool;
+    private McpRpcClient rpcClient;
+    private McpServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/mcp", this::handle);
+        serverExecutor = Executors.newCachedThreadPool();
+        httpServer.setExecutor(serverExecutor);
+        httpServer.start();
+
+        mcpConfig = new McpConfig();
+        mcpConfig.getHttp().setRequestTimeout(5000);
+        pool = new McpHttpPool(mcpConfig, objectMapper);
+        rpcClient = new McpRpcClient(mock(McpStdioPool.class), pool, mock(McpToolResultCache.class));
+
+        server = new McpServer();
+        server.setId(1L);
+        server.setName("fake-http");
+        server.setConnectionType("HTTP");
+        server.setEndpointUrl("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/mcp");
+        server.setHeaders("{\"Authorization\": \"Bearer a,b:c\"}");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+        httpServer.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * 模拟的 streamable HTTP 服务器：initialize 分配会话，未知会话返回 404，
+     * progress 工具以 SSE 返回进度通知和结果，其他工具返回 JSON
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        String session = exchange.getRequestHeaders().getFirst(McpHttpConnection.SESSION_HEADER);
+        if ("DELETE".equals(exchange.getRequestMethod())) {
+            sessions.remove(session);
+            send(exchange, 200, null, "");
+            return;
+        }
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        String method = request.path("method").asText();
+        if ("initialize".equals(method)) {
+            String assigned = "session-" + initializeCount.incrementAndGet();
+            sessions.add(assigned);
+            exchange.getResponseHeaders().add(McpHttpConnection.SESSION_HEADER, assigned);
+            send(exchange, 200, "application/json", respond(request, objectMapper.createObjectNode()
+                    .put("protocolVersion", McpHttpConnection.PROTOCOL_VERSION)));
+            return;
+        }
+        if (session == null || !sessions.contains(session)) {
+            send(exchange, 404, null, "");
+            return;
+        }
+        if (!request.has("id")) {
+            notifications.add(method);
+            send(exchange, 202, null, "");
+            return;
+        }
+        JsonNode params = request.path("params");
+        String tool = params.path("name").asText();
+        switch (tool) {
+            case "progress" -> {
+                JsonNode token = params.path("_meta").path("progressToken");
+                StringBuilder events = new StringBuilder();
+                for (int i = 1; i <= 2; i++) {
+                    ObjectNode progress = objectMapper.createObjectNode().put("progress", i).put("total", 2);
+                    progress.set("progressToken", token);
+                    ObjectNode notification = objectMapper.createObjectNode()
+                            .put("jsonrpc", "2.0")
+                            .put("method", "notifications/progress");
+                    notification.set("params", progress);
+                    events.append("event: message\ndata: ").append(notification).append("\n\n");
+                }
+                events.append("data: ").append(respond(request, text("done"))).append("\n\n");
+                send(exchange, 200, "text/event-stream", events.toString());
+            }
+            case "sleep" -> {
+                try {
+                    Thread.sleep(params.path("arguments").path("millis").asLong());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                send(exchange, 200, "application/json", respond(request, text("slept")));
+            }
+            default -> send(exchange, 200, "application/json",
+                    respond(request, text(params.path("arguments").path("text").asText())));
+        }
+    }
+
+    private String respond(JsonNode request, JsonNode result) {
+        ObjectNode response = objectMapper.createObjectNode().put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        response.set("result", result);
+        return response.toString();
+    }
+
+    private ObjectNode text(String text) {
+        return objectMapper.createObjectNode().set("content", objectMapper.createArrayNode()
+                .add(objectMapper.createObjectNode().put("type", "text").put("text", text)));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (contentType != null) {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String echo(String text) throws Exception {
+        JsonNode content = rpcClient.callTool(server, "echo", objectMapper.createObjectNode().put("text", text));
+        return content.get(0).path("text").asText();
+    }
+
+    @Test
+    @DisplayName("握手一次后复用会话，每个请求带上配置的请求头")
+    void testReuseSession() throws Exception {
+        assertEquals("hello", echo("hello"));
+        assertEquals("again", echo("again"));
+
+        assertEquals(1, initializeCount.get());
+        assertEquals(List.of("notifications/initialized"), notifications);
+        assertTrue(authorizations.stream().allMatch("Bearer a,b:c"::equals));
+    }
+
+    @Test
+    @DisplayName("SSE 响应中的进度通知在结果之前回调")
+    void testSseProgress() throws Exception {
+        List<String> progress = new CopyOnWriteArrayList<>();
+
+        JsonNode content = rpcClient.callTool(server, "progress", objectMapper.createObjectNode(),
+                params -> progress.add(params.path("progress").asText() + "/" + params.path("total").asText()));
+
+        assertEquals("done", content.get(0).path("text").asText());
+        assertEquals(List.of("1/2", "2/2"), progress);
+    }
+
+    @Test
+    @DisplayName("会话失效后重新握手并重试")
+    void testSessionExpired() throws Exception {
+        echo("first");
+        sessions.clear();
+
+        assertEquals("second", echo("second"));
+        assertEquals(2, initializeCount.get());
+    }
+
+    @Test
+    @DisplayName("并发请求同时进行，慢请求不阻塞快请求")
+    void testConcurrentRequests() throws Exception {
+        echo("warm up");
+        CompletableFuture<JsonNode> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return rpcClient.callTool(server, "sleep", objectMapper.createObjectNode().put("millis", 1000));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals("fast", echo("fast"));
+        assertFalse(slow.isDone());
+        assertEquals("slept", slow.get(5, TimeUnit.SECONDS).get(0).path("text").asText());
+    }
+
+    @Test
+    @DisplayName("地址或请求头变化后关闭旧会话")
+    void testReplaceSessionOnChange() throws Exception {
+        echo("first");
+        server.setHeaders("{\"Authorization\": \"Bearer other\"}");
+
+        echo("second");
+        assertEquals(2, initializeCount.get());
+        assertTrue(authorizations.contains("Bearer other"));
+    }
+
+    @Test
+    @DisplayName("服务器被修改或删除后关闭会话，下次请求重新握手")
+    void testEvictOnServerChanged() throws Exception {
+        echo("first");
+
+        pool.onMcpServerChanged(new McpServerChangedEvent(server.getId()));
+        echo("second");
+        assertEquals(1, initializeCount.get());
+
+        pool.onMcpServerChanged(new McpServerChangedEvent(server.getId(), true));
+        echo("third");
+        assertEquals(2, initializeCount.get());
+    }
+
+    @Test
+    @DisplayName("请求超时后失败并通知服务端取消，会话仍可继续使用")
+    void testRequestTimeout() throws Exception {
+        mcpConfig.getHttp().setRequestTimeout(300);
+
+        Exception e = assertThrows(TimeoutException.class, () ->
+                rpcClient.callTool(server, "sleep", objectMapper.createObjectNode().put("millis", 3000)));
+        assertTrue(e.getMessage().contains("timed out"));
+
+        assertEquals("still alive", echo("still alive"));
+        // 取消通知异步发送
+        for (int i = 0; i < 100 && !notifications.contains("notifications/cancelled"); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(notifications.contains("notifications/cancelled"));
+    }
+
+    @Test
+    @DisplayName("请求头支持 JSON 和旧的 Name: value 格式，不允许的请求头被忽略")
+    void testParseHeaders() {
+        assertEquals(Map.of("Authorization", "Bearer x", "X-Retry", "3"),
+                McpHttpPool.parseHeaders("{\"Authorization\":\"Bearer x\",\"X-Retry\":3,\"Host\":\"evil\"}",
+                        objectMapper));
+        assertEquals(Map.of("Authorization", "Bearer a,b", "X-Url", "http://example.com:8080"),
+                McpHttpPool.parseHeaders("Authorization: Bearer a,b, X-Url: http://example.com:8080", objectMapper));
+        assertEquals(Map.of("A", "1", "B", "2"), McpHttpPool.parseHeaders("A: 1\nB: 2", objectMapper));
+        assertTrue(McpHttpPool.parseHeaders(null, objectMapper).isEmpty());
+        assertTrue(McpHttpPool.parseHeaders("{}", objectMapper).isEmpty());
+    }
+}
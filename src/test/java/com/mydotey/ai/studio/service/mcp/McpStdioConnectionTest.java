@@ -0,0 +1,123 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MCP stdio 连接测试")
+class McpStdioConnectionTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private McpStdioConnection connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = McpStdioConnection.start("fake", FakeMcpServer.command(), null, objectMapper, 30000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connection.close();
+    }
+
+    private ObjectNode call(String tool, ObjectNode arguments) {
+        return objectMapper.createObjectNode().put("name", tool).set("arguments", arguments);
+    }
+
+    private static String text(JsonNode response) {
+        return response.path("result").path("content").get(0).path("text").asText();
+    }
+
+    @Test
+    @DisplayName("完成握手后可以复用同一进程发送多个请求")
+    void testRequestsReuseProcess() throws Exception {
+        assertTrue(connection.isAlive());
+
+        JsonNode first = connection.request("tools/call", call("pid", objectMapper.createObjectNode()), 5000)
+                .get(5, TimeUnit.SECONDS);
+        JsonNode second = connection.request("tools/call", call("pid", objectMapper.createObjectNode()), 5000)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(text(first), text(second));
+        assertEquals(0, connection.pendingCount());
+    }
+
+    @Test
+    @DisplayName("ping 不刷新最近使用时间，空闲进程仍会被回收")
+    void testPingDoesNotTouchLastUsed() throws Exception {
+        long lastUsedAt = connection.getLastUsedAt();
+        Thread.sleep(20);
+
+        JsonNode response = connection.ping(5000).get(5, TimeUnit.SECONDS);
+
+        assertFalse(response.has("error"));
+        assertEquals(lastUsedAt, connection.getLastUsedAt());
+    }
+
+    @Test
+    @DisplayName("并发请求按 ID 分发响应，慢请求不阻塞快请求")
+    void testMultiplexing() throws Exception {
+        CompletableFuture<JsonNode> slow = connection.request("tools/call",
+                call("sleep", objectMapper.createObjectNode().put("millis", 1000)), 5000);
+        CompletableFuture<JsonNode> fast = connection.request("tools/call",
+                call("echo", objectMapper.createObjectNode().put("text", "hello")), 5000);
+
+        assertEquals("hello", text(fast.get(5, TimeUnit.SECONDS)));
+        assertFalse(slow.isDone());
+        assertEquals("slept", text(slow.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    @DisplayName("请求超时后失败，连接仍可继续使用")
+    void testRequestTimeout() throws Exception {
+        CompletableFuture<JsonNode> slow = connection.request("tools/call",
+                call("sleep", objectMapper.createObjectNode().put("millis", 3000)), 200);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> slow.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(0, connection.pendingCount());
+
+        JsonNode echo = connection.request("tools/call",
+                call("echo", objectMapper.createObjectNode().put("text", "still alive")), 5000).get(5, TimeUnit.SECONDS);
+        assertEquals("still alive", text(echo));
+    }
+
+    @Test
+    @DisplayName("按进度令牌把进度通知分发给对应的请求")
+    void testProgress() throws Exception {
+        List<String> progress = new CopyOnWriteArrayList<>();
+
+        JsonNode response = connection.request("tools/call", call("progress", objectMapper.createObjectNode()), 5000,
+                params -> progress.add(params.path("progress").asText() + "/" + params.path("total").asText()))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("done", text(response));
+        assertEquals(List.of("1/2", "2/2"), progress);
+    }
+
+    @Test
+    @DisplayName("进程退出时进行中的请求立即失败")
+    void testProcessExit() throws Exception {
+        CompletableFuture<JsonNode> pending = connection.request("tools/call",
+                call("sleep", objectMapper.createObjectNode().put("millis", 10000)), 30000);
+        connection.request("tools/call", call("exit", objectMapper.createObjectNode()), 30000);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> pending.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertFalse(connection.isAlive());
+    }
+}
@@ -0,0 +1,99 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.event.McpServerChangedEvent;
+import com.mydotey.ai.studio.mapper.McpServerMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("MCP stdio 进程池测试")
+class McpStdioPoolTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private McpConfig mcpConfig;
+    private McpStdioPool pool;
+    private McpRpcClient rpcClient;
+    private McpServer server;
+
+    @BeforeEach
+    void setUp() {
+        mcpConfig = new McpConfig();
+        mcpConfig.getStdio().setInitializeTimeout(30000);
+        mcpConfig.getStdio().setRestartBackoff(0);
+        pool = new McpStdioPool(mcpConfig, mock(McpServerMapper.class), objectMapper);
+        rpcClient = new McpRpcClient(pool, mock(McpHttpPool.class), mock(McpToolResultCache.class));
+
+        server = new McpServer();
+        server.setId(1L);
+        server.setName("fake");
+        server.setConnectionType("STDIO");
+        server.setCommand(String.join(" ", FakeMcpServer.command()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    private String pid() throws Exception {
+        JsonNode content = rpcClient.callTool(server, "pid", objectMapper.createObjectNode());
+        return content.get(0).path("text").asText();
+    }
+
+    @Test
+    @DisplayName("工具列表和工具调用复用同一个常驻进程")
+    void testReuseProcess() throws Exception {
+        List<McpRpcClient.ToolDefinition> tools = rpcClient.listTools(server);
+        assertEquals("echo", tools.get(0).name);
+
+        JsonNode content = rpcClient.callTool(server, "echo", objectMapper.createObjectNode().put("text", "hi"));
+        assertEquals("hi", content.get(0).path("text").asText());
+        assertEquals(pid(), pid());
+    }
+
+    @Test
+    @DisplayName("进程退出后下次请求自动重启")
+    void testRestartAfterCrash() throws Exception {
+        String before = pid();
+
+        assertThrows(Exception.class, () -> rpcClient.callTool(server, "exit", objectMapper.createObjectNode()));
+
+        String after = pid();
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    @DisplayName("命令变化或移除后替换旧进程")
+    void testReplaceOnCommandChange() throws Exception {
+        String before = pid();
+
+        pool.evict(server.getId());
+        assertNotEquals(before, pid());
+
+        String current = pid();
+        server.setCommand(server.getCommand() + " ");
+        assertNotEquals(current, pid());
+    }
+
+    @Test
+    @DisplayName("服务器被修改或删除后关闭进程，仅工具变化时保留")
+    void testEvictOnServerChanged() throws Exception {
+        String before = pid();
+
+        pool.onMcpServerChanged(new McpServerChangedEvent(server.getId()));
+        assertEquals(before, pid());
+
+        pool.onMcpServerChanged(new McpServerChangedEvent(server.getId(), true));
+        assertNotEquals(before, pid());
+    }
+}
@@ -0,0 +1,175 @@
+package com.mydotey.ai.studio.service.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mydotey.ai.studio.config.McpConfig;
+import com.mydotey.ai.studio.entity.McpServer;
+import com.mydotey.ai.studio.entity.McpTool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MCP 工具结果缓存测试")
+class McpToolResultCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private McpConfig mcpConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private McpToolResultCache cache;
+    private McpServer server;
+    private McpTool tool;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        mcpConfig = new McpConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new McpToolResultCache(mcpConfig, objectMapper, meterRegistry);
+
+        server = new McpServer();
+        server.setId(1L);
+        server.setName("catalog");
+        tool = new McpTool();
+        tool.setServerId(1L);
+        tool.setToolName("currency_rate");
+        tool.setResultCacheEnabled(true);
+    }
+
+    private JsonNode result(String text) {
+        return objectMapper.createObjectNode().set("content", objectMapper.createArrayNode()
+                .add(objectMapper.createObjectNode().put("type", "text").put("text", text)));
+    }
+
+    private JsonNode call(String arguments) throws Exception {
+        return cache.get(server, tool, objectMapper.readTree(arguments), () -> result("rate-" + loads.incrementAndGet()));
+    }
+
+    private double count(String result) {
+        var counter = meterRegistry.find("mcp.tool.cache").tag("tool", "currency_rate").tag("result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    @Test
+    @DisplayName("参数规范化后相同的调用命中缓存，按工具记录命中率")
+    void testHitWithCanonicalArguments() throws Exception {
+        JsonNode first = call("{\"from\":\"USD\",\"to\":\"CNY\",\"options\":{\"a\":1,\"b\":2}}");
+        JsonNode second = call("{\"to\":\"CNY\",\"options\":{\"b\":2,\"a\":1},\"from\":\"USD\"}");
+        JsonNode other = call("{\"from\":\"USD\",\"to\":\"EUR\"}");
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        assertEquals(2, loads.get());
+        assertEquals(1, count("hit"));
+        assertEquals(2, count("miss"));
+    }
+
+    @Test
+    @DisplayName("相同参数的并发调用只执行一次")
+    void testSingleFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch loading = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<CompletableFuture<JsonNode>> results = new ArrayList<>();
+            results.add(CompletableFuture.supplyAsync(() -> get(() -> {
+                loading.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return result("rate-" + loads.incrementAndGet());
+            }), executor));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> get(() -> result("rate-" + loads.incrementAndGet())),
+                        executor));
+            }
+            // 等待其他调用进入等待状态
+            for (int i = 0; i < 100 && count("shared") < 4; i++) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (CompletableFuture<JsonNode> result : results) {
+                assertEquals("rate-1", result.get(5, TimeUnit.SECONDS).get("content").get(0).get("text").asText());
+            }
+            assertEquals(1, loads.get());
+            assertEquals(4, count("shared"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private JsonNode get(McpToolResultCache.Loader loader) {
+        try {
+            return cache.get(server, tool, objectMapper.createObjectNode().put("from", "USD"), loader);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("工具返回错误或调用失败时不缓存")
+    void testErrorsNotCached() throws Exception {
+        JsonNode error = result("rate limited");
+        ((ObjectNode) error).put("isError", true);
+        cache.get(server, tool, objectMapper.createObjectNode(), () -> error);
+        assertThrows(IllegalStateException.class, () -> cache.get(server, tool, objectMapper.createObjectNode(), () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        call("{}");
+        call("{}");
+        assertEquals(1, loads.get());
+        assertEquals(3, count("miss"));
+    }
+
+    @Test
+    @DisplayName("按工具设置的过期时间失效")
+    void testPerToolTtl() throws Exception {
+        tool.setResultCacheTtl(1);
+        call("{}");
+        call("{}");
+        assertEquals(1, loads.get());
+
+        Thread.sleep(1100);
+        call("{}");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("未开启缓存的工具或全局关闭时不缓存")
+    void testCacheable() {
+        assertTrue(cache.isCacheable(tool));
+
+        tool.setResultCacheEnabled(null);
+        assertFalse(cache.isCacheable(tool));
+
+        tool.setResultCacheEnabled(true);
+        mcpConfig.getResultCache().setEnabled(false);
+        assertFalse(cache.isCacheable(tool));
+    }
+
+    @Test
+    @DisplayName("工具设置变化或重新同步后缓存失效")
+    void testInvalidate() throws Exception {
+        call("{}");
+        cache.invalidate(1L, "currency_rate");
+        call("{}");
+        assertEquals(2, loads.get());
+
+        cache.invalidateServer(1L);
+        call("{}");
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,182 @@
+package com.mydotey.ai.studio.service.memory;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.mydotey.ai.studio.config.ConversationMemoryConfig;
+import com.mydotey.ai.studio.dto.LlmResponse;
+import com.mydotey.ai.studio.dto.MessageRole;
+import com.mydotey.ai.studio.entity.Conversation;
+import com.mydotey.ai.studio.entity.Message;
+import com.mydotey.ai.studio.mapper.ConversationMapper;
+import com.mydotey.ai.studio.mapper.MessageMapper;
+import com.mydotey.ai.studio.service.LlmGenerationService;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("对话记忆服务测试")
+@ExtendWith(MockitoExtension.class)
+class ConversationMemoryServiceTest {
+
+    @Mock
+    private ConversationMapper conversationMapper;
+
+    @Mock
+    private MessageMapper messageMapper;
+
+    @Mock
+    private LlmGenerationService llmGenerationService;
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private ConversationMemoryConfig config;
+    private ConversationMemoryService service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, Message.class);
+        TableInfoHelper.initTableInfo(assistant, Conversation.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        config = new ConversationMemoryConfig();
+        config.setWindowSize(4);
+        config.setMaxWindowTokens(1000);
+        config.setKeepRecent(2);
+        Executor executor = scheduled::add;
+        service = new ConversationMemoryService(conversationMapper, messageMapper, llmGenerationService,
+                config, executor);
+    }
+
+    private static Message message(long id, String role, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+
+    private static Conversation conversation(String summary, Long summarizedUntilId) {
+        Conversation conversation = new Conversation();
+        conversation.setId(1L);
+        conversation.setSummary(summary);
+        conversation.setSummarizedUntilId(summarizedUntilId);
+        return conversation;
+    }
+
+    @Test
+    @DisplayName("窗口内的消息按时间正序返回，不安排压缩")
+    void testLoadWithinWindow() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation("旧摘要", 10L));
+        when(messageMapper.selectList(any())).thenReturn(List.of(
+                message(12, "assistant", "回答"),
+                message(11, "user", "问题")));
+
+        ConversationMemory memory = service.load(1L);
+
+        assertEquals("旧摘要", memory.getSummary());
+        assertEquals(2, memory.getMessages().size());
+        assertEquals(MessageRole.USER, memory.getMessages().get(0).getRole());
+        assertEquals("问题", memory.getMessages().get(0).getContent());
+        assertEquals(MessageRole.ASSISTANT, memory.getMessages().get(1).getRole());
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    @DisplayName("超出窗口时只返回最近的消息并安排一次压缩")
+    void testLoadOverflowSchedulesCompaction() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation(null, null));
+        when(messageMapper.selectList(any())).thenReturn(List.of(
+                message(5, "user", "5"),
+                message(4, "assistant", "4"),
+                message(3, "user", "3"),
+                message(2, "assistant", "2"),
+                message(1, "user", "1")));
+
+        ConversationMemory memory = service.load(1L);
+        service.load(1L);
+
+        assertEquals(List.of("2", "3", "4", "5"),
+                memory.getMessages().stream().map(com.mydotey.ai.studio.dto.Message::getContent).toList());
+        assertEquals(1, scheduled.size());
+    }
+
+    @Test
+    @DisplayName("token 超出预算时截断较早的消息")
+    void testLoadTrimsByTokenBudget() {
+        config.setMaxWindowTokens(10);
+        when(conversationMapper.selectById(1L)).thenReturn(conversation(null, null));
+        when(messageMapper.selectList(any())).thenReturn(List.of(
+                message(3, "user", "最新的问题"),
+                message(2, "assistant", "这是一个非常长的回答，".repeat(20)),
+                message(1, "user", "最早的问题")));
+
+        ConversationMemory memory = service.load(1L);
+
+        assertEquals(1, memory.getMessages().size());
+        assertEquals("最新的问题", memory.getMessages().get(0).getContent());
+        assertEquals(1, scheduled.size());
+    }
+
+    @Test
+    @DisplayName("压缩应该以旧摘要位置为条件更新摘要")
+    void testCompactUpdatesSummary() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation("旧摘要", null));
+        when(messageMapper.selectList(any()))
+                .thenReturn(List.of(message(4, "user", "4"), message(3, "assistant", "3")))
+                .thenReturn(List.of(message(1, "user", "1"), message(2, "assistant", "2")));
+        when(llmGenerationService.generate(anyString(), anyString(), eq(0.0), anyInt()))
+                .thenReturn(LlmResponse.builder().content(" 新摘要 ").build());
+        when(conversationMapper.update(isNull(), any())).thenReturn(1);
+
+        service.compact(1L);
+
+        verify(llmGenerationService).generate(anyString(), argThat(transcript ->
+                transcript.contains("旧摘要") && transcript.contains("user: 1") && transcript.contains("assistant: 2")
+                        && !transcript.contains("user: 4")), eq(0.0), anyInt());
+        verify(conversationMapper, times(1)).update(isNull(), any());
+    }
+
+    @Test
+    @DisplayName("并发压缩导致更新失败时停止")
+    void testCompactStopsOnConflict() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation(null, null));
+        when(messageMapper.selectList(any()))
+                .thenReturn(List.of(message(4, "user", "4"), message(3, "assistant", "3")))
+                .thenReturn(List.of(message(1, "user", "1"), message(2, "assistant", "2")));
+        when(llmGenerationService.generate(anyString(), anyString(), eq(0.0), anyInt()))
+                .thenReturn(LlmResponse.builder().content("摘要").build());
+        when(conversationMapper.update(isNull(), any())).thenReturn(0);
+
+        service.compact(1L);
+
+        verify(llmGenerationService, times(1)).generate(anyString(), anyString(), eq(0.0), anyInt());
+    }
+
+    @Test
+    @DisplayName("未摘要消息不足保留条数时不压缩")
+    void testCompactSkipsWhenTooFewMessages() {
+        when(conversationMapper.selectById(1L)).thenReturn(conversation(null, null));
+        when(messageMapper.selectList(any())).thenReturn(List.of(message(1, "user", "1")));
+
+        service.compact(1L);
+
+        verifyNoInteractions(llmGenerationService);
+    }
+}
@@ -0,0 +1,137 @@
+package com.mydotey.ai.studio.service.stream;
+
+import com.mydotey.ai.studio.config.LlmConfig;
+import com.mydotey.ai.studio.config.StreamResumeConfig;
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("流式回答续传服务测试")
+class ResumableStreamServiceTest {
+
+    private StreamResumeConfig config;
+    private ResumableStreamService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config = new StreamResumeConfig();
+        service = new ResumableStreamService(config, new LlmConfig(),
+                mock(ObjectProvider.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("按最后收到的事件 ID 续传")
+    void testResumeByLastEventId() {
+        ResumableStreamTest.RecordingCallback original = new ResumableStreamTest.RecordingCallback();
+        StreamingChatCallback output = service.open(7L, original);
+        output.onContent("第一段");
+        String lastEventId = original.eventIds.get(0);
+        output.onContent("第二段");
+
+        ResumableStreamTest.RecordingCallback resumed = new ResumableStreamTest.RecordingCallback();
+        assertTrue(service.resume(lastEventId, 7L, resumed));
+        output.onComplete();
+
+        assertEquals("第一段第二段", original.joined());
+        assertEquals("第二段", resumed.joined());
+        assertEquals(1, resumed.completions.get());
+    }
+
+    @Test
+    @DisplayName("其他用户或无效的事件 ID 不能续传")
+    void testResumeRejected() {
+        ResumableStreamTest.RecordingCallback original = new ResumableStreamTest.RecordingCallback();
+        StreamingChatCallback output = service.open(7L, original);
+        output.onContent("内容");
+        String lastEventId = original.eventIds.get(0);
+
+        ResumableStreamTest.RecordingCallback other = new ResumableStreamTest.RecordingCallback();
+        assertFalse(service.resume(lastEventId, 8L, other));
+        assertFalse(service.resume("unknown:0", 7L, other));
+        assertFalse(service.resume("no-offset", 7L, other));
+        assertFalse(service.resume(lastEventId.replaceAll(":\\d+$", ":abc"), 7L, other));
+        assertTrue(other.contents.isEmpty());
+    }
+
+    @Test
+    @DisplayName("所有客户端断开超过等待时间后取消生成，等待期间重连则继续")
+    void testCancelAfterDisconnectGrace() throws Exception {
+        config.setDisconnectGrace(1);
+        CancellationToken client = new CancellationToken();
+        ResumableStreamTest.RecordingCallback original = new ResumableStreamTest.RecordingCallback();
+        ResumableStreamService.OpenedStream opened = service.open(7L, original, client);
+        opened.output().onContent("内容");
+        String lastEventId = original.eventIds.get(0);
+
+        client.cancel();
+        assertTrue(service.resume(lastEventId, 7L, new CancellationToken(),
+                new ResumableStreamTest.RecordingCallback()));
+        Thread.sleep(1500);
+        assertFalse(opened.cancellationToken().isCancelled());
+
+        CancellationToken other = new CancellationToken();
+        ResumableStreamService.OpenedStream abandoned = service.open(7L,
+                new ResumableStreamTest.RecordingCallback(), other);
+        other.cancel();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!abandoned.cancellationToken().isCancelled() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(abandoned.cancellationToken().isCancelled());
+
+        // 取消后生成端以取消错误结束，流不再可续传
+        abandoned.output().onError(new CancellationException("cancelled"));
+        String abandonedId = ((ResumableStream) abandoned.output()).getId();
+        assertFalse(service.resume(ResumableStream.eventId(abandonedId, 0), 7L,
+                new ResumableStreamTest.RecordingCallback()));
+    }
+
+    @Test
+    @DisplayName("未启用时直接返回下游回调")
+    void testDisabled() {
+        config.setEnabled(false);
+        ResumableStreamTest.RecordingCallback downstream = new ResumableStreamTest.RecordingCallback();
+
+        assertSame(downstream, service.open(7L, downstream));
+        CancellationToken client = new CancellationToken();
+        ResumableStreamService.OpenedStream opened = service.open(7L, downstream, client);
+        assertSame(downstream, opened.output());
+        assertSame(client, opened.cancellationToken());
+        assertFalse(service.resume("any:0", 7L, downstream));
+    }
+
+    @Test
+    @DisplayName("未配置 Redis 时即使开启同步也只使用本地缓冲")
+    @SuppressWarnings("unchecked")
+    void testRedisUnavailable() {
+        config.setRedisEnabled(true);
+        ObjectProvider<StringRedisTemplate> provider = mock(ObjectProvider.class);
+        ResumableStreamService local = new ResumableStreamService(config, new LlmConfig(), provider);
+        try {
+            ResumableStreamTest.RecordingCallback downstream = new ResumableStreamTest.RecordingCallback();
+            StreamingChatCallback output = local.open(7L, downstream);
+            output.onContent("内容");
+
+            assertEquals("内容", downstream.joined());
+            assertFalse(local.resume("missing:0", 7L, new ResumableStreamTest.RecordingCallback()));
+        } finally {
+            local.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.mydotey.ai.studio.service.stream;
+
+import com.mydotey.ai.studio.service.StreamingChatCallback;
+import com.mydotey.ai.studio.util.CancellationToken;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("可续传流测试")
+class ResumableStreamTest {
+
+    static class RecordingCallback implements StreamingChatCallback {
+        final List<String> contents = new CopyOnWriteArrayList<>();
+        final List<String> eventIds = new CopyOnWriteArrayList<>();
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+
+        @Override
+        public void onContent(String content) {
+            onContent(content, null);
+        }
+
+        @Override
+        public void onContent(String content, String eventId) {
+            contents.add(content);
+            eventIds.add(eventId);
+        }
+
+        @Override
+        public void onComplete() {
+            completions.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error.set(e);
+        }
+
+        String joined() {
+            return String.join("", contents);
+        }
+    }
+
+    @Test
+    @DisplayName("每个片段的事件 ID 为流 ID 加结束偏移")
+    void testEventIdsCarryOffsets() {
+        ResumableStream stream = new ResumableStream("s1", 1L, 64, s -> { });
+        RecordingCallback callback = new RecordingCallback();
+        stream.subscribe(0, callback);
+
+        stream.onContent("你好");
+        stream.onContent("世界");
+
+        assertEquals(List.of("s1:2", "s1:4"), callback.eventIds);
+    }
+
+    @Test
+    @DisplayName("从偏移重连应该先补发缺失的内容再接收实时内容")
+    void testResumeReplaysThenTails() {
+        AtomicInteger terminations = new AtomicInteger();
+        ResumableStream stream = new ResumableStream("s1", 1L, 64, s -> terminations.incrementAndGet());
+        stream.onContent("abc");
+        stream.onContent("def");
+
+        RecordingCallback resumed = new RecordingCallback();
+        assertTrue(stream.subscribe(3, resumed));
+        stream.onContent("gh");
+        stream.onComplete();
+
+        assertEquals(List.of("def", "gh"), resumed.contents);
+        assertEquals(List.of("s1:6", "s1:8"), resumed.eventIds);
+        assertEquals(1, resumed.completions.get());
+        assertEquals(1, terminations.get());
+    }
+
+    @Test
+    @DisplayName("流结束后重连应该补发剩余内容并收到结束")
+    void testResumeAfterCompletion() {
+        ResumableStream stream = new ResumableStream("s1", 1L, 64, s -> { });
+        stream.onContent("完整的回答");
+        stream.onComplete();
+
+        RecordingCallback resumed = new RecordingCallback();
+        assertTrue(stream.subscribe(2, resumed));
+
+        assertEquals("的回答", resumed.joined());
+        assertEquals(1, resumed.completions.get());
+        assertTrue(stream.isTerminated());
+    }
+
+    @Test
+    @DisplayName("环形缓冲区回绕后仍能正确补发，被覆盖的偏移无法续传")
+    void testRingBufferWrapAround() {
+        ResumableStream stream = new ResumableStream("s1", 1L, 8, s -> { });
+        stream.onContent("01234");
+        stream.onContent("56789");
+        stream.onContent("abcdef0123456789");
+
+        assertFalse(stream.subscribe(10, new RecordingCallback()));
+
+        RecordingCallback resumed = new RecordingCallback();
+        assertTrue(stream.subscribe(20, resumed));
+        assertEquals("456789", resumed.joined());
+        assertFalse(stream.subscribe(27, new RecordingCallback()));
+    }
+
+    @Test
+    @DisplayName("错误结束后重连应该收到错误")
+    void testResumeAfterError() {
+        ResumableStream stream = new ResumableStream("s1", 1L, 64, s -> { });
+        stream.onContent("部分");
+        stream.onError(new RuntimeException("upstream failed"));
+        stream.onContent("忽略");
+
+        RecordingCallback resumed = new RecordingCallback();
+        assertTrue(stream.subscribe(0, resumed));
+
+        assertEquals("部分", resumed.joined());
+        assertEquals("upstream failed", resumed.error.get().getMessage());
+    }
+
+    @Test
+    @DisplayName("最后一个客户端断开时通知空闲，重连后不再空闲")
+    void testClientDetachNotifiesIdle() {
+        AtomicInteger idles = new AtomicInteger();
+        ResumableStream stream = new ResumableStream("s1", 1L, 64, s -> { }, s -> idles.incrementAndGet());
+        CancellationToken firstClient = new CancellationToken();
+        CancellationToken secondClient = new CancellationToken();
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        stream.subscribe(0, first, firstClient);
+        stream.subscribe(0, second, secondClient);
+
+        firstClient.cancel();
+        stream.onContent("内容");
+        assertEquals(0, idles.get());
+        assertTrue(first.contents.isEmpty());
+
+        secondClient.cancel();
+        assertEquals(1, idles.get());
+        assertTrue(stream.idleMillis() >= 0);
+
+        RecordingCallback resumed = new RecordingCallback();
+        assertTrue(stream.subscribe(0, resumed, new CancellationToken()));
+        assertEquals(-1, stream.idleMillis());
+        assertEquals("内容", resumed.joined());
+        assertFalse(stream.getCancellationToken().isCancelled());
+    }
+}
@@ -0,0 +1,55 @@
+package com.mydotey.ai.studio.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("取消令牌测试")
+class CancellationTokenTest {
+
+    @Test
+    @DisplayName("取消只生效一次，回调只执行一次")
+    void testCancelOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+
+        assertTrue(token.cancel());
+        assertFalse(token.cancel());
+
+        assertTrue(token.isCancelled());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("取消之后注册的回调立即执行，注销的回调不再执行")
+    void testLateAndDeregisteredCallbacks() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger deregistered = new AtomicInteger();
+        token.onCancel(deregistered::incrementAndGet).run();
+        token.onCancel(() -> {
+            throw new IllegalStateException("callback failed");
+        });
+
+        token.cancel();
+        AtomicInteger late = new AtomicInteger();
+        token.onCancel(late::incrementAndGet);
+
+        assertEquals(0, deregistered.get());
+        assertEquals(1, late.get());
+    }
+
+    @Test
+    @DisplayName("NONE 令牌永远不会被取消")
+    void testNone() {
+        AtomicInteger calls = new AtomicInteger();
+        CancellationToken.NONE.onCancel(calls::incrementAndGet);
+
+        assertFalse(CancellationToken.NONE.cancel());
+        assertFalse(CancellationToken.NONE.isCancelled());
+        assertEquals(0, calls.get());
+    }
+}
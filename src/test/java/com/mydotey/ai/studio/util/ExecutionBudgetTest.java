@@ -0,0 +1,79 @@
+package com.mydotey.ai.studio.util;
+
+import com.mydotey.ai.studio.common.exception.ExecutionBudgetExceededException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("执行预算测试")
+class ExecutionBudgetTest {
+
+    @Test
+    @DisplayName("不限预算时不收紧超时和 maxTokens")
+    void testUnlimited() {
+        ExecutionBudget budget = ExecutionBudget.of(0, 0);
+
+        assertSame(ExecutionBudget.UNLIMITED, budget);
+        assertEquals(30000, budget.timeoutMillis(30000));
+        assertEquals(2000, budget.maxTokens(2000));
+        assertNull(budget.maxTokens(null));
+        budget.consume(100000);
+        assertFalse(budget.isExhausted());
+        assertFalse(budget.isLow());
+        assertSame(CancellationToken.NONE, budget.cancelAtDeadline(CancellationToken.NONE));
+    }
+
+    @Test
+    @DisplayName("maxTokens 按剩余 token 收紧，用完后检查失败")
+    void testTokenBudget() {
+        ExecutionBudget budget = ExecutionBudget.of(0, 3000, 0, 1000);
+
+        assertEquals(2000, budget.maxTokens(2000));
+        budget.consume(2500);
+        assertEquals(500, budget.maxTokens(2000));
+        assertEquals(500, budget.maxTokens(null));
+        assertTrue(budget.isLow());
+        assertFalse(budget.isExhausted());
+
+        budget.consume(600);
+        assertEquals(0, budget.remainingTokens());
+        assertTrue(budget.isExhausted());
+        ExecutionBudgetExceededException e =
+                assertThrows(ExecutionBudgetExceededException.class, () -> budget.check("LLM call"));
+        assertEquals(504, e.getCode());
+        assertEquals("Token budget exhausted before LLM call", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("超时按剩余时间收紧，截止时间到达后检查失败")
+    void testDeadline() throws Exception {
+        ExecutionBudget budget = ExecutionBudget.of(200, 0, 150, 0);
+
+        assertTrue(budget.timeoutMillis(30000) <= 200);
+        assertEquals(50, budget.timeoutMillis(50));
+        assertFalse(budget.isExhausted());
+
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertTrue(budget.isExpired());
+        assertTrue(budget.isLow());
+        assertEquals(0, budget.timeoutMillis(30000));
+        assertThrows(ExecutionBudgetExceededException.class, () -> budget.check("vector search"));
+    }
+
+    @Test
+    @DisplayName("截止时间到达或上游取消时取消派生令牌")
+    void testCancelAtDeadline() throws Exception {
+        CancellationToken expiring = ExecutionBudget.of(100, 0).cancelAtDeadline(new CancellationToken());
+        assertFalse(expiring.isCancelled());
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertTrue(expiring.isCancelled());
+
+        CancellationToken parent = new CancellationToken();
+        CancellationToken child = ExecutionBudget.of(60000, 0).cancelAtDeadline(parent);
+        parent.cancel();
+        assertTrue(child.isCancelled());
+    }
+}
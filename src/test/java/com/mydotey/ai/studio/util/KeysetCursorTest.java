@@ -0,0 +1,39 @@
+package com.mydotey.ai.studio.util;
+
+import com.mydotey.ai.studio.common.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("键集分页游标测试")
+class KeysetCursorTest {
+
+    @Test
+    @DisplayName("编码后解码得到相同的时间戳和 ID，保留微秒")
+    void testRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(Instant.parse("2026-10-19T08:30:15.123456Z"), 42L);
+
+        String encoded = cursor.encode();
+
+        assertFalse(encoded.contains("="));
+        assertEquals(cursor, KeysetCursor.decode(encoded));
+    }
+
+    @Test
+    @DisplayName("空游标表示第一页")
+    void testEmptyCursor() {
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode(""));
+    }
+
+    @Test
+    @DisplayName("格式错误的游标返回 400")
+    void testInvalidCursor() {
+        BusinessException e = assertThrows(BusinessException.class, () -> KeysetCursor.decode("not-a-cursor"));
+        assertEquals(400, e.getCode());
+        assertThrows(BusinessException.class, () -> KeysetCursor.decode("MTIzNDU2"));
+    }
+}